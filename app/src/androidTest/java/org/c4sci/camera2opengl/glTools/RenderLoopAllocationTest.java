@@ -0,0 +1,88 @@
+package org.c4sci.camera2opengl.glTools;
+
+import android.opengl.Matrix;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.TriangleMesh;
+import org.c4sci.camera2opengl.glTools.renderables.scene.SceneNode;
+import org.c4sci.camera2opengl.glTools.renderables.scene.ViewProjection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the CPU side of a steady-state frame (matrix stack, scene graph, view projection and culling) does not allocate.
+ * No OpenGL context is needed: meshes are only used for their bounds.<br>
+ * The draw path (AbstractMesh.draw() and the OpenGL calls it makes) is not covered by this test: it needs a context.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RenderLoopAllocationTest {
+
+    private static final int NODE_COUNT = 16;
+    private static final int WARMUP_FRAME_COUNT = 10;
+    private static final int MEASURED_FRAME_COUNT = 100;
+
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final ViewProjection viewProjection = new ViewProjection();
+    private final SceneNode rootNode = new SceneNode(null);
+    private final SceneNode[] meshNodes = new SceneNode[NODE_COUNT];
+    private int visibleCount = 0;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void steadyStateFrameDoesNotAllocate(){
+        for (int _n = 0; _n < NODE_COUNT; _n++){
+            meshNodes[_n] = new SceneNode(new TriangleMesh(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1}, null, 0));
+            rootNode.addChild(meshNodes[_n]);
+        }
+        Matrix.perspectiveM(projectionMatrix, 0, 60f, 1.5f, 0.1f, 100f);
+        // Lazy initializations (thread scratch, bounds ...) happen here
+        for (int _f = 0; _f < WARMUP_FRAME_COUNT; _f++){
+            renderFrame(_f);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        int _allocation_count;
+        try {
+            for (int _f = WARMUP_FRAME_COUNT; _f < WARMUP_FRAME_COUNT + MEASURED_FRAME_COUNT; _f++){
+                renderFrame(_f);
+            }
+        }
+        finally {
+            Debug.stopAllocCounting();
+            // Read before building the assertion message, which allocates
+            _allocation_count = Debug.getThreadAllocCount();
+        }
+        assertEquals("Allocations in " + MEASURED_FRAME_COUNT + " frames", 0, _allocation_count);
+    }
+
+    private void renderFrame(int frame_index){
+        Matrix.setLookAtM(viewMatrix, 0, 0f, 0f, 5f + frame_index % 10, 0f, 0f, 0f, 0f, 1f, 0f);
+        viewProjection.set(viewMatrix, projectionMatrix);
+
+        MatrixStack _stack = RenderScratch.forCurrentThread().getMatrixStack();
+        for (int _n = 0; _n < NODE_COUNT; _n++){
+            _stack.push();
+            _stack.translate(_n - NODE_COUNT / 2f, 0f, 0f);
+            _stack.rotate(frame_index + _n, 0f, 1f, 0f);
+            meshNodes[_n].setLocalMatrix(_stack.top());
+            _stack.pop();
+        }
+        rootNode.updateWorldMatrices();
+
+        visibleCount = 0;
+        for (int _n = 0; _n < NODE_COUNT; _n++){
+            meshNodes[_n].getMvpMatrix(viewProjection);
+            Bounds _bounds = meshNodes[_n].getWorldBounds();
+            if (viewProjection.getWorldFrustum().isVisible(_bounds)){
+                visibleCount++;
+            }
+        }
+    }
+}
@@ -7,8 +7,17 @@ import android.view.SurfaceView;
 import android.widget.TextView;
 
 import org.c4sci.camera2opengl.ILogger;
+import org.c4sci.camera2opengl.glTools.GlResourceLoader;
 import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.MatrixStack;
+import org.c4sci.camera2opengl.glTools.RenderScratch;
+import org.c4sci.camera2opengl.glTools.StagingBufferPool;
+import org.c4sci.camera2opengl.glTools.renderables.AttributeEncoding;
 import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.SharedBufferRegistry;
+import org.c4sci.camera2opengl.glTools.renderables.scene.SceneNode;
+import org.c4sci.camera2opengl.glTools.renderables.scene.ViewProjection;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh;
 import org.c4sci.camera2opengl.glTools.renderables.meshes.AxisAlignedBoxMesh;
 import org.c4sci.camera2opengl.glTools.renderables.shaders.AssembledShader;
 import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
@@ -18,7 +27,6 @@ import org.c4sci.camera2opengl.glTools.renderables.shaders.stock.StockVertexShad
 import org.c4sci.camera2opengl.preview.PreviewImageProcessor;
 import org.c4sci.camera2opengl.preview.PreviewImageBundle;
 
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Random;
@@ -37,7 +45,7 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
 
     private float       redLevel = 0;
     private float       dRedLevel = 0.005f;
-    private float[]      mvpMatrix;
+    private final ViewProjection viewProjection = new ViewProjection();
 
     private int         outputViewWidthPixel;
     private int         outputViewHeightPixel;
@@ -45,6 +53,7 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
     // -------------- Uniforms index -------------------------
     private int         identityProgramMvpIndex;
     private int         colorProgramMvpIndex;
+    private int         colorProgramColorIndex;
     private int         ambientProgramAmbientIndex;
     private int         texture0IdIndex;
 
@@ -65,7 +74,12 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
             0.5f}; // extinction power
 
     private boolean     resourcesAreUp = false;
-    private IRenderable renderedMesh = null;
+    /**
+     * Created once so that the render loop does not allocate a capturing lambda at each GL call check.
+     */
+    private final Runnable releaseAction = this::releaseOpenGlResources;
+    private AbstractMesh renderedMesh = null;
+    private SceneNode   renderedNode = null;
     private int previewTextureId = -1;
 
 
@@ -90,7 +104,8 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
             vertices_[offset_+3] =  1;
         });
         IRenderable.DataToVbo _color_vbo = new IRenderable.DataToVbo(_vertex_colors,
-                ShaderAttributes.COLOR.toString(), GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_COLOR);
+                ShaderAttributes.COLOR.toString(), GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_COLOR,
+                AttributeEncoding.NORMALIZED_UNSIGNED_BYTE);
 
         float[] _vertex_normals = AxisAlignedBoxMesh.forEach((vertices_, offset_, x_, y_, z_) -> {
             float _norm = (float)Math.sqrt(3.0*0.5*0.5);
@@ -100,7 +115,8 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
             vertices_[offset_+3] =  1;
         });
         IRenderable.DataToVbo _normal_vbo = new IRenderable.DataToVbo(_vertex_normals,
-                ShaderAttributes.NORMAL.toString(), GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_NORMAL);
+                ShaderAttributes.NORMAL.toString(), GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_NORMAL,
+                AttributeEncoding.NORMALIZED_INT_2_10_10_10_REV);
 
         /*
         Texture coordinates are :
@@ -133,14 +149,18 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
         });
         IRenderable.DataToVbo _textcoord_vbo = new IRenderable.DataToVbo(_vertex_colors,
                 ShaderAttributes.TEXCOORD.toString(),
-                GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_TEXCOORD);
+                GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_TEXCOORD, AttributeEncoding.HALF_FLOAT);
 
 
-        renderedMesh = new AxisAlignedBoxMesh(
+        AxisAlignedBoxMesh _box = new AxisAlignedBoxMesh(
                 1f,1f,1f,
                 new float[]{-0.5f,-0.5f,0.5f,1},
                 GLES31.GL_STATIC_DRAW,
                 Arrays.asList(_color_vbo, _normal_vbo, _textcoord_vbo));
+        // One interleaved VBO instead of four separate ones
+        _box.setBufferLayout(IRenderable.BufferLayout.INTERLEAVED_BUFFER);
+        renderedMesh = _box;
+        renderedNode = new SceneNode(_box);
     }
 
     @Override
@@ -159,15 +179,18 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
 
         setupOpenGlResources(processor_bundle);
 
-        // Compute model position and orientation
-        float[] _model_movt = new float[16];
-        Matrix.setIdentityM(_model_movt, 0);
+        // Compute model position and orientation, without allocating anything
+        MatrixStack _model_movt = RenderScratch.forCurrentThread().getMatrixStack();
+        _model_movt.push();
+        _model_movt.loadIdentity();
 
-        Matrix.translateM(_model_movt, 0, 0, 0, - animCurrentEyeDist);
+        _model_movt.translate(0, 0, - animCurrentEyeDist);
 
-        Matrix.rotateM(_model_movt, 0, animRotxDegree, 1, 0, 0);
-        Matrix.rotateM(_model_movt, 0, animRotyDegree, 0, 1, 0);
-        Matrix.rotateM(_model_movt, 0, animRotzDegree, 0, 0, 1);
+        _model_movt.rotate(animRotxDegree, 1, 0, 0);
+        _model_movt.rotate(animRotyDegree, 0, 1, 0);
+        _model_movt.rotate(animRotzDegree, 0, 0, 1);
+        renderedNode.setLocalMatrix(_model_movt.top());
+        _model_movt.pop();
 
         animRotxDegree = (animRotxDegree +animMaxDeltaRotDegree*1 )%360;
         animRotyDegree = (animRotyDegree +animMaxDeltaRotDegree*2 )%360;
@@ -178,8 +201,9 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
             animDeltaEyeDist *= -1f;
         }
 
-        float[] _mvp = new float[16];
-        Matrix.multiplyMM(_mvp, 0, mvpMatrix, 0, _model_movt, 0);
+        // The eye distance animation often moves the model out of view: it is then not submitted at all
+        renderedNode.updateWorldMatrices();
+        boolean _model_is_visible = viewProjection.getWorldFrustum().isVisible(renderedNode.getWorldBounds());
 
 
         // backface culling
@@ -195,7 +219,7 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
         // We draw in the left half part of the view
         GLES31.glViewport(0,0, outputViewWidthPixel/2, outputViewHeightPixel);
         GLES31.glScissor(0,0,outputViewWidthPixel/2, outputViewHeightPixel);
-        GlUtilities.ensureGles31Call("glViewport(0,0)", ()-> releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glViewport(0,0)", releaseAction);
         GLES31.glClearColor(0.1f, 0, 0, 0);
         redLevel += dRedLevel;
         if (redLevel > 1f){
@@ -207,19 +231,23 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
             dRedLevel *= -1f;
         }
         GLES31.glClear(GLES31.GL_COLOR_BUFFER_BIT | GLES31.GL_DEPTH_BUFFER_BIT ); //| GLES31.GL_STENCIL_BUFFER_BIT);
-        GlUtilities.ensureGles31Call("glClear", ()-> releaseOpenGlResources());
-        int _left = renderModel(_mvp, processor_bundle);
+        GlUtilities.ensureGles31Call("glClear", releaseAction);
+        if (_model_is_visible) {
+            renderModel(processor_bundle);
+        }
 
         // We draw in the right half part of the view
         GLES31.glViewport(outputViewWidthPixel/2,0, outputViewWidthPixel/2, outputViewHeightPixel);
         GLES31.glScissor(outputViewWidthPixel/2,0,outputViewWidthPixel/2,outputViewHeightPixel);
-        GlUtilities.ensureGles31Call("glViewport(w/2,0)", ()-> releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glViewport(w/2,0)", releaseAction);
 
        // glClear is not limited by the viewport but by scissor.
         GLES31.glClearColor(0, 0.5f, 0, 0);
         GLES31.glClear(GLES31.GL_COLOR_BUFFER_BIT | GLES31.GL_DEPTH_BUFFER_BIT | GLES31.GL_STENCIL_BUFFER_BIT);
-        GlUtilities.ensureGles31Call("glClear", ()-> releaseOpenGlResources());
-        int _right = renderModel(_mvp, processor_bundle);
+        GlUtilities.ensureGles31Call("glClear", releaseAction);
+        if (_model_is_visible) {
+            renderModel(processor_bundle);
+        }
 
         // waits until OpenGL rendering is finished.
         GLES31.glFinish();
@@ -234,29 +262,29 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
 
     }
 
-    private int renderModel(float[] mvp_mat, PreviewImageBundle preview_bundle){
+    private int renderModel(PreviewImageBundle preview_bundle){
         // Draw the object
         GLES31.glUseProgram(identityShaderProgram);
-        GlUtilities.ensureGles31Call("glUseProgram(shaderProgram = " + identityShaderProgram +") ", ()-> releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glUseProgram(identityShaderProgram)", releaseAction);
 
         GLES31.glEnable(GLES31.GL_BLEND);
-        GlUtilities.ensureGles31Call("glEnable(GL_BLEND)", ()-> releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glEnable(GL_BLEND)", releaseAction);
 
         GLES31.glBlendColor(1.0f, 0.8f, 0.2f, 1f);
         GLES31.glBlendFunc(GLES31.GL_SRC_ALPHA, GLES31.GL_ONE_MINUS_SRC_ALPHA);
 
         // Setup the texture
 //        GLES31.glTexParameteri(GL_TEXTURE_EXTERNAL_OES, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_NEAREST);
-//        GlUtilities.ensureGles31Call("glTexParameteri (MAG_FILTER)", ()-> releaseOpenGlResources());
+//        GlUtilities.ensureGles31Call("glTexParameteri (MAG_FILTER)", releaseAction);
 //
 //        GLES31.glTexParameteri(GL_TEXTURE_EXTERNAL_OES, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_NEAREST);
-//        GlUtilities.ensureGles31Call("glTexParameteri (MIN_FILTER)", ()->releaseOpenGlResources());
+//        GlUtilities.ensureGles31Call("glTexParameteri (MIN_FILTER)", releaseAction);
 //
 //        GLES31.glBindTexture(GL_TEXTURE_EXTERNAL_OES, previewTextureId);
-//        GlUtilities.ensureGles31Call("glBindTexture( preview )", ()-> releaseOpenGlResources());
+//        GlUtilities.ensureGles31Call("glBindTexture( preview )", releaseAction);
 //
 //        GLES31.glUniform1i(texture0IdIndex, previewTextureId);
-//        GlUtilities.ensureGles31Call("glUniform1i( preview )", ()->releaseOpenGlResources());
+//        GlUtilities.ensureGles31Call("glUniform1i( preview )", releaseAction);
 
         //preview_bundle.getInputSurfaceTexture().attachToGLContext(previewTexture);
         //preview_bundle.attachToTexture(previewTexture, outputView);
@@ -265,11 +293,8 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
         //GLES11Ext.glEGLImageTargetTexture2DOES(GL_TEXTURE_EXTERNAL_OES, (GLeglImageOES));
 
         // Setup the coordinate changes (viewpoint and perspective + model moves)
-        GLES31.glUniformMatrix4fv(identityProgramMvpIndex, 1, false, FloatBuffer.wrap(mvp_mat));
-        renderedMesh.draw(identityShaderProgram, IRenderable.MeshStyle.FILLED);
-
-        GLES31.glUniform4fv(ambientProgramAmbientIndex, 1, ambientColor, 0);
-        GlUtilities.ensureGles31Call("glUniform4f(ambientProgramAmbientIndex)", ()-> releaseOpenGlResources());
+        // The ambient uniform is constant: it is set once at setup
+        renderedNode.draw(viewProjection, identityShaderProgram, identityProgramMvpIndex, IRenderable.MeshStyle.FILLED);
 
         //preview_bundle.getInputSurfaceTexture().detachFromGLContext();
 
@@ -277,24 +302,17 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
         GLES31.glDisable(GLES31.GL_BLEND);
         GLES31.glLineWidth(5);
         GLES31.glUseProgram(colorShaderProgram);
-        GlUtilities.ensureGles31Call("glUseProgram(shaderProgram = " + colorShaderProgram +") ", ()-> releaseOpenGlResources());
-        int _color_unif_index = GLES31.glGetUniformLocation(colorShaderProgram, ShaderAttributes.COLOR.toString());
-        GlUtilities.assertGles31Call(_color_unif_index != -1, "glGetUniformLocation ( color )", ()->releaseOpenGlResources());
-        GlUtilities.ensureGles31Call("glGetUniformLocation ( color )", ()->releaseOpenGlResources());
-        GLES31.glUniform4f( _color_unif_index, 0, 0, 0, 1 );
-
-
-        GLES31.glUniformMatrix4fv(colorProgramMvpIndex, 1, false, FloatBuffer.wrap(mvp_mat));
+        GlUtilities.ensureGles31Call("glUseProgram(colorShaderProgram)", releaseAction);
+        GLES31.glUniform4f( colorProgramColorIndex, 0, 0, 0, 1 );
 
-        renderedMesh.draw(colorShaderProgram, IRenderable.MeshStyle.LINES);
 
-        // Show objects vertices in white
-        GLES31.glUniform4fv( _color_unif_index, 1, ambientColor, 0);
+        renderedNode.draw(viewProjection, colorShaderProgram, colorProgramMvpIndex, IRenderable.MeshStyle.LINES);
 
+        // Show objects vertices
         GLES31.glUseProgram(identityShaderProgram);
-        GlUtilities.ensureGles31Call("glUseProgram(shaderProgram = " + identityShaderProgram +") ", ()-> releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glUseProgram(identityShaderProgram)", releaseAction);
         GLES31.glLineWidth(30);
-        renderedMesh.draw(identityShaderProgram, IRenderable.MeshStyle.POINTS);
+        renderedNode.draw(viewProjection, identityShaderProgram, identityProgramMvpIndex, IRenderable.MeshStyle.POINTS);
 
 
         return -1;
@@ -337,7 +355,14 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
         logD("Identity Shader program = " + identityShaderProgram);
         logD("Color Shader program = " + colorShaderProgram);
 
-        renderedMesh.setupOpenGlResources();
+        // The box is drawn once the loader thread has uploaded its buffers
+        GlResourceLoader _loader = processor_bundle.getResourceLoader();
+        if (_loader != null) {
+            renderedMesh.uploadWith(_loader);
+        }
+        else {
+            renderedMesh.setupOpenGlResources();
+        }
 
         outputViewWidthPixel = outputView.getWidth();
         outputViewHeightPixel = outputView.getHeight();
@@ -358,16 +383,15 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
 
         Matrix.perspectiveM(_projection_matrix, 0, 45, _aspect_ratio, 0.1f, 100);
 
-        mvpMatrix = new float[16];
-        Matrix.multiplyMM(mvpMatrix, 0, _projection_matrix, 0, _view_matrix, 0);
+        viewProjection.set(_view_matrix, _projection_matrix);
 
         identityProgramMvpIndex = GLES31.glGetUniformLocation(identityShaderProgram, ShaderAttributes.MVP.toString());
-        GlUtilities.assertGles31Call(identityProgramMvpIndex != -1, "glGetUniformLocation ( mvp )", ()->releaseOpenGlResources());
-        GlUtilities.ensureGles31Call("glGetUniformLocation ( mvp )", ()->releaseOpenGlResources());
+        GlUtilities.assertGles31Call(identityProgramMvpIndex != -1, "glGetUniformLocation ( mvp )", releaseAction);
+        GlUtilities.ensureGles31Call("glGetUniformLocation ( mvp )", releaseAction);
 
         colorProgramMvpIndex = GLES31.glGetUniformLocation(colorShaderProgram, ShaderAttributes.MVP.toString());
-        GlUtilities.assertGles31Call(colorProgramMvpIndex != -1, "glGetUniformLocation ( mvp )", ()->releaseOpenGlResources());
-        GlUtilities.ensureGles31Call("glGetUniformLocation ( mvp )", ()->releaseOpenGlResources());
+        GlUtilities.assertGles31Call(colorProgramMvpIndex != -1, "glGetUniformLocation ( mvp )", releaseAction);
+        GlUtilities.ensureGles31Call("glGetUniformLocation ( mvp )", releaseAction);
 
         ambientProgramAmbientIndex = GLES31.glGetUniformLocation(identityShaderProgram, ShaderAttributes.AMBIENT.toString());
         GlUtilities.assertGles31Call(ambientProgramAmbientIndex != -1, "glGetUniformLocation ( ambient )", ()->
@@ -379,16 +403,25 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
                 logD(GLES31.glGetShaderSource(_shader_id.get(_i)));
             }
             releaseOpenGlResources();});
-        GlUtilities.ensureGles31Call("glGetUniformLocation ( ambient )", ()->releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glGetUniformLocation ( ambient )", releaseAction);
+
+        colorProgramColorIndex = GLES31.glGetUniformLocation(colorShaderProgram, ShaderAttributes.COLOR.toString());
+        GlUtilities.assertGles31Call(colorProgramColorIndex != -1, "glGetUniformLocation ( color )", releaseAction);
+        GlUtilities.ensureGles31Call("glGetUniformLocation ( color )", releaseAction);
+
+        // Uniforms keep their values in their program: constant ones are set once
+        GLES31.glUseProgram(identityShaderProgram);
+        GLES31.glUniform4fv(ambientProgramAmbientIndex, 1, ambientColor, 0);
+        GlUtilities.ensureGles31Call("glUniform4fv(ambientProgramAmbientIndex)", releaseAction);
 
 //        texture0IdIndex = GLES31.glGetUniformLocation(identityShaderProgram, StockFragmentShaderSnippets.UNIFORM_TEXTURE0_ID.getName());
-//        GlUtilities.assertGles31Call(texture0IdIndex != -1, "glGetUniformLocation ( texture )", ()->releaseOpenGlResources());
-//        GlUtilities.ensureGles31Call("glGetUniformLocation ( texture )", ()->releaseOpenGlResources());
+//        GlUtilities.assertGles31Call(texture0IdIndex != -1, "glGetUniformLocation ( texture )", releaseAction);
+//        GlUtilities.ensureGles31Call("glGetUniformLocation ( texture )", releaseAction);
 //
 //        // Attach the TextureSurface to a VBO
 //        IntBuffer _preview_buff = IntBuffer.allocate(1);
 //        GLES31.glGenTextures(1, _preview_buff);
-//        GlUtilities.ensureGles31Call("glGenTextures", ()-> releaseOpenGlResources());
+//        GlUtilities.ensureGles31Call("glGenTextures", releaseAction);
 //
 //        previewTextureId = _preview_buff.get(0);
 
@@ -404,6 +437,8 @@ public class TestPreviewImageProcessor implements PreviewImageProcessor , ILogge
     public void onPause() {
         logD("onPause");
         releaseOpenGlResources();
+        StagingBufferPool.trim();
+        SharedBufferRegistry.forgetAll();
     }
 
     private void releaseOpenGlResources(){
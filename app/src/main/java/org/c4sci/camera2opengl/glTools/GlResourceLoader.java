@@ -0,0 +1,169 @@
+package org.c4sci.camera2opengl.glTools;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.ILogger;
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * This class is a thread uploading OpenGL objects in its own EGL context, which shares its objects with a drawing context.
+ * Large uploads (e.g. mesh VBOs or textures) then never stall the frames of the drawing thread.<br>
+ * Uploads ({@link GlUpload}) are run in submission order. Each one is followed by a glFenceSync() and a glFlush(): the drawing
+ * thread polls {@link GlUpload#isReady()} and picks up the objects once the GPU completed their upload.<br>
+ * The context is bound to a 1x1 pbuffer surface: the EGL configuration must offer {@link EGL14#EGL_PBUFFER_BIT} surfaces.
+ * Usage:
+ * <ol>
+ *     <li>create it once the drawing context exists, then {@link #start()} it</li>
+ *     <li>{@link #submit(GlUpload)} uploads from any thread</li>
+ *     <li>{@link #shutdown()} it before destroying the drawing context</li>
+ * </ol>
+ */
+public final class GlResourceLoader extends Thread implements ILogger {
+
+    private final EGLDisplay eglDisplay;
+    private final EGLConfig eglConfig;
+    private final EGLContext sharedContext;
+    private final int majorOpenGlVersion;
+    private final BlockingQueue<GlUpload> pendingUploads = new LinkedBlockingQueue<>();
+    private volatile boolean isRunning = true;
+
+    /**
+     * @param egl_display The display of the drawing context
+     * @param egl_config A configuration compatible with the drawing context, offering pbuffer surfaces.
+     * @param shared_context The drawing context, which objects are shared.
+     * @param major_opengl_version The OpenGL ES version of the drawing context, e.g. 3.
+     */
+    public GlResourceLoader(EGLDisplay egl_display, EGLConfig egl_config, EGLContext shared_context, int major_opengl_version){
+        super("GlResourceLoader");
+        eglDisplay = egl_display;
+        eglConfig = egl_config;
+        sharedContext = shared_context;
+        majorOpenGlVersion = major_opengl_version;
+    }
+
+    // Removes logging
+    @Override
+    public boolean canLogD(){
+        return false;
+    }
+
+    @Override
+    public String getLogName() {
+        return "GlResourceLoader";
+    }
+
+    /**
+     * Queues an upload. Once the loader is shut down, the upload is cancelled: its {@link GlUpload#isReady()} then throws.
+     * @param gl_upload The upload to run in the loader context.
+     */
+    public void submit(GlUpload gl_upload){
+        if (!isRunning){
+            gl_upload.cancel();
+            return;
+        }
+        pendingUploads.offer(gl_upload);
+        // The loader may have stopped and cancelled its queue meanwhile
+        if (!isRunning && pendingUploads.remove(gl_upload)){
+            gl_upload.cancel();
+        }
+    }
+
+    /**
+     * @return The number of uploads not started yet.
+     */
+    public int getPendingUploadCount(){
+        return pendingUploads.size();
+    }
+
+    /**
+     * Stops the loader and waits for its context to be destroyed. Uploads not started yet are cancelled.
+     */
+    public void shutdown(){
+        isRunning = false;
+        interrupt();
+        try {
+            join();
+        }
+        catch (InterruptedException _e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        EGLSurface _surface = EGL14.EGL_NO_SURFACE;
+        EGLContext _context = EGL14.EGL_NO_CONTEXT;
+        try {
+            ensureEglMethod((_context = EGL14.eglCreateContext(eglDisplay, eglConfig, sharedContext,
+                    new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, majorOpenGlVersion, EGL14.EGL_NONE}, 0)) != EGL14.EGL_NO_CONTEXT,
+                    "eglCreateContext( loader )");
+            ensureEglMethod((_surface = EGL14.eglCreatePbufferSurface(eglDisplay, eglConfig,
+                    new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0)) != EGL14.EGL_NO_SURFACE,
+                    "eglCreatePbufferSurface( loader )");
+            ensureEglMethod(EGL14.eglMakeCurrent(eglDisplay, _surface, _surface, _context), "eglMakeCurrent( loader )");
+
+            while (isRunning){
+                GlUpload _upload;
+                try {
+                    _upload = pendingUploads.take();
+                }
+                catch (InterruptedException _e) {
+                    break;
+                }
+                upload(_upload);
+            }
+        }
+        catch (RuntimeException _e){
+            logE(_e);
+        }
+        finally {
+            isRunning = false;
+            for (GlUpload _upload = pendingUploads.poll(); _upload != null; _upload = pendingUploads.poll()){
+                _upload.cancel();
+            }
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (_surface != EGL14.EGL_NO_SURFACE){
+                EGL14.eglDestroySurface(eglDisplay, _surface);
+            }
+            if (_context != EGL14.EGL_NO_CONTEXT){
+                EGL14.eglDestroyContext(eglDisplay, _context);
+            }
+            EGL14.eglReleaseThread();
+        }
+    }
+
+    private void upload(GlUpload gl_upload){
+        if (!gl_upload.begin()){
+            return;
+        }
+        try {
+            gl_upload.uploadThreaded();
+            long _fence = GLES31.glFenceSync(GLES31.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            GlUtilities.ensureGles31Call("glFenceSync( upload )");
+            // The fence must reach the GPU for other contexts to see it signaled
+            GLES31.glFlush();
+            if (!gl_upload.publish(_fence)){
+                GLES31.glDeleteSync(_fence);
+                gl_upload.discard();
+            }
+        }
+        catch (RuntimeException _e){
+            logD(_e);
+            gl_upload.fail(_e);
+        }
+    }
+
+    private static void ensureEglMethod(boolean method_result, String method_name){
+        if (!method_result){
+            throw new RenderingRuntimeException(method_name + " failed with " + RenderingRuntimeException.translateEgl14Error(EGL14.eglGetError()));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.c4sci.camera2opengl.glTools;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+/**
+ * This class is an upload of OpenGL objects (buffers, textures ...) run by a {@link GlResourceLoader} in a context sharing its
+ * objects with the drawing contexts. The drawing thread polls {@link #isReady()} each frame and uses the objects once it returns
+ * true: it never waits for them.<br>
+ * Once uploaded, the loader sets a glFenceSync() and flushes its commands. The objects are ready when the fence is signaled:
+ * binding them afterwards in the drawing context makes their content visible there.<br>
+ * Container objects (VAOs, framebuffers, program pipelines) cannot be shared between contexts: they are to be created by the drawing
+ * thread from the uploaded objects.
+ */
+public abstract class GlUpload {
+
+    private enum State { PENDING, UPLOADING, UPLOADED, READY, FAILED, CANCELLED }
+
+    private State state = State.PENDING;
+    private long uploadFence = 0;
+    private RuntimeException uploadFailure = null;
+
+    /**
+     * Creates and fills the objects. It is run in the loader thread, which context is current.
+     * @throws RenderingRuntimeException if OpenGL calls fail. It is thrown again by {@link #isReady()} in the drawing thread.
+     */
+    protected abstract void uploadThreaded();
+
+    /**
+     * Deletes the objects created by {@link #uploadThreaded()}, when the upload is cancelled after it started.
+     * It is run in the thread finding the upload cancelled: the loader or the one calling {@link #cancel()}.
+     */
+    protected abstract void discard();
+
+    /**
+     * Tells whether the objects can be used. This is called in the drawing thread: it does not wait for the GPU.
+     * @return true once the upload is published and completed by the GPU.
+     * @throws RenderingRuntimeException if the upload failed, or if it has been cancelled.
+     */
+    public final synchronized boolean isReady(){
+        switch (state){
+            case READY:
+                return true;
+            case UPLOADED:
+                int _wait = GLES31.glClientWaitSync(uploadFence, 0, 0);
+                if (_wait == GLES31.GL_ALREADY_SIGNALED || _wait == GLES31.GL_CONDITION_SATISFIED){
+                    GLES31.glDeleteSync(uploadFence);
+                    uploadFence = 0;
+                    state = State.READY;
+                    return true;
+                }
+                if (_wait == GLES31.GL_WAIT_FAILED){
+                    GlUtilities.ensureGles31Call("glClientWaitSync( upload )");
+                    throw new RenderingRuntimeException("glClientWaitSync( upload ) failed");
+                }
+                return false;
+            case FAILED:
+                throw new RenderingRuntimeException("Upload failed: " + uploadFailure.getMessage(), uploadFailure);
+            case CANCELLED:
+                throw new RenderingRuntimeException("Upload cancelled");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gives up the upload: it is skipped if not started yet, otherwise its objects are discarded (see {@link #discard()}).
+     */
+    public final synchronized void cancel(){
+        switch (state){
+            case UPLOADED:
+                GLES31.glDeleteSync(uploadFence);
+                uploadFence = 0;
+                discard();
+                break;
+            case READY:
+                discard();
+                break;
+            default:
+                // The loader discards what it is uploading
+                break;
+        }
+        state = State.CANCELLED;
+    }
+
+    /**
+     * Called by the loader before {@link #uploadThreaded()}.
+     * @return false if the upload has been cancelled.
+     */
+    final synchronized boolean begin(){
+        if (state != State.PENDING){
+            return false;
+        }
+        state = State.UPLOADING;
+        return true;
+    }
+
+    /**
+     * Called by the loader once the fence is set and flushed.
+     * @return false if the upload has been cancelled meanwhile: the caller must then delete the fence and discard the objects.
+     */
+    final synchronized boolean publish(long upload_fence){
+        if (state != State.UPLOADING){
+            return false;
+        }
+        uploadFence = upload_fence;
+        state = State.UPLOADED;
+        return true;
+    }
+
+    final synchronized void fail(RuntimeException upload_failure){
+        if (state == State.UPLOADING){
+            uploadFailure = upload_failure;
+            state = State.FAILED;
+        }
+    }
+}
@@ -81,8 +81,12 @@ public final class GlUtilities {
      * @param to_do_if_fail The action to do in case of failure (e.g. release resources)
      */
     public static final void ensureGles31Call(String gl_operation, Runnable to_do_if_fail, ErrorInvestigator error_investigator){
-        StringBuilder _msg = new StringBuilder();
-        if (appendOpenGlStateMachineErrors(_msg)) {
+        // Nothing is allocated unless an error occurred, as this is called on the draw path
+        int _error_code = GLES31.glGetError();
+        if (_error_code != GLES31.GL_NO_ERROR) {
+            StringBuilder _msg = new StringBuilder();
+            _msg.append(GLES31_ERROR_CODES.get(_error_code)+"\n");
+            appendOpenGlStateMachineErrors(_msg);
             if (error_investigator != null){
                 _msg.append(" due to :\n" + error_investigator.getExplanation());
             }
@@ -0,0 +1,116 @@
+package org.c4sci.camera2opengl.glTools;
+
+import android.opengl.Matrix;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+/**
+ * This class composes transforms as a stack of 4x4 matrices, all allocated when the stack is created:
+ * pushing, popping and transforming do not allocate anything, so that it can be used on the render loop.<br>
+ * Matrices are column major, as in {@link Matrix}. Transforms are post-multiplied, as in {@link Matrix#translateM(float[], int, float, float, float)}:
+ * the last given transform is the first applied to vertices.<br>
+ * A stack is not thread safe: each render thread gets its own with {@link RenderScratch#forCurrentThread()}.
+ */
+public final class MatrixStack {
+
+    /**
+     * Default number of matrices that can be pushed.
+     */
+    public static final int DEFAULT_DEPTH = 32;
+
+    private static final int MATRIX_SIZE = 16;
+
+    private final float[][] matrices;
+    private final float[] transformMatrix = new float[MATRIX_SIZE];
+    private final float[] productMatrix = new float[MATRIX_SIZE];
+    private int top = 0;
+
+    /**
+     * Creates a stack holding an identity matrix.
+     * @param max_depth The number of matrices the stack can hold.
+     */
+    public MatrixStack(int max_depth){
+        matrices = new float[Math.max(1, max_depth)][MATRIX_SIZE];
+        Matrix.setIdentityM(matrices[0], 0);
+    }
+
+    /**
+     * @return The current matrix. It may be modified in place.
+     */
+    public float[] top(){
+        return matrices[top];
+    }
+
+    /**
+     * @return The number of matrices in the stack, at least 1.
+     */
+    public int depth(){
+        return top + 1;
+    }
+
+    /**
+     * Duplicates the current matrix.
+     * @throws RenderingRuntimeException if the stack is full.
+     */
+    public void push(){
+        if (top + 1 == matrices.length){
+            throw new RenderingRuntimeException("Matrix stack overflow: depth = " + matrices.length);
+        }
+        System.arraycopy(matrices[top], 0, matrices[top + 1], 0, MATRIX_SIZE);
+        top++;
+    }
+
+    /**
+     * Gets back to the matrix before the last {@link #push()}.
+     * @throws RenderingRuntimeException if there is no matrix to pop.
+     */
+    public void pop(){
+        if (top == 0){
+            throw new RenderingRuntimeException("Matrix stack underflow");
+        }
+        top--;
+    }
+
+    /**
+     * Empties the stack down to an identity matrix.
+     */
+    public void reset(){
+        top = 0;
+        Matrix.setIdentityM(matrices[0], 0);
+    }
+
+    public void loadIdentity(){
+        Matrix.setIdentityM(matrices[top], 0);
+    }
+
+    /**
+     * Replaces the current matrix.
+     */
+    public void load(float[] matrix_){
+        System.arraycopy(matrix_, 0, matrices[top], 0, MATRIX_SIZE);
+    }
+
+    /**
+     * Post-multiplies the current matrix.
+     */
+    public void multiply(float[] matrix_){
+        Matrix.multiplyMM(productMatrix, 0, matrices[top], 0, matrix_, 0);
+        System.arraycopy(productMatrix, 0, matrices[top], 0, MATRIX_SIZE);
+    }
+
+    public void translate(float x_, float y_, float z_){
+        Matrix.translateM(matrices[top], 0, x_, y_, z_);
+    }
+
+    public void scale(float x_, float y_, float z_){
+        Matrix.scaleM(matrices[top], 0, x_, y_, z_);
+    }
+
+    /**
+     * @param angle_degree The angle in degrees
+     */
+    public void rotate(float angle_degree, float x_, float y_, float z_){
+        Matrix.setRotateM(transformMatrix, 0, angle_degree, x_, y_, z_);
+        multiply(transformMatrix);
+    }
+}
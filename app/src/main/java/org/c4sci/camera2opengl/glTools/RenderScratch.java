@@ -0,0 +1,41 @@
+package org.c4sci.camera2opengl.glTools;
+
+/**
+ * This class holds temporary objects reused from frame to frame by a render thread, so that the steady-state render loop
+ * does not allocate anything: at 60 fps, a few small arrays per frame are enough to make the garbage collector drop preview frames.<br>
+ * Each thread gets its own scratch objects: they must not be kept nor given to other threads.
+ * Typical usage:
+ * <pre>
+ *     MatrixStack _stack = RenderScratch.forCurrentThread().getMatrixStack();
+ *     _stack.push();
+ *     _stack.translate(...);
+ *     ... use _stack.top()
+ *     _stack.pop();
+ * </pre>
+ */
+public final class RenderScratch {
+
+    // ThreadLocal.withInitial() needs API 26
+    private static final ThreadLocal<RenderScratch> SCRATCHES = new ThreadLocal<RenderScratch>(){
+        @Override
+        protected RenderScratch initialValue() {
+            return new RenderScratch();
+        }
+    };
+
+    private final MatrixStack matrixStack = new MatrixStack(MatrixStack.DEFAULT_DEPTH);
+
+    private RenderScratch(){
+    }
+
+    /**
+     * @return The scratch objects of the calling thread.
+     */
+    public static RenderScratch forCurrentThread(){
+        return SCRATCHES.get();
+    }
+
+    public MatrixStack getMatrixStack(){
+        return matrixStack;
+    }
+}
@@ -0,0 +1,121 @@
+package org.c4sci.camera2opengl.glTools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class keeps direct, native ordered {@link ByteBuffer}s to be used as staging buffers for OpenGL uploads
+ * (e.g. glBufferData()).<br>
+ * Heap buffers such as FloatBuffer.wrap(float[]) force the JNI layer to copy or pin the Java array at each upload,
+ * whereas direct buffers are given as is to the driver.<br>
+ * Buffers are sorted in power-of-two sized buckets, so that a released buffer can be reused by any later request
+ * of a size lower or equal to its capacity.<br>
+ * Typical usage:
+ * <pre>
+ *     ByteBuffer _staged = StagingBufferPool.stage(float_data);
+ *     try {
+ *         GLES31.glBufferData(GLES31.GL_ARRAY_BUFFER, _staged.remaining(), _staged, usage);
+ *     }
+ *     finally {
+ *         StagingBufferPool.release(_staged);
+ *     }
+ * </pre>
+ */
+public final class StagingBufferPool {
+
+    private static final int MIN_BUCKET_BITS = 6; // 64 bytes
+    private static final int MAX_BUCKET_BITS = 30; // 1 GB
+    /**
+     * Above this count, released buffers of a bucket are left to the garbage collector.
+     */
+    private static final int MAX_BUFFERS_PER_BUCKET = 4;
+
+    private static final Queue<ByteBuffer>[] BUCKETS;
+    static {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Queue<ByteBuffer>[] _buckets = new Queue[MAX_BUCKET_BITS + 1];
+        for (int _i = 0; _i < _buckets.length; _i++){
+            _buckets[_i] = new ConcurrentLinkedQueue<>();
+        }
+        BUCKETS = _buckets;
+    }
+
+    private StagingBufferPool(){
+    }
+
+    /**
+     * Gets a direct native-ordered buffer. Its position is 0 and its limit is byte_count.
+     * @param byte_count The number of bytes needed.
+     * @return A buffer that should be given back with {@link #release(ByteBuffer)} once used.
+     * @throws IllegalArgumentException if byte_count is negative or too large.
+     */
+    public static ByteBuffer acquire(int byte_count){
+        int _bucket = bucketIndex(byte_count);
+        ByteBuffer _res = BUCKETS[_bucket].poll();
+        if (_res == null){
+            _res = ByteBuffer.allocateDirect(1 << _bucket).order(ByteOrder.nativeOrder());
+        }
+        _res.clear();
+        _res.limit(byte_count);
+        return _res;
+    }
+
+    /**
+     * Gives back a buffer obtained by {@link #acquire(int)}. The buffer must not be used anymore by the caller.
+     * @param staging_buffer The buffer to give back. May be null.
+     */
+    public static void release(ByteBuffer staging_buffer){
+        if (staging_buffer == null || !staging_buffer.isDirect()){
+            return;
+        }
+        int _capacity = staging_buffer.capacity();
+        if (Integer.bitCount(_capacity) != 1 || _capacity < (1 << MIN_BUCKET_BITS)){
+            return;
+        }
+        Queue<ByteBuffer> _bucket = BUCKETS[Integer.numberOfTrailingZeros(_capacity)];
+        if (_bucket.size() < MAX_BUFFERS_PER_BUCKET){
+            _bucket.offer(staging_buffer);
+        }
+    }
+
+    /**
+     * Copies floats into a staging buffer.
+     * @param float_data The data to copy.
+     * @return A buffer which remaining bytes are float_data. It should be released with {@link #release(ByteBuffer)}.
+     */
+    public static ByteBuffer stage(float[] float_data){
+        ByteBuffer _res = acquire(float_data.length * Float.BYTES);
+        _res.asFloatBuffer().put(float_data);
+        return _res;
+    }
+
+    /**
+     * Copies shorts into a staging buffer.
+     * @param short_data The data to copy.
+     * @return A buffer which remaining bytes are short_data. It should be released with {@link #release(ByteBuffer)}.
+     */
+    public static ByteBuffer stage(short[] short_data){
+        ByteBuffer _res = acquire(short_data.length * Short.BYTES);
+        _res.asShortBuffer().put(short_data);
+        return _res;
+    }
+
+    /**
+     * Forgets all the pooled buffers, e.g. when the rendering is paused.
+     */
+    public static void trim(){
+        for (Queue<ByteBuffer> _bucket : BUCKETS){
+            _bucket.clear();
+        }
+    }
+
+    private static int bucketIndex(int byte_count){
+        if (byte_count < 0 || byte_count > (1 << MAX_BUCKET_BITS)){
+            throw new IllegalArgumentException("Cannot stage " + byte_count + " bytes");
+        }
+        int _bits = 32 - Integer.numberOfLeadingZeros(Math.max(byte_count, 1) - 1);
+        return Math.max(_bits, MIN_BUCKET_BITS);
+    }
+}
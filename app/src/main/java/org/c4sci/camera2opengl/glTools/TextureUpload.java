@@ -0,0 +1,74 @@
+package org.c4sci.camera2opengl.glTools;
+
+import android.opengl.GLES31;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class uploads a RGBA 8 bits 2D texture on a {@link GlResourceLoader}, e.g. a decoded image.
+ * The texture can be bound by the drawing thread once {@link #isReady()}.
+ */
+public final class TextureUpload extends GlUpload {
+
+    private final ByteBuffer rgbaPixels;
+    private final int textureWidth;
+    private final int textureHeight;
+    private final boolean generatesMipmaps;
+    private volatile int textureId = -1;
+
+    /**
+     * @param rgba_pixels The remaining bytes are the rows of pixels, from the bottom one. It should be a direct buffer.
+     *                    It must not be modified until the upload is ready.
+     * @param texture_width in pixels
+     * @param texture_height in pixels
+     * @param generates_mipmaps true to generate mipmaps and filter the texture with them.
+     */
+    public TextureUpload(ByteBuffer rgba_pixels, int texture_width, int texture_height, boolean generates_mipmaps){
+        rgbaPixels = rgba_pixels;
+        textureWidth = texture_width;
+        textureHeight = texture_height;
+        generatesMipmaps = generates_mipmaps;
+    }
+
+    /**
+     * @return The texture id, valid once {@link #isReady()}. The caller then owns the texture.
+     */
+    public int getTextureId() {
+        return textureId;
+    }
+
+    @Override
+    protected void uploadThreaded() {
+        int[] _texture = new int[1];
+        GLES31.glGenTextures(1, _texture, 0);
+        GlUtilities.ensureGles31Call("glGenTextures( upload )");
+        textureId = _texture[0];
+        Runnable _releaser = this::discard;
+
+        GLES31.glBindTexture(GLES31.GL_TEXTURE_2D, textureId);
+        GlUtilities.ensureGles31Call("glBindTexture( upload )", _releaser);
+        // Rows of RGBA 8 bits pixels are always 4 bytes aligned
+        GLES31.glTexImage2D(GLES31.GL_TEXTURE_2D, 0, GLES31.GL_RGBA, textureWidth, textureHeight, 0,
+                GLES31.GL_RGBA, GLES31.GL_UNSIGNED_BYTE, rgbaPixels);
+        GlUtilities.ensureGles31Call("glTexImage2D( upload )", _releaser);
+        if (generatesMipmaps){
+            GLES31.glGenerateMipmap(GLES31.GL_TEXTURE_2D);
+            GlUtilities.ensureGles31Call("glGenerateMipmap( upload )", _releaser);
+        }
+        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER,
+                generatesMipmaps ? GLES31.GL_LINEAR_MIPMAP_LINEAR : GLES31.GL_LINEAR);
+        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_LINEAR);
+        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_S, GLES31.GL_CLAMP_TO_EDGE);
+        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_T, GLES31.GL_CLAMP_TO_EDGE);
+        GlUtilities.ensureGles31Call("glTexParameteri( upload )", _releaser);
+        GLES31.glBindTexture(GLES31.GL_TEXTURE_2D, 0);
+    }
+
+    @Override
+    protected void discard() {
+        if (textureId != -1){
+            GLES31.glDeleteTextures(1, new int[]{textureId}, 0);
+            textureId = -1;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Indicates how the floats of a {@link IRenderable.DataToVbo} are stored in a Vertex Buffer Object (VBO).<br>
+ * Compact encodings cut the memory bandwidth needed to fetch vertices, which is shared with the camera on mobile devices:
+ * <ul>
+ *     <li>{@link #FLOAT}: 4 bytes per component, e.g. 16 bytes for x y z w</li>
+ *     <li>{@link #HALF_FLOAT}: 2 bytes per component. Fits positions and texture coordinates.</li>
+ *     <li>{@link #NORMALIZED_UNSIGNED_BYTE}: 1 byte per component, data in [0,1]. Fits colors.</li>
+ *     <li>{@link #NORMALIZED_INT_2_10_10_10_REV}: 4 bytes for 4 components, data in [-1,1]. Fits normals.</li>
+ * </ul>
+ * Shaders keep on receiving floats (e.g. vec4) whatever the encoding.
+ * Only {@link #FLOAT} can store matrices (up to 16 components, column after column), which take one attribute location per column.
+ * Vertex data sizes are rounded up to a multiple of 4 bytes as OpenGL ES advises aligned vertex fetches.
+ */
+public enum AttributeEncoding {
+    FLOAT(GLES31.GL_FLOAT, false, 4),
+    HALF_FLOAT(GLES31.GL_HALF_FLOAT, false, 2),
+    NORMALIZED_UNSIGNED_BYTE(GLES31.GL_UNSIGNED_BYTE, true, 1),
+    NORMALIZED_INT_2_10_10_10_REV(GLES31.GL_INT_2_10_10_10_REV, true, 0);
+
+    private static final int VERTEX_ALIGNMENT = 4;
+    private static final int PACKED_COMPONENT_COUNT = 4;
+    private static final int PACKED_BYTE_COUNT = 4;
+    private static final int COMPONENTS_PER_COLUMN = 4;
+    private static final int MAX_MATRIX_COMPONENT_COUNT = 16;
+
+    private final int glType;
+    private final boolean isNormalized;
+    private final int bytesPerComponent;
+
+    AttributeEncoding(int gl_type, boolean is_normalized, int bytes_per_component){
+        glType = gl_type;
+        isNormalized = is_normalized;
+        bytesPerComponent = bytes_per_component;
+    }
+
+    /**
+     * @return The type to give to glVertexAttribPointer(), e.g. {@link GLES31#GL_HALF_FLOAT}
+     */
+    public int getGlType() {
+        return glType;
+    }
+
+    /**
+     * @return true if integer data are mapped to [0,1] or [-1,1] when fetched by shaders.
+     */
+    public boolean isNormalized() {
+        return isNormalized;
+    }
+
+    /**
+     * @param data_count_per_vertex The number of floats per vertex in the raw data.
+     * @return The number of components declared to glVertexAttribPointer().
+     */
+    public int glComponentCount(int data_count_per_vertex){
+        return (this == NORMALIZED_INT_2_10_10_10_REV ? PACKED_COMPONENT_COUNT : data_count_per_vertex);
+    }
+
+    /**
+     * @param data_count_per_vertex The number of floats per vertex in the raw data.
+     * @return The number of attribute locations used, e.g. 4 for a mat4, 1 for a vec4.
+     */
+    public static int columnCount(int data_count_per_vertex){
+        return (data_count_per_vertex + COMPONENTS_PER_COLUMN - 1) / COMPONENTS_PER_COLUMN;
+    }
+
+    /**
+     * @param data_count_per_vertex The number of floats per vertex in the raw data.
+     * @param column_index in [0, {@link #columnCount(int)}[
+     * @return The number of floats of the column, e.g. 4 for each column of a mat4.
+     */
+    public static int columnComponentCount(int data_count_per_vertex, int column_index){
+        return Math.min(COMPONENTS_PER_COLUMN, data_count_per_vertex - column_index * COMPONENTS_PER_COLUMN);
+    }
+
+    /**
+     * @param data_count_per_vertex The number of floats per vertex in the raw data.
+     * @return The number of bytes used by a vertex, padded to a multiple of 4.
+     * @throws RenderingRuntimeException if the encoding cannot store that many components.
+     */
+    public int bytesPerVertex(int data_count_per_vertex){
+        int _max_count = (this == FLOAT ? MAX_MATRIX_COMPONENT_COUNT : PACKED_COMPONENT_COUNT);
+        if (data_count_per_vertex < 1 || data_count_per_vertex > _max_count){
+            throw new RenderingRuntimeException(this + " cannot encode " + data_count_per_vertex + " components per vertex");
+        }
+        int _bytes = (this == NORMALIZED_INT_2_10_10_10_REV ? PACKED_BYTE_COUNT : data_count_per_vertex * bytesPerComponent);
+        return (_bytes + VERTEX_ALIGNMENT - 1) / VERTEX_ALIGNMENT * VERTEX_ALIGNMENT;
+    }
+
+    /**
+     * Bulk encodes float vertex data into a buffer.
+     * @param raw_data Floats, data_count_per_vertex per vertex.
+     * @param data_count_per_vertex The number of floats per vertex in raw_data.
+     * @param first_vertex The first vertex to encode.
+     * @param vertex_count The number of vertices to encode.
+     * @param dst_buffer The buffer to write in. Its byte order is used as is (native order is expected by OpenGL).
+     * @param dst_byte_offset The absolute index in dst_buffer where first_vertex data are written.
+     * @param dst_byte_stride The number of bytes between two consecutive vertex data in dst_buffer.
+     */
+    public void encode(float[] raw_data, int data_count_per_vertex, int first_vertex, int vertex_count,
+                       ByteBuffer dst_buffer, int dst_byte_offset, int dst_byte_stride){
+        int _src = first_vertex * data_count_per_vertex;
+        int _dst = dst_byte_offset;
+        switch (this){
+            case FLOAT:
+                for (int _v = 0; _v < vertex_count; _v++, _dst += dst_byte_stride){
+                    for (int _c = 0; _c < data_count_per_vertex; _c++){
+                        dst_buffer.putFloat(_dst + 4 * _c, raw_data[_src++]);
+                    }
+                }
+                break;
+            case HALF_FLOAT:
+                for (int _v = 0; _v < vertex_count; _v++, _dst += dst_byte_stride){
+                    for (int _c = 0; _c < data_count_per_vertex; _c++){
+                        dst_buffer.putShort(_dst + 2 * _c, toHalfFloat(raw_data[_src++]));
+                    }
+                }
+                break;
+            case NORMALIZED_UNSIGNED_BYTE:
+                for (int _v = 0; _v < vertex_count; _v++, _dst += dst_byte_stride){
+                    for (int _c = 0; _c < data_count_per_vertex; _c++){
+                        dst_buffer.put(_dst + _c, toNormalizedUnsignedByte(raw_data[_src++]));
+                    }
+                }
+                break;
+            case NORMALIZED_INT_2_10_10_10_REV:
+                for (int _v = 0; _v < vertex_count; _v++, _dst += dst_byte_stride){
+                    float _x = raw_data[_src];
+                    float _y = (data_count_per_vertex > 1 ? raw_data[_src + 1] : 0);
+                    float _z = (data_count_per_vertex > 2 ? raw_data[_src + 2] : 0);
+                    float _w = (data_count_per_vertex > 3 ? raw_data[_src + 3] : 0);
+                    dst_buffer.putInt(_dst, toInt2101010Rev(_x, _y, _z, _w));
+                    _src += data_count_per_vertex;
+                }
+                break;
+            default:
+                throw new RenderingRuntimeException("Unmanaged encoding: " + this);
+        }
+    }
+
+    /**
+     * Converts a float to an IEEE 754 half precision float, rounding to nearest.
+     * Values too large are converted to +/- infinity, values too small to +/- 0.
+     * @param value_ The float to convert
+     * @return The half float bits
+     */
+    public static short toHalfFloat(float value_){
+        int _bits = Float.floatToRawIntBits(value_);
+        int _sign = (_bits >>> 16) & 0x8000;
+        int _abs = _bits & 0x7fffffff;
+        // Adds half of the dropped mantissa to round to nearest
+        int _rounded = _abs + 0x1000;
+
+        if (_abs >= 0x7f800000){
+            // Inf or NaN (NaN keeps a non zero mantissa)
+            return (short)(_sign | 0x7c00 | (_abs > 0x7f800000 ? 0x0200 : 0));
+        }
+        if (_rounded >= 0x47800000){
+            // Overflows the half range
+            return (short)(_sign | 0x7c00);
+        }
+        if (_rounded >= 0x38800000){
+            // Normalized half: rebias the exponent from 127 to 15
+            return (short)(_sign | ((_rounded - 0x38000000) >>> 13));
+        }
+        if (_abs < 0x33000000){
+            // Too small even for a denormalized half
+            return (short)_sign;
+        }
+        // Denormalized half
+        int _exponent = _abs >>> 23;
+        int _mantissa = (_abs & 0x7fffff) | 0x800000;
+        return (short)(_sign | ((_mantissa + (0x800000 >>> (_exponent - 102))) >>> (126 - _exponent)));
+    }
+
+    /**
+     * @param value_ A value clamped to [0,1]
+     * @return The value mapped to [0,255]
+     */
+    public static byte toNormalizedUnsignedByte(float value_){
+        float _clamped = Math.max(0f, Math.min(1f, value_));
+        return (byte)Math.round(_clamped * 255f);
+    }
+
+    /**
+     * Packs a vector clamped to [-1,1] as signed normalized 10 bits x y z and 2 bits w. x lies in the lowest bits.
+     * @return The packed vector
+     */
+    public static int toInt2101010Rev(float x_, float y_, float z_, float w_){
+        return (toSignedNormalized(x_, 511) & 0x3ff) |
+                ((toSignedNormalized(y_, 511) & 0x3ff) << 10) |
+                ((toSignedNormalized(z_, 511) & 0x3ff) << 20) |
+                ((toSignedNormalized(w_, 1) & 0x3) << 30);
+    }
+
+    private static int toSignedNormalized(float value_, int max_value){
+        float _clamped = Math.max(-1f, Math.min(1f, value_));
+        return Math.round(_clamped * max_value);
+    }
+}
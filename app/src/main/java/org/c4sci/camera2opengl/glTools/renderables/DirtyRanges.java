@@ -0,0 +1,139 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+/**
+ * This class gathers ranges of vertices which data have been modified and must be uploaded again.<br>
+ * Ranges are kept sorted and disjoint: a range overlapping, touching or lying close to another one (see {@link #DirtyRanges(int)})
+ * is merged with it, as one larger upload is cheaper than several small ones.<br>
+ * Ranges are stored in primitive arrays that only grow, so that marking vertices does not allocate once the arrays are large enough.
+ */
+public final class DirtyRanges {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int mergeGap;
+    private int[] rangeStarts = new int[INITIAL_CAPACITY];
+    private int[] rangeEnds = new int[INITIAL_CAPACITY];
+    private int rangeCount = 0;
+
+    /**
+     * Creates ranges that are merged only when they overlap or touch.
+     */
+    public DirtyRanges(){
+        this(0);
+    }
+
+    /**
+     * @param merge_gap Two ranges separated by at most this number of vertices are merged.
+     */
+    public DirtyRanges(int merge_gap){
+        mergeGap = Math.max(0, merge_gap);
+    }
+
+    /**
+     * Marks vertices as dirty.
+     * @param first_vertex The first modified vertex
+     * @param vertex_count The number of modified vertices. Nothing is done if it is not positive.
+     */
+    public void add(int first_vertex, int vertex_count){
+        if (vertex_count <= 0){
+            return;
+        }
+        int _start = first_vertex;
+        int _end = first_vertex + vertex_count;
+
+        // First range that may be merged
+        int _first = 0;
+        while (_first < rangeCount && rangeEnds[_first] + mergeGap < _start){
+            _first++;
+        }
+        // Ranges [_first, _last[ are merged
+        int _last = _first;
+        while (_last < rangeCount && rangeStarts[_last] <= _end + mergeGap){
+            _start = Math.min(_start, rangeStarts[_last]);
+            _end = Math.max(_end, rangeEnds[_last]);
+            _last++;
+        }
+
+        int _merged = _last - _first;
+        if (_merged == 0){
+            ensureCapacity(rangeCount + 1);
+            System.arraycopy(rangeStarts, _first, rangeStarts, _first + 1, rangeCount - _first);
+            System.arraycopy(rangeEnds, _first, rangeEnds, _first + 1, rangeCount - _first);
+        }
+        else if (_merged > 1){
+            System.arraycopy(rangeStarts, _last, rangeStarts, _first + 1, rangeCount - _last);
+            System.arraycopy(rangeEnds, _last, rangeEnds, _first + 1, rangeCount - _last);
+        }
+        rangeStarts[_first] = _start;
+        rangeEnds[_first] = _end;
+        rangeCount += 1 - _merged;
+    }
+
+    /**
+     * Marks all the ranges of other_ranges as dirty.
+     * @param other_ranges Ranges to merge into these ones
+     */
+    public void addAll(DirtyRanges other_ranges){
+        for (int _i = 0; _i < other_ranges.rangeCount; _i++){
+            add(other_ranges.rangeStarts[_i], other_ranges.rangeEnds[_i] - other_ranges.rangeStarts[_i]);
+        }
+    }
+
+    /**
+     * Restricts ranges to [0, vertex_count[
+     * @param vertex_count The number of vertices of the mesh
+     */
+    public void clamp(int vertex_count){
+        int _kept = 0;
+        for (int _i = 0; _i < rangeCount; _i++){
+            int _start = Math.max(0, rangeStarts[_i]);
+            int _end = Math.min(vertex_count, rangeEnds[_i]);
+            if (_start < _end){
+                rangeStarts[_kept] = _start;
+                rangeEnds[_kept] = _end;
+                _kept++;
+            }
+        }
+        rangeCount = _kept;
+    }
+
+    public void clear(){
+        rangeCount = 0;
+    }
+
+    public boolean isEmpty(){
+        return rangeCount == 0;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * @param range_index in [0, {@link #getRangeCount()}[, ranges being sorted by first vertex.
+     * @return The first dirty vertex of the range
+     */
+    public int getFirstVertex(int range_index){
+        return rangeStarts[range_index];
+    }
+
+    /**
+     * @param range_index in [0, {@link #getRangeCount()}[, ranges being sorted by first vertex.
+     * @return The number of dirty vertices of the range
+     */
+    public int getVertexCount(int range_index){
+        return rangeEnds[range_index] - rangeStarts[range_index];
+    }
+
+    private void ensureCapacity(int range_count){
+        if (range_count > rangeStarts.length){
+            int _capacity = Math.max(range_count, rangeStarts.length * 2);
+            int[] _starts = new int[_capacity];
+            int[] _ends = new int[_capacity];
+            System.arraycopy(rangeStarts, 0, _starts, 0, rangeCount);
+            System.arraycopy(rangeEnds, 0, _ends, 0, rangeCount);
+            rangeStarts = _starts;
+            rangeEnds = _ends;
+        }
+    }
+}
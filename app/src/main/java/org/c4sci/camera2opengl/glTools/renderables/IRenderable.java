@@ -4,17 +4,15 @@ import android.opengl.GLES31;
 
 import org.c4sci.camera2opengl.RenderingRuntimeException;
 import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.StagingBufferPool;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Frustum;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.PrimitiveLists;
 import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
-import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderUtility;
 
 import java.nio.Buffer;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This interface defines objects that are able to draw themselves by calling OopenGL draw... methods.
@@ -28,6 +26,21 @@ public interface IRenderable {
         POINTS
     }
 
+    /**
+     * Indicates how per-vertex data are stored in Vertex Buffer Objects (VBO).
+     */
+    public enum BufferLayout {
+        /**
+         * One VBO per {@link DataToVbo}, data being tightly packed.
+         */
+        SEPARATE_BUFFERS,
+        /**
+         * All {@link DataToVbo} are packed in a single VBO: each vertex data are contiguous (e.g. x y z w r g b a ...).
+         * This gives a better cache locality when the GPU fetches vertices and less buffer binds.
+         */
+        INTERLEAVED_BUFFER
+    }
+
     /**
      * Setup Vertex Object Array (VOA) and Vertex Buffers Objects (VBO) as well as VBO for indices.
      * All VBO must follow the convention for {@link ShaderAttributes}.
@@ -47,6 +60,12 @@ public interface IRenderable {
     void draw(int shader_program, MeshStyle mesh_style);
     void releaseOpenGlResources();
 
+    /**
+     * Gives the volume the object is drawn in, so that it can be culled (see {@link Frustum}) instead of being drawn when out of view.
+     * @return The bounds in the coordinates the object is drawn in, or null if unknown: the object is then never culled.
+     */
+    Bounds getBounds();
+
     /**
      * Indicates the major version of OpenGL calls used inside the class methods.
      * @return e.g. 3 for OpenGL 3+
@@ -64,12 +83,25 @@ public interface IRenderable {
     static final int DATA_PER_COLOR = 4;
     static final int DATA_PER_NORMAL = 4;
     static final int DATA_PER_TEXCOORD = 4;
+    static final int DATA_PER_MATRIX = 16;
+    /**
+     * Max vertex counts indexed by unsigned bytes and shorts, their largest value being the primitive restart index.
+     */
+    static final int MAX_UNSIGNED_BYTE = 0xff;
+    static final int MAX_UNSIGNED_SHORT = 0xffff;
+    /**
+     * Dirty ranges separated by at most this number of vertices are uploaded at once: re-uploading a few clean vertices
+     * is cheaper than issuing another glBufferSubData().
+     */
+    static final int DIRTY_RANGES_MERGE_GAP = 8;
 
     public class DataToVbo{
         float[] rawData;
         String  attributeName;
         int     bufferUsage;
         int     dataCountPerVertex;
+        AttributeEncoding encoding;
+        final DirtyRanges dirtyRanges = new DirtyRanges(DIRTY_RANGES_MERGE_GAP);
 
         /**
          * Data to be put ion a Vertex Buffer Object (VBO)
@@ -79,15 +111,281 @@ public interface IRenderable {
          * @param data_count_per_vertex The number of floats per vertex. Usually 4 for vectors (x y z w) or colors (r g b a).
          */
         public DataToVbo(float[] raw_data, String attribute_name, int buffer_usage, int data_count_per_vertex) {
+            this(raw_data, attribute_name, buffer_usage, data_count_per_vertex, AttributeEncoding.FLOAT);
+        }
+
+        /**
+         * Data to be put in a Vertex Buffer Object (VBO) with a compact encoding. Raw data are kept as floats
+         * and are encoded when uploaded, e.g. as half floats for texture coordinates or normalized bytes for colors.
+         * @param raw_data Raw data.
+         * @param attribute_name The attribute name following the convention on {@link ShaderAttributes}
+         * @param buffer_usage Indicates how data will be used. Same args as {@link GLES31#glBufferData(int, int, Buffer, int)}: {@link GLES31#GL_STATIC_DRAW} ....
+         * @param data_count_per_vertex The number of floats per vertex. Usually 4 for vectors (x y z w) or colors (r g b a).
+         * @param attribute_encoding How data are stored in the VBO.
+         */
+        public DataToVbo(float[] raw_data, String attribute_name, int buffer_usage, int data_count_per_vertex, AttributeEncoding attribute_encoding) {
             this.rawData = raw_data;
             this.attributeName = attribute_name;
             this.bufferUsage = buffer_usage;
             this.dataCountPerVertex = data_count_per_vertex;
+            this.encoding = attribute_encoding;
+        }
+
+        public float[] getRawData() {
+            return rawData;
+        }
+
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        public int getBufferUsage() {
+            return bufferUsage;
+        }
+
+        public int getDataCountPerVertex() {
+            return dataCountPerVertex;
+        }
+
+        public AttributeEncoding getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * @return The number of vertices described by the raw data.
+         */
+        public int vertexCount(){
+            return rawData.length / dataCountPerVertex;
+        }
+
+        /**
+         * @return The number of bytes a vertex data takes in the VBO.
+         */
+        public int bytesPerVertex(){
+            return encoding.bytesPerVertex(dataCountPerVertex);
+        }
+
+        /**
+         * Indicates that raw data of some vertices have been modified in place. Only these vertices will be uploaded
+         * again by the next draw of the mesh using these data. VBOs that are often updated this way should use
+         * {@link GLES31#GL_DYNAMIC_DRAW}.<br>
+         * Note that if these data are shared by several meshes, the first mesh drawn uploads and forgets the dirty ranges:
+         * other meshes must then be marked with {@link org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh#markDirty(int, int)}.
+         * @param first_vertex The first modified vertex
+         * @param vertex_count The number of modified vertices
+         */
+        public void markDirty(int first_vertex, int vertex_count){
+            dirtyRanges.add(first_vertex, vertex_count);
         }
+
+        /**
+         * @return true if some vertices have been marked by {@link #markDirty(int, int)} and not uploaded yet.
+         */
+        public boolean isDirty(){
+            return !dirtyRanges.isEmpty();
+        }
+
+        /**
+         * Copies the vertices marked by {@link #markDirty(int, int)} into data holding the same vertices in another order,
+         * marks them there, then forgets them. Meshes uploading reordered copies of their data
+         * (see {@link org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh#setVertexCacheOptimization(boolean)})
+         * forward in-place modifications this way.
+         * @param remapped_data Data of the same kind, vertex v being stored as vertex vertex_remap[v].
+         * @param vertex_remap The new number of each vertex.
+         */
+        public void forwardDirtyVertices(DataToVbo remapped_data, int[] vertex_remap){
+            dirtyRanges.clamp(vertex_remap.length);
+            for (int _r = 0; _r < dirtyRanges.getRangeCount(); _r++){
+                int _first_vertex = dirtyRanges.getFirstVertex(_r);
+                int _end_vertex = _first_vertex + dirtyRanges.getVertexCount(_r);
+                for (int _v = _first_vertex; _v < _end_vertex; _v++){
+                    System.arraycopy(rawData, _v * dataCountPerVertex, remapped_data.rawData, vertex_remap[_v] * dataCountPerVertex,
+                            dataCountPerVertex);
+                    remapped_data.dirtyRanges.add(vertex_remap[_v], 1);
+                }
+            }
+            dirtyRanges.clear();
+        }
+    }
+
+
+    static public VertexLayout setupBuffers(List<DataToVbo> buffers_data,   int[] v_indices){
+        return setupBuffers(buffers_data, v_indices, BufferLayout.SEPARATE_BUFFERS);
     }
 
+    /**
+     * Creates a Vertex Array Object (VAO) with its Vertex Buffer Objects (VBO) and its indices buffer.
+     * This is {@link #uploadBuffers(List, int[], BufferLayout)} followed by {@link #setupVertexArray(VertexLayout)}.
+     * @param buffers_data The data associated to each vertex. One of them must be the {@link ShaderAttributes#VERTEX} coordinates.
+     *                     Attributes ranks in the returned {@link VertexLayout} follow this list order.
+     * @param v_indices The vertex indices. They are uploaded with the narrowest type able to index all the vertices
+     *                  (see {@link #indexTypeFor(int)}).
+     * @param buffer_layout Indicates if data are put in separate VBOs or interleaved in a single one.
+     * @return The VAO description, to be released by {@link #releaseBuffers(VertexLayout)}
+     * @throws RenderingRuntimeException if data are incoherent or if OpenGL calls fail.
+     */
+    static public VertexLayout setupBuffers(List<DataToVbo> buffers_data, int[] v_indices, BufferLayout buffer_layout){
+        VertexLayout _layout = uploadBuffers(buffers_data, v_indices, buffer_layout);
+        setupVertexArray(_layout);
+        return _layout;
+    }
 
-    static public int setupBuffers(List<DataToVbo> buffers_data,   short[] v_indices){
+    /**
+     * Creates the Vertex Buffer Objects (VBO) and the indices buffer of a VAO, but not the VAO itself. Buffers can be shared
+     * between contexts, VAOs cannot: this can run in a loader context (see {@link org.c4sci.camera2opengl.glTools.GlResourceLoader}),
+     * the VAO being created afterwards by {@link #setupVertexArray(VertexLayout)} in the drawing context. Static buffers created
+     * by a loader are shared with other VAOs once {@link #publishBuffers(VertexLayout)} is called.
+     * @see #setupBuffers(List, int[], BufferLayout)
+     * @return The description of a VAO not created yet, to be released by {@link #releaseBuffers(VertexLayout)}
+     * @throws RenderingRuntimeException if data are incoherent or if OpenGL calls fail.
+     */
+    static public VertexLayout uploadBuffers(List<DataToVbo> buffers_data, int[] v_indices, BufferLayout buffer_layout){
+        int _vertex_count = checkBuffersData(buffers_data, v_indices);
+
+        int _vbo_count = (buffer_layout == BufferLayout.INTERLEAVED_BUFFER ? 1 : buffers_data.size());
+        VertexLayout _layout = new VertexLayout(-1, _vertex_count, _vbo_count + 1, buffers_data.size());
+
+        // Binding the indices buffer must not change the VAO of another object
+        GLES31.glBindVertexArray(0);
+        GlUtilities.ensureGles31Call("glBindVertexArray(0)", _layout.releaser);
+
+        // Creates the Vertex Buffer Objects : vertex coordinates, vertex colors, vertex normals ....
+        // and binds them according to their ShaderUtility.ShaderAttributes and usage.
+        // Static ones are shared with the VAOs holding the same data (see SharedBufferRegistry)
+        if (buffer_layout == BufferLayout.INTERLEAVED_BUFFER){
+            // The interleaved VBO follows the usage of vertex coordinates
+            int _buffer_usage = buffers_data.get(0).bufferUsage;
+            for (DataToVbo _data : buffers_data){
+                if (_data.attributeName.contentEquals(ShaderAttributes.VERTEX.toString())){
+                    _buffer_usage = _data.bufferUsage;
+                }
+            }
+            setupInterleavedBuffer(_layout, buffers_data, _buffer_usage);
+        }
+        else {
+            for (int _i = 0; _i < buffers_data.size(); _i++) {
+                DataToVbo _data = buffers_data.get(_i);
+                int _bytes_per_vertex = _data.bytesPerVertex();
+                ByteBuffer _staged = StagingBufferPool.acquire(_vertex_count * _bytes_per_vertex);
+                try {
+                    _data.encoding.encode(_data.rawData, _data.dataCountPerVertex, 0, _vertex_count,
+                            _staged, 0, _bytes_per_vertex);
+                    int _vbo = createBuffer(_layout, GLES31.GL_ARRAY_BUFFER, _staged, _data.bufferUsage);
+                    _layout.addBuffer(_vbo);
+                    addDataAttributes(_layout, _vbo, _i, _data, _bytes_per_vertex, 0, 0);
+                }
+                finally {
+                    StagingBufferPool.release(_staged);
+                }
+            }
+        }
+
+        // Binds last buffer to vertex indices, fills it
+        ByteBuffer _staged_indices = stageIndices(_layout, v_indices);
+        try {
+            setupIndexBuffer(_layout, _staged_indices, GLES31.GL_STATIC_DRAW);
+        }
+        finally {
+            StagingBufferPool.release(_staged_indices);
+        }
+
+        return _layout;
+    }
+
+    /**
+     * Creates the VAO of buffers uploaded by {@link #uploadBuffers(List, int[], BufferLayout)}, and records its indices buffer.
+     * Attributes are pointed by {@link #adaptBuffersToProgram(VertexLayout, int)}. The VAO is left bound.
+     * @param vertex_layout The uploaded buffers, in a context sharing them with the current one.
+     * @throws RenderingRuntimeException if OpenGL calls fail.
+     */
+    static public void setupVertexArray(VertexLayout vertex_layout){
+        int[] _vao = new int[1];
+        GLES31.glGenVertexArrays(1, _vao, 0);
+        GlUtilities.ensureGles31Call("glGenVertexArrays(1, _vao)", vertex_layout.releaser);
+        vertex_layout.vertexArrayObject = _vao[0];
+
+        GLES31.glBindVertexArray(vertex_layout.vertexArrayObject);
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", vertex_layout.releaser);
+        GLES31.glBindBuffer(GLES31.GL_ELEMENT_ARRAY_BUFFER, vertex_layout.indexBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(GL_ELEMENT_ARRAY_BUFFER)", vertex_layout.releaser);
+    }
+
+    /**
+     * Lets other VAOs share the static buffers uploaded by a loader thread (see {@link SharedBufferRegistry#publish(int)}).
+     * To be called by the drawing thread once the upload is ready.
+     * @param vertex_layout Buffers uploaded by {@link #uploadBuffers(List, int[], BufferLayout)} in a loader context.
+     */
+    static void publishBuffers(VertexLayout vertex_layout){
+        for (int _b = 0; _b < vertex_layout.bufferCount; _b++){
+            SharedBufferRegistry.publish(vertex_layout.bufferIds[_b]);
+        }
+        SharedBufferRegistry.publish(vertex_layout.indexBuffer);
+    }
+
+    /**
+     * Creates a Vertex Array Object (VAO) from data already encoded as the contents of its VBOs, one VBO per attribute,
+     * e.g. data memory-mapped from a file (see {@link org.c4sci.camera2opengl.glTools.renderables.meshes.BinaryMeshFile}).
+     * Buffers are given as is to glBufferData(): nothing is copied nor encoded on the Java side.
+     * @param vertex_count The number of vertices
+     * @param attribute_names The attribute names following the convention on {@link ShaderAttributes}
+     * @param data_counts_per_vertex The number of floats per vertex of each attribute before encoding
+     * @param attribute_encodings The encoding of each attribute
+     * @param attribute_bytes The encoded data of each attribute: their remaining bytes are uploaded. They should be direct buffers.
+     * @param index_bytes The encoded indices: their remaining bytes are uploaded.
+     * @param index_type {@link GLES31#GL_UNSIGNED_BYTE}, {@link GLES31#GL_UNSIGNED_SHORT} or {@link GLES31#GL_UNSIGNED_INT}
+     * @param buffer_usage e.g. {@link GLES31#GL_STATIC_DRAW}
+     * @return The VAO description, to be released by {@link #releaseBuffers(VertexLayout)}
+     * @throws RenderingRuntimeException if data sizes are incoherent or if OpenGL calls fail.
+     */
+    static public VertexLayout setupEncodedBuffers(int vertex_count, String[] attribute_names, int[] data_counts_per_vertex,
+                                                   AttributeEncoding[] attribute_encodings, ByteBuffer[] attribute_bytes,
+                                                   ByteBuffer index_bytes, int index_type, int buffer_usage){
+        int _attribute_count = attribute_names.length;
+        for (int _i = 0; _i < _attribute_count; _i++){
+            int _expected = vertex_count * attribute_encodings[_i].bytesPerVertex(data_counts_per_vertex[_i]);
+            if (attribute_bytes[_i].remaining() != _expected){
+                throw new RenderingRuntimeException("Bad " + attribute_names[_i] + " byte count = " + attribute_bytes[_i].remaining() + " expected " + _expected);
+            }
+        }
+        int _index_byte_size = indexByteSize(index_type);
+        if (index_bytes.remaining() % _index_byte_size != 0){
+            throw new RenderingRuntimeException("Bad index byte count = " + index_bytes.remaining());
+        }
+
+        int[] _vao = new int[1];
+        GLES31.glGenVertexArrays(1, _vao, 0);
+        GlUtilities.ensureGles31Call("glGenVertexArrays(1, _vao)");
+
+        VertexLayout _layout = new VertexLayout(_vao[0], vertex_count, _attribute_count + 1, _attribute_count);
+        GLES31.glBindVertexArray(_layout.vertexArrayObject);
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject.get(0))", _layout.releaser);
+
+        for (int _i = 0; _i < _attribute_count; _i++){
+            int _vbo = createBuffer(_layout, GLES31.GL_ARRAY_BUFFER, attribute_bytes[_i], buffer_usage);
+            _layout.addBuffer(_vbo);
+            AttributeEncoding _encoding = attribute_encodings[_i];
+            int _column_count = AttributeEncoding.columnCount(data_counts_per_vertex[_i]);
+            for (int _column = 0; _column < _column_count; _column++){
+                int _components = AttributeEncoding.columnComponentCount(data_counts_per_vertex[_i], _column);
+                _layout.addAttribute(_vbo, _i, attribute_names[_i], _column, _encoding.glComponentCount(_components),
+                        _encoding.getGlType(), _encoding.isNormalized(), _encoding.bytesPerVertex(data_counts_per_vertex[_i]),
+                        _column * DATA_PER_VERTEX * BYTES_PER_FLOAT, 0);
+            }
+        }
+
+        _layout.indexType = index_type;
+        _layout.indexByteSize = _index_byte_size;
+        _layout.indexCount = index_bytes.remaining() / _index_byte_size;
+        setupIndexBuffer(_layout, index_bytes, buffer_usage);
+        return _layout;
+    }
+
+    /**
+     * Ensures that vertex coordinates are given, and that all the data offer one data vector per vertex.
+     * @return The number of vertices
+     * @throws RenderingRuntimeException if data are incoherent
+     */
+    static int checkBuffersData(List<DataToVbo> buffers_data, int[] v_indices){
         // First, ensure that at least one buffer contains vertices coordinates
         int _vertices_index = -1;
         for (int _i=0; _i< buffers_data.size() && _vertices_index == -1; _i++){
@@ -111,149 +409,574 @@ public interface IRenderable {
         if (v_indices == null){
             throw new RenderingRuntimeException("Cannot create a mesh withtout vertex indices");
         }
+        // Last, ensure indices do not exceed the index type chosen from the vertex count. Restart indices become its largest value.
+        for (int _index : v_indices){
+            if ((_index < 0 || _index >= _vertex_count) && _index != PrimitiveLists.RESTART_INDEX){
+                throw new RenderingRuntimeException("Bad vertex index =" + _index + " expected in [0, " + _vertex_count + "[");
+            }
+        }
+        return _vertex_count;
+    }
 
-        // Creates the VAO associated with the object
-        // to manage Vertex Buffer Objects (VBO) dedicated to an object to draw.
-        IntBuffer _vao = IntBuffer.allocate(1);
-        GLES31.glGenVertexArrays(_vao.capacity(), _vao);
-        GlUtilities.ensureGles31Call("glGenVertexArrays(1, _vao)");
+    /**
+     * Chooses the narrowest index type, so that indices take less memory and bandwidth.
+     * The largest value of each type is never used as an index, as it is the primitive restart index of OpenGL ES 3.
+     * @param vertex_count The number of vertices to index
+     * @return {@link GLES31#GL_UNSIGNED_BYTE}, {@link GLES31#GL_UNSIGNED_SHORT} or {@link GLES31#GL_UNSIGNED_INT}
+     */
+    static int indexTypeFor(int vertex_count){
+        if (vertex_count <= MAX_UNSIGNED_BYTE){
+            return GLES31.GL_UNSIGNED_BYTE;
+        }
+        if (vertex_count <= MAX_UNSIGNED_SHORT){
+            return GLES31.GL_UNSIGNED_SHORT;
+        }
+        return GLES31.GL_UNSIGNED_INT;
+    }
 
-        // Bind the VAO so it will store the following VBO calls
-        GLES31.glBindVertexArray(_vao.get(0));
-        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject.get(0))", ()-> releaseBuffers(_vao.get(0)));
+    /**
+     * @param index_type {@link GLES31#GL_UNSIGNED_BYTE}, {@link GLES31#GL_UNSIGNED_SHORT} or {@link GLES31#GL_UNSIGNED_INT}
+     * @return The size of an index in bytes
+     */
+    static int indexByteSize(int index_type){
+        switch (index_type){
+            case GLES31.GL_UNSIGNED_BYTE:
+                return Byte.BYTES;
+            case GLES31.GL_UNSIGNED_SHORT:
+                return Short.BYTES;
+            case GLES31.GL_UNSIGNED_INT:
+                return Integer.BYTES;
+            default:
+                throw new RenderingRuntimeException("Unmanaged index type: " + index_type);
+        }
+    }
 
-        // Creates the Vertex Buffer Objects : vertex coordinates, vertex colors, vertex normals ....
-        // and binds them according to their ShaderUtility.ShaderAttributes and usage
-        IntBuffer _vbos = IntBuffer.allocate(buffers_data.size()+1);
-        GLES31.glGenBuffers(_vbos.capacity(), _vbos);
+    /**
+     * Encodes indices with the narrowest type for the VAO vertex count, and records this type in the VAO.
+     * @return A staging buffer to be released by {@link StagingBufferPool#release(ByteBuffer)}
+     */
+    static ByteBuffer stageIndices(VertexLayout vertex_layout, int[] v_indices){
+        vertex_layout.indexType = indexTypeFor(vertex_layout.vertexCount);
+        vertex_layout.indexByteSize = indexByteSize(vertex_layout.indexType);
+        vertex_layout.indexCount = v_indices.length;
+
+        ByteBuffer _res = StagingBufferPool.acquire(v_indices.length * vertex_layout.indexByteSize);
+        switch (vertex_layout.indexType){
+            case GLES31.GL_UNSIGNED_BYTE:
+                for (int _i = 0; _i < v_indices.length; _i++){
+                    _res.put(_i, (byte) v_indices[_i]);
+                }
+                break;
+            case GLES31.GL_UNSIGNED_SHORT:
+                for (int _i = 0; _i < v_indices.length; _i++){
+                    _res.putShort(_i * Short.BYTES, (short) v_indices[_i]);
+                }
+                break;
+            default:
+                _res.asIntBuffer().put(v_indices);
+                break;
+        }
+        return _res;
+    }
 
-        for (int _i=0; _i < buffers_data.size(); _i++){
-            int _vbo = _vbos.get(_i);
+
+    /**
+     * Packs all the per-vertex data in a single VBO. Each vertex data are contiguous, in the order of buffers_data.
+     * @param vertex_layout The parent VAO representing the object to draw.
+     * @param buffers_data The per-vertex data to interleave. They must have been checked to offer one data vector per vertex.
+     * @param buffer_usage Same as {@link #setupBuffer(VertexLayout, ByteBuffer, int, int, boolean, int, String, int)}
+     */
+    static void setupInterleavedBuffer(VertexLayout vertex_layout, List<DataToVbo> buffers_data, int buffer_usage){
+        int _bytes_per_vertex = interleavedBytesPerVertex(buffers_data);
+
+        int _vbo_id;
+        ByteBuffer _staged = StagingBufferPool.acquire(_bytes_per_vertex * vertex_layout.vertexCount);
+        try {
+            encodeInterleaved(buffers_data, 0, vertex_layout.vertexCount, _staged, 0, _bytes_per_vertex);
+            _vbo_id = createBuffer(vertex_layout, GLES31.GL_ARRAY_BUFFER, _staged, buffer_usage);
+        }
+        finally {
+            StagingBufferPool.release(_staged);
+        }
+
+        vertex_layout.addBuffer(_vbo_id);
+        addInterleavedAttributes(vertex_layout, _vbo_id, buffers_data, 0);
+    }
+
+    /**
+     * @param buffers_data Per-vertex data
+     * @return The number of bytes a vertex takes when all buffers_data are interleaved.
+     */
+    static int interleavedBytesPerVertex(List<DataToVbo> buffers_data){
+        int _bytes_per_vertex = 0;
+        for (DataToVbo _data : buffers_data){
+            _bytes_per_vertex += _data.bytesPerVertex();
+        }
+        return _bytes_per_vertex;
+    }
+
+    /**
+     * Encodes per-vertex data interleaved, in the order of buffers_data.
+     * @param buffers_data Per-vertex data
+     * @param first_vertex The first vertex to encode
+     * @param vertex_count The number of vertices to encode
+     * @param dst_buffer Where to write. Indices are absolute.
+     * @param dst_byte_offset Where first_vertex data begin in dst_buffer
+     * @param byte_stride see {@link #interleavedBytesPerVertex(List)}
+     */
+    static void encodeInterleaved(List<DataToVbo> buffers_data, int first_vertex, int vertex_count,
+                                  ByteBuffer dst_buffer, int dst_byte_offset, int byte_stride){
+        int _byte_offset = dst_byte_offset;
+        for (int _i = 0; _i < buffers_data.size(); _i++) {
             DataToVbo _data = buffers_data.get(_i);
-            setupBuffer(_vao.get(0), _vbo, FloatBuffer.wrap(_data.rawData), GLES31.GL_FLOAT,
-                    BYTES_PER_FLOAT, _data.dataCountPerVertex, _data.attributeName, _data.bufferUsage);
+            _data.encoding.encode(_data.rawData, _data.dataCountPerVertex, first_vertex, vertex_count,
+                    dst_buffer, _byte_offset, byte_stride);
+            _byte_offset += _data.bytesPerVertex();
         }
+    }
 
-        // Binds last buffer to vertex indices, fills it
-        setupIndexBuffer(_vao.get(0), _vbos.get(buffers_data.size()),  ShortBuffer.wrap(v_indices), GLES31.GL_STATIC_DRAW);
+    /**
+     * Declares interleaved data as VAO attributes.
+     * @param vertex_layout The parent VAO
+     * @param vbo_id The VBO data lie in
+     * @param buffers_data The interleaved data, in the order of the VBO content.
+     * @param divisor_ 0 for per-vertex data, 1 for per-instance data.
+     */
+    static void addInterleavedAttributes(VertexLayout vertex_layout, int vbo_id, List<DataToVbo> buffers_data, int divisor_){
+        int _bytes_per_vertex = interleavedBytesPerVertex(buffers_data);
+        int _byte_offset = 0;
+        for (int _i = 0; _i < buffers_data.size(); _i++) {
+            DataToVbo _data = buffers_data.get(_i);
+            addDataAttributes(vertex_layout, vbo_id, _i, _data, _bytes_per_vertex, _byte_offset, divisor_);
+            _byte_offset += _data.bytesPerVertex();
+        }
+    }
 
-        return _vao.get(0);
+    /**
+     * Declares the attribute of a data in its VBO. Matrices are declared as one attribute per column, as OpenGL requires.
+     * @param source_index The index of the data in the list given at setup.
+     */
+    static void addDataAttributes(VertexLayout vertex_layout, int vbo_id, int source_index, DataToVbo buffer_data,
+                                  int byte_stride, int byte_offset, int divisor_){
+        int _column_count = AttributeEncoding.columnCount(buffer_data.dataCountPerVertex);
+        for (int _column = 0; _column < _column_count; _column++){
+            int _components = AttributeEncoding.columnComponentCount(buffer_data.dataCountPerVertex, _column);
+            vertex_layout.addAttribute(vbo_id, source_index, buffer_data.attributeName, _column,
+                    buffer_data.encoding.glComponentCount(_components), buffer_data.encoding.getGlType(),
+                    buffer_data.encoding.isNormalized(), byte_stride,
+                    byte_offset + _column * DATA_PER_VERTEX * BYTES_PER_FLOAT, divisor_);
+        }
     }
 
-    public static void releaseBuffers(int vertex_array_object){
+    /**
+     * Binds a VBO and (re)allocates its content.
+     * @param vbo_bytes The remaining bytes are uploaded.
+     */
+    static void uploadArrayBuffer(VertexLayout vertex_layout, int vbo_id, ByteBuffer vbo_bytes, int buffer_usage){
+        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, vbo_id);
+        GlUtilities.ensureGles31Call("glBindBuffer", vertex_layout.releaser);
 
-        for (Integer _vbo : vaoToVbos.get(vertex_array_object)){
-            vboToDataType.remove(_vbo);
-            vboToDataCountPerVertex.remove(_vbo);
-            vboToAttributeName.remove(_vbo);
-            GLES31.glDeleteBuffers(1, IntBuffer.wrap(new int[]{_vbo}));
+        GLES31.glBufferData(GLES31.GL_ARRAY_BUFFER, vbo_bytes.remaining(), vbo_bytes, buffer_usage);
+        GlUtilities.ensureGles31Call("glBufferData", vertex_layout.releaser);
+    }
+
+    /**
+     * Creates a buffer holding some bytes. Static ones are shared by {@link SharedBufferRegistry} with the VAOs
+     * holding the same bytes: the buffer must then be released by {@link #releaseBuffers(VertexLayout)}, never deleted directly.
+     * @param buffer_target {@link GLES31#GL_ARRAY_BUFFER} or {@link GLES31#GL_ELEMENT_ARRAY_BUFFER}. The buffer is left bound to it.
+     * @param buffer_bytes The remaining bytes are uploaded.
+     * @return The buffer id
+     */
+    static int createBuffer(VertexLayout vertex_layout, int buffer_target, ByteBuffer buffer_bytes, int buffer_usage){
+        if (SharedBufferRegistry.isShareable(buffer_usage, buffer_bytes.remaining())){
+            // The registry counts shared buffers in a single VAO
+            return SharedBufferRegistry.acquire(buffer_target, buffer_bytes, buffer_usage, vertex_layout);
         }
+        vertex_layout.bufferByteCount += buffer_bytes.remaining();
+        int[] _buffer = new int[1];
+        GLES31.glGenBuffers(1, _buffer, 0);
+        GlUtilities.ensureGles31Call("glGenBuffers", vertex_layout.releaser);
+        GLES31.glBindBuffer(buffer_target, _buffer[0]);
+        GlUtilities.ensureGles31Call("glBindBuffer", vertex_layout.releaser);
+        GLES31.glBufferData(buffer_target, buffer_bytes.remaining(), buffer_bytes, buffer_usage);
+        GlUtilities.ensureGles31Call("glBufferData", vertex_layout.releaser);
+        return _buffer[0];
+    }
 
-        Integer _vbo_index = vaoToVboIndex.get(vertex_array_object);
-        if (_vbo_index != null){
-            vaoToVboIndex.remove(_vbo_index);
-            GLES31.glDeleteBuffers(1, IntBuffer.wrap(new int[]{_vbo_index}));
+    /**
+     * Adds per-instance data to a VAO, so that it can be drawn many times with a single glDrawElementsInstanced() or
+     * glDrawArraysInstanced() call. Instance data are interleaved in a dedicated VBO and their attributes have a divisor of 1:
+     * e.g. a {@link ShaderAttributes#INSTANCE_MODEL} matrix ({@link #DATA_PER_MATRIX} floats) and a {@link ShaderAttributes#INSTANCE_COLOR}
+     * per instance.<br>
+     * The VAO must then be adapted again to the shader program.
+     * @param vertex_layout A VAO set up by {@link #setupBuffers(List, int[], BufferLayout)} or {@link #setupStreamingBuffers(List, int[], int)}
+     * @param instance_data The per-instance data. Each must offer at least instance_count data vectors.
+     * @param instance_count The number of instances to upload.
+     * @throws RenderingRuntimeException if data are incoherent or if OpenGL calls fail.
+     */
+    static public void setupInstanceBuffer(VertexLayout vertex_layout, List<DataToVbo> instance_data, int instance_count){
+        if (vertex_layout.instanceBuffer != -1){
+            throw new RenderingRuntimeException("VAO " + vertex_layout.vertexArrayObject + " already has instance data");
         }
+        int[] _vbo = new int[1];
+        GLES31.glGenBuffers(1, _vbo, 0);
+        GlUtilities.ensureGles31Call("glGenBuffers( instances )", vertex_layout.releaser);
+        vertex_layout.instanceBuffer = _vbo[0];
 
-        GLES31.glDeleteVertexArrays(1, IntBuffer.wrap(new int[]{vertex_array_object}));
+        updateInstanceBuffer(vertex_layout, instance_data, instance_count);
+        addInterleavedAttributes(vertex_layout, _vbo[0], instance_data, 1);
     }
 
     /**
-     * Allocates a buffer to store Vertex Buffer Objects (VBO) binded to a vertex array object (VAO)
-     * @param vao_id The parent VAO representing the object to draw.
-     * @param vbo_id The VBO id
-     * @param vbo_data All these data will be stored in the buffer, to its max capacity()
-     * @param data_type e.g. {@link GLES31#GL_FLOAT}
-     * @param attribute_name The corresponding attribute following convention on {@link ShaderAttributes}
-     * @param buffer_usage Specifies the expected usage pattern of the data store. The symbolic
-     *                     constant must be GL_STREAM_DRAW, GL_STREAM_READ, GL_STREAM_COPY,
-     *                     GL_STATIC_DRAW, GL_STATIC_READ, GL_STATIC_COPY, GL_DYNAMIC_DRAW,
-     *                     GL_DYNAMIC_READ, or GL_DYNAMIC_COPY.
-     * @return
+     * Uploads again all per-instance data, e.g. once the instances have moved or their count has changed.
+     * The VBO storage is reallocated so that the driver can orphan the previous one, still read by pending draws.
+     * @param vertex_layout A VAO set up by {@link #setupInstanceBuffer(VertexLayout, List, int)}
+     * @param instance_data The same kind of data as given at setup, in the same order.
+     * @param instance_count The number of instances to upload.
+     * @throws RenderingRuntimeException if data are incoherent or if OpenGL calls fail.
      */
-    public static void setupBuffer(int vao_id, int vbo_id, Buffer vbo_data, int data_type, int bytes_per_data, int data_count_per_vertex, String attribute_name, int buffer_usage){
-        // Binds buffer to attribute, fills it and tells OpenGL what this buffer is
-        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, vbo_id);
-        GlUtilities.ensureGles31Call("glBindBuffer", ()->releaseBuffers(vao_id));
+    static public void updateInstanceBuffer(VertexLayout vertex_layout, List<DataToVbo> instance_data, int instance_count){
+        for (int _i = 0; _i < instance_data.size(); _i++){
+            DataToVbo _data = instance_data.get(_i);
+            if (_data.vertexCount() < instance_count){
+                throw new RenderingRuntimeException("Instance VBO " + _data.attributeName + ": bad data count =" + _data.vertexCount() +
+                        " expected " + instance_count);
+            }
+        }
+        int _bytes_per_instance = interleavedBytesPerVertex(instance_data);
+        ByteBuffer _staged = StagingBufferPool.acquire(_bytes_per_instance * instance_count);
+        try {
+            encodeInterleaved(instance_data, 0, instance_count, _staged, 0, _bytes_per_instance);
+            uploadArrayBuffer(vertex_layout, vertex_layout.instanceBuffer, _staged, instance_data.get(0).bufferUsage);
+        }
+        finally {
+            StagingBufferPool.release(_staged);
+        }
+        vertex_layout.instanceCount = instance_count;
+        vertex_layout.instanceByteCount = _bytes_per_instance * instance_count;
+    }
+
+    /**
+     * Creates a VAO which vertex data are interleaved in a {@link StreamingRingBuffer}, so that they can be
+     * updated every frame by {@link #streamBuffers(VertexLayout, List)} without stalling the GL pipeline.
+     * The first slot is filled with buffers_data.
+     * @param buffers_data The per-vertex data. One of them must be the {@link ShaderAttributes#VERTEX} coordinates.
+     * @param v_indices The vertex indices. They are not streamed.
+     * @param frames_in_flight The number of ring buffer slots, e.g. 3.
+     * @return The VAO description
+     * @throws RenderingRuntimeException if data are incoherent or if OpenGL calls fail.
+     */
+    static public VertexLayout setupStreamingBuffers(List<DataToVbo> buffers_data, int[] v_indices, int frames_in_flight){
+        int _vertex_count = checkBuffersData(buffers_data, v_indices);
 
-        // Fills the buffer with data
-        GLES31.glBufferData(GLES31.GL_ARRAY_BUFFER, vbo_data.capacity() * bytes_per_data, vbo_data, buffer_usage);
-        GlUtilities.ensureGles31Call("glBufferData", ()->releaseBuffers(vao_id));
+        int[] _vao = new int[1];
+        GLES31.glGenVertexArrays(1, _vao, 0);
+        GlUtilities.ensureGles31Call("glGenVertexArrays(1, _vao)");
+
+        // The ring buffer is owned by the layout but deleted on its own, with its fences.
+        VertexLayout _layout = new VertexLayout(_vao[0], _vertex_count, 0, buffers_data.size());
 
-        vboToAttributeName.put(vbo_id, attribute_name);
-        vboToDataCountPerVertex.put(vbo_id, data_count_per_vertex);
-        vboToDataType.put(vbo_id, data_type);
+        GLES31.glBindVertexArray(_layout.vertexArrayObject);
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", _layout.releaser);
 
-        addVboToVao(vao_id, vbo_id);
+        StreamingRingBuffer _ring = new StreamingRingBuffer(
+                Math.max(1, interleavedBytesPerVertex(buffers_data) * _vertex_count), frames_in_flight);
+        _layout.streamingBuffer = _ring;
+        _ring.setupOpenGlResources();
+        _layout.bufferByteCount += _ring.getSlotByteSize() * frames_in_flight;
+        addInterleavedAttributes(_layout, _ring.getBufferId(), buffers_data, 0);
 
-        System.out.println("IGL Mesh Setup buffer :" + vbo_id + "= " + attribute_name);
+        ByteBuffer _staged_indices = stageIndices(_layout, v_indices);
+        try {
+            setupIndexBuffer(_layout, _staged_indices, GLES31.GL_STATIC_DRAW);
+        }
+        finally {
+            StagingBufferPool.release(_staged_indices);
+        }
+
+        streamBuffers(_layout, buffers_data);
+        return _layout;
     }
 
     /**
-     * Allocates a buffer to store vertex indices.
-     * @param vao_id
-     * @param vbo_id
-     * @param vbo_data
-     * @param buffer_usage
+     * Writes all per-vertex data in the next slot of the VAO ring buffer. Attributes offsets are updated
+     * at the next {@link #adaptBuffersToProgram(VertexLayout, int)}.<br>
+     * {@link StreamingRingBuffer#fenceCurrentSlot()} must be called once the VAO is drawn.
+     * @param vertex_layout A VAO set up by {@link #setupStreamingBuffers(List, int[], int)}
+     * @param buffers_data The same kind of data as given at setup, in the same order.
+     */
+    static public void streamBuffers(VertexLayout vertex_layout, List<DataToVbo> buffers_data){
+        StreamingRingBuffer _ring = vertex_layout.streamingBuffer;
+        if (_ring == null){
+            throw new RenderingRuntimeException("VAO " + vertex_layout.vertexArrayObject + " is not streamed");
+        }
+        ByteBuffer _slot = _ring.beginWrite();
+        try {
+            encodeInterleaved(buffers_data, 0, vertex_layout.vertexCount, _slot, 0, interleavedBytesPerVertex(buffers_data));
+        }
+        finally {
+            _ring.endWrite();
+        }
+        vertex_layout.baseByteOffset = _ring.getCurrentSlotByteOffset();
+    }
+
+    /**
+     * Uploads again the vertices marked by {@link DataToVbo#markDirty(int, int)}, then forgets the dirty ranges.
+     * Ranges of the attributes sharing a VBO (see {@link BufferLayout#INTERLEAVED_BUFFER}) are merged, and each merged range
+     * is re-encoded and sent with a single glBufferSubData(). Nothing is uploaded for streamed VAOs, as all their data are written
+     * in each new ring buffer slot.<br>
+     * A VBO shared with other VAOs (see {@link SharedBufferRegistry}) is first replaced by a copy of its own: its attributes
+     * must then be adapted again to the shader program.
+     * @param vertex_layout A VAO set up by {@link #setupBuffers(List, int[], BufferLayout)}
+     * @param buffers_data The data given at setup, in the same order.
+     * @return true if some attributes moved to another VBO.
+     * @throws RenderingRuntimeException if OpenGL calls fail.
      */
-    static void setupIndexBuffer(int vao_id, int vbo_id, Buffer vbo_data, int buffer_usage){
-        GLES31.glBindBuffer(GLES31.GL_ELEMENT_ARRAY_BUFFER, vbo_id);
-        GlUtilities.ensureGles31Call("glBindBuffer(GL_ELEMENT_ARRAY_BUFFER)", ()->releaseBuffers(vao_id));
+    static public boolean updateDirtyBuffers(VertexLayout vertex_layout, List<DataToVbo> buffers_data){
+        boolean _res = false;
+        DirtyRanges _ranges = vertex_layout.pendingRanges;
+        for (int _b = 0; _b < vertex_layout.bufferCount; _b++){
+            int _vbo = vertex_layout.bufferIds[_b];
+            int _byte_stride = 0;
+            _ranges.clear();
+            for (int _i = 0; _i < vertex_layout.attributeCount; _i++){
+                if (isFirstColumnOfVertexData(vertex_layout, _i, _vbo)){
+                    _ranges.addAll(buffers_data.get(vertex_layout.attributeSources[_i]).dirtyRanges);
+                    _byte_stride = vertex_layout.byteStrides[_i];
+                }
+            }
+            _ranges.clamp(vertex_layout.vertexCount);
+            if (_ranges.isEmpty()){
+                continue;
+            }
 
-        GLES31.glBufferData(GLES31.GL_ELEMENT_ARRAY_BUFFER, vbo_data.capacity() * 2, vbo_data, buffer_usage);
-        GlUtilities.ensureGles31Call("glBufferData(GL_ELEMENT_ARRAY_BUFFER)", ()->releaseBuffers(vao_id));
+            if (SharedBufferRegistry.isRegistered(_vbo)){
+                int _own_vbo = SharedBufferRegistry.detach(GLES31.GL_ARRAY_BUFFER, _vbo, vertex_layout);
+                if (_own_vbo != _vbo){
+                    vertex_layout.replaceBuffer(_vbo, _own_vbo);
+                    _vbo = _own_vbo;
+                    _res = true;
+                }
+            }
+            else {
+                GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, _vbo);
+                GlUtilities.ensureGles31Call("glBindBuffer", vertex_layout.releaser);
+            }
+            for (int _r = 0; _r < _ranges.getRangeCount(); _r++){
+                int _first_vertex = _ranges.getFirstVertex(_r);
+                int _vertex_count = _ranges.getVertexCount(_r);
+                ByteBuffer _staged = StagingBufferPool.acquire(_vertex_count * _byte_stride);
+                try {
+                    for (int _i = 0; _i < vertex_layout.attributeCount; _i++){
+                        if (isFirstColumnOfVertexData(vertex_layout, _i, _vbo)){
+                            DataToVbo _data = buffers_data.get(vertex_layout.attributeSources[_i]);
+                            _data.encoding.encode(_data.rawData, _data.dataCountPerVertex, _first_vertex, _vertex_count,
+                                    _staged, vertex_layout.byteOffsets[_i], _byte_stride);
+                        }
+                    }
+                    GLES31.glBufferSubData(GLES31.GL_ARRAY_BUFFER, _first_vertex * _byte_stride, _staged.remaining(), _staged);
+                    GlUtilities.ensureGles31Call("glBufferSubData", vertex_layout.releaser);
+                }
+                finally {
+                    StagingBufferPool.release(_staged);
+                }
+            }
+        }
+        for (int _i = 0; _i < buffers_data.size(); _i++){
+            buffers_data.get(_i).dirtyRanges.clear();
+        }
+        return _res;
+    }
 
-        //vboToAttributeName.put(vbo_id, attribute_name);
+    /**
+     * Binds the VBO of a per-vertex attribute as a shader storage buffer, so that compute shaders read and write its data in place,
+     * on the GPU. The whole VBO is bound: a shader using an interleaved VBO (see {@link BufferLayout#INTERLEAVED_BUFFER}) must
+     * address the attribute with {@link VertexLayout#getAttributeByteStride(int)} and {@link VertexLayout#getAttributeByteOffset(int)}.<br>
+     * A VBO shared with other VAOs (see {@link SharedBufferRegistry}) is first replaced by a copy of its own, so that other VAOs
+     * are not modified: its attributes must then be adapted again to the shader program.
+     * Shader writes are visible to draw calls only after glMemoryBarrier({@link GLES31#GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT}).
+     * @param vertex_layout A VAO set up by {@link #setupBuffers(List, int[], BufferLayout)}
+     * @param attribute_name The name of a per-vertex attribute, e.g. {@link ShaderAttributes#VERTEX}
+     * @param binding_index The binding of the buffer block in the compute shader, e.g. 0 for "layout(std430, binding = 0) buffer"
+     * @return true if the attribute moved to another VBO.
+     * @throws RenderingRuntimeException if the VAO has no such attribute, if it is streamed, or if OpenGL calls fail.
+     */
+    static public boolean bindStorageBuffer(VertexLayout vertex_layout, String attribute_name, int binding_index){
+        if (vertex_layout.streamingBuffer != null){
+            throw new RenderingRuntimeException("Cannot bind streamed vertex data as a storage buffer");
+        }
+        int _vbo = -1;
+        for (int _i = 0; _i < vertex_layout.attributeCount && _vbo == -1; _i++){
+            if (vertex_layout.divisors[_i] == 0 && vertex_layout.attributeNames[_i].contentEquals(attribute_name)){
+                _vbo = vertex_layout.attributeBuffers[_i];
+            }
+        }
+        if (_vbo == -1){
+            throw new RenderingRuntimeException("No per-vertex attribute " + attribute_name + " to bind as a storage buffer");
+        }
 
-        addVboIndexToVao(vao_id, vbo_id);
+        boolean _res = false;
+        if (SharedBufferRegistry.isRegistered(_vbo)){
+            int _own_vbo = SharedBufferRegistry.detach(GLES31.GL_SHADER_STORAGE_BUFFER, _vbo, vertex_layout);
+            if (_own_vbo != _vbo){
+                vertex_layout.replaceBuffer(_vbo, _own_vbo);
+                _vbo = _own_vbo;
+                _res = true;
+            }
+        }
+        GLES31.glBindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, binding_index, _vbo);
+        GlUtilities.ensureGles31Call("glBindBufferBase( storage )", vertex_layout.releaser);
+        return _res;
     }
 
-    static void addVboIndexToVao(int vao_id, int vbo_id){
-        vaoToVboIndex.put(vao_id, vbo_id);
+    static boolean isFirstColumnOfVertexData(VertexLayout vertex_layout, int attribute_rank, int vbo_id){
+        return vertex_layout.attributeBuffers[attribute_rank] == vbo_id &&
+                vertex_layout.divisors[attribute_rank] == 0 &&
+                vertex_layout.locationOffsets[attribute_rank] == 0;
     }
 
-    static void addVboToVao(int vao_id, int vbo_id){
-        if (!vaoToVbos.containsKey(vao_id)){
-            vaoToVbos.put(vao_id, new ArrayList<>());
+    /**
+     * Deletes the VAO, its VBOs and its indices buffer.
+     * @param vertex_layout The VAO description given by {@link #setupBuffers(List, int[], BufferLayout)}
+     */
+    public static void releaseBuffers(VertexLayout vertex_layout){
+        if (vertex_layout.streamingBuffer != null){
+            vertex_layout.streamingBuffer.releaseOpenGlResources();
+        }
+        // Shared buffers are deleted by the registry once no VAO uses them
+        for (int _b = 0; _b < vertex_layout.bufferCount; _b++){
+            if (!SharedBufferRegistry.release(vertex_layout.bufferIds[_b], vertex_layout)){
+                GLES31.glDeleteBuffers(1, vertex_layout.bufferIds, _b);
+            }
+        }
+        vertex_layout.bufferCount = 0;
+        if (vertex_layout.indexBuffer != -1){
+            if (!SharedBufferRegistry.release(vertex_layout.indexBuffer, vertex_layout)){
+                GLES31.glDeleteBuffers(1, new int[]{vertex_layout.indexBuffer}, 0);
+            }
+            vertex_layout.indexBuffer = -1;
+        }
+        if (vertex_layout.instanceBuffer != -1){
+            GLES31.glDeleteBuffers(1, new int[]{vertex_layout.instanceBuffer}, 0);
+            vertex_layout.instanceBuffer = -1;
+            vertex_layout.instanceCount = 0;
+        }
+        vertex_layout.bufferByteCount = 0;
+        vertex_layout.instanceByteCount = 0;
+        vertex_layout.attributeCount = 0;
+
+        if (vertex_layout.vertexArrayObject != -1){
+            GLES31.glDeleteVertexArrays(1, new int[]{vertex_layout.vertexArrayObject}, 0);
+            vertex_layout.vertexArrayObject = -1;
         }
-        vaoToVbos.get(vao_id).add(vbo_id);
     }
 
-    static public void adaptBuffersToProgram(int vao_id, int shader_program){
-        for (Integer _vbo: vaoToVbos.get(vao_id)){
-            adaptBufferToProgram(vao_id, shader_program, _vbo);
+    /**
+     * Allocates a Vertex Buffer Object (VBO) binded to a vertex array object (VAO). Static VBOs are shared with the VAOs
+     * holding the same bytes (see {@link SharedBufferRegistry}): the VBO is released by {@link #releaseBuffers(VertexLayout)}.
+     * @param vertex_layout The parent VAO representing the object to draw.
+     * @param vbo_bytes The remaining bytes of this buffer will be stored in the VBO. It should be a direct buffer, e.g. given by {@link StagingBufferPool}.
+     * @param data_type e.g. {@link GLES31#GL_FLOAT}
+     * @param data_count_per_vertex The number of components per vertex, as declared to glVertexAttribPointer()
+     * @param normalized_ true if integer data are to be mapped to [0,1] or [-1,1] (see {@link AttributeEncoding#isNormalized()})
+     * @param byte_stride The number of bytes between two consecutive vertex data
+     * @param attribute_name The corresponding attribute following convention on {@link ShaderAttributes}
+     * @param buffer_usage Specifies the expected usage pattern of the data store. The symbolic
+     *                     constant must be GL_STREAM_DRAW, GL_STREAM_READ, GL_STREAM_COPY,
+     *                     GL_STATIC_DRAW, GL_STATIC_READ, GL_STATIC_COPY, GL_DYNAMIC_DRAW,
+     *                     GL_DYNAMIC_READ, or GL_DYNAMIC_COPY.
+     * @return The VBO id
+     */
+    public static int setupBuffer(VertexLayout vertex_layout, ByteBuffer vbo_bytes, int data_type, int data_count_per_vertex,
+                                  boolean normalized_, int byte_stride, String attribute_name, int buffer_usage){
+        int _vbo_id = createBuffer(vertex_layout, GLES31.GL_ARRAY_BUFFER, vbo_bytes, buffer_usage);
+        vertex_layout.addBuffer(_vbo_id);
+        vertex_layout.addAttribute(_vbo_id, attribute_name, data_count_per_vertex, data_type, normalized_, byte_stride, 0);
+        return _vbo_id;
+    }
+
+    /**
+     * Fills a VBO created by the caller and binds it to a vertex array object (VAO). The VBO is never shared, and is deleted by
+     * {@link #releaseBuffers(VertexLayout)}.
+     * @param vbo_id The VBO id
+     * @deprecated Use {@link #setupBuffer(VertexLayout, ByteBuffer, int, int, boolean, int, String, int)}, which creates the VBO
+     * and shares static ones between VAOs.
+     */
+    @Deprecated
+    public static void setupBuffer(VertexLayout vertex_layout, int vbo_id, ByteBuffer vbo_bytes, int data_type, int data_count_per_vertex,
+                                   boolean normalized_, int byte_stride, String attribute_name, int buffer_usage){
+        vertex_layout.bufferByteCount += vbo_bytes.remaining();
+        uploadArrayBuffer(vertex_layout, vbo_id, vbo_bytes, buffer_usage);
+
+        vertex_layout.addBuffer(vbo_id);
+        vertex_layout.addAttribute(vbo_id, attribute_name, data_count_per_vertex, data_type, normalized_, byte_stride, 0);
+    }
+
+    /**
+     * Allocates a buffer to store vertex indices. Static indices are shared with the VAOs having the same ones
+     * (see {@link SharedBufferRegistry}).
+     * @param vertex_layout The VAO, which must be bound to record its indices buffer.
+     * @param vbo_bytes The remaining bytes of this buffer are the indices. It should be a direct buffer, e.g. given by {@link StagingBufferPool}.
+     * @param buffer_usage
+     */
+    static void setupIndexBuffer(VertexLayout vertex_layout, ByteBuffer vbo_bytes, int buffer_usage){
+        vertex_layout.indexBuffer = createBuffer(vertex_layout, GLES31.GL_ELEMENT_ARRAY_BUFFER, vbo_bytes, buffer_usage);
+    }
+
+    /**
+     * Tells the shader program where to find every attribute of the VAO. This method does not allocate anything.<br>
+     * Attributes named after {@link ShaderAttributes} are pointed at their fixed location: once done, they suit every program
+     * made by {@link org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderUtility#makeProgramFromShaders}. This must then
+     * only be called again when buffers move, or when the program changes if {@link VertexLayout#dependsOnProgram()}.
+     * @param vertex_layout The VAO description
+     * @param shader_program The program to adapt the VBOs to
+     */
+    static public void adaptBuffersToProgram(VertexLayout vertex_layout, int shader_program){
+        for (int _i = 0; _i < vertex_layout.attributeCount; _i++){
+            adaptAttributeToProgram(vertex_layout, shader_program, _i);
         }
     }
 
-    static public void adaptBufferToProgram(int vao_id, int shader_program, int vbo_id){
+    /**
+     * Tells the shader program where to find an attribute in its VBO.
+     * @param vertex_layout The parent VAO
+     * @param shader_program The program to adapt the VBO to
+     * @param attribute_rank The rank of the attribute in vertex_layout
+     */
+    static void adaptAttributeToProgram(VertexLayout vertex_layout, int shader_program, int attribute_rank){
         // Indicates the attribute bound with the buffer
-        int _attrib_loc = GLES31.glGetAttribLocation(shader_program, vboToAttributeName.get(vbo_id));
-        GlUtilities.ensureGles31Call("glGetAttribLocation", ()->releaseBuffers(vao_id));
+        int _attrib_loc = vertex_layout.fixedLocations[attribute_rank];
+        if (_attrib_loc < 0){
+            _attrib_loc = GLES31.glGetAttribLocation(shader_program, vertex_layout.attributeNames[attribute_rank]);
+            GlUtilities.ensureGles31Call("glGetAttribLocation", vertex_layout.releaser);
+            if (_attrib_loc >= 0){
+                // Matrix columns lie in consecutive locations
+                _attrib_loc += vertex_layout.locationOffsets[attribute_rank];
+            }
+        }
 
         if (_attrib_loc >= 0) {
             // Binds the VBO so we can work on it. Otherwise we would modify something else in the OpenGL state machine.
-            GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, vbo_id);
+            GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, vertex_layout.attributeBuffers[attribute_rank]);
 
             // Here the attribute is used by the shader program
             GLES31.glEnableVertexAttribArray(_attrib_loc);
-            GlUtilities.ensureGles31Call("glEnableVertexAttribArray", () -> releaseBuffers(vao_id));
+            GlUtilities.ensureGles31Call("glEnableVertexAttribArray", vertex_layout.releaser);
 
             // Tells OpenGL how to use this coordinates buffer
             GLES31.glVertexAttribPointer(
-                    _attrib_loc,                            // attribute index in the program
-                    vboToDataCountPerVertex.get(vbo_id),    //eg. 4 for x y z w per vertex
-                    vboToDataType.get(vbo_id),              // coordinates are floats
-                    false,                        // fixed point float are not normalized
-                    0,                                // 0 bytes between 2 vertex data : data are tightly packed
-                    0                                 // 0 offset
+                    _attrib_loc,                                        // attribute index in the program
+                    vertex_layout.componentCounts[attribute_rank],      //eg. 4 for x y z w per vertex
+                    vertex_layout.dataTypes[attribute_rank],            // e.g. floats, half floats, bytes
+                    vertex_layout.normalized[attribute_rank],           // integer data may be mapped to [0,1] or [-1,1]
+                    vertex_layout.byteStrides[attribute_rank],          // bytes between 2 vertex data
+                    vertex_layout.baseByteOffset + vertex_layout.byteOffsets[attribute_rank] // offset of the attribute in the buffer
             );
-            GlUtilities.ensureGles31Call("glVertexAttribPointer(...)", () -> releaseBuffers(vao_id));
+            GlUtilities.ensureGles31Call("glVertexAttribPointer(...)", vertex_layout.releaser);
+
+            // Per-instance data advance once per instance instead of once per vertex
+            GLES31.glVertexAttribDivisor(_attrib_loc, vertex_layout.divisors[attribute_rank]);
+            GlUtilities.ensureGles31Call("glVertexAttribDivisor", vertex_layout.releaser);
         }
     }
-
-    static Map<Integer, Integer>  vboToDataCountPerVertex = new ConcurrentHashMap<>();
-    static Map<Integer, String> vboToAttributeName = new ConcurrentHashMap<>();
-    static Map<Integer, Integer> vboToDataType = new ConcurrentHashMap<>();
-    static Map<Integer, List<Integer>> vaoToVbos = new ConcurrentHashMap<>();
-    static Map<Integer, Integer> vaoToVboIndex = new ConcurrentHashMap<>();
 }
@@ -0,0 +1,322 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.glTools.GlResourceLoader;
+import org.c4sci.camera2opengl.glTools.GlUtilities;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class shares {@link GLES31#GL_STATIC_DRAW} buffers of identical content between VAOs: e.g. all the boxes of a scene
+ * use the same index buffer, and meshes built from the same {@link IRenderable.DataToVbo} use the same VBOs. Each buffer is
+ * uploaded once and deleted when the last VAO using it is released.<br>
+ * Buffers are looked up by a 128 bits hash of their encoded bytes, buffer target, usage and size: encoded bytes already reflect the
+ * attribute encodings and the interleaving of data. Buffers are never read back from the GPU to compare them: with 128 bits,
+ * sharing different data by a hash collision is far less likely than a memory error.<br>
+ * Only static buffers are shared: other buffers are expected to be updated in place. A shared VBO that is updated anyway
+ * (see {@link IRenderable#updateDirtyBuffers(VertexLayout, java.util.List)}) is first copied by {@link #detach(int, int, VertexLayout)}.<br>
+ * A shared buffer is counted once in the memory use of VAOs (see {@link VertexLayout#getAllocatedByteCount()}): by the first VAO
+ * holding it, then by the next one when that VAO releases it.<br>
+ * Buffers created by a {@link GlResourceLoader} are only shared by that loader until {@link #publish(int)} is called, once their
+ * upload is ready: the drawing thread never picks up a buffer still being uploaded by another context.<br>
+ * Buffer names belong to an OpenGL context (or share group): {@link #forgetAll()} must be called when it is lost.
+ * This class is only used at setup and release: it is synchronized, and not tuned for the draw path.
+ */
+public final class SharedBufferRegistry {
+
+    private static final class Entry {
+        final long contentHash;
+        /**
+         * The second half of the 128 bits hash.
+         */
+        final long checkHash;
+        final int bufferTarget;
+        final int bufferUsage;
+        final int byteCount;
+        final int bufferId;
+        /**
+         * The VAOs using the buffer, once per use. The first one counts the buffer bytes.
+         */
+        final List<VertexLayout> holders = new ArrayList<>(2);
+        /**
+         * The loader thread uploading the buffer, which alone may share it until it is published, or null.
+         */
+        Thread loaderThread = null;
+        /**
+         * The next entry of the same hash.
+         */
+        Entry next = null;
+
+        Entry(long[] content_hash, int buffer_target, int buffer_usage, int byte_count, int buffer_id){
+            contentHash = content_hash[0];
+            checkHash = content_hash[1];
+            bufferTarget = buffer_target;
+            bufferUsage = buffer_usage;
+            byteCount = byte_count;
+            bufferId = buffer_id;
+        }
+    }
+
+    private static final Map<Long, Entry> ENTRIES_BY_HASH = new HashMap<>();
+    private static final Map<Integer, Entry> ENTRIES_BY_BUFFER = new HashMap<>();
+    private static int uploadedByteCount = 0;
+    private static int savedByteCount = 0;
+
+    private SharedBufferRegistry(){
+    }
+
+    /**
+     * @return true if buffers of this usage and size are shared.
+     */
+    public static boolean isShareable(int buffer_usage, int byte_count){
+        return buffer_usage == GLES31.GL_STATIC_DRAW && byte_count > 0;
+    }
+
+    /**
+     * Gives a buffer holding some bytes, uploading them only if no registered buffer holds the same ones.
+     * The buffer is left bound to buffer_target, e.g. so that a bound VAO records its {@link GLES31#GL_ELEMENT_ARRAY_BUFFER}.
+     * @param buffer_target {@link GLES31#GL_ARRAY_BUFFER} or {@link GLES31#GL_ELEMENT_ARRAY_BUFFER}
+     * @param buffer_bytes The remaining bytes are the buffer content. Their position is left untouched.
+     * @param buffer_usage A usage accepted by {@link #isShareable(int, int)}
+     * @param vertex_layout The VAO using the buffer. Its allocated bytes include the buffer if it is the first VAO holding it.
+     * @return The buffer id, to be given back by {@link #release(int, VertexLayout)}.
+     * @throws org.c4sci.camera2opengl.RenderingRuntimeException if OpenGL calls fail.
+     */
+    public static synchronized int acquire(int buffer_target, ByteBuffer buffer_bytes, int buffer_usage, VertexLayout vertex_layout){
+        Runnable _releaser = vertex_layout.releaser;
+        int _byte_count = buffer_bytes.remaining();
+        long[] _hash = contentHash(buffer_target, buffer_bytes, buffer_usage);
+        Entry _first = ENTRIES_BY_HASH.get(_hash[0]);
+        for (Entry _entry = _first; _entry != null; _entry = _entry.next){
+            if (_entry.checkHash == _hash[1] && _entry.bufferTarget == buffer_target && _entry.bufferUsage == buffer_usage &&
+                    _entry.byteCount == _byte_count && (_entry.loaderThread == null || _entry.loaderThread == Thread.currentThread())){
+                GLES31.glBindBuffer(buffer_target, _entry.bufferId);
+                GlUtilities.ensureGles31Call("glBindBuffer( shared )", _releaser);
+                _entry.holders.add(vertex_layout);
+                savedByteCount += _byte_count;
+                return _entry.bufferId;
+            }
+        }
+
+        int[] _buffer = new int[1];
+        GLES31.glGenBuffers(1, _buffer, 0);
+        GlUtilities.ensureGles31Call("glGenBuffers( shared )", _releaser);
+        GLES31.glBindBuffer(buffer_target, _buffer[0]);
+        GlUtilities.ensureGles31Call("glBindBuffer( shared )", _releaser);
+        GLES31.glBufferData(buffer_target, _byte_count, buffer_bytes, buffer_usage);
+        GlUtilities.ensureGles31Call("glBufferData( shared )", _releaser);
+
+        Entry _entry = new Entry(_hash, buffer_target, buffer_usage, _byte_count, _buffer[0]);
+        if (Thread.currentThread() instanceof GlResourceLoader){
+            _entry.loaderThread = Thread.currentThread();
+        }
+        _entry.next = _first;
+        ENTRIES_BY_HASH.put(_entry.contentHash, _entry);
+        ENTRIES_BY_BUFFER.put(_entry.bufferId, _entry);
+        uploadedByteCount += _byte_count;
+        _entry.holders.add(vertex_layout);
+        vertex_layout.bufferByteCount += _byte_count;
+        return _entry.bufferId;
+    }
+
+    /**
+     * Gives back a buffer obtained by {@link #acquire(int, ByteBuffer, int, VertexLayout)}, deleting it if it is not used anymore.
+     * If the VAO counted the buffer bytes, the next VAO holding it counts them from now on.
+     * @param buffer_id Any buffer id
+     * @param vertex_layout The VAO that acquired the buffer
+     * @return false if the buffer is not registered: the caller owns it and must delete it.
+     */
+    public static synchronized boolean release(int buffer_id, VertexLayout vertex_layout){
+        Entry _entry = ENTRIES_BY_BUFFER.get(buffer_id);
+        if (_entry == null){
+            return false;
+        }
+        removeHolder(_entry, vertex_layout);
+        if (_entry.holders.isEmpty()){
+            forget(_entry);
+            GLES31.glDeleteBuffers(1, new int[]{buffer_id}, 0);
+        }
+        else {
+            savedByteCount -= _entry.byteCount;
+        }
+        return true;
+    }
+
+    /**
+     * Lets every thread share a buffer created by a loader thread. To be called once the upload creating it is ready
+     * (see {@link org.c4sci.camera2opengl.glTools.GlUpload#isReady()}).
+     * @param buffer_id Any buffer id
+     */
+    public static synchronized void publish(int buffer_id){
+        Entry _entry = ENTRIES_BY_BUFFER.get(buffer_id);
+        if (_entry != null){
+            _entry.loaderThread = null;
+        }
+    }
+
+    /**
+     * @return true if the buffer has been given by {@link #acquire(int, ByteBuffer, int, VertexLayout)} and not released yet.
+     */
+    public static synchronized boolean isRegistered(int buffer_id){
+        return ENTRIES_BY_BUFFER.containsKey(buffer_id);
+    }
+
+    /**
+     * Gives a buffer that can be modified without affecting other VAOs. A buffer used by this VAO only is just unregistered,
+     * the others are copied by glCopyBufferSubData() into a new buffer of the same usage. The VAO counts the bytes of the copy.
+     * @param buffer_target The target the buffer is to be bound to after the call.
+     * @param buffer_id A buffer given by {@link #acquire(int, ByteBuffer, int, VertexLayout)}, or any other buffer, which is returned as is.
+     * @param vertex_layout The VAO that acquired the buffer
+     * @return The buffer to use from now on instead of buffer_id, bound to buffer_target. The caller owns it.
+     * @throws org.c4sci.camera2opengl.RenderingRuntimeException if OpenGL calls fail.
+     */
+    public static synchronized int detach(int buffer_target, int buffer_id, VertexLayout vertex_layout){
+        Runnable _releaser = vertex_layout.releaser;
+        int _res = buffer_id;
+        Entry _entry = ENTRIES_BY_BUFFER.get(buffer_id);
+        if (_entry != null && _entry.holders.size() == 1){
+            // The VAO already counts the buffer
+            forget(_entry);
+        }
+        else if (_entry != null){
+            int[] _buffer = new int[1];
+            GLES31.glGenBuffers(1, _buffer, 0);
+            GlUtilities.ensureGles31Call("glGenBuffers( detached )", _releaser);
+            GLES31.glBindBuffer(GLES31.GL_COPY_WRITE_BUFFER, _buffer[0]);
+            GlUtilities.ensureGles31Call("glBindBuffer( detached )", _releaser);
+            GLES31.glBufferData(GLES31.GL_COPY_WRITE_BUFFER, _entry.byteCount, null, _entry.bufferUsage);
+            GlUtilities.ensureGles31Call("glBufferData( detached )", _releaser);
+            GLES31.glBindBuffer(GLES31.GL_COPY_READ_BUFFER, buffer_id);
+            GLES31.glCopyBufferSubData(GLES31.GL_COPY_READ_BUFFER, GLES31.GL_COPY_WRITE_BUFFER, 0, 0, _entry.byteCount);
+            GlUtilities.ensureGles31Call("glCopyBufferSubData( detached )", _releaser);
+            GLES31.glBindBuffer(GLES31.GL_COPY_READ_BUFFER, 0);
+            GLES31.glBindBuffer(GLES31.GL_COPY_WRITE_BUFFER, 0);
+            // If the VAO counted the shared buffer, the next holder counts it from now on and the VAO counts its copy instead
+            if (!removeHolder(_entry, vertex_layout)){
+                vertex_layout.bufferByteCount += _entry.byteCount;
+            }
+            savedByteCount -= _entry.byteCount;
+            _res = _buffer[0];
+        }
+        GLES31.glBindBuffer(buffer_target, _res);
+        GlUtilities.ensureGles31Call("glBindBuffer( detached )", _releaser);
+        return _res;
+    }
+
+    /**
+     * Forgets all the buffers without deleting them, e.g. when the OpenGL context is lost with all its buffers.
+     */
+    public static synchronized void forgetAll(){
+        ENTRIES_BY_HASH.clear();
+        ENTRIES_BY_BUFFER.clear();
+        uploadedByteCount = 0;
+        savedByteCount = 0;
+    }
+
+    /**
+     * @return The number of buffers currently shared or ready to be shared.
+     */
+    public static synchronized int getBufferCount(){
+        return ENTRIES_BY_BUFFER.size();
+    }
+
+    /**
+     * @return The number of bytes of the registered buffers, as uploaded once.
+     */
+    public static synchronized int getUploadedByteCount(){
+        return uploadedByteCount;
+    }
+
+    /**
+     * @return The number of bytes that would have been uploaded again without sharing.
+     */
+    public static synchronized int getSavedByteCount(){
+        return savedByteCount;
+    }
+
+    /**
+     * Removes a use of a buffer by a VAO. If the VAO counted the buffer bytes, the next holder counts them instead.
+     * @return true if the VAO counted the buffer bytes.
+     */
+    private static boolean removeHolder(Entry entry_, VertexLayout vertex_layout){
+        int _rank = entry_.holders.indexOf(vertex_layout);
+        if (_rank < 0){
+            return false;
+        }
+        entry_.holders.remove(_rank);
+        if (_rank == 0 && !entry_.holders.isEmpty()){
+            entry_.holders.get(0).bufferByteCount += entry_.byteCount;
+        }
+        return _rank == 0;
+    }
+
+    private static void forget(Entry entry_){
+        ENTRIES_BY_BUFFER.remove(entry_.bufferId);
+        uploadedByteCount -= entry_.byteCount;
+        Entry _first = ENTRIES_BY_HASH.get(entry_.contentHash);
+        if (_first == entry_){
+            if (entry_.next == null){
+                ENTRIES_BY_HASH.remove(entry_.contentHash);
+            }
+            else {
+                ENTRIES_BY_HASH.put(entry_.contentHash, entry_.next);
+            }
+            return;
+        }
+        for (Entry _previous = _first; _previous != null; _previous = _previous.next){
+            if (_previous.next == entry_){
+                _previous.next = entry_.next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * A 128 bits hash of the remaining bytes, mixed with how the buffer is used. Its two 64 bits halves are computed in a
+     * single pass by lanes of different constants.
+     * @return The lookup half, then the check half.
+     */
+    static long[] contentHash(int buffer_target, ByteBuffer buffer_bytes, int buffer_usage){
+        int _position = buffer_bytes.position();
+        int _limit = buffer_bytes.limit();
+        long _seed = ((long) buffer_target << 32) ^ buffer_usage ^ ((long) (_limit - _position) << 16);
+        long _lane_0 = 0x9E3779B97F4A7C15L ^ _seed;
+        long _lane_1 = 0xC2B2AE3D27D4EB4FL ^ _seed;
+        int _i = _position;
+        for (; _i + Long.BYTES <= _limit; _i += Long.BYTES){
+            long _value = buffer_bytes.getLong(_i);
+            _lane_0 = mix(_lane_0, _value);
+            _lane_1 = mixCheck(_lane_1, _value);
+        }
+        long _tail = 0;
+        for (; _i < _limit; _i++){
+            _tail = (_tail << 8) | (buffer_bytes.get(_i) & 0xff);
+        }
+        return new long[]{finalizeHash(mix(_lane_0, _tail)), finalizeHash(mixCheck(_lane_1, _tail) ^ _lane_0)};
+    }
+
+    private static long mix(long hash_, long value_){
+        long _k = value_ * 0x87C37B91114253D5L;
+        _k = Long.rotateLeft(_k, 31) * 0x4CF5AD432745937FL;
+        return Long.rotateLeft(hash_ ^ _k, 27) * 5 + 0x52DCE729;
+    }
+
+    private static long mixCheck(long hash_, long value_){
+        long _k = value_ * 0x4CF5AD432745937FL;
+        _k = Long.rotateLeft(_k, 33) * 0x87C37B91114253D5L;
+        return Long.rotateLeft(hash_ ^ _k, 31) * 5 + 0x38495AB5;
+    }
+
+    private static long finalizeHash(long hash_){
+        hash_ ^= hash_ >>> 33;
+        hash_ *= 0xFF51AFD7ED558CCDL;
+        hash_ ^= hash_ >>> 33;
+        hash_ *= 0xC4CEB9FE1A85EC53L;
+        return hash_ ^ (hash_ >>> 33);
+    }
+}
@@ -0,0 +1,209 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlUtilities;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class is a Vertex Buffer Object (VBO) split in several slots, that are written in turn, one per frame.<br>
+ * A slot is written through glMapBufferRange() with {@link GLES31#GL_MAP_UNSYNCHRONIZED_BIT}, so that writing never waits
+ * for the GPU to finish with the other slots. A fence is set after the first draw of a written slot, and waited for before the slot
+ * is written again: with enough slots (usually 3) the fence is already signaled and the GL pipeline never stalls. Draws of a slot that
+ * is not written again (static frames) set no fence: the slot fence is only set again when the next slot is written.<br>
+ * Usage, in the OpenGL thread:
+ * <ol>
+ *     <li>{@link #setupOpenGlResources()}</li>
+ *     <li>each frame: {@link #beginWrite()}, fill the buffer, {@link #endWrite()}, draw using {@link #getCurrentSlotByteOffset()}
+ *     then {@link #fenceCurrentSlot()}</li>
+ *     <li>{@link #releaseOpenGlResources()}</li>
+ * </ol>
+ */
+public final class StreamingRingBuffer {
+
+    /**
+     * Max time to wait for the GPU to give back a slot. Reaching it means the GPU is stuck.
+     */
+    private static final long FENCE_TIMEOUT_NANOSECONDS = 1000000000L;
+
+    private final int slotByteSize;
+    private final int slotCount;
+    private final long[] slotFences;
+
+    private int bufferId = -1;
+    private int currentSlot = 0;
+    private boolean isWriting = false;
+    /**
+     * True once the current slot is fenced, false again when the next one is written.
+     */
+    private boolean currentSlotIsFenced = false;
+    /**
+     * True if the current slot has been drawn after its fence, which then does not cover all the draws reading the slot.
+     */
+    private boolean isDrawnAfterFence = false;
+
+    /**
+     * @param slot_byte_size The number of bytes written per frame.
+     * @param slot_count The number of frames that can be in flight, e.g. 3 for triple buffering.
+     */
+    public StreamingRingBuffer(int slot_byte_size, int slot_count){
+        if (slot_count < 1 || slot_byte_size < 1){
+            throw new RenderingRuntimeException("Bad ring buffer size: " + slot_count + " slots of " + slot_byte_size + " bytes");
+        }
+        slotByteSize = slot_byte_size;
+        slotCount = slot_count;
+        slotFences = new long[slot_count];
+    }
+
+    /**
+     * Allocates the whole ring buffer storage. The buffer remains bound to {@link GLES31#GL_ARRAY_BUFFER}.
+     * @return The VBO id
+     */
+    public int setupOpenGlResources(){
+        int[] _buffer = new int[1];
+        GLES31.glGenBuffers(1, _buffer, 0);
+        GlUtilities.ensureGles31Call("glGenBuffers( ring )");
+        bufferId = _buffer[0];
+
+        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, bufferId);
+        GlUtilities.ensureGles31Call("glBindBuffer( ring )", this::releaseOpenGlResources);
+
+        GLES31.glBufferData(GLES31.GL_ARRAY_BUFFER, slotByteSize * slotCount, null, GLES31.GL_STREAM_DRAW);
+        GlUtilities.ensureGles31Call("glBufferData( ring )", this::releaseOpenGlResources);
+
+        currentSlot = slotCount - 1;
+        return bufferId;
+    }
+
+    /**
+     * Moves to the next slot, waits for the GPU to be done with it, and maps it.
+     * @return The slot bytes, in native order, to be written from index 0 to {@link #getSlotByteSize()}.
+     * @throws RenderingRuntimeException if the GPU did not release the slot in time or mapping failed.
+     */
+    public ByteBuffer beginWrite(){
+        if (isWriting){
+            throw new RenderingRuntimeException("Ring buffer slot " + currentSlot + " is already being written");
+        }
+        if (isDrawnAfterFence){
+            // The slot fence must follow all the draws reading the slot
+            deleteFence(currentSlot);
+            createFence(currentSlot);
+        }
+        currentSlot = (currentSlot + 1) % slotCount;
+        waitForSlot(currentSlot);
+        currentSlotIsFenced = false;
+        isDrawnAfterFence = false;
+
+        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, bufferId);
+        GlUtilities.ensureGles31Call("glBindBuffer( ring )");
+
+        Buffer _mapped = GLES31.glMapBufferRange(GLES31.GL_ARRAY_BUFFER, getCurrentSlotByteOffset(), slotByteSize,
+                GLES31.GL_MAP_WRITE_BIT | GLES31.GL_MAP_UNSYNCHRONIZED_BIT | GLES31.GL_MAP_INVALIDATE_RANGE_BIT);
+        GlUtilities.ensureGles31Call("glMapBufferRange( ring )");
+        GlUtilities.assertGles31Call(_mapped instanceof ByteBuffer, "glMapBufferRange( ring ) returned no buffer");
+
+        isWriting = true;
+        return ((ByteBuffer) _mapped).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Unmaps the slot written since {@link #beginWrite()}.
+     * @throws RenderingRuntimeException if the slot content has been lost by OpenGL.
+     */
+    public void endWrite(){
+        if (!isWriting){
+            return;
+        }
+        isWriting = false;
+        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, bufferId);
+        boolean _unmapped = GLES31.glUnmapBuffer(GLES31.GL_ARRAY_BUFFER);
+        GlUtilities.ensureGles31Call("glUnmapBuffer( ring )");
+        GlUtilities.assertGles31Call(_unmapped, "glUnmapBuffer( ring ): data store content has been corrupted");
+    }
+
+    /**
+     * Must be called after the draw calls reading the current slot, so that the slot is not overwritten while the GPU reads it.
+     * Only the first call after the slot is written creates a fence: later draws are covered by the fence set when the next
+     * slot is written.
+     */
+    public void fenceCurrentSlot(){
+        if (currentSlotIsFenced){
+            isDrawnAfterFence = true;
+            return;
+        }
+        deleteFence(currentSlot);
+        createFence(currentSlot);
+        currentSlotIsFenced = true;
+    }
+
+    /**
+     * @return The offset of the current slot in the VBO, to be added to the attributes offsets.
+     */
+    public int getCurrentSlotByteOffset(){
+        return currentSlot * slotByteSize;
+    }
+
+    public int getSlotByteSize() {
+        return slotByteSize;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return The VBO id, or -1 if not set up.
+     */
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    /**
+     * Deletes fences and the VBO.
+     */
+    public void releaseOpenGlResources(){
+        if (isWriting){
+            isWriting = false;
+            GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, bufferId);
+            GLES31.glUnmapBuffer(GLES31.GL_ARRAY_BUFFER);
+        }
+        for (int _i = 0; _i < slotCount; _i++){
+            deleteFence(_i);
+        }
+        currentSlotIsFenced = false;
+        isDrawnAfterFence = false;
+        if (bufferId != -1){
+            GLES31.glDeleteBuffers(1, new int[]{bufferId}, 0);
+            bufferId = -1;
+        }
+    }
+
+    private void waitForSlot(int slot_index){
+        long _fence = slotFences[slot_index];
+        if (_fence == 0){
+            return;
+        }
+        int _wait = GLES31.glClientWaitSync(_fence, GLES31.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOSECONDS);
+        deleteFence(slot_index);
+        if (_wait == GLES31.GL_TIMEOUT_EXPIRED || _wait == GLES31.GL_WAIT_FAILED){
+            GlUtilities.ensureGles31Call("glClientWaitSync( ring )");
+            throw new RenderingRuntimeException("glClientWaitSync( ring ) failed: slot " + slot_index + " is still used by the GPU");
+        }
+    }
+
+    private void createFence(int slot_index){
+        slotFences[slot_index] = GLES31.glFenceSync(GLES31.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        GlUtilities.ensureGles31Call("glFenceSync( ring )");
+    }
+
+    private void deleteFence(int slot_index){
+        if (slotFences[slot_index] != 0){
+            GLES31.glDeleteSync(slotFences[slot_index]);
+            slotFences[slot_index] = 0;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class describes a Vertex Array Object (VAO): its Vertex Buffer Objects (VBO), the attributes they contain
+ * and its indices buffer.<br>
+ * Attribute metadata are stored in flat primitive arrays indexed by attribute rank, so that adapting
+ * a VAO to a shader program neither allocates nor looks up any map.<br>
+ * Layouts are created by {@link IRenderable#setupBuffers(java.util.List, int[], IRenderable.BufferLayout)}, or in two steps
+ * when buffers are uploaded in another context, and must be released by {@link IRenderable#releaseBuffers(VertexLayout)}.
+ */
+public final class VertexLayout {
+
+    /**
+     * -1 until the VAO is created (see {@link IRenderable#setupVertexArray(VertexLayout)}).
+     */
+    int vertexArrayObject;
+    final int vertexCount;
+
+    final int[] bufferIds;
+    int bufferCount = 0;
+
+    int indexBuffer = -1;
+    /**
+     * The type of indices, chosen from the vertex count (see {@link IRenderable#indexTypeFor(int)}).
+     */
+    int indexType = GLES31.GL_UNSIGNED_SHORT;
+    int indexByteSize = Short.BYTES;
+    int indexCount = 0;
+
+    /**
+     * The VBO holding per-instance data (see {@link IRenderable#setupInstanceBuffer(VertexLayout, List, int)}), or -1.
+     */
+    int instanceBuffer = -1;
+    int instanceCount = 0;
+
+    /**
+     * The bytes allocated in the buffers of the VAO, indices included, and in its instance buffer. Shared buffers are
+     * added and moved between VAOs by {@link SharedBufferRegistry}.
+     */
+    int bufferByteCount = 0;
+    int instanceByteCount = 0;
+
+    String[] attributeNames;
+    int[] attributeBuffers;
+    /**
+     * The index of the {@link IRenderable.DataToVbo} the attribute comes from, in the list given at setup.
+     */
+    int[] attributeSources;
+    /**
+     * Matrices take one attribute location per column: this is the column, to be added to the matrix location.
+     */
+    int[] locationOffsets;
+    /**
+     * The location of attributes named after {@link ShaderAttributes}, column offset included, or -1 for custom attributes,
+     * which location is looked up in each program.
+     */
+    int[] fixedLocations;
+    int programDependentCount = 0;
+    int[] componentCounts;
+    int[] dataTypes;
+    boolean[] normalized;
+    int[] byteStrides;
+    int[] byteOffsets;
+    /**
+     * 0 for per-vertex attributes, 1 for per-instance attributes, as given to glVertexAttribDivisor().
+     */
+    int[] divisors;
+    int attributeCount = 0;
+
+    /**
+     * Not null when vertex data are streamed through a ring buffer: attributes offsets are then relative to
+     * {@link #baseByteOffset}, the offset of the ring buffer slot written last.
+     */
+    StreamingRingBuffer streamingBuffer = null;
+    int baseByteOffset = 0;
+
+    /**
+     * Scratch ranges used to merge the dirty ranges of the attributes sharing a VBO.
+     */
+    final DirtyRanges pendingRanges = new DirtyRanges(IRenderable.DIRTY_RANGES_MERGE_GAP);
+
+    /**
+     * Action to run when an OpenGL call fails. It is created once to avoid allocations on the draw path.
+     */
+    final Runnable releaser;
+
+    VertexLayout(int vertex_array_object, int vertex_count, int max_buffer_count, int max_attribute_count){
+        vertexArrayObject = vertex_array_object;
+        vertexCount = vertex_count;
+        bufferIds = new int[max_buffer_count];
+        attributeNames = new String[max_attribute_count];
+        attributeBuffers = new int[max_attribute_count];
+        attributeSources = new int[max_attribute_count];
+        locationOffsets = new int[max_attribute_count];
+        fixedLocations = new int[max_attribute_count];
+        componentCounts = new int[max_attribute_count];
+        dataTypes = new int[max_attribute_count];
+        normalized = new boolean[max_attribute_count];
+        byteStrides = new int[max_attribute_count];
+        byteOffsets = new int[max_attribute_count];
+        divisors = new int[max_attribute_count];
+        releaser = () -> IRenderable.releaseBuffers(this);
+    }
+
+    void addBuffer(int vbo_id){
+        bufferIds[bufferCount++] = vbo_id;
+    }
+
+    /**
+     * Makes the VAO use another VBO of the same content, e.g. a copy of a shared one.
+     */
+    void replaceBuffer(int old_vbo_id, int new_vbo_id){
+        for (int _b = 0; _b < bufferCount; _b++){
+            if (bufferIds[_b] == old_vbo_id){
+                bufferIds[_b] = new_vbo_id;
+            }
+        }
+        for (int _i = 0; _i < attributeCount; _i++){
+            if (attributeBuffers[_i] == old_vbo_id){
+                attributeBuffers[_i] = new_vbo_id;
+            }
+        }
+    }
+
+    void addAttribute(int vbo_id, String attribute_name, int component_count, int data_type, boolean normalized_,
+                      int byte_stride, int byte_offset){
+        addAttribute(vbo_id, attributeCount, attribute_name, 0, component_count, data_type, normalized_, byte_stride, byte_offset, 0);
+    }
+
+    void addAttribute(int vbo_id, int source_index, String attribute_name, int location_offset, int component_count, int data_type,
+                      boolean normalized_, int byte_stride, int byte_offset, int divisor_){
+        ensureAttributeCapacity(attributeCount + 1);
+        attributeNames[attributeCount] = attribute_name;
+        attributeBuffers[attributeCount] = vbo_id;
+        attributeSources[attributeCount] = source_index;
+        locationOffsets[attributeCount] = location_offset;
+        int _location = ShaderAttributes.locationOf(attribute_name);
+        fixedLocations[attributeCount] = (_location < 0 ? -1 : _location + location_offset);
+        if (_location < 0){
+            programDependentCount++;
+        }
+        componentCounts[attributeCount] = component_count;
+        dataTypes[attributeCount] = data_type;
+        normalized[attributeCount] = normalized_;
+        byteStrides[attributeCount] = byte_stride;
+        byteOffsets[attributeCount] = byte_offset;
+        divisors[attributeCount] = divisor_;
+        attributeCount++;
+    }
+
+    /**
+     * Grows attribute arrays, e.g. when per-instance attributes are added. This only happens at setup.
+     */
+    private void ensureAttributeCapacity(int attribute_count){
+        if (attribute_count <= attributeNames.length){
+            return;
+        }
+        int _capacity = Math.max(attribute_count, attributeNames.length * 2);
+        attributeNames = Arrays.copyOf(attributeNames, _capacity);
+        attributeBuffers = Arrays.copyOf(attributeBuffers, _capacity);
+        attributeSources = Arrays.copyOf(attributeSources, _capacity);
+        locationOffsets = Arrays.copyOf(locationOffsets, _capacity);
+        fixedLocations = Arrays.copyOf(fixedLocations, _capacity);
+        componentCounts = Arrays.copyOf(componentCounts, _capacity);
+        dataTypes = Arrays.copyOf(dataTypes, _capacity);
+        normalized = Arrays.copyOf(normalized, _capacity);
+        byteStrides = Arrays.copyOf(byteStrides, _capacity);
+        byteOffsets = Arrays.copyOf(byteOffsets, _capacity);
+        divisors = Arrays.copyOf(divisors, _capacity);
+    }
+
+    /**
+     * @return true if some attributes are not named after {@link ShaderAttributes}: they must be adapted to each program
+     * (see {@link IRenderable#adaptBuffersToProgram(VertexLayout, int)}).
+     */
+    public boolean dependsOnProgram(){
+        return programDependentCount > 0;
+    }
+
+    public int getVertexArrayObject() {
+        return vertexArrayObject;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return The VBO containing the indices, or -1 if not set up.
+     */
+    public int getIndexBuffer() {
+        return indexBuffer;
+    }
+
+    /**
+     * @return The ring buffer vertex data are streamed through, or null if data are uploaded once.
+     */
+    public StreamingRingBuffer getStreamingBuffer() {
+        return streamingBuffer;
+    }
+
+    /**
+     * @return The type to give to glDrawElements(): {@link GLES31#GL_UNSIGNED_BYTE}, {@link GLES31#GL_UNSIGNED_SHORT} or {@link GLES31#GL_UNSIGNED_INT}
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return The size of an index in bytes, to compute glDrawElements() offsets.
+     */
+    public int getIndexByteSize() {
+        return indexByteSize;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return The VBO containing per-instance data, or -1 if the VAO is not instanced.
+     */
+    public int getInstanceBuffer() {
+        return instanceBuffer;
+    }
+
+    /**
+     * @return The number of instances which data have been uploaded, 0 if the VAO is not instanced.
+     */
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * Gives the GPU memory used by the VAO, e.g. to enforce a memory budget. A buffer shared by several VAOs
+     * (see {@link SharedBufferRegistry}) is counted by one of them only, so that the sum over VAOs is the actual memory use.
+     * @return The number of bytes of the VAO buffers, including indices, streaming slots and instance data.
+     */
+    public int getAllocatedByteCount() {
+        return bufferByteCount + instanceByteCount;
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    /**
+     * @param attribute_rank in [0, {@link #getAttributeCount()}[
+     * @return The attribute name following the convention on {@link ShaderAttributes}
+     */
+    public String getAttributeName(int attribute_rank){
+        return attributeNames[attribute_rank];
+    }
+
+    /**
+     * @param attribute_rank in [0, {@link #getAttributeCount()}[
+     * @return The VBO the attribute lies in.
+     */
+    public int getAttributeBuffer(int attribute_rank){
+        return attributeBuffers[attribute_rank];
+    }
+
+    /**
+     * @param attribute_rank in [0, {@link #getAttributeCount()}[
+     * @return 0 for per-vertex attributes, 1 for per-instance attributes.
+     */
+    public int getAttributeDivisor(int attribute_rank){
+        return divisors[attribute_rank];
+    }
+
+    /**
+     * @param attribute_rank in [0, {@link #getAttributeCount()}[
+     * @return The number of bytes between two consecutive vertex data of the attribute.
+     */
+    public int getAttributeByteStride(int attribute_rank){
+        return byteStrides[attribute_rank];
+    }
+
+    /**
+     * @param attribute_rank in [0, {@link #getAttributeCount()}[
+     * @return The offset of the first vertex data of the attribute in its VBO.
+     */
+    public int getAttributeByteOffset(int attribute_rank){
+        return baseByteOffset + byteOffsets[attribute_rank];
+    }
+}
@@ -0,0 +1,246 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class culls many renderables faster than testing each one against a {@link Frustum}: renderables are grouped in a
+ * binary tree of boxes, and a box out of the frustum skips all its renderables at once, as a box inside the frustum keeps them
+ * all without testing them.<br>
+ * The tree is built once, top-down, by splitting renderables at the median of their centers along the longest axis. It is made
+ * for static scenes: it must be built again when renderables move.
+ * Nodes are stored in primitive arrays in depth first order, so that culling does not allocate anything.
+ */
+public final class BoundingVolumeHierarchy {
+
+    /**
+     * Nodes with at most that many renderables are not split.
+     */
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int DATA_PER_BOX = 6;
+
+    private final IRenderable[] sortedRenderables;
+    private final List<IRenderable> unboundedRenderables = new ArrayList<>();
+    private final float[] itemBoxes;
+    private final float[] itemCenters;
+
+    private float[] nodeBoxes;
+    /**
+     * Each node covers the renderables [nodeFirstItems, nodeFirstItems + nodeItemCounts[ of {@link #sortedRenderables}.
+     */
+    private int[] nodeFirstItems;
+    private int[] nodeItemCounts;
+    /**
+     * The second child of inner nodes (the first one follows its parent), or -1 for leaves.
+     */
+    private int[] nodeSecondChildren;
+    private int nodeCount = 0;
+    private final int[] cullStack;
+
+    /**
+     * Builds the hierarchy of renderables placed in the world.
+     * @param renderables_ The renderables. Those without bounds are never culled.
+     * @param model_matrices The model matrix of each renderable (column major, as in {@link android.opengl.Matrix}), in the order of
+     *                       renderables_. May be null if renderables are already in world coordinates, as may be each matrix.
+     * @throws RenderingRuntimeException if matrices do not match renderables.
+     */
+    public BoundingVolumeHierarchy(List<? extends IRenderable> renderables_, List<float[]> model_matrices){
+        if (model_matrices != null && model_matrices.size() != renderables_.size()){
+            throw new RenderingRuntimeException("Bad model matrix count =" + model_matrices.size() + " expected " + renderables_.size());
+        }
+        List<IRenderable> _bounded = new ArrayList<>();
+        List<Bounds> _world_bounds = new ArrayList<>();
+        for (int _r = 0; _r < renderables_.size(); _r++){
+            IRenderable _renderable = renderables_.get(_r);
+            Bounds _bounds = _renderable.getBounds();
+            if (_bounds == null){
+                unboundedRenderables.add(_renderable);
+                continue;
+            }
+            Bounds _world = new Bounds();
+            float[] _model = (model_matrices == null ? null : model_matrices.get(_r));
+            if (_model == null){
+                _world.set(_bounds);
+            }
+            else {
+                _bounds.transform(_model, _world);
+            }
+            _bounded.add(_renderable);
+            _world_bounds.add(_world);
+        }
+
+        int _item_count = _bounded.size();
+        sortedRenderables = _bounded.toArray(new IRenderable[0]);
+        itemBoxes = new float[_item_count * DATA_PER_BOX];
+        itemCenters = new float[_item_count * 3];
+        for (int _i = 0; _i < _item_count; _i++){
+            Bounds _b = _world_bounds.get(_i);
+            setBox(itemBoxes, _i, _b.getMinX(), _b.getMinY(), _b.getMinZ(), _b.getMaxX(), _b.getMaxY(), _b.getMaxZ());
+            itemCenters[3 * _i] = (_b.getMinX() + _b.getMaxX()) / 2;
+            itemCenters[3 * _i + 1] = (_b.getMinY() + _b.getMaxY()) / 2;
+            itemCenters[3 * _i + 2] = (_b.getMinZ() + _b.getMaxZ()) / 2;
+        }
+
+        int _max_nodes = Math.max(1, 2 * _item_count);
+        nodeBoxes = new float[_max_nodes * DATA_PER_BOX];
+        nodeFirstItems = new int[_max_nodes];
+        nodeItemCounts = new int[_max_nodes];
+        nodeSecondChildren = new int[_max_nodes];
+        if (_item_count > 0){
+            buildNode(0, _item_count);
+        }
+        cullStack = new int[Math.max(1, nodeCount)];
+    }
+
+    /**
+     * Appends the renderables that may be visible to a list.
+     * @param world_frustum The frustum of the view projection matrix
+     * @param visible_renderables Receives the renderables which bounds are not out of the frustum, and those without bounds.
+     */
+    public void cull(Frustum world_frustum, List<IRenderable> visible_renderables){
+        visible_renderables.addAll(unboundedRenderables);
+        if (nodeCount == 0){
+            return;
+        }
+        int _stack_size = 0;
+        cullStack[_stack_size++] = 0;
+        while (_stack_size > 0){
+            int _node = cullStack[--_stack_size];
+            int _o = _node * DATA_PER_BOX;
+            int _location = world_frustum.classifyBox(nodeBoxes[_o], nodeBoxes[_o + 1], nodeBoxes[_o + 2],
+                    nodeBoxes[_o + 3], nodeBoxes[_o + 4], nodeBoxes[_o + 5]);
+            if (_location == Frustum.OUTSIDE){
+                continue;
+            }
+            if (_location == Frustum.INSIDE || nodeSecondChildren[_node] < 0){
+                int _first = nodeFirstItems[_node];
+                boolean _tests_items = (_location != Frustum.INSIDE);
+                for (int _i = _first; _i < _first + nodeItemCounts[_node]; _i++){
+                    int _io = _i * DATA_PER_BOX;
+                    if (!_tests_items || world_frustum.classifyBox(itemBoxes[_io], itemBoxes[_io + 1], itemBoxes[_io + 2],
+                            itemBoxes[_io + 3], itemBoxes[_io + 4], itemBoxes[_io + 5]) != Frustum.OUTSIDE){
+                        visible_renderables.add(sortedRenderables[_i]);
+                    }
+                }
+                continue;
+            }
+            cullStack[_stack_size++] = nodeSecondChildren[_node];
+            cullStack[_stack_size++] = _node + 1;
+        }
+    }
+
+    /**
+     * @return The number of renderables, bounded or not.
+     */
+    public int getRenderableCount(){
+        return sortedRenderables.length + unboundedRenderables.size();
+    }
+
+    /**
+     * @return The number of tree nodes.
+     */
+    public int getNodeCount(){
+        return nodeCount;
+    }
+
+    private int buildNode(int first_item, int item_count){
+        int _node = nodeCount++;
+        nodeFirstItems[_node] = first_item;
+        nodeItemCounts[_node] = item_count;
+
+        float _min_x = Float.MAX_VALUE, _min_y = Float.MAX_VALUE, _min_z = Float.MAX_VALUE;
+        float _max_x = -Float.MAX_VALUE, _max_y = -Float.MAX_VALUE, _max_z = -Float.MAX_VALUE;
+        float _cmin_x = Float.MAX_VALUE, _cmin_y = Float.MAX_VALUE, _cmin_z = Float.MAX_VALUE;
+        float _cmax_x = -Float.MAX_VALUE, _cmax_y = -Float.MAX_VALUE, _cmax_z = -Float.MAX_VALUE;
+        for (int _i = first_item; _i < first_item + item_count; _i++){
+            int _o = _i * DATA_PER_BOX;
+            _min_x = Math.min(_min_x, itemBoxes[_o]);
+            _min_y = Math.min(_min_y, itemBoxes[_o + 1]);
+            _min_z = Math.min(_min_z, itemBoxes[_o + 2]);
+            _max_x = Math.max(_max_x, itemBoxes[_o + 3]);
+            _max_y = Math.max(_max_y, itemBoxes[_o + 4]);
+            _max_z = Math.max(_max_z, itemBoxes[_o + 5]);
+            _cmin_x = Math.min(_cmin_x, itemCenters[3 * _i]);
+            _cmin_y = Math.min(_cmin_y, itemCenters[3 * _i + 1]);
+            _cmin_z = Math.min(_cmin_z, itemCenters[3 * _i + 2]);
+            _cmax_x = Math.max(_cmax_x, itemCenters[3 * _i]);
+            _cmax_y = Math.max(_cmax_y, itemCenters[3 * _i + 1]);
+            _cmax_z = Math.max(_cmax_z, itemCenters[3 * _i + 2]);
+        }
+        setBox(nodeBoxes, _node, _min_x, _min_y, _min_z, _max_x, _max_y, _max_z);
+
+        if (item_count <= MAX_LEAF_SIZE){
+            nodeSecondChildren[_node] = -1;
+            return _node;
+        }
+        // Splits at the median center along the longest axis of the centers
+        float _ex = _cmax_x - _cmin_x, _ey = _cmax_y - _cmin_y, _ez = _cmax_z - _cmin_z;
+        int _axis = (_ex >= _ey && _ex >= _ez) ? 0 : (_ey >= _ez ? 1 : 2);
+        int _half = item_count / 2;
+        selectNth(first_item, first_item + item_count - 1, first_item + _half, _axis);
+
+        buildNode(first_item, _half);
+        nodeSecondChildren[_node] = buildNode(first_item + _half, item_count - _half);
+        return _node;
+    }
+
+    /**
+     * Partially sorts items of [left_, right_] along an axis so that the nth one is in place (Hoare's selection).
+     */
+    private void selectNth(int left_, int right_, int nth_, int axis_){
+        while (left_ < right_){
+            float _pivot = itemCenters[3 * ((left_ + right_) >>> 1) + axis_];
+            int _i = left_;
+            int _j = right_;
+            while (_i <= _j){
+                while (itemCenters[3 * _i + axis_] < _pivot){
+                    _i++;
+                }
+                while (itemCenters[3 * _j + axis_] > _pivot){
+                    _j--;
+                }
+                if (_i <= _j){
+                    swapItems(_i++, _j--);
+                }
+            }
+            if (nth_ <= _j){
+                right_ = _j;
+            }
+            else if (nth_ >= _i){
+                left_ = _i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private void swapItems(int i_, int j_){
+        IRenderable _renderable = sortedRenderables[i_];
+        sortedRenderables[i_] = sortedRenderables[j_];
+        sortedRenderables[j_] = _renderable;
+        for (int _k = 0; _k < DATA_PER_BOX; _k++){
+            float _tmp = itemBoxes[i_ * DATA_PER_BOX + _k];
+            itemBoxes[i_ * DATA_PER_BOX + _k] = itemBoxes[j_ * DATA_PER_BOX + _k];
+            itemBoxes[j_ * DATA_PER_BOX + _k] = _tmp;
+        }
+        for (int _k = 0; _k < 3; _k++){
+            float _tmp = itemCenters[3 * i_ + _k];
+            itemCenters[3 * i_ + _k] = itemCenters[3 * j_ + _k];
+            itemCenters[3 * j_ + _k] = _tmp;
+        }
+    }
+
+    private static void setBox(float[] boxes_, int box_index, float min_x, float min_y, float min_z, float max_x, float max_y, float max_z){
+        int _o = box_index * DATA_PER_BOX;
+        boxes_[_o] = min_x;
+        boxes_[_o + 1] = min_y;
+        boxes_[_o + 2] = min_z;
+        boxes_[_o + 3] = max_x;
+        boxes_[_o + 4] = max_y;
+        boxes_[_o + 5] = max_z;
+    }
+}
@@ -0,0 +1,169 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+
+/**
+ * This class represents the volume taken by a renderable, both as an axis-aligned bounding box (AABB) and as a sphere:
+ * spheres are tested faster against frustum planes, boxes are tighter.<br>
+ * Bounds are mutable so that they can be transformed into preallocated bounds each frame.
+ */
+public final class Bounds {
+
+    private final float[] boxMin = new float[3];
+    private final float[] boxMax = new float[3];
+    /**
+     * {center x, center y, center z, radius}
+     */
+    private final float[] sphere = new float[4];
+
+    /**
+     * Creates empty bounds at the origin.
+     */
+    public Bounds(){
+    }
+
+    /**
+     * Computes the bounds of vertices: their box, and a sphere centered on the box that contains all of them.
+     * @param xyzw_vertices x y z w per vertex
+     * @return The bounds, empty at the origin if there are no vertices.
+     */
+    public static Bounds fromVertices(float[] xyzw_vertices){
+        Bounds _res = new Bounds();
+        if (xyzw_vertices.length < IRenderable.DATA_PER_VERTEX){
+            return _res;
+        }
+        float _min_x = Float.MAX_VALUE, _min_y = Float.MAX_VALUE, _min_z = Float.MAX_VALUE;
+        float _max_x = -Float.MAX_VALUE, _max_y = -Float.MAX_VALUE, _max_z = -Float.MAX_VALUE;
+        for (int _i = 0; _i + 2 < xyzw_vertices.length; _i += IRenderable.DATA_PER_VERTEX){
+            _min_x = Math.min(_min_x, xyzw_vertices[_i]);
+            _max_x = Math.max(_max_x, xyzw_vertices[_i]);
+            _min_y = Math.min(_min_y, xyzw_vertices[_i + 1]);
+            _max_y = Math.max(_max_y, xyzw_vertices[_i + 1]);
+            _min_z = Math.min(_min_z, xyzw_vertices[_i + 2]);
+            _max_z = Math.max(_max_z, xyzw_vertices[_i + 2]);
+        }
+        _res.setBox(_min_x, _min_y, _min_z, _max_x, _max_y, _max_z);
+        float _max_square = 0;
+        for (int _i = 0; _i + 2 < xyzw_vertices.length; _i += IRenderable.DATA_PER_VERTEX){
+            float _dx = xyzw_vertices[_i] - _res.sphere[0];
+            float _dy = xyzw_vertices[_i + 1] - _res.sphere[1];
+            float _dz = xyzw_vertices[_i + 2] - _res.sphere[2];
+            _max_square = Math.max(_max_square, _dx * _dx + _dy * _dy + _dz * _dz);
+        }
+        _res.sphere[3] = (float) Math.sqrt(_max_square);
+        return _res;
+    }
+
+    /**
+     * Sets the box, and the sphere circumscribed to the box.
+     */
+    public void setBox(float min_x, float min_y, float min_z, float max_x, float max_y, float max_z){
+        boxMin[0] = min_x;
+        boxMin[1] = min_y;
+        boxMin[2] = min_z;
+        boxMax[0] = max_x;
+        boxMax[1] = max_y;
+        boxMax[2] = max_z;
+        sphere[0] = (min_x + max_x) / 2;
+        sphere[1] = (min_y + max_y) / 2;
+        sphere[2] = (min_z + max_z) / 2;
+        float _dx = (max_x - min_x) / 2;
+        float _dy = (max_y - min_y) / 2;
+        float _dz = (max_z - min_z) / 2;
+        sphere[3] = (float) Math.sqrt(_dx * _dx + _dy * _dy + _dz * _dz);
+    }
+
+    /**
+     * Sets the sphere only, e.g. a tighter one than the sphere circumscribed to the box given by
+     * {@link #setBox(float, float, float, float, float, float)}.
+     */
+    public void setSphere(float center_x, float center_y, float center_z, float radius_){
+        sphere[0] = center_x;
+        sphere[1] = center_y;
+        sphere[2] = center_z;
+        sphere[3] = radius_;
+    }
+
+    /**
+     * Copies other bounds.
+     */
+    public void set(Bounds other_bounds){
+        System.arraycopy(other_bounds.boxMin, 0, boxMin, 0, 3);
+        System.arraycopy(other_bounds.boxMax, 0, boxMax, 0, 3);
+        System.arraycopy(other_bounds.sphere, 0, sphere, 0, 4);
+    }
+
+    /**
+     * Computes into result_bounds these bounds transformed by a matrix, without allocating anything.
+     * The box is the box of the transformed box (Arvo's method), the sphere radius is scaled by the largest axis scaling.
+     * @param transform_matrix Column major, as in {@link android.opengl.Matrix}. Must be affine.
+     * @param result_bounds Receives the result. May be these bounds.
+     */
+    public void transform(float[] transform_matrix, Bounds result_bounds){
+        float _min_x = transform_matrix[12], _min_y = transform_matrix[13], _min_z = transform_matrix[14];
+        float _max_x = _min_x, _max_y = _min_y, _max_z = _min_z;
+        for (int _col = 0; _col < 3; _col++){
+            float _lo = boxMin[_col];
+            float _hi = boxMax[_col];
+            float _ax = transform_matrix[4 * _col] * _lo, _bx = transform_matrix[4 * _col] * _hi;
+            float _ay = transform_matrix[4 * _col + 1] * _lo, _by = transform_matrix[4 * _col + 1] * _hi;
+            float _az = transform_matrix[4 * _col + 2] * _lo, _bz = transform_matrix[4 * _col + 2] * _hi;
+            _min_x += Math.min(_ax, _bx);
+            _max_x += Math.max(_ax, _bx);
+            _min_y += Math.min(_ay, _by);
+            _max_y += Math.max(_ay, _by);
+            _min_z += Math.min(_az, _bz);
+            _max_z += Math.max(_az, _bz);
+        }
+
+        float _cx = sphere[0], _cy = sphere[1], _cz = sphere[2];
+        float _scale_square = 0;
+        for (int _col = 0; _col < 3; _col++){
+            float _x = transform_matrix[4 * _col], _y = transform_matrix[4 * _col + 1], _z = transform_matrix[4 * _col + 2];
+            _scale_square = Math.max(_scale_square, _x * _x + _y * _y + _z * _z);
+        }
+        float _radius = sphere[3] * (float) Math.sqrt(_scale_square);
+
+        result_bounds.boxMin[0] = _min_x;
+        result_bounds.boxMin[1] = _min_y;
+        result_bounds.boxMin[2] = _min_z;
+        result_bounds.boxMax[0] = _max_x;
+        result_bounds.boxMax[1] = _max_y;
+        result_bounds.boxMax[2] = _max_z;
+        result_bounds.sphere[0] = transform_matrix[0] * _cx + transform_matrix[4] * _cy + transform_matrix[8] * _cz + transform_matrix[12];
+        result_bounds.sphere[1] = transform_matrix[1] * _cx + transform_matrix[5] * _cy + transform_matrix[9] * _cz + transform_matrix[13];
+        result_bounds.sphere[2] = transform_matrix[2] * _cx + transform_matrix[6] * _cy + transform_matrix[10] * _cz + transform_matrix[14];
+        result_bounds.sphere[3] = _radius;
+    }
+
+    public float getMinX(){
+        return boxMin[0];
+    }
+
+    public float getMinY(){
+        return boxMin[1];
+    }
+
+    public float getMinZ(){
+        return boxMin[2];
+    }
+
+    public float getMaxX(){
+        return boxMax[0];
+    }
+
+    public float getMaxY(){
+        return boxMax[1];
+    }
+
+    public float getMaxZ(){
+        return boxMax[2];
+    }
+
+    /**
+     * @return {center x, center y, center z, radius}. The array must not be modified.
+     */
+    public float[] getSphere(){
+        return sphere;
+    }
+}
@@ -0,0 +1,152 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+
+/**
+ * This class represents the volume seen through a model view projection matrix, as 6 planes extracted from the matrix
+ * (Gribb and Hartmann's "Fast Extraction of Viewing Frustum Planes from the World-View-Projection Matrix").<br>
+ * Bounds are expressed in the coordinates the matrix transforms: model coordinates for a MVP, world coordinates for a
+ * view projection matrix. Tests are conservative: they may keep invisible bounds near frustum corners, never the contrary.<br>
+ * A frustum is meant to be set each frame with {@link #set(float[])}: nothing is allocated.
+ */
+public final class Frustum {
+
+    /**
+     * Bounds are outside the frustum.
+     */
+    public static final int OUTSIDE = 0;
+    /**
+     * Bounds cross the frustum boundary.
+     */
+    public static final int INTERSECTING = 1;
+    /**
+     * Bounds are inside the frustum.
+     */
+    public static final int INSIDE = 2;
+
+    private static final int PLANE_COUNT = 6;
+    private static final int DATA_PER_PLANE = 4;
+
+    /**
+     * a b c d per plane, normalized, normals pointing inside: left, right, bottom, top, near, far.
+     */
+    private final float[] planes = new float[PLANE_COUNT * DATA_PER_PLANE];
+
+    /**
+     * Creates a frustum containing everything until {@link #set(float[])} is called.
+     */
+    public Frustum(){
+    }
+
+    /**
+     * Creates the frustum of a matrix.
+     * @see #set(float[])
+     */
+    public Frustum(float[] mvp_matrix){
+        set(mvp_matrix);
+    }
+
+    /**
+     * Extracts the planes of a matrix.
+     * @param mvp_matrix The model view projection matrix, column major (as in {@link android.opengl.Matrix})
+     */
+    public void set(float[] mvp_matrix){
+        for (int _p = 0; _p < PLANE_COUNT; _p++){
+            // Clip space: -w <= x, y, z <= w, i.e. row 3 + or - row 0, 1, 2
+            int _row = _p / 2;
+            float _sign = (_p % 2 == 0) ? 1f : -1f;
+            float _a = mvp_matrix[3] + _sign * mvp_matrix[_row];
+            float _b = mvp_matrix[7] + _sign * mvp_matrix[4 + _row];
+            float _c = mvp_matrix[11] + _sign * mvp_matrix[8 + _row];
+            float _d = mvp_matrix[15] + _sign * mvp_matrix[12 + _row];
+            float _norm = (float) Math.sqrt(_a * _a + _b * _b + _c * _c);
+            if (_norm > 0){
+                _a /= _norm;
+                _b /= _norm;
+                _c /= _norm;
+                _d /= _norm;
+            }
+            planes[DATA_PER_PLANE * _p] = _a;
+            planes[DATA_PER_PLANE * _p + 1] = _b;
+            planes[DATA_PER_PLANE * _p + 2] = _c;
+            planes[DATA_PER_PLANE * _p + 3] = _d;
+        }
+    }
+
+    /**
+     * @return false if the renderable is surely out of the frustum. Renderables without bounds are always visible.
+     */
+    public boolean isVisible(IRenderable renderable_){
+        return isVisible(renderable_.getBounds());
+    }
+
+    /**
+     * @param bounds_ The bounds, or null if unknown.
+     * @return false if the bounds are surely out of the frustum.
+     */
+    public boolean isVisible(Bounds bounds_){
+        return bounds_ == null || classify(bounds_) != OUTSIDE;
+    }
+
+    /**
+     * Locates bounds: the sphere is tested first, then the box against planes crossing the sphere.
+     * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}
+     */
+    public int classify(Bounds bounds_){
+        float[] _sphere = bounds_.getSphere();
+        int _res = INSIDE;
+        for (int _p = 0; _p < PLANE_COUNT; _p++){
+            float _distance = planeDistance(_p, _sphere[0], _sphere[1], _sphere[2]);
+            if (_distance < -_sphere[3]){
+                return OUTSIDE;
+            }
+            if (_distance < _sphere[3]){
+                int _box = classifyBox(_p, bounds_.getMinX(), bounds_.getMinY(), bounds_.getMinZ(),
+                        bounds_.getMaxX(), bounds_.getMaxY(), bounds_.getMaxZ());
+                if (_box == OUTSIDE){
+                    return OUTSIDE;
+                }
+                if (_box == INTERSECTING){
+                    _res = INTERSECTING;
+                }
+            }
+        }
+        return _res;
+    }
+
+    /**
+     * Locates a box.
+     * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}
+     */
+    public int classifyBox(float min_x, float min_y, float min_z, float max_x, float max_y, float max_z){
+        int _res = INSIDE;
+        for (int _p = 0; _p < PLANE_COUNT; _p++){
+            int _box = classifyBox(_p, min_x, min_y, min_z, max_x, max_y, max_z);
+            if (_box == OUTSIDE){
+                return OUTSIDE;
+            }
+            if (_box == INTERSECTING){
+                _res = INTERSECTING;
+            }
+        }
+        return _res;
+    }
+
+    private int classifyBox(int plane_index, float min_x, float min_y, float min_z, float max_x, float max_y, float max_z){
+        int _o = DATA_PER_PLANE * plane_index;
+        // The box corner farthest along the plane normal (p-vertex), and the nearest one (n-vertex)
+        boolean _a = planes[_o] >= 0, _b = planes[_o + 1] >= 0, _c = planes[_o + 2] >= 0;
+        if (planeDistance(plane_index, _a ? max_x : min_x, _b ? max_y : min_y, _c ? max_z : min_z) < 0){
+            return OUTSIDE;
+        }
+        if (planeDistance(plane_index, _a ? min_x : max_x, _b ? min_y : max_y, _c ? min_z : max_z) < 0){
+            return INTERSECTING;
+        }
+        return INSIDE;
+    }
+
+    private float planeDistance(int plane_index, float x_, float y_, float z_){
+        int _o = DATA_PER_PLANE * plane_index;
+        return planes[_o] * x_ + planes[_o + 1] * y_ + planes[_o + 2] * z_ + planes[_o + 3];
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Renderables out of view can be skipped before being drawn with these classes:
+ * <ul>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.culling.Bounds} represent the box and sphere a renderable is drawn in.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.culling.Frustum} is the volume seen through a model view projection matrix.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.culling.BoundingVolumeHierarchy} culls many renderables at once.</li>
+ * </ul>
+ */
+package org.c4sci.camera2opengl.glTools.renderables.culling;
@@ -0,0 +1,248 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class reads a channel chunk by chunk, and parses text numbers and binary values straight from the bytes:
+ * no line nor token string is created.
+ */
+final class ChunkedInput {
+
+    static final int END_OF_INPUT = -1;
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Decimal digits beyond that do not change a float.
+     */
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+    private boolean channelIsOver = false;
+
+    ChunkedInput(ReadableByteChannel channel_){
+        channel = channel_;
+        chunk.limit(0);
+    }
+
+    /**
+     * Sets the byte order of binary values.
+     */
+    void setOrder(ByteOrder byte_order){
+        chunk.order(byte_order);
+    }
+
+    /**
+     * @return The next byte, without consuming it, or {@link #END_OF_INPUT}.
+     */
+    int peek() throws IOException {
+        if (!chunk.hasRemaining() && !fill(1)){
+            return END_OF_INPUT;
+        }
+        return chunk.get(chunk.position()) & 0xFF;
+    }
+
+    /**
+     * @return The next byte, or {@link #END_OF_INPUT}.
+     */
+    int read() throws IOException {
+        if (!chunk.hasRemaining() && !fill(1)){
+            return END_OF_INPUT;
+        }
+        return chunk.get() & 0xFF;
+    }
+
+    /**
+     * Skips spaces and tabs, not line ends.
+     */
+    void skipBlanks() throws IOException {
+        int _c = peek();
+        while (_c == ' ' || _c == '\t'){
+            chunk.get();
+            _c = peek();
+        }
+    }
+
+    /**
+     * Skips up to the beginning of the next line.
+     */
+    void skipLine() throws IOException {
+        int _c = read();
+        while (_c != '\n' && _c != END_OF_INPUT){
+            _c = read();
+        }
+    }
+
+    /**
+     * @return true if the next non blank byte ends a line (or the input).
+     */
+    boolean isAtLineEnd() throws IOException {
+        skipBlanks();
+        int _c = peek();
+        return _c == '\n' || _c == '\r' || _c == END_OF_INPUT;
+    }
+
+    /**
+     * Reads the next line as a string, to parse short texts such as headers.
+     */
+    String readLine() throws IOException {
+        StringBuilder _res = new StringBuilder();
+        int _c = read();
+        while (_c != '\n' && _c != END_OF_INPUT){
+            if (_c != '\r'){
+                _res.append((char) _c);
+            }
+            _c = read();
+        }
+        return _res.toString();
+    }
+
+    /**
+     * Parses a decimal number after optional blanks, e.g. "-1.5e-3".
+     * @throws RenderingRuntimeException if no number is found.
+     */
+    float parseFloat() throws IOException {
+        skipBlanks();
+        boolean _is_negative = consumeSign();
+        long _mantissa = 0;
+        int _exponent = 0;
+        int _digit_count = 0;
+        int _significant_count = 0;
+        int _c = peek();
+        while (_c >= '0' && _c <= '9'){
+            if (_significant_count < MAX_SIGNIFICANT_DIGITS){
+                _mantissa = 10 * _mantissa + (_c - '0');
+                if (_mantissa != 0){
+                    _significant_count++;
+                }
+            }
+            else {
+                _exponent++;
+            }
+            _digit_count++;
+            chunk.get();
+            _c = peek();
+        }
+        if (_c == '.'){
+            chunk.get();
+            _c = peek();
+            while (_c >= '0' && _c <= '9'){
+                if (_significant_count < MAX_SIGNIFICANT_DIGITS){
+                    _mantissa = 10 * _mantissa + (_c - '0');
+                    if (_mantissa != 0){
+                        _significant_count++;
+                    }
+                    _exponent--;
+                }
+                _digit_count++;
+                chunk.get();
+                _c = peek();
+            }
+        }
+        if (_digit_count == 0){
+            throw new RenderingRuntimeException("Number expected, found " + describe(_c));
+        }
+        if (_c == 'e' || _c == 'E'){
+            chunk.get();
+            boolean _exponent_is_negative = consumeSign();
+            _exponent += (_exponent_is_negative ? -1 : 1) * parseDigits();
+        }
+        double _res = _mantissa;
+        if (_exponent < 0){
+            _res = (-_exponent < POWERS_OF_TEN.length ? _res / POWERS_OF_TEN[-_exponent] : _res * Math.pow(10, _exponent));
+        }
+        else if (_exponent > 0){
+            _res = (_exponent < POWERS_OF_TEN.length ? _res * POWERS_OF_TEN[_exponent] : _res * Math.pow(10, _exponent));
+        }
+        return (float) (_is_negative ? -_res : _res);
+    }
+
+    /**
+     * Parses an integer after optional blanks, e.g. "-12".
+     * @throws RenderingRuntimeException if no integer is found.
+     */
+    int parseInt() throws IOException {
+        skipBlanks();
+        boolean _is_negative = consumeSign();
+        int _res = parseDigits();
+        return _is_negative ? -_res : _res;
+    }
+
+    /**
+     * @return true if the next byte is c_, which is then consumed.
+     */
+    boolean consume(int c_) throws IOException {
+        if (peek() == c_){
+            chunk.get();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes at least byte_count bytes available to {@link #binary()} getters.
+     * @throws RenderingRuntimeException if the input ends before.
+     */
+    void require(int byte_count) throws IOException {
+        if (chunk.remaining() < byte_count && !fill(byte_count)){
+            throw new RenderingRuntimeException("Unexpected end of input");
+        }
+    }
+
+    /**
+     * @return The chunk, for relative binary gets of the bytes made available by {@link #require(int)}.
+     */
+    ByteBuffer binary(){
+        return chunk;
+    }
+
+    private int parseDigits() throws IOException {
+        int _c = peek();
+        if (_c < '0' || _c > '9'){
+            throw new RenderingRuntimeException("Digit expected, found " + describe(_c));
+        }
+        int _res = 0;
+        while (_c >= '0' && _c <= '9'){
+            _res = 10 * _res + (_c - '0');
+            chunk.get();
+            _c = peek();
+        }
+        return _res;
+    }
+
+    private boolean consumeSign() throws IOException {
+        if (consume('-')){
+            return true;
+        }
+        consume('+');
+        return false;
+    }
+
+    /**
+     * Reads until min_remaining bytes are available or the channel is over.
+     * @return true if min_remaining bytes are available.
+     */
+    private boolean fill(int min_remaining) throws IOException {
+        if (min_remaining > CHUNK_SIZE){
+            throw new RenderingRuntimeException("Cannot read " + min_remaining + " bytes at once");
+        }
+        chunk.compact();
+        while (chunk.position() < min_remaining && !channelIsOver){
+            if (channel.read(chunk) < 0){
+                channelIsOver = true;
+            }
+        }
+        chunk.flip();
+        return chunk.remaining() >= min_remaining;
+    }
+
+    private static String describe(int c_){
+        return (c_ == END_OF_INPUT ? "end of input" : "'" + (char) c_ + "'");
+    }
+}
@@ -0,0 +1,65 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable array of floats, so that millions of values can be gathered without boxing them in a list.
+ */
+public final class FloatArrayBuilder {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private float[] values;
+    private int size = 0;
+
+    public FloatArrayBuilder(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initial_capacity The number of values that can be added before growing.
+     */
+    public FloatArrayBuilder(int initial_capacity){
+        values = new float[Math.max(1, initial_capacity)];
+    }
+
+    public void add(float value_){
+        if (size == values.length){
+            grow(size + 1);
+        }
+        values[size++] = value_;
+    }
+
+    public void add(float x_, float y_, float z_, float w_){
+        if (size + 4 > values.length){
+            grow(size + 4);
+        }
+        values[size++] = x_;
+        values[size++] = y_;
+        values[size++] = z_;
+        values[size++] = w_;
+    }
+
+    public float get(int index_){
+        return values[index_];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * @return A copy of the added values.
+     */
+    public float[] toArray(){
+        return Arrays.copyOf(values, size);
+    }
+
+    private void grow(int min_capacity){
+        values = Arrays.copyOf(values, Math.max(min_capacity, values.length + (values.length >> 1)));
+    }
+}
@@ -0,0 +1,67 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable array of ints, so that millions of values can be gathered without boxing them in a list.
+ */
+public final class IntArrayBuilder {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] values;
+    private int size = 0;
+
+    public IntArrayBuilder(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initial_capacity The number of values that can be added before growing.
+     */
+    public IntArrayBuilder(int initial_capacity){
+        values = new int[Math.max(1, initial_capacity)];
+    }
+
+    public void add(int value_){
+        if (size == values.length){
+            grow(size + 1);
+        }
+        values[size++] = value_;
+    }
+
+    /**
+     * Adds a triangle.
+     */
+    public void add(int a_, int b_, int c_){
+        if (size + 3 > values.length){
+            grow(size + 3);
+        }
+        values[size++] = a_;
+        values[size++] = b_;
+        values[size++] = c_;
+    }
+
+    public int get(int index_){
+        return values[index_];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * @return A copy of the added values.
+     */
+    public int[] toArray(){
+        return Arrays.copyOf(values, size);
+    }
+
+    private void grow(int min_capacity){
+        values = Arrays.copyOf(values, Math.max(min_capacity, values.length + (values.length >> 1)));
+    }
+}
@@ -0,0 +1,223 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.IndexedTriangles;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class imports the triangles of Wavefront OBJ files: "v" vertices (with optional "r g b" colors, as written by
+ * scanners), "vt" texture coordinates, "vn" normals and "f" faces, polygons being split into triangle fans. Other
+ * statements (groups, materials, lines ...) are ignored.<br>
+ * The file is streamed chunk by chunk and numbers are parsed from bytes, data being gathered in primitive arrays.
+ * OBJ faces index positions, texture coordinates and normals separately: each distinct combination becomes a vertex,
+ * found back by a {@link VertexWelder}.
+ */
+public final class ObjImporter {
+
+    private static final int KEY_WIDTH = 3;
+    private static final int NO_INDEX = -1;
+
+    private final int meshUsage;
+
+    /**
+     * @param mesh_usage The usage of the imported per-vertex data, e.g. {@link android.opengl.GLES31#GL_STATIC_DRAW}
+     */
+    public ObjImporter(int mesh_usage){
+        meshUsage = mesh_usage;
+    }
+
+    public IndexedTriangles importMesh(File obj_file) throws IOException {
+        try (FileInputStream _stream = new FileInputStream(obj_file)){
+            FileChannel _channel = _stream.getChannel();
+            return importMesh(_channel);
+        }
+    }
+
+    /**
+     * @param obj_stream The OBJ data. It is not closed.
+     */
+    public IndexedTriangles importMesh(InputStream obj_stream) throws IOException {
+        return importMesh(Channels.newChannel(obj_stream));
+    }
+
+    /**
+     * Imports a mesh.
+     * @param obj_channel The OBJ data, e.g. a {@link FileChannel}. It is not closed.
+     * @return The triangles, with {@link ShaderAttributes#COLOR}, {@link ShaderAttributes#TEXCOORD} and {@link ShaderAttributes#NORMAL}
+     * data if the file has some.
+     * @throws IOException if the channel cannot be read.
+     * @throws RenderingRuntimeException if the data are not valid OBJ.
+     */
+    public IndexedTriangles importMesh(ReadableByteChannel obj_channel) throws IOException {
+        ChunkedInput _input = new ChunkedInput(obj_channel);
+        FloatArrayBuilder _positions = new FloatArrayBuilder();
+        FloatArrayBuilder _colors = null;
+        FloatArrayBuilder _texcoords = new FloatArrayBuilder();
+        FloatArrayBuilder _normals = new FloatArrayBuilder();
+        IntArrayBuilder _triangles = new IntArrayBuilder();
+        VertexWelder _welder = new VertexWelder(KEY_WIDTH, 0);
+        int[] _key = new int[KEY_WIDTH];
+        boolean _uses_texcoords = false;
+        boolean _uses_normals = false;
+        int _statement = 1;
+
+        try {
+            for (int _c = nextStatement(_input); _c != ChunkedInput.END_OF_INPUT; _c = nextStatement(_input), _statement++){
+                if (_c == 'v'){
+                    int _kind = _input.read();
+                    if (_kind == ' ' || _kind == '\t'){
+                        _positions.add(_input.parseFloat());
+                        _positions.add(_input.parseFloat());
+                        _positions.add(_input.parseFloat());
+                        if (!_input.isAtLineEnd()){
+                            float _first = _input.parseFloat();
+                            if (!_input.isAtLineEnd()){
+                                // x y z r g b: the first extra value is red, not w
+                                if (_colors == null){
+                                    _colors = whiteColors(_positions.size() / 3 - 1);
+                                }
+                                _colors.add(_first, _input.parseFloat(), _input.parseFloat(), 1f);
+                            }
+                        }
+                        if (_colors != null && _colors.size() < _positions.size() / 3 * IRenderable.DATA_PER_COLOR){
+                            _colors.add(1f, 1f, 1f, 1f);
+                        }
+                    }
+                    else if (_kind == 't'){
+                        _texcoords.add(_input.parseFloat());
+                        _texcoords.add(_input.isAtLineEnd() ? 0f : _input.parseFloat());
+                    }
+                    else if (_kind == 'n'){
+                        _normals.add(_input.parseFloat());
+                        _normals.add(_input.parseFloat());
+                        _normals.add(_input.parseFloat());
+                    }
+                }
+                else if (_c == 'f'){
+                    int _first = -1;
+                    int _previous = -1;
+                    while (!_input.isAtLineEnd()){
+                        _key[0] = resolveIndex(_input.parseInt(), _positions.size() / 3);
+                        _key[1] = NO_INDEX;
+                        _key[2] = NO_INDEX;
+                        if (_input.consume('/')){
+                            if (_input.peek() != '/'){
+                                _key[1] = resolveIndex(_input.parseInt(), _texcoords.size() / 2);
+                                _uses_texcoords = true;
+                            }
+                            if (_input.consume('/')){
+                                _key[2] = resolveIndex(_input.parseInt(), _normals.size() / 3);
+                                _uses_normals = true;
+                            }
+                        }
+                        int _vertex = _welder.weld(_key);
+                        if (_first < 0){
+                            _first = _vertex;
+                        }
+                        else {
+                            if (_previous >= 0 && _first != _previous && _previous != _vertex && _vertex != _first){
+                                _triangles.add(_first, _previous, _vertex);
+                            }
+                            _previous = _vertex;
+                        }
+                    }
+                }
+                _input.skipLine();
+            }
+        }
+        catch (RenderingRuntimeException _e){
+            throw new RenderingRuntimeException("OBJ statement " + _statement + ": " + _e.getMessage());
+        }
+
+        int _vertex_count = _welder.getVertexCount();
+        float[] _xyzw = new float[_vertex_count * IRenderable.DATA_PER_VERTEX];
+        float[] _vertex_colors = (_colors == null ? null : new float[_vertex_count * IRenderable.DATA_PER_COLOR]);
+        float[] _vertex_texcoords = (_uses_texcoords ? new float[_vertex_count * IRenderable.DATA_PER_TEXCOORD] : null);
+        float[] _vertex_normals = (_uses_normals ? new float[_vertex_count * IRenderable.DATA_PER_NORMAL] : null);
+        for (int _v = 0; _v < _vertex_count; _v++){
+            int _position = _welder.getKey(_v, 0);
+            copy(_positions, 3 * _position, 3, _xyzw, _v * IRenderable.DATA_PER_VERTEX, 1f);
+            if (_vertex_colors != null){
+                copy(_colors, _position * IRenderable.DATA_PER_COLOR, IRenderable.DATA_PER_COLOR, _vertex_colors, _v * IRenderable.DATA_PER_COLOR, 1f);
+            }
+            int _texcoord = _welder.getKey(_v, 1);
+            if (_vertex_texcoords != null && _texcoord != NO_INDEX){
+                copy(_texcoords, 2 * _texcoord, 2, _vertex_texcoords, _v * IRenderable.DATA_PER_TEXCOORD, 0f);
+                _vertex_texcoords[_v * IRenderable.DATA_PER_TEXCOORD + 3] = 1f;
+            }
+            int _normal = _welder.getKey(_v, 2);
+            if (_vertex_normals != null && _normal != NO_INDEX){
+                copy(_normals, 3 * _normal, 3, _vertex_normals, _v * IRenderable.DATA_PER_NORMAL, 0f);
+            }
+        }
+
+        List<IRenderable.DataToVbo> _data = new ArrayList<>();
+        if (_vertex_colors != null){
+            _data.add(new IRenderable.DataToVbo(_vertex_colors, ShaderAttributes.COLOR.toString(), meshUsage, IRenderable.DATA_PER_COLOR));
+        }
+        if (_vertex_texcoords != null){
+            _data.add(new IRenderable.DataToVbo(_vertex_texcoords, ShaderAttributes.TEXCOORD.toString(), meshUsage, IRenderable.DATA_PER_TEXCOORD));
+        }
+        if (_vertex_normals != null){
+            _data.add(new IRenderable.DataToVbo(_vertex_normals, ShaderAttributes.NORMAL.toString(), meshUsage, IRenderable.DATA_PER_NORMAL));
+        }
+        return new IndexedTriangles(_xyzw, _triangles.toArray(), _data.isEmpty() ? null : _data);
+    }
+
+    /**
+     * Skips blank lines and leading blanks.
+     * @return The first byte of the next statement, or {@link ChunkedInput#END_OF_INPUT}.
+     */
+    private static int nextStatement(ChunkedInput input_) throws IOException {
+        while (true){
+            input_.skipBlanks();
+            int _c = input_.peek();
+            if (_c != '\n' && _c != '\r'){
+                return (_c == ChunkedInput.END_OF_INPUT ? _c : input_.read());
+            }
+            input_.read();
+        }
+    }
+
+    /**
+     * Converts a 1-based OBJ index, negative ones counting back from the last element, to a 0-based index.
+     */
+    private static int resolveIndex(int obj_index, int element_count){
+        int _res = (obj_index < 0 ? element_count + obj_index : obj_index - 1);
+        if (obj_index == 0 || _res < 0 || _res >= element_count){
+            throw new RenderingRuntimeException("Bad index = " + obj_index + " for " + element_count + " elements");
+        }
+        return _res;
+    }
+
+    private static FloatArrayBuilder whiteColors(int vertex_count){
+        FloatArrayBuilder _res = new FloatArrayBuilder(Math.max(1, 2 * vertex_count * IRenderable.DATA_PER_COLOR));
+        for (int _v = 0; _v < vertex_count; _v++){
+            _res.add(1f, 1f, 1f, 1f);
+        }
+        return _res;
+    }
+
+    /**
+     * Copies count_ values, then fills the rest of the 4 floats vector with last_value.
+     */
+    private static void copy(FloatArrayBuilder src_, int src_offset, int count_, float[] dst_, int dst_offset, float last_value){
+        for (int _i = 0; _i < count_; _i++){
+            dst_[dst_offset + _i] = src_.get(src_offset + _i);
+        }
+        for (int _i = count_; _i < 4; _i++){
+            dst_[dst_offset + _i] = last_value;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.IndexedTriangles;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class imports the triangles of PLY files (binary little or big endian, or ascii), as written by most scanners:
+ * "vertex" elements with x y z, optional nx ny nz normals, red green blue (alpha) colors and u v (or s t) texture
+ * coordinates, and "face" elements which "vertex_indices" polygons are split into triangle fans. Other elements and
+ * properties are skipped.<br>
+ * The file is streamed chunk by chunk, data being gathered in primitive arrays. Vertices with identical data (e.g.
+ * duplicated by a conversion from STL) are merged by a {@link VertexWelder}, and triangles degenerated by welding dropped.
+ */
+public final class PlyImporter {
+
+    private static final String[] TYPE_NAMES = {"char", "uchar", "short", "ushort", "int", "uint", "float", "double"};
+    private static final String[] SIZED_TYPE_NAMES = {"int8", "uint8", "int16", "uint16", "int32", "uint32", "float32", "float64"};
+    private static final int[] TYPE_SIZES = {1, 1, 2, 2, 4, 4, 4, 8};
+    private static final int TYPE_INT8 = 0, TYPE_UINT8 = 1, TYPE_INT16 = 2, TYPE_UINT16 = 3, TYPE_INT32 = 4, TYPE_UINT32 = 5,
+            TYPE_FLOAT32 = 6;
+
+    /**
+     * Roles of vertex properties: vertex coordinates, normal, color and texture coordinates components.
+     */
+    private static final int X = 0, Y = 1, Z = 2, NX = 3, NY = 4, NZ = 5, RED = 6, GREEN = 7, BLUE = 8, ALPHA = 9, U = 10, V = 11;
+    private static final int ROLE_COUNT = 12;
+    private static final int NO_ROLE = -1;
+    private static final String[][] ROLE_NAMES = {{"x"}, {"y"}, {"z"}, {"nx"}, {"ny"}, {"nz"},
+            {"red", "r", "diffuse_red"}, {"green", "g", "diffuse_green"}, {"blue", "b", "diffuse_blue"}, {"alpha", "a"},
+            {"u", "s", "texture_u", "texture_s"}, {"v", "t", "texture_v", "texture_t"}};
+    /**
+     * Values of missing roles: opaque white colors.
+     */
+    private static final float[] DEFAULT_ROLE_VALUES = {0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 0, 0};
+
+    private final int meshUsage;
+
+    /**
+     * @param mesh_usage The usage of the imported per-vertex data, e.g. {@link android.opengl.GLES31#GL_STATIC_DRAW}
+     */
+    public PlyImporter(int mesh_usage){
+        meshUsage = mesh_usage;
+    }
+
+    public IndexedTriangles importMesh(File ply_file) throws IOException {
+        try (FileInputStream _stream = new FileInputStream(ply_file)){
+            FileChannel _channel = _stream.getChannel();
+            return importMesh(_channel);
+        }
+    }
+
+    /**
+     * @param ply_stream The PLY data. It is not closed.
+     */
+    public IndexedTriangles importMesh(InputStream ply_stream) throws IOException {
+        return importMesh(Channels.newChannel(ply_stream));
+    }
+
+    /**
+     * Imports a mesh.
+     * @param ply_channel The PLY data, e.g. a {@link FileChannel}. It is not closed.
+     * @return The triangles, with {@link ShaderAttributes#COLOR}, {@link ShaderAttributes#TEXCOORD} and {@link ShaderAttributes#NORMAL}
+     * data if the file has some.
+     * @throws IOException if the channel cannot be read.
+     * @throws RenderingRuntimeException if the data are not valid PLY.
+     */
+    public IndexedTriangles importMesh(ReadableByteChannel ply_channel) throws IOException {
+        ChunkedInput _input = new ChunkedInput(ply_channel);
+        List<Element> _elements = new ArrayList<>();
+        boolean _is_ascii = readHeader(_input, _elements);
+
+        Element _vertex_element = null;
+        int[] _welded_indices = null;
+        VertexWelder _welder = null;
+        FloatArrayBuilder _vertex_data = null;
+        int _data_per_vertex = 0;
+        boolean[] _has_role = new boolean[ROLE_COUNT];
+        IntArrayBuilder _triangles = new IntArrayBuilder();
+
+        for (Element _element : _elements){
+            if (_element.name.contentEquals("vertex")){
+                _vertex_element = _element;
+                for (Property _property : _element.properties){
+                    if (_property.role != NO_ROLE){
+                        _has_role[_property.role] = true;
+                    }
+                }
+                if (!_has_role[X] || !_has_role[Y] || !_has_role[Z]){
+                    throw new RenderingRuntimeException("PLY vertices have no x y z");
+                }
+                _data_per_vertex = roleCount(_has_role);
+                _welder = new VertexWelder(_data_per_vertex, _element.count);
+                _vertex_data = new FloatArrayBuilder(_element.count * _data_per_vertex);
+                _welded_indices = readVertices(_input, _is_ascii, _element, _has_role, _data_per_vertex, _welder, _vertex_data);
+            }
+            else if (_element.name.contentEquals("face")){
+                if (_welded_indices == null){
+                    throw new RenderingRuntimeException("PLY faces before vertices");
+                }
+                readFaces(_input, _is_ascii, _element, _welded_indices, _triangles);
+            }
+            else {
+                for (int _i = 0; _i < _element.count; _i++){
+                    for (Property _property : _element.properties){
+                        skipProperty(_input, _is_ascii, _property);
+                    }
+                }
+            }
+        }
+        if (_vertex_element == null){
+            throw new RenderingRuntimeException("PLY file without vertices");
+        }
+        return toTriangles(_welder.getVertexCount(), _vertex_data, _data_per_vertex, _has_role, _triangles);
+    }
+
+    /**
+     * Reads the header up to "end_header", and sets the byte order of binary files.
+     * @return true for ascii files.
+     */
+    private static boolean readHeader(ChunkedInput input_, List<Element> elements_) throws IOException {
+        if (!input_.readLine().trim().contentEquals("ply")){
+            throw new RenderingRuntimeException("Not a PLY file");
+        }
+        Boolean _is_ascii = null;
+        while (true){
+            if (input_.peek() == ChunkedInput.END_OF_INPUT){
+                throw new RenderingRuntimeException("PLY header without end_header");
+            }
+            String _line = input_.readLine().trim();
+            if (_line.contentEquals("end_header")){
+                break;
+            }
+            // Header lines are few: they are the only ones split into strings
+            String[] _words = _line.split("\\s+");
+            switch (_words[0]){
+                case "format":
+                    if (_words.length < 2){
+                        throw new RenderingRuntimeException("Bad PLY format line: " + _line);
+                    }
+                    switch (_words[1]){
+                        case "ascii":
+                            _is_ascii = true;
+                            break;
+                        case "binary_little_endian":
+                            _is_ascii = false;
+                            input_.setOrder(ByteOrder.LITTLE_ENDIAN);
+                            break;
+                        case "binary_big_endian":
+                            _is_ascii = false;
+                            input_.setOrder(ByteOrder.BIG_ENDIAN);
+                            break;
+                        default:
+                            throw new RenderingRuntimeException("Unmanaged PLY format: " + _words[1]);
+                    }
+                    break;
+                case "element":
+                    if (_words.length != 3){
+                        throw new RenderingRuntimeException("Bad PLY element line: " + _line);
+                    }
+                    elements_.add(new Element(_words[1], parseCount(_words[2])));
+                    break;
+                case "property":
+                    if (elements_.isEmpty()){
+                        throw new RenderingRuntimeException("PLY property without element: " + _line);
+                    }
+                    Element _element = elements_.get(elements_.size() - 1);
+                    if (_words.length == 5 && _words[1].contentEquals("list")){
+                        _element.properties.add(new Property(_words[4], parseType(_words[3]), parseType(_words[2]), NO_ROLE));
+                    }
+                    else if (_words.length == 3){
+                        int _role = (_element.name.contentEquals("vertex") ? roleOf(_words[2]) : NO_ROLE);
+                        _element.properties.add(new Property(_words[2], parseType(_words[1]), -1, _role));
+                    }
+                    else {
+                        throw new RenderingRuntimeException("Bad PLY property line: " + _line);
+                    }
+                    break;
+                default:
+                    // comment, obj_info ...
+                    break;
+            }
+        }
+        if (_is_ascii == null){
+            throw new RenderingRuntimeException("PLY format is missing");
+        }
+        return _is_ascii;
+    }
+
+    /**
+     * Reads and welds vertices.
+     * @return The welded index of each PLY vertex.
+     */
+    private static int[] readVertices(ChunkedInput input_, boolean is_ascii, Element vertex_element, boolean[] has_role,
+                                      int data_per_vertex, VertexWelder welder_, FloatArrayBuilder vertex_data) throws IOException {
+        int[] _res = new int[vertex_element.count];
+        // Rank of each role in the welded data
+        int[] _ranks = new int[ROLE_COUNT];
+        for (int _role = 0, _rank = 0; _role < ROLE_COUNT; _role++){
+            _ranks[_role] = (has_role[_role] ? _rank++ : NO_ROLE);
+        }
+        float[] _values = new float[data_per_vertex];
+        int[] _key = new int[data_per_vertex];
+        for (int _v = 0; _v < vertex_element.count; _v++){
+            for (Property _property : vertex_element.properties){
+                if (_property.role == NO_ROLE){
+                    skipProperty(input_, is_ascii, _property);
+                    continue;
+                }
+                float _value = (float) readValue(input_, is_ascii, _property.type);
+                if (_property.role >= RED && _property.role <= ALPHA){
+                    // Signed integers are normalized to [-1,1], as OpenGL does: their minimum value is clamped
+                    _value = Math.max(_value / colorScale(_property.type), -1f);
+                }
+                _values[_ranks[_property.role]] = _value;
+            }
+            for (int _i = 0; _i < data_per_vertex; _i++){
+                // + 0f turns -0 into 0, which would be a distinct key
+                _key[_i] = Float.floatToIntBits(_values[_i] + 0f);
+            }
+            int _count = welder_.getVertexCount();
+            _res[_v] = welder_.weld(_key);
+            if (_res[_v] == _count){
+                for (int _i = 0; _i < data_per_vertex; _i++){
+                    vertex_data.add(_values[_i]);
+                }
+            }
+        }
+        return _res;
+    }
+
+    private static void readFaces(ChunkedInput input_, boolean is_ascii, Element face_element, int[] welded_indices,
+                                  IntArrayBuilder triangles_) throws IOException {
+        for (int _f = 0; _f < face_element.count; _f++){
+            for (Property _property : face_element.properties){
+                boolean _is_polygon = _property.countType >= 0 &&
+                        (_property.name.contentEquals("vertex_indices") || _property.name.contentEquals("vertex_index"));
+                if (!_is_polygon){
+                    skipProperty(input_, is_ascii, _property);
+                    continue;
+                }
+                int _count = (int) readValue(input_, is_ascii, _property.countType);
+                int _first = -1;
+                int _previous = -1;
+                for (int _i = 0; _i < _count; _i++){
+                    int _index = (int) readValue(input_, is_ascii, _property.type);
+                    if (_index < 0 || _index >= welded_indices.length){
+                        throw new RenderingRuntimeException("Bad PLY vertex index = " + _index + " in face " + _f);
+                    }
+                    int _vertex = welded_indices[_index];
+                    if (_first < 0){
+                        _first = _vertex;
+                    }
+                    else {
+                        if (_previous >= 0 && _first != _previous && _previous != _vertex && _vertex != _first){
+                            triangles_.add(_first, _previous, _vertex);
+                        }
+                        _previous = _vertex;
+                    }
+                }
+            }
+        }
+    }
+
+    private IndexedTriangles toTriangles(int vertex_count, FloatArrayBuilder vertex_data, int data_per_vertex, boolean[] has_role,
+                                         IntArrayBuilder triangles_){
+        boolean _has_normals = has_role[NX] || has_role[NY] || has_role[NZ];
+        boolean _has_colors = has_role[RED] || has_role[GREEN] || has_role[BLUE] || has_role[ALPHA];
+        boolean _has_texcoords = has_role[U] || has_role[V];
+        float[] _xyzw = new float[vertex_count * IRenderable.DATA_PER_VERTEX];
+        float[] _normals = (_has_normals ? new float[vertex_count * IRenderable.DATA_PER_NORMAL] : null);
+        float[] _colors = (_has_colors ? new float[vertex_count * IRenderable.DATA_PER_COLOR] : null);
+        float[] _texcoords = (_has_texcoords ? new float[vertex_count * IRenderable.DATA_PER_TEXCOORD] : null);
+        float[] _role_values = new float[ROLE_COUNT];
+        for (int _v = 0; _v < vertex_count; _v++){
+            int _src = _v * data_per_vertex;
+            System.arraycopy(DEFAULT_ROLE_VALUES, 0, _role_values, 0, ROLE_COUNT);
+            for (int _role = 0; _role < ROLE_COUNT; _role++){
+                if (has_role[_role]){
+                    _role_values[_role] = vertex_data.get(_src++);
+                }
+            }
+            set4(_xyzw, _v, _role_values[X], _role_values[Y], _role_values[Z], 1f);
+            if (_normals != null){
+                set4(_normals, _v, _role_values[NX], _role_values[NY], _role_values[NZ], 0f);
+            }
+            if (_colors != null){
+                set4(_colors, _v, _role_values[RED], _role_values[GREEN], _role_values[BLUE], _role_values[ALPHA]);
+            }
+            if (_texcoords != null){
+                set4(_texcoords, _v, _role_values[U], _role_values[V], 0f, 1f);
+            }
+        }
+
+        List<IRenderable.DataToVbo> _data = new ArrayList<>();
+        if (_colors != null){
+            _data.add(new IRenderable.DataToVbo(_colors, ShaderAttributes.COLOR.toString(), meshUsage, IRenderable.DATA_PER_COLOR));
+        }
+        if (_texcoords != null){
+            _data.add(new IRenderable.DataToVbo(_texcoords, ShaderAttributes.TEXCOORD.toString(), meshUsage, IRenderable.DATA_PER_TEXCOORD));
+        }
+        if (_normals != null){
+            _data.add(new IRenderable.DataToVbo(_normals, ShaderAttributes.NORMAL.toString(), meshUsage, IRenderable.DATA_PER_NORMAL));
+        }
+        return new IndexedTriangles(_xyzw, triangles_.toArray(), _data.isEmpty() ? null : _data);
+    }
+
+    private static double readValue(ChunkedInput input_, boolean is_ascii, int type_) throws IOException {
+        if (is_ascii){
+            skipSeparators(input_);
+            if (type_ == TYPE_UINT32){
+                // Values above Integer.MAX_VALUE overflow, but keep their 32 low bits
+                return input_.parseInt() & 0xFFFFFFFFL;
+            }
+            return (type_ < TYPE_FLOAT32 ? input_.parseInt() : input_.parseFloat());
+        }
+        input_.require(TYPE_SIZES[type_]);
+        ByteBuffer _bytes = input_.binary();
+        switch (type_){
+            case TYPE_INT8:
+                return _bytes.get();
+            case TYPE_UINT8:
+                return _bytes.get() & 0xFF;
+            case TYPE_INT16:
+                return _bytes.getShort();
+            case TYPE_UINT16:
+                return _bytes.getShort() & 0xFFFF;
+            case TYPE_INT32:
+                return _bytes.getInt();
+            case TYPE_UINT32:
+                return _bytes.getInt() & 0xFFFFFFFFL;
+            case TYPE_FLOAT32:
+                return _bytes.getFloat();
+            default:
+                return _bytes.getDouble();
+        }
+    }
+
+    private static void skipProperty(ChunkedInput input_, boolean is_ascii, Property property_) throws IOException {
+        int _count = (property_.countType >= 0 ? (int) readValue(input_, is_ascii, property_.countType) : 1);
+        for (int _i = 0; _i < _count; _i++){
+            if (is_ascii){
+                readValue(input_, true, property_.type);
+            }
+            else {
+                input_.require(TYPE_SIZES[property_.type]);
+                ByteBuffer _bytes = input_.binary();
+                _bytes.position(_bytes.position() + TYPE_SIZES[property_.type]);
+            }
+        }
+    }
+
+    /**
+     * Skips blanks and line ends between ascii values.
+     */
+    private static void skipSeparators(ChunkedInput input_) throws IOException {
+        input_.skipBlanks();
+        while (input_.consume('\n') || input_.consume('\r')){
+            input_.skipBlanks();
+        }
+    }
+
+    /**
+     * @return The value of full intensity, the largest value of integer types: integer colors are normalized to [0,1].
+     * Float colors are kept as is.
+     */
+    private static float colorScale(int type_){
+        switch (type_){
+            case TYPE_INT8:
+                return Byte.MAX_VALUE;
+            case TYPE_UINT8:
+                return 0xFF;
+            case TYPE_INT16:
+                return Short.MAX_VALUE;
+            case TYPE_UINT16:
+                return 0xFFFF;
+            case TYPE_INT32:
+                return Integer.MAX_VALUE;
+            case TYPE_UINT32:
+                return 0xFFFFFFFFL;
+            default:
+                return 1f;
+        }
+    }
+
+    private static int roleCount(boolean[] has_role){
+        int _res = 0;
+        for (boolean _has : has_role){
+            _res += (_has ? 1 : 0);
+        }
+        return _res;
+    }
+
+    private static int roleOf(String property_name){
+        for (int _role = 0; _role < ROLE_COUNT; _role++){
+            for (String _name : ROLE_NAMES[_role]){
+                if (_name.contentEquals(property_name)){
+                    return _role;
+                }
+            }
+        }
+        return NO_ROLE;
+    }
+
+    private static int parseType(String type_name){
+        for (int _t = 0; _t < TYPE_NAMES.length; _t++){
+            if (TYPE_NAMES[_t].contentEquals(type_name) || SIZED_TYPE_NAMES[_t].contentEquals(type_name)){
+                return _t;
+            }
+        }
+        throw new RenderingRuntimeException("Unmanaged PLY type: " + type_name);
+    }
+
+    private static int parseCount(String count_){
+        try {
+            int _res = Integer.parseInt(count_);
+            if (_res < 0){
+                throw new RenderingRuntimeException("Bad PLY element count = " + count_);
+            }
+            return _res;
+        }
+        catch (NumberFormatException _e){
+            throw new RenderingRuntimeException("Bad PLY element count = " + count_);
+        }
+    }
+
+    private static void set4(float[] dst_, int vertex_index, float x_, float y_, float z_, float w_){
+        int _o = 4 * vertex_index;
+        dst_[_o] = x_;
+        dst_[_o + 1] = y_;
+        dst_[_o + 2] = z_;
+        dst_[_o + 3] = w_;
+    }
+
+    private static final class Element {
+        final String name;
+        final int count;
+        final List<Property> properties = new ArrayList<>();
+
+        Element(String name_, int count_){
+            name = name_;
+            count = count_;
+        }
+    }
+
+    private static final class Property {
+        final String name;
+        final int type;
+        /**
+         * The type of the element count for list properties, -1 otherwise.
+         */
+        final int countType;
+        final int role;
+
+        Property(String name_, int type_, int count_type, int role_){
+            name = name_;
+            type = type_;
+            countType = count_type;
+            role = role_;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.util.Arrays;
+
+/**
+ * This class gives the same index to identical vertices, so that a vertex shared by several faces is stored once.
+ * A vertex is identified by a fixed number of ints (e.g. OBJ position, texture and normal indices, or the bits of its
+ * float data), stored in a primitive open addressing hash table: welding millions of vertices allocates no object per vertex.
+ */
+public final class VertexWelder {
+
+    private static final int EMPTY_SLOT = -1;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private final int keyWidth;
+    private final IntArrayBuilder keys;
+    /**
+     * Vertex indices by hash slot, {@link #EMPTY_SLOT} if free. Its size is a power of 2, at least twice the vertex count.
+     */
+    private int[] table;
+    private int vertexCount = 0;
+
+    /**
+     * @param key_width The number of ints identifying a vertex
+     * @param expected_vertex_count The number of distinct vertices expected, to size the table. It grows if needed.
+     */
+    public VertexWelder(int key_width, int expected_vertex_count){
+        if (key_width < 1){
+            throw new RenderingRuntimeException("Bad key width = " + key_width);
+        }
+        keyWidth = key_width;
+        keys = new IntArrayBuilder(key_width * Math.max(1, expected_vertex_count));
+        table = newTable(tableSizeFor(expected_vertex_count));
+    }
+
+    /**
+     * Gives the index of a vertex, the first time it is met being numbered {@link #getVertexCount()}.
+     * @param key_ The key_width ints identifying the vertex. It is copied: the array can be reused.
+     * @return The index of the vertex, in order of first appearance.
+     */
+    public int weld(int[] key_){
+        int _mask = table.length - 1;
+        int _slot = hash(key_) & _mask;
+        while (table[_slot] != EMPTY_SLOT){
+            if (keyEquals(table[_slot], key_)){
+                return table[_slot];
+            }
+            _slot = (_slot + 1) & _mask;
+        }
+        int _res = vertexCount++;
+        table[_slot] = _res;
+        for (int _k = 0; _k < keyWidth; _k++){
+            keys.add(key_[_k]);
+        }
+        if (2 * vertexCount > table.length){
+            rehash(2 * table.length);
+        }
+        return _res;
+    }
+
+    /**
+     * @return The number of distinct vertices welded so far.
+     */
+    public int getVertexCount(){
+        return vertexCount;
+    }
+
+    /**
+     * @return The key of a vertex
+     */
+    public int getKey(int vertex_index, int key_rank){
+        return keys.get(vertex_index * keyWidth + key_rank);
+    }
+
+    private boolean keyEquals(int vertex_index, int[] key_){
+        int _o = vertex_index * keyWidth;
+        for (int _k = 0; _k < keyWidth; _k++){
+            if (keys.get(_o + _k) != key_[_k]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int[] key_){
+        int _h = 0;
+        for (int _k = 0; _k < keyWidth; _k++){
+            _h = 31 * _h + key_[_k];
+        }
+        // Mixes bits (MurmurHash3 finalizer), as float bits and close indices hash poorly in low bits
+        _h ^= _h >>> 16;
+        _h *= 0x85ebca6b;
+        _h ^= _h >>> 13;
+        _h *= 0xc2b2ae35;
+        _h ^= _h >>> 16;
+        return _h;
+    }
+
+    private void rehash(int table_size){
+        table = newTable(table_size);
+        int _mask = table_size - 1;
+        int[] _key = new int[keyWidth];
+        for (int _v = 0; _v < vertexCount; _v++){
+            for (int _k = 0; _k < keyWidth; _k++){
+                _key[_k] = keys.get(_v * keyWidth + _k);
+            }
+            int _slot = hash(_key) & _mask;
+            while (table[_slot] != EMPTY_SLOT){
+                _slot = (_slot + 1) & _mask;
+            }
+            table[_slot] = _v;
+        }
+    }
+
+    private static int tableSizeFor(int vertex_count){
+        int _size = MIN_TABLE_SIZE;
+        while (_size < 2 * vertex_count && _size < (1 << 30)){
+            _size <<= 1;
+        }
+        return _size;
+    }
+
+    private static int[] newTable(int table_size){
+        int[] _res = new int[table_size];
+        Arrays.fill(_res, EMPTY_SLOT);
+        return _res;
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Mesh files are imported as {@link org.c4sci.camera2opengl.glTools.renderables.meshes.IndexedTriangles} by these classes,
+ * which stream files chunk by chunk into primitive arrays:
+ * <ul>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.importers.ObjImporter} imports Wavefront OBJ files.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.importers.PlyImporter} imports binary and ascii PLY files.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.importers.VertexWelder} gives the same index to identical vertices.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.importers.FloatArrayBuilder} and
+ *     {@link org.c4sci.camera2opengl.glTools.renderables.importers.IntArrayBuilder} gather values without boxing them.</li>
+ * </ul>
+ */
+package org.c4sci.camera2opengl.glTools.renderables.importers;
@@ -3,7 +3,13 @@ package org.c4sci.camera2opengl.glTools.renderables.meshes;
 import android.opengl.GLES31;
 
 import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlResourceLoader;
+import org.c4sci.camera2opengl.glTools.GlUpload;
 import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.renderables.AttributeEncoding;
+import org.c4sci.camera2opengl.glTools.renderables.StreamingRingBuffer;
+import org.c4sci.camera2opengl.glTools.renderables.VertexLayout;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
 import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
 import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderUtility;
 import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
@@ -19,13 +25,84 @@ import java.util.List;
 public abstract class AbstractMesh implements IRenderable {
 
     float[] xyzwVertices = null;
-    short[] vertexIndices = null;
+    int[] vertexIndices = null;
     List<DataToVbo> dataPerVertex;
     int meshUsage = -1;
+    BufferLayout bufferLayout = BufferLayout.SEPARATE_BUFFERS;
+    AttributeEncoding vertexEncoding = AttributeEncoding.FLOAT;
+    int streamingFramesInFlight = 0;
+    boolean streamingIsPending = false;
+
+    /**
+     * Per-instance data, or null if the mesh is not instanced.
+     */
+    List<DataToVbo> dataPerInstance = null;
+    int instanceCount = 0;
+    boolean instancesArePending = false;
+    /**
+     * The number of instances drawn by the current draw call, or {@link #NOT_INSTANCED}.
+     */
+    int drawnInstanceCount = NOT_INSTANCED;
+    static final int NOT_INSTANCED = -1;
+
+    /**
+     * The per-vertex data as uploaded: vertex coordinates first, then {@link #dataPerVertex}.
+     */
+    List<DataToVbo> uploadedData = null;
+    /**
+     * When vertices have been renumbered (see {@link #setVertexCacheOptimization(boolean)}): the new number of each vertex,
+     * and the data in the creation order, which modifications are forwarded to {@link #uploadedData}. Otherwise null.
+     */
+    int[] vertexRemap = null;
+    List<DataToVbo> sourceData = null;
 
     protected int vertexArrayObject = -1;
+    protected VertexLayout vertexLayout = null;
     int lastAdaptedProgram = -1;
 
+    /**
+     * Bounds in model coordinates, or null if to be computed.
+     */
+    Bounds bounds = null;
+
+    /**
+     * The ranges drawn for each style, by style ordinal (see {@link #computeDrawRanges()}), or null if the class draws itself.
+     */
+    DrawRange[][] drawRanges = null;
+
+    /**
+     * The upload run by a loader thread (see {@link #uploadWith(GlResourceLoader)}), or null.
+     */
+    BufferUpload pendingUpload = null;
+
+    /**
+     * The budget the mesh buffers are accounted in (see {@link #setMemoryBudget(GpuMemoryBudget)}), or null.
+     * Other fields are managed by the budget: the neighbours in least recently drawn order, the bytes accounted for the mesh
+     * and the frame it was last drawn in.
+     */
+    GpuMemoryBudget memoryBudget = null;
+    AbstractMesh lruPrevious = null;
+    AbstractMesh lruNext = null;
+    int budgetedByteCount = 0;
+    long lastDrawnFrame = -1;
+    /**
+     * true when the resources have been released by the budget: the next draw sets them up again.
+     */
+    boolean isEvicted = false;
+
+    /**
+     * The shader storage buffer binding of the vertex coordinates in {@link #deformWith(int, int)}.
+     */
+    public static final int VERTEX_STORAGE_BINDING = 0;
+
+    boolean optimizesVertexCache = false;
+    VertexCacheOptimizer.Report vertexCacheReport = null;
+
+    /**
+     * Created once so that draw calls do not allocate a capturing lambda.
+     */
+    protected final Runnable releaseAction = this::releaseOpenGlResources;
+
     //TODO
     // Use a list of DataToVBO to make Abstract Meshes more generic
     // Idem for derived classes
@@ -48,58 +125,672 @@ public abstract class AbstractMesh implements IRenderable {
         dataPerVertex = per_vertex_data;
     }
 
+    /**
+     * Chooses how per-vertex data are stored in VBOs. Default is {@link BufferLayout#SEPARATE_BUFFERS}.<br>
+     * This must be called before {@link #setupOpenGlResources()} to be taken into account.
+     * @param buffer_layout The layout to use at next {@link #setupOpenGlResources()}.
+     */
+    public void setBufferLayout(BufferLayout buffer_layout){
+        bufferLayout = buffer_layout;
+    }
+
+    public BufferLayout getBufferLayout(){
+        return bufferLayout;
+    }
+
+    /**
+     * Chooses how vertex coordinates are stored in their VBO. Default is {@link AttributeEncoding#FLOAT}.
+     * {@link AttributeEncoding#HALF_FLOAT} halves the memory bandwidth for meshes of moderate extent.<br>
+     * This must be called before {@link #setupOpenGlResources()} to be taken into account.
+     * @param vertex_encoding The encoding of the {@link ShaderAttributes#VERTEX} attribute.
+     */
+    public void setVertexEncoding(AttributeEncoding vertex_encoding){
+        vertexEncoding = vertex_encoding;
+    }
+
+    /**
+     * Makes the mesh stream its vertex data: they are interleaved in a {@link StreamingRingBuffer} of frames_in_flight slots
+     * and can be updated every frame with {@link #streamVertexData()}, without reallocating buffers nor stalling the GL pipeline.
+     * This is meant for per-frame geometry, e.g. overlays tracking the camera. {@link #setBufferLayout(BufferLayout)} is then ignored.<br>
+     * This must be called before {@link #setupOpenGlResources()} to be taken into account.
+     * @param frames_in_flight The number of frames the GPU may be late, e.g. 3 for triple buffering. 0 disables streaming.
+     */
+    public void setStreaming(int frames_in_flight){
+        streamingFramesInFlight = Math.max(0, frames_in_flight);
+    }
+
+    /**
+     * Indicates that the vertex coordinates (see {@link #getVertices()}) and the per-vertex data arrays have been modified in place.
+     * They will be written to the next ring buffer slot at next {@link #draw(int, MeshStyle)}.
+     * @throws RenderingRuntimeException if the mesh is not streamed (see {@link #setStreaming(int)})
+     */
+    public void streamVertexData(){
+        if (streamingFramesInFlight == 0){
+            throw new RenderingRuntimeException("Cannot stream data of a mesh that is not set up for streaming");
+        }
+        streamingIsPending = true;
+        bounds = null;
+    }
+
+    /**
+     * Makes the mesh drawn as many instances at once: {@link #draw(int, MeshStyle)} then issues a single glDrawElementsInstanced()
+     * or glDrawArraysInstanced() call instead of one draw call and one uniform upload per copy. E.g.:<br>
+     * float[] _models = new float[INSTANCE_COUNT * DATA_PER_MATRIX]
+     * ...
+     * new DataToVbo(_models, ShaderAttributes.INSTANCE_MODEL.toString(), GLES31.GL_DYNAMIC_DRAW, DATA_PER_MATRIX)
+     * <br>
+     * with a shader using {@link org.c4sci.camera2opengl.glTools.renderables.shaders.stock.StockVertexShaderSnippets#INSTANCED_MODEL_VIEW_PROJECTION_VERTEX_CODE}.
+     * Data are uploaded at next {@link #setupOpenGlResources()} or {@link #draw(int, MeshStyle)}.
+     * @param per_instance_data The data of each instance, interleaved in a single VBO. Cannot be null.
+     * @param instance_count The number of instances. Each data must offer at least this number of data vectors.
+     */
+    public void setInstanceData(List<DataToVbo> per_instance_data, int instance_count){
+        if (dataPerInstance != null && dataPerInstance != per_instance_data && vertexLayout != null){
+            throw new RenderingRuntimeException("Cannot change the kind of instance data of a mesh already set up");
+        }
+        dataPerInstance = per_instance_data;
+        instanceCount = Math.max(0, instance_count);
+        instancesArePending = true;
+    }
+
+    /**
+     * Indicates that the per-instance data arrays have been modified in place, or that the instance count has changed.
+     * They will be uploaded again at next {@link #draw(int, MeshStyle)}.
+     * @param instance_count The new number of instances.
+     * @throws RenderingRuntimeException if the mesh is not instanced (see {@link #setInstanceData(List, int)})
+     */
+    public void updateInstanceData(int instance_count){
+        if (dataPerInstance == null){
+            throw new RenderingRuntimeException("Cannot update instance data of a mesh that is not instanced");
+        }
+        instanceCount = Math.max(0, instance_count);
+        instancesArePending = true;
+    }
+
+    public int getInstanceCount(){
+        return instanceCount;
+    }
+
+    /**
+     * Makes {@link #setupOpenGlResources()} reorder the triangles given by {@link #triangleListRange()}
+     * for the GPU post-transform vertex cache (see {@link VertexCacheOptimizer}), and measure the gain (see {@link #getVertexCacheReport()}).
+     * This is worth it for large meshes which triangles come in arbitrary order, e.g. imported scans.<br>
+     * Vertices of {@link GLES31#GL_STATIC_DRAW} meshes are also renumbered in their first use order, their data being uploaded from reordered copies.
+     * Data given at creation keep their order: vertices modified in place and marked dirty ({@link #markDirty(int, int)},
+     * {@link DataToVbo#markDirty(int, int)} ...) are copied into the reordered copies by the next draw, vertex numbers still
+     * following the creation order.<br>
+     * This must be called before {@link #setupOpenGlResources()} to be taken into account.
+     * @param optimizes_vertex_cache true to optimize indices at setup. Default is false.
+     */
+    public void setVertexCacheOptimization(boolean optimizes_vertex_cache){
+        optimizesVertexCache = optimizes_vertex_cache;
+    }
+
+    /**
+     * Accounts the mesh buffers in a GPU memory budget: they may then be released when the mesh has not been drawn for a while,
+     * and are set up again by its next draw. Data given at creation are retained for that purpose.
+     * @param memory_budget The budget, shared by the meshes competing for memory, or null to stop accounting the mesh.
+     */
+    public void setMemoryBudget(GpuMemoryBudget memory_budget){
+        if (memoryBudget != null){
+            memoryBudget.remove(this);
+        }
+        memoryBudget = memory_budget;
+    }
+
+    public GpuMemoryBudget getMemoryBudget(){
+        return memoryBudget;
+    }
+
+    /**
+     * @return true if the resources have been released by the memory budget, and not set up again yet.
+     */
+    public boolean isEvicted(){
+        return isEvicted;
+    }
+
+    /**
+     * @return The vertex cache efficiency before and after optimization, or null if no optimization took place at last setup.
+     */
+    public VertexCacheOptimizer.Report getVertexCacheReport(){
+        return vertexCacheReport;
+    }
+
+    /**
+     * Derived classes drawing {@link GLES31#GL_TRIANGLES} lists indicate here where they lie in {@link #computeVertexIndices()},
+     * so that they can be optimized (see {@link #setVertexCacheOptimization(boolean)}).
+     * @return {first index, index count}, or null if the mesh draws no triangle list. Default is null.
+     */
+    protected int[] triangleListRange(){
+        return null;
+    }
+
+    /**
+     * Reorders {@link #vertexIndices} triangles, and vertices of static meshes.
+     * @param buffers_data The per-vertex data to upload
+     * @return The data to upload, in the new vertex order.
+     */
+    private List<DataToVbo> optimizeVertexCache(List<DataToVbo> buffers_data){
+        int[] _range = triangleListRange();
+        vertexCacheReport = null;
+        vertexRemap = null;
+        sourceData = null;
+        if (_range == null){
+            return buffers_data;
+        }
+        int _vertex_count = xyzwVertices.length / DATA_PER_VERTEX;
+        vertexCacheReport = VertexCacheOptimizer.optimizeTriangleOrder(vertexIndices, _range[0], _range[1], _vertex_count,
+                VertexCacheOptimizer.DEFAULT_CACHE_SIZE);
+        if (meshUsage != GLES31.GL_STATIC_DRAW || streamingFramesInFlight > 0){
+            return buffers_data;
+        }
+
+        int[] _remap = VertexCacheOptimizer.computeVertexFetchRemap(vertexIndices, _vertex_count);
+        VertexCacheOptimizer.remapIndices(vertexIndices, _remap);
+        List<DataToVbo> _res = new ArrayList<>();
+        for (DataToVbo _data : buffers_data){
+            _res.add(new DataToVbo(VertexCacheOptimizer.remapData(_data.getRawData(), _data.getDataCountPerVertex(), _remap),
+                    _data.getAttributeName(), _data.getBufferUsage(), _data.getDataCountPerVertex(), _data.getEncoding()));
+        }
+        vertexRemap = _remap;
+        sourceData = buffers_data;
+        return _res;
+    }
+
+    /**
+     * Indicates that the vertex coordinates and all the per-vertex data of some vertices have been modified in place.
+     * Only these vertices will be uploaded again at next {@link #draw(int, MeshStyle)}, with glBufferSubData().
+     * To mark a single kind of data, use {@link DataToVbo#markDirty(int, int)} or {@link #markVerticesDirty(int, int)}.<br>
+     * Streamed meshes (see {@link #setStreaming(int)}) write all their data in the next ring buffer slot instead.
+     * @param first_vertex The first modified vertex
+     * @param vertex_count The number of modified vertices
+     */
+    public void markDirty(int first_vertex, int vertex_count){
+        bounds = null;
+        if (uploadedData == null){
+            // Not uploaded yet: everything will be
+            return;
+        }
+        List<DataToVbo> _marked_data = (vertexRemap == null ? uploadedData : sourceData);
+        for (int _i = 0; _i < _marked_data.size(); _i++){
+            _marked_data.get(_i).markDirty(first_vertex, vertex_count);
+        }
+    }
+
+    /**
+     * Same as {@link #markDirty(int, int)} for the vertex coordinates only (see {@link #getVertices()}).
+     * @param first_vertex The first modified vertex
+     * @param vertex_count The number of modified vertices
+     */
+    public void markVerticesDirty(int first_vertex, int vertex_count){
+        bounds = null;
+        if (uploadedData != null){
+            (vertexRemap == null ? uploadedData : sourceData).get(0).markDirty(first_vertex, vertex_count);
+        }
+    }
+
+    /**
+     * Binds the VBO of some per-vertex data as a shader storage buffer for the next {@link #deformWith(int, int)}, e.g. the
+     * normals a skinning shader writes too, or rest positions and morph targets the shader reads.
+     * See {@link IRenderable#bindStorageBuffer(VertexLayout, String, int)}.
+     * @param attribute_name The attribute name of some data given at creation.
+     * @param binding_index The binding of the buffer block in the compute shader. {@link #VERTEX_STORAGE_BINDING} is taken.
+     * @return false if the mesh buffers are not set up (upload pending or evicted): nothing is bound.
+     * @throws RenderingRuntimeException if the mesh has no such data, if it is streamed or if OpenGL calls fail.
+     */
+    public boolean bindDataStorage(String attribute_name, int binding_index){
+        if (vertexLayout == null){
+            return false;
+        }
+        if (IRenderable.bindStorageBuffer(vertexLayout, attribute_name, binding_index)){
+            lastAdaptedProgram = -1;
+        }
+        return true;
+    }
+
+    /**
+     * Deforms or generates the vertex coordinates on the GPU with a compute program, e.g. for morph targets, skinning or waves:
+     * the VBO of the coordinates is bound as shader storage buffer {@link #VERTEX_STORAGE_BINDING}, one invocation is run per vertex,
+     * and the next draw reads what the shader wrote. Nothing goes through the CPU, whatever the vertex count. The shader sees
+     * a tightly packed vec4 array: the mesh must keep the {@link BufferLayout#SEPARATE_BUFFERS} layout and the
+     * {@link AttributeEncoding#FLOAT} vertex encoding. E.g.:
+     * <pre>
+     * #version 310 es
+     * layout(local_size_x = 64) in;
+     * layout(std430, binding = 0) buffer Vertices { vec4 v4Vertices[]; };
+     * uniform float fTime;
+     * void main(){
+     *     uint _i = gl_GlobalInvocationID.x;
+     *     if (_i &gt;= uint(v4Vertices.length())) return;
+     *     v4Vertices[_i].z = 0.1 * sin(fTime + v4Vertices[_i].x);
+     * }
+     * </pre>
+     * Uniforms are set beforehand with the program in use. Other data are bound by {@link #bindDataStorage(String, int)}.<br>
+     * What the shader writes is lost if the mesh is set up again, or if vertices are marked dirty ({@link #markDirty(int, int)}):
+     * meshes written from scratch each frame suit a {@link GpuMemoryBudget}, others do not. Bounds are still computed from
+     * {@link #getVertices()}: they must cover the deformation for culling to be right. Vertices of meshes which vertex cache is
+     * optimized may be renumbered (see {@link #setVertexCacheOptimization(boolean)}). Streamed meshes cannot be deformed.
+     * @param compute_program A program made by {@link ShaderUtility#makeComputeProgram(String)}. It is left in use.
+     * @param local_size_x The local_size_x of the compute shader, at least 1: (vertex count + local_size_x - 1) / local_size_x
+     *                     groups are run.
+     * @return false if the mesh buffers are not set up (upload pending or evicted): nothing is dispatched.
+     * @throws RenderingRuntimeException if local_size_x is not positive, if vertex coordinates are interleaved or not encoded
+     * as floats, if the mesh is streamed or if OpenGL calls fail.
+     */
+    public boolean deformWith(int compute_program, int local_size_x){
+        if (local_size_x < 1){
+            throw new RenderingRuntimeException("Bad compute local size = " + local_size_x);
+        }
+        if (bufferLayout != BufferLayout.SEPARATE_BUFFERS || vertexEncoding != AttributeEncoding.FLOAT){
+            throw new RenderingRuntimeException("Cannot deform " + vertexEncoding + " vertex coordinates in a " + bufferLayout + " layout");
+        }
+        if (!bindDataStorage(ShaderAttributes.VERTEX.toString(), VERTEX_STORAGE_BINDING)){
+            return false;
+        }
+        GLES31.glUseProgram(compute_program);
+        GlUtilities.ensureGles31Call("glUseProgram( compute )", releaseAction);
+        GLES31.glDispatchCompute((vertexLayout.getVertexCount() + local_size_x - 1) / local_size_x, 1, 1);
+        GlUtilities.ensureGles31Call("glDispatchCompute", releaseAction);
+        // Vertex fetches of the next draws must see the shader writes
+        GLES31.glMemoryBarrier(GLES31.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT);
+        return true;
+    }
+
+    /**
+     * @return The vertex coordinates (x y z w per vertex). Streamed meshes may modify them in place before calling {@link #streamVertexData()}.
+     */
+    public float[] getVertices(){
+        return xyzwVertices;
+    }
+
+    /**
+     * Bounds are computed once from the vertex coordinates, and computed again after they are marked as modified
+     * ({@link #markDirty(int, int)}, {@link #streamVertexData()} ...).
+     * @return The bounds in model coordinates. They must not be modified.
+     */
+    @Override
+    public Bounds getBounds(){
+        if (bounds == null){
+            bounds = Bounds.fromVertices(xyzwVertices);
+        }
+        return bounds;
+    }
+
+    /**
+     * Gives a sphere containing all the vertices, e.g. to estimate the mesh size on screen.
+     * @return {center x, center y, center z, radius} in model coordinates. The array must not be modified.
+     * @see #getBounds()
+     */
+    public float[] getBoundingSphere(){
+        return getBounds().getSphere();
+    }
+
+    /**
+     * Computes a sphere centered on the vertices bounding box, that contains all of them.
+     * @param xyzw_vertices x y z w per vertex
+     * @return {center x, center y, center z, radius}
+     * @see Bounds#fromVertices(float[])
+     */
+    public static float[] computeBoundingSphere(float[] xyzw_vertices){
+        return Bounds.fromVertices(xyzw_vertices).getSphere();
+    }
+
     /**
      * Each derived class must indicate here how are ordered the vertices when the mesh is drawn.
+     * Indices are uploaded with the narrowest type able to index all the vertices: {@link #drawIndices(int, int, int)} takes care of it.
      * @return The list of vertex indices as used by the {@link #drawMesh(int, MeshStyle)} method.
      */
-    public abstract short[] computeVertexIndices();
+    public abstract int[] computeVertexIndices();
+
+    /**
+     * Each derived class must indicate here the primitives drawn in a style as independent primitives, so that they can be
+     * merged with other meshes' (see {@link StaticMeshBatch} and {@link PrimitiveLists}).
+     * @param mesh_style The style
+     * @return The vertex indices to draw with {@link GLES31#GL_TRIANGLES} for {@link MeshStyle#FILLED},
+     * {@link GLES31#GL_LINES} for {@link MeshStyle#LINES} or {@link GLES31#GL_POINTS} for {@link MeshStyle#POINTS}.
+     */
+    public abstract int[] computeListIndices(MeshStyle mesh_style);
+
+    /**
+     * Indicates which ranges of {@link #computeVertexIndices()} {@link #drawMesh(int, MeshStyle)} draws for each style, so that
+     * derived classes need neither draw code nor byte offsets. Connected primitives should be joined by
+     * {@link PrimitiveLists#RESTART_INDEX} into a single range, drawn by a single call.<br>
+     * It is called at setup, after {@link #computeVertexIndices()}.
+     * @return The ranges of each style, by {@link MeshStyle} ordinal, or null if the class overrides {@link #drawMesh(int, MeshStyle)}.
+     * Default is null.
+     */
+    protected DrawRange[][] computeDrawRanges(){
+        return null;
+    }
 
     /**
      *This method must be called by {@link #setupOpenGlResources()} of derived classes.
      */
     @Override
     public void setupOpenGlResources() {
+        List<DataToVbo> _buffers = prepareUploadedData();
+        if (streamingFramesInFlight > 0){
+            vertexLayout = IRenderable.setupStreamingBuffers(_buffers, vertexIndices, streamingFramesInFlight);
+        }
+        else {
+            vertexLayout = IRenderable.setupBuffers(_buffers, vertexIndices, bufferLayout);
+        }
+        completeOpenGlSetup();
+    }
+
+    /**
+     * Sets up the mesh buffers on a loader thread instead of {@link #setupOpenGlResources()}, so that large uploads do not stall
+     * the drawing thread. Draws are skipped until the upload is ready: the first draw afterwards only creates the VAO, VAOs being
+     * the objects that cannot be shared between contexts.<br>
+     * Mesh data must not be modified until then. Streamed meshes (see {@link #setStreaming(int)}) write their data in the
+     * drawing thread anyway: they are set up at once.
+     * @param resource_loader A loader sharing its objects with the drawing context.
+     */
+    public void uploadWith(GlResourceLoader resource_loader){
+        releaseOpenGlResources();
+        if (streamingFramesInFlight > 0){
+            setupOpenGlResources();
+            return;
+        }
+        pendingUpload = new BufferUpload();
+        resource_loader.submit(pendingUpload);
+    }
+
+    /**
+     * @return true between {@link #uploadWith(GlResourceLoader)} and the first draw of the uploaded mesh.
+     */
+    public boolean isUploadPending(){
+        return pendingUpload != null;
+    }
+
+    /**
+     * Completes the setup in the drawing thread, once the VAO is created: at the end of {@link #setupOpenGlResources()}, or by
+     * the first draw following {@link #uploadWith(GlResourceLoader)}. Derived classes owning other resources set them up here,
+     * calling this method first.
+     */
+    protected void completeOpenGlSetup(){
+        vertexArrayObject = vertexLayout.getVertexArrayObject();
+        if (dataPerInstance != null){
+            IRenderable.setupInstanceBuffer(vertexLayout, dataPerInstance, instanceCount);
+        }
+        lastAdaptedProgram = -1;
+        streamingIsPending = false;
+        instancesArePending = false;
+    }
+
+    /**
+     * Computes the indices, the draw ranges and the per-vertex data to upload.
+     * @return The per-vertex data, vertex coordinates first.
+     */
+    private List<DataToVbo> prepareUploadedData(){
         vertexIndices = computeVertexIndices();
+        drawRanges = computeDrawRanges();
+        if (drawRanges != null){
+            for (DrawRange[] _style_ranges : drawRanges){
+                for (DrawRange _range : _style_ranges){
+                    _range.findRestartIndex(vertexIndices);
+                }
+            }
+        }
         List<DataToVbo> _buffers = new ArrayList<>();
-        _buffers.add(new DataToVbo(xyzwVertices, ShaderAttributes.VERTEX.toString(), meshUsage, DATA_PER_VERTEX));
-        _buffers.addAll(dataPerVertex);
+        _buffers.add(new DataToVbo(xyzwVertices, ShaderAttributes.VERTEX.toString(), meshUsage, DATA_PER_VERTEX, vertexEncoding));
+        if (dataPerVertex != null) {
+            _buffers.addAll(dataPerVertex);
+        }
+        if (optimizesVertexCache){
+            _buffers = optimizeVertexCache(_buffers);
+        }
+        uploadedData = _buffers;
+        return _buffers;
+    }
 
-        vertexArrayObject = IRenderable.setupBuffers(_buffers, vertexIndices);
-        lastAdaptedProgram = -1;
+    /**
+     * Uploads the buffers of the mesh in a loader context (see {@link #uploadWith(GlResourceLoader)}).
+     */
+    private final class BufferUpload extends GlUpload {
+        VertexLayout uploadedLayout = null;
+
+        @Override
+        protected void uploadThreaded() {
+            List<DataToVbo> _buffers = prepareUploadedData();
+            uploadedLayout = IRenderable.uploadBuffers(_buffers, vertexIndices, bufferLayout);
+        }
+
+        @Override
+        protected void discard() {
+            if (uploadedLayout != null){
+                IRenderable.releaseBuffers(uploadedLayout);
+                uploadedLayout = null;
+            }
+        }
     }
 
+    /**
+     * Draws the mesh, or all its instances if it is instanced (see {@link #setInstanceData(List, int)}).
+     */
     public final void draw(int shader_program, MeshStyle mesh_style) {
-        if (vertexIndices == null){
-            throw new RenderingRuntimeException("OpenGL resource are not set up");
+        draw(shader_program, mesh_style, dataPerInstance == null ? NOT_INSTANCED : instanceCount);
+    }
+
+    /**
+     * Draws the first instances of an instanced mesh in a single draw call.
+     * @param shader_program The shader_program to render with.
+     * @param mesh_style The kind of rendering (filled, lines ...)
+     * @param instance_count The number of instances to draw, at most {@link #getInstanceCount()}.
+     * @throws RenderingRuntimeException if the mesh is not instanced or if OpenGL calls fail.
+     */
+    public final void draw(int shader_program, MeshStyle mesh_style, int instance_count) {
+        if (vertexLayout == null && isEvicted){
+            if (memoryBudget != null && !memoryBudget.canRestore()){
+                // Other evicted meshes have been set up again in this frame
+                return;
+            }
+            restoreOpenGlResources();
         }
-        if (shader_program != lastAdaptedProgram) {
-            IRenderable.adaptBuffersToProgram(vertexArrayObject, shader_program);
-            lastAdaptedProgram = shader_program;
+        if (vertexLayout == null){
+            if (pendingUpload == null){
+                throw new RenderingRuntimeException("OpenGL resource are not set up");
+            }
+            if (!pendingUpload.isReady()){
+                // Buffers are still being uploaded: the mesh is not drawn yet
+                return;
+            }
+            vertexLayout = pendingUpload.uploadedLayout;
+            pendingUpload = null;
+            IRenderable.publishBuffers(vertexLayout);
+            IRenderable.setupVertexArray(vertexLayout);
+            completeOpenGlSetup();
+        }
+        if (instance_count != NOT_INSTANCED && (dataPerInstance == null || instance_count < 0)){
+            throw new RenderingRuntimeException("Cannot draw " + instance_count + " instances of a mesh that is not instanced");
+        }
+        if (instance_count == 0){
+            return;
         }
         // Tells openGL we are working with object 0
         GLES31.glBindVertexArray(vertexArrayObject);
-        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", ()->releaseOpenGlResources());
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", releaseAction);
+
+        if (instancesArePending){
+            if (vertexLayout.getInstanceBuffer() == -1){
+                IRenderable.setupInstanceBuffer(vertexLayout, dataPerInstance, instanceCount);
+                lastAdaptedProgram = -1;
+            }
+            else {
+                IRenderable.updateInstanceBuffer(vertexLayout, dataPerInstance, instanceCount);
+            }
+            instancesArePending = false;
+        }
+
+        StreamingRingBuffer _ring = vertexLayout.getStreamingBuffer();
+        boolean _is_dirty = isDirty();
+        if (_ring != null && (streamingIsPending || _is_dirty)){
+            IRenderable.streamBuffers(vertexLayout, uploadedData);
+            streamingIsPending = false;
+            // attributes now lie in another ring buffer slot
+            lastAdaptedProgram = -1;
+        }
+        if (_is_dirty){
+            // Only forgets dirty ranges of streamed meshes. Shared VBOs are copied before being written
+            if (IRenderable.updateDirtyBuffers(vertexLayout, uploadedData)){
+                lastAdaptedProgram = -1;
+            }
+        }
 
+        // The VAO must be bound to record attributes locations. Attributes at fixed locations suit every program:
+        // they are only pointed again when buffers moved
+        if (lastAdaptedProgram == -1 || (shader_program != lastAdaptedProgram && vertexLayout.dependsOnProgram())) {
+            IRenderable.adaptBuffersToProgram(vertexLayout, shader_program);
+            lastAdaptedProgram = shader_program;
+        }
+
+        drawnInstanceCount = (instance_count == NOT_INSTANCED ? NOT_INSTANCED : Math.min(instance_count, vertexLayout.getInstanceCount()));
         drawMesh(shader_program, mesh_style);
+        drawnInstanceCount = NOT_INSTANCED;
+
+        if (_ring != null){
+            _ring.fenceCurrentSlot();
+        }
+        if (memoryBudget != null){
+            memoryBudget.touch(this, vertexLayout.getAllocatedByteCount());
+        }
+    }
+
+    /**
+     * Sets up again the resources released by the memory budget, from the retained indices and data: nothing is computed again.
+     */
+    private void restoreOpenGlResources(){
+        if (streamingFramesInFlight > 0){
+            vertexLayout = IRenderable.setupStreamingBuffers(uploadedData, vertexIndices, streamingFramesInFlight);
+        }
+        else {
+            vertexLayout = IRenderable.setupBuffers(uploadedData, vertexIndices, bufferLayout);
+        }
+        isEvicted = false;
+        completeOpenGlSetup();
+        if (memoryBudget != null){
+            memoryBudget.restored(vertexLayout.getAllocatedByteCount());
+        }
+    }
+
+    /**
+     * Called by the memory budget: releases the resources, to be set up again by the next draw.
+     */
+    void evict(){
+        releaseOpenGlResources();
+        isEvicted = true;
+    }
+
+    private boolean isDirty(){
+        if (vertexRemap != null){
+            // Modifications address the data given at creation: they are copied to the reordered ones
+            for (int _i = 0; _i < sourceData.size(); _i++){
+                sourceData.get(_i).forwardDirtyVertices(uploadedData.get(_i), vertexRemap);
+            }
+        }
+        for (int _i = 0; _i < uploadedData.size(); _i++){
+            if (uploadedData.get(_i).isDirty()){
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * This method is to be called in the OpenGL thread, and in a well formed OpenGL context.
-     * It contains the special code used by the derived class to draw itself.
+     * It contains the special code used by the derived class to draw itself. By default, it draws the ranges given by
+     * {@link #computeDrawRanges()}.
      * @param shader_program
      * @param mesh_style
      */
-    protected abstract void drawMesh(int shader_program, MeshStyle mesh_style);
+    protected void drawMesh(int shader_program, MeshStyle mesh_style){
+        if (drawRanges == null){
+            throw new RenderingRuntimeException(getClass().getSimpleName() + " must give draw ranges or draw itself");
+        }
+        DrawRange[] _ranges = drawRanges[mesh_style.ordinal()];
+        for (int _r = 0; _r < _ranges.length; _r++){
+            DrawRange _range = _ranges[_r];
+            if (!_range.containsRestartIndex()){
+                drawIndices(_range.getGlMode(), _range.getFirstIndex(), _range.getIndexCount());
+                continue;
+            }
+            // Core since OpenGL ES 3.0. It is disabled afterwards, even if drawing fails, so that other renderers find the default state
+            GLES31.glEnable(GLES31.GL_PRIMITIVE_RESTART_FIXED_INDEX);
+            try {
+                drawIndices(_range.getGlMode(), _range.getFirstIndex(), _range.getIndexCount());
+            }
+            finally {
+                GLES31.glDisable(GLES31.GL_PRIMITIVE_RESTART_FIXED_INDEX);
+            }
+        }
+    }
+
+    /**
+     * To be called by {@link #drawMesh(int, MeshStyle)} instead of glDrawElements(): all the instances being drawn are
+     * rendered with a single glDrawElementsInstanced() call if the mesh is instanced.
+     * @param gl_mode e.g. {@link GLES31#GL_TRIANGLE_FAN}
+     * @param index_count The number of indices to draw
+     * @param index_type e.g. {@link GLES31#GL_UNSIGNED_SHORT}
+     * @param byte_offset The offset of the first index in the indices buffer.
+     */
+    protected final void drawElements(int gl_mode, int index_count, int index_type, int byte_offset){
+        if (drawnInstanceCount == NOT_INSTANCED){
+            GLES31.glDrawElements(gl_mode, index_count, index_type, byte_offset);
+            GlUtilities.ensureGles31Call("glDrawElements", releaseAction);
+        }
+        else {
+            GLES31.glDrawElementsInstanced(gl_mode, index_count, index_type, byte_offset, drawnInstanceCount);
+            GlUtilities.ensureGles31Call("glDrawElementsInstanced", releaseAction);
+        }
+    }
+
+    /**
+     * To be called by {@link #drawMesh(int, MeshStyle)} to draw a range of {@link #computeVertexIndices()}, whatever the index type
+     * chosen at setup (see {@link VertexLayout#getIndexType()}). Instanced meshes draw all their instances.
+     * @param gl_mode e.g. {@link GLES31#GL_TRIANGLES}
+     * @param first_index The rank of the first index to draw in {@link #computeVertexIndices()}
+     * @param index_count The number of indices to draw
+     */
+    protected final void drawIndices(int gl_mode, int first_index, int index_count){
+        drawElements(gl_mode, index_count, vertexLayout.getIndexType(), first_index * vertexLayout.getIndexByteSize());
+    }
+
+    /**
+     * To be called by {@link #drawMesh(int, MeshStyle)} instead of glDrawArrays(): all the instances being drawn are
+     * rendered with a single glDrawArraysInstanced() call if the mesh is instanced.
+     * @param gl_mode e.g. {@link GLES31#GL_TRIANGLE_STRIP}
+     * @param first_vertex The first vertex to draw
+     * @param vertex_count The number of vertices to draw
+     */
+    protected final void drawArrays(int gl_mode, int first_vertex, int vertex_count){
+        if (drawnInstanceCount == NOT_INSTANCED){
+            GLES31.glDrawArrays(gl_mode, first_vertex, vertex_count);
+            GlUtilities.ensureGles31Call("glDrawArrays", releaseAction);
+        }
+        else {
+            GLES31.glDrawArraysInstanced(gl_mode, first_vertex, vertex_count, drawnInstanceCount);
+            GlUtilities.ensureGles31Call("glDrawArraysInstanced", releaseAction);
+        }
+    }
 
     /**
      * This method must be called by derived classes method {@link #releaseOpenGlResources()}.
      */
     @Override
     public void releaseOpenGlResources() {
-        if (vertexArrayObject != -1) {
-            IRenderable.releaseBuffers(vertexArrayObject);
+        if (pendingUpload != null){
+            pendingUpload.cancel();
+            pendingUpload = null;
+        }
+        if (vertexLayout != null) {
+            IRenderable.releaseBuffers(vertexLayout);
+            vertexLayout = null;
             vertexArrayObject = -1;
         }
+        if (memoryBudget != null){
+            memoryBudget.remove(this);
+        }
+        isEvicted = false;
         lastAdaptedProgram = -1;
     }
 
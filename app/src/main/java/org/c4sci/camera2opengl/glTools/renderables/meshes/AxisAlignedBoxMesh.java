@@ -3,22 +3,34 @@ package org.c4sci.camera2opengl.glTools.renderables.meshes;
 import android.opengl.GLES31;
 
 import org.c4sci.camera2opengl.RenderingRuntimeException;
-import org.c4sci.camera2opengl.glTools.GlUtilities;
 
 import java.util.List;
 
 public class AxisAlignedBoxMesh extends AbstractMesh {
 
-    private final static int BOX_VERTEX_COUNT = 8;
+    private final static int[] BOX_LATTICE_SIZES = {2, 2, 2};
     private final static int FLOAT_PER_VERTEX = 4;
-    private static final int STRIP_LENGTH = 10;
 
-    private static final int POINTS_COUNT = 8;
-    private static final int FAN_OFFSET = POINTS_COUNT * 2; // 2 = size of shorts
-    private static final int FAN_COUNT = 8;
-    private static final int FAN_2_OFFSET = FAN_OFFSET + FAN_COUNT * 2;
-    private static final int LINES_OFFSET = FAN_2_OFFSET + FAN_COUNT * 2;
-    private static final int LINES_LENGTH = 9;
+    /*
+    Vertex indices are :
+
+         Y  3_____7
+         | /     /|
+        2 /____6/ |
+         |  1  | /5
+         |_____|/_____X
+         0     4
+        /
+       Z
+     */
+    private static final int[] POINT_INDICES = PrimitiveLists.sequence(8);
+    private static final int[] FAN_1_INDICES = {0, 1, 5, 4, 6, 2, 3, 1};
+    private static final int[] FAN_2_INDICES = {7, 5, 1, 3, 2, 6, 4, 5};
+    private static final int[] LOOP_INDICES = {0, 4, 6, 7, 3, 1, 0, 2, 3};
+    /**
+     * Both fans drawn by a single call.
+     */
+    private static final int[] FAN_INDICES = PrimitiveLists.joinWithRestarts(FAN_1_INDICES, FAN_2_INDICES);
 
     private boolean isFlat;
 
@@ -29,56 +41,36 @@ public class AxisAlignedBoxMesh extends AbstractMesh {
     }
     
     @Override
-    public short[] computeVertexIndices() {
-        /*
-        Vertex indices are :
-
-             Y  3_____7
-             | /     /|
-            2 /____6/ |
-             |  1  | /5
-             |_____|/_____X
-             0     4
-            /
-           Z
-         */
-
-        short[] _res =new short[]{
-                0, 1, 2, 3, 4, 5, 6, 7,  // POINTS
-                0, 1, 5, 4, 6, 2, 3, 1, //  FILLED :    First fan
-                7, 5, 1, 3, 2, 6, 4, 5,  //             Second fan
-                0, 4, 6, 7, 3, 1, 0 , 2, 3 // LINES 1
-
-        };
-        return _res;
+    public int[] computeVertexIndices() {
+        return PrimitiveLists.concatenate(POINT_INDICES, FAN_INDICES, LOOP_INDICES);
     }
 
     @Override
-    protected void drawMesh(int shader_program, MeshStyle mesh_style) {
-        GLES31.glBindVertexArray(super.vertexArrayObject);
-        int _gl_mode;
+    public int[] computeListIndices(MeshStyle mesh_style) {
         switch(mesh_style){
             case LINES:
-                _gl_mode = GLES31.GL_LINE_LOOP;
-                GLES31.glDrawElements(_gl_mode, LINES_LENGTH, GLES31.GL_UNSIGNED_SHORT, LINES_OFFSET);
-                GlUtilities.ensureGles31Call("glDrawElements( lines)");
-                break;
+                return PrimitiveLists.loopToLines(LOOP_INDICES, 0, LOOP_INDICES.length);
             case FILLED:
-                _gl_mode = GLES31.GL_TRIANGLE_FAN;
-                GLES31.glDrawElements(_gl_mode, FAN_COUNT, GLES31.GL_UNSIGNED_SHORT, FAN_OFFSET);
-                GlUtilities.ensureGles31Call("glDrawElements( first FAN)");
-                GLES31.glDrawElements(_gl_mode, FAN_COUNT, GLES31.GL_UNSIGNED_SHORT, FAN_2_OFFSET);
-                GlUtilities.ensureGles31Call("glDrawElements( second FAN)");
-                break;
+                return PrimitiveLists.concatenate(
+                        PrimitiveLists.fanToTriangles(FAN_1_INDICES, 0, FAN_1_INDICES.length),
+                        PrimitiveLists.fanToTriangles(FAN_2_INDICES, 0, FAN_2_INDICES.length));
             case POINTS:
-                _gl_mode = GLES31.GL_POINTS;
-                GLES31.glDrawElements(_gl_mode, POINTS_COUNT, GLES31.GL_UNSIGNED_SHORT, 0);
-                GlUtilities.ensureGles31Call("glDrawElements( points )");
-                break;
+                return POINT_INDICES.clone();
             default:
                 throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
         }
-   }
+    }
+
+    @Override
+    protected DrawRange[][] computeDrawRanges() {
+        DrawRange[][] _res = new DrawRange[MeshStyle.values().length][];
+        _res[MeshStyle.POINTS.ordinal()] = new DrawRange[]{new DrawRange(GLES31.GL_POINTS, 0, POINT_INDICES.length)};
+        _res[MeshStyle.FILLED.ordinal()] = new DrawRange[]{new DrawRange(GLES31.GL_TRIANGLE_FAN, POINT_INDICES.length, FAN_INDICES.length)};
+        _res[MeshStyle.LINES.ordinal()] = new DrawRange[]{
+                new DrawRange(GLES31.GL_LINE_LOOP, POINT_INDICES.length + FAN_INDICES.length, LOOP_INDICES.length)};
+        return _res;
+    }
+
     /*
      * The vertices are ordered as following nested loops on X, then Y then Z.
      */
@@ -99,16 +91,7 @@ public class AxisAlignedBoxMesh extends AbstractMesh {
      * @return The vertex data
      */
     public static float[] forEach(VertexIntProcessor v_proc){
-        float[] _res = new float[BOX_VERTEX_COUNT * FLOAT_PER_VERTEX];
-        int _i = 0;
-        for (int _x=0; _x<=1; _x++){
-            for (int _y=0; _y<= 1; _y++){
-                for (int _z=0; _z<=1; _z++){
-                    v_proc.processVertex(_res, _i, _x, _y, _z);
-                    _i += 4;
-                }
-            }
-        }
-        return _res;
+        return LatticeMeshGenerator.generate(BOX_LATTICE_SIZES, FLOAT_PER_VERTEX,
+                (data_, offset_, coordinates_, sizes_) -> v_proc.processVertex(data_, offset_, coordinates_[0], coordinates_[1], coordinates_[2]));
     }
 }
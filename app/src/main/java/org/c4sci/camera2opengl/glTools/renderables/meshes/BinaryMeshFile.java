@@ -0,0 +1,336 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.AttributeEncoding;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads and writes meshes in a compact binary format made to be memory-mapped and uploaded as is to VBOs:
+ * loading a mesh neither parses text nor copies data into float arrays, so that it takes milliseconds instead of seconds
+ * for large text files (e.g. OBJ). Text files are better converted once, offline or at first launch.<br>
+ * The file is little endian (the byte order of all Android ABIs) and made of:
+ * <ol>
+ *     <li>a header: magic number, version, vertex count, attribute count, index type, index count, index block offset and length,
+ *     the first index and index count of each {@link IRenderable.MeshStyle}, and the mesh {@link Bounds} (box then sphere);</li>
+ *     <li>an attribute table: for each attribute its code (its rank in {@link #ATTRIBUTE_CODES}), its float count per vertex before encoding,
+ *     its {@link AttributeEncoding} ordinal, its block offset and length;</li>
+ *     <li>attribute blocks, each being exactly the contents of the attribute VBO, aligned on {@link #BLOCK_ALIGNMENT} bytes;</li>
+ *     <li>the index block, indices having the narrowest type able to index all the vertices.</li>
+ * </ol>
+ */
+public final class BinaryMeshFile {
+
+    /**
+     * "C4MB" read as a little endian int.
+     */
+    public static final int MAGIC_NUMBER = 0x424D3443;
+    public static final int VERSION = 1;
+    /**
+     * Blocks start on multiples of this, so that mapped data are aligned for any attribute type.
+     */
+    public static final int BLOCK_ALIGNMENT = 16;
+
+    static final int STYLE_COUNT = IRenderable.MeshStyle.values().length;
+    private static final int HEADER_INT_COUNT = 8;
+    private static final int BOUNDS_FLOAT_COUNT = 10;
+    private static final int HEADER_BYTE_COUNT = (HEADER_INT_COUNT + 2 * STYLE_COUNT + BOUNDS_FLOAT_COUNT) * Integer.BYTES;
+    private static final int ATTRIBUTE_INT_COUNT = 5;
+    /**
+     * The attributes by the code stored in files. Codes are frozen, new attributes being appended, so that reordering
+     * {@link ShaderAttributes} never changes the meaning of files.
+     */
+    private static final ShaderAttributes[] ATTRIBUTE_CODES = {
+            ShaderAttributes.VERTEX, ShaderAttributes.COLOR, ShaderAttributes.NORMAL, ShaderAttributes.TEXCOORD,
+            ShaderAttributes.TEXTURE0, ShaderAttributes.TEXTURE1, ShaderAttributes.TEXTURE2, ShaderAttributes.TEXTURE3,
+            ShaderAttributes.MVP, ShaderAttributes.AMBIENT, ShaderAttributes.DIRECTIONAL, ShaderAttributes.EYEVERTEX,
+            ShaderAttributes.INSTANCE_COLOR, ShaderAttributes.INSTANCE_MODEL, ShaderAttributes.DRAW_ID};
+
+    private BinaryMeshFile(){
+    }
+
+    /**
+     * Writes a triangle mesh. As {@link TriangleMesh}, it is drawn as triangles when filled, as its unique edges for lines
+     * and as all its vertices for points, without storing point indices. Vertex coordinates are stored as floats, other data with their own encoding.
+     * @param triangle_mesh The mesh data. Per-vertex data must be named after {@link ShaderAttributes}.
+     * @param mesh_file The file to write.
+     * @throws IOException if the file cannot be written.
+     * @throws RenderingRuntimeException if a per-vertex data name is not a {@link ShaderAttributes} one.
+     */
+    public static void write(IndexedTriangles triangle_mesh, File mesh_file) throws IOException {
+        int[] _triangles = triangle_mesh.getTriangleIndices();
+        int[][] _style_indices = new int[STYLE_COUNT][];
+        _style_indices[IRenderable.MeshStyle.FILLED.ordinal()] = _triangles;
+        _style_indices[IRenderable.MeshStyle.LINES.ordinal()] = PrimitiveLists.trianglesToEdges(_triangles);
+        _style_indices[IRenderable.MeshStyle.POINTS.ordinal()] = new int[0];
+
+        List<IRenderable.DataToVbo> _data = new ArrayList<>();
+        _data.add(new IRenderable.DataToVbo(triangle_mesh.getXyzwVertices(), ShaderAttributes.VERTEX.toString(),
+                GLES31.GL_STATIC_DRAW, IRenderable.DATA_PER_VERTEX));
+        if (triangle_mesh.getDataPerVertex() != null){
+            _data.addAll(triangle_mesh.getDataPerVertex());
+        }
+        write(triangle_mesh.getVertexCount(), _data, _style_indices, Bounds.fromVertices(triangle_mesh.getXyzwVertices()), mesh_file);
+    }
+
+    /**
+     * Writes a mesh.
+     * @param vertex_count The number of vertices
+     * @param data_per_vertex The per-vertex data, vertex coordinates included. Names must be {@link ShaderAttributes} ones.
+     * @param style_indices For each {@link IRenderable.MeshStyle} (by ordinal), the indices to draw with
+     *                      {@link GLES31#GL_TRIANGLES}, {@link GLES31#GL_LINES} or {@link GLES31#GL_POINTS}. Each may be empty:
+     *                      no points indices draw all the vertices as points, no other indices draw nothing.
+     * @param mesh_bounds The bounds of the vertices
+     * @param mesh_file The file to write.
+     * @throws IOException if the file cannot be written.
+     * @throws RenderingRuntimeException if data are incoherent.
+     */
+    public static void write(int vertex_count, List<IRenderable.DataToVbo> data_per_vertex, int[][] style_indices,
+                             Bounds mesh_bounds, File mesh_file) throws IOException {
+        if (style_indices.length != STYLE_COUNT){
+            throw new RenderingRuntimeException("Bad style count = " + style_indices.length + " expected " + STYLE_COUNT);
+        }
+        int _attribute_count = data_per_vertex.size();
+        int[] _codes = new int[_attribute_count];
+        int[] _block_offsets = new int[_attribute_count];
+        int[] _block_lengths = new int[_attribute_count];
+        long _offset = align(HEADER_BYTE_COUNT + (long) _attribute_count * ATTRIBUTE_INT_COUNT * Integer.BYTES);
+        for (int _a = 0; _a < _attribute_count; _a++){
+            IRenderable.DataToVbo _data = data_per_vertex.get(_a);
+            if (_data.vertexCount() != vertex_count){
+                throw new RenderingRuntimeException("Bad " + _data.getAttributeName() + " vertex count = " + _data.vertexCount() + " expected " + vertex_count);
+            }
+            _codes[_a] = attributeCode(_data.getAttributeName());
+            _block_offsets[_a] = checkedInt(_offset);
+            _block_lengths[_a] = checkedInt((long) vertex_count * _data.getEncoding().bytesPerVertex(_data.getDataCountPerVertex()));
+            _offset = align(_offset + _block_lengths[_a]);
+        }
+
+        int[] _all_indices = PrimitiveLists.concatenate(style_indices);
+        for (int _index : _all_indices){
+            if (_index < 0 || _index >= vertex_count){
+                throw new RenderingRuntimeException("Bad vertex index = " + _index + " for " + vertex_count + " vertices");
+            }
+        }
+        int _index_type = IRenderable.indexTypeFor(vertex_count);
+        int _index_byte_size = IRenderable.indexByteSize(_index_type);
+        int _index_offset = checkedInt(_offset);
+        int _index_length = checkedInt((long) _all_indices.length * _index_byte_size);
+
+        ByteBuffer _file = ByteBuffer.allocate(checkedInt((long) _index_offset + _index_length)).order(ByteOrder.LITTLE_ENDIAN);
+        _file.putInt(MAGIC_NUMBER);
+        _file.putInt(VERSION);
+        _file.putInt(vertex_count);
+        _file.putInt(_attribute_count);
+        _file.putInt(_index_type);
+        _file.putInt(_all_indices.length);
+        _file.putInt(_index_offset);
+        _file.putInt(_index_length);
+        int _first_index = 0;
+        for (int[] _indices : style_indices){
+            _file.putInt(_first_index);
+            _file.putInt(_indices.length);
+            _first_index += _indices.length;
+        }
+        _file.putFloat(mesh_bounds.getMinX());
+        _file.putFloat(mesh_bounds.getMinY());
+        _file.putFloat(mesh_bounds.getMinZ());
+        _file.putFloat(mesh_bounds.getMaxX());
+        _file.putFloat(mesh_bounds.getMaxY());
+        _file.putFloat(mesh_bounds.getMaxZ());
+        for (float _value : mesh_bounds.getSphere()){
+            _file.putFloat(_value);
+        }
+        for (int _a = 0; _a < _attribute_count; _a++){
+            IRenderable.DataToVbo _data = data_per_vertex.get(_a);
+            _file.putInt(_codes[_a]);
+            _file.putInt(_data.getDataCountPerVertex());
+            _file.putInt(_data.getEncoding().ordinal());
+            _file.putInt(_block_offsets[_a]);
+            _file.putInt(_block_lengths[_a]);
+
+            _data.getEncoding().encode(_data.getRawData(), _data.getDataCountPerVertex(), 0, vertex_count, _file,
+                    _block_offsets[_a], _data.getEncoding().bytesPerVertex(_data.getDataCountPerVertex()));
+        }
+        for (int _i = 0; _i < _all_indices.length; _i++){
+            switch (_index_type){
+                case GLES31.GL_UNSIGNED_BYTE:
+                    _file.put(_index_offset + _i, (byte) _all_indices[_i]);
+                    break;
+                case GLES31.GL_UNSIGNED_SHORT:
+                    _file.putShort(_index_offset + _i * Short.BYTES, (short) _all_indices[_i]);
+                    break;
+                default:
+                    _file.putInt(_index_offset + _i * Integer.BYTES, _all_indices[_i]);
+                    break;
+            }
+        }
+
+        _file.clear();
+        try (FileOutputStream _stream = new FileOutputStream(mesh_file)){
+            FileChannel _channel = _stream.getChannel();
+            while (_file.hasRemaining()){
+                _channel.write(_file);
+            }
+        }
+    }
+
+    /**
+     * Memory-maps a mesh file. Only the header and the indices are read, indices being checked against the vertex count:
+     * the OS pages the vertex data in when they are uploaded to the VBOs by {@link MappedMesh#setupOpenGlResources()}.
+     * @param mesh_file The file to map. It must not be modified while the mesh exists.
+     * @param mesh_usage E.g. {@link GLES31#GL_STATIC_DRAW}
+     * @return The mesh, to be set up on the GL thread.
+     * @throws IOException if the file cannot be read.
+     * @throws RenderingRuntimeException if the file is not a valid mesh file, or if the device is not little endian.
+     */
+    public static MappedMesh map(File mesh_file, int mesh_usage) throws IOException {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN){
+            throw new RenderingRuntimeException("Mapped meshes need a little endian device");
+        }
+        MappedByteBuffer _mapped;
+        try (RandomAccessFile _file = new RandomAccessFile(mesh_file, "r")){
+            // The mapping stays valid once the channel is closed
+            _mapped = _file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, _file.length());
+        }
+        _mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (_mapped.capacity() < HEADER_BYTE_COUNT || _mapped.getInt(0) != MAGIC_NUMBER){
+            throw new RenderingRuntimeException(mesh_file + " is not a mesh file");
+        }
+        if (_mapped.getInt(Integer.BYTES) != VERSION){
+            throw new RenderingRuntimeException("Unmanaged mesh file version = " + _mapped.getInt(Integer.BYTES));
+        }
+
+        int _position = 2 * Integer.BYTES;
+        int _vertex_count = _mapped.getInt(_position);
+        int _attribute_count = _mapped.getInt(_position += Integer.BYTES);
+        int _index_type = _mapped.getInt(_position += Integer.BYTES);
+        int _index_count = _mapped.getInt(_position += Integer.BYTES);
+        int _index_offset = _mapped.getInt(_position += Integer.BYTES);
+        int _index_length = _mapped.getInt(_position += Integer.BYTES);
+        _position += Integer.BYTES;
+        int[] _style_first_indices = new int[STYLE_COUNT];
+        int[] _style_index_counts = new int[STYLE_COUNT];
+        for (int _s = 0; _s < STYLE_COUNT; _s++){
+            _style_first_indices[_s] = _mapped.getInt(_position);
+            _style_index_counts[_s] = _mapped.getInt(_position + Integer.BYTES);
+            _position += 2 * Integer.BYTES;
+            if (_style_first_indices[_s] < 0 || _style_index_counts[_s] < 0 || _style_first_indices[_s] + _style_index_counts[_s] > _index_count){
+                throw new RenderingRuntimeException("Bad index range for " + IRenderable.MeshStyle.values()[_s]);
+            }
+        }
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(_mapped.getFloat(_position), _mapped.getFloat(_position + 4), _mapped.getFloat(_position + 8),
+                _mapped.getFloat(_position + 12), _mapped.getFloat(_position + 16), _mapped.getFloat(_position + 20));
+        _bounds.setSphere(_mapped.getFloat(_position + 24), _mapped.getFloat(_position + 28), _mapped.getFloat(_position + 32),
+                _mapped.getFloat(_position + 36));
+        _position += BOUNDS_FLOAT_COUNT * Float.BYTES;
+
+        if (_attribute_count < 1 || HEADER_BYTE_COUNT + (long) _attribute_count * ATTRIBUTE_INT_COUNT * Integer.BYTES > _mapped.capacity()){
+            throw new RenderingRuntimeException("Bad attribute count = " + _attribute_count);
+        }
+        AttributeEncoding[] _all_encodings = AttributeEncoding.values();
+        String[] _names = new String[_attribute_count];
+        int[] _data_counts = new int[_attribute_count];
+        AttributeEncoding[] _encodings = new AttributeEncoding[_attribute_count];
+        ByteBuffer[] _blocks = new ByteBuffer[_attribute_count];
+        for (int _a = 0; _a < _attribute_count; _a++){
+            int _code = _mapped.getInt(_position);
+            int _encoding = _mapped.getInt(_position + 2 * Integer.BYTES);
+            if (_code < 0 || _code >= ATTRIBUTE_CODES.length || _encoding < 0 || _encoding >= _all_encodings.length){
+                throw new RenderingRuntimeException("Bad attribute " + _a + " in " + mesh_file);
+            }
+            _names[_a] = ATTRIBUTE_CODES[_code].toString();
+            _data_counts[_a] = _mapped.getInt(_position + Integer.BYTES);
+            _encodings[_a] = _all_encodings[_encoding];
+            _blocks[_a] = slice(_mapped, _mapped.getInt(_position + 3 * Integer.BYTES), _mapped.getInt(_position + 4 * Integer.BYTES));
+            _position += ATTRIBUTE_INT_COUNT * Integer.BYTES;
+        }
+        if (IRenderable.indexByteSize(_index_type) * (long) _index_count != _index_length){
+            throw new RenderingRuntimeException("Bad index block length = " + _index_length);
+        }
+        ByteBuffer _indices = slice(_mapped, _index_offset, _index_length);
+        checkIndices(_indices, _index_type, _index_count, _vertex_count);
+
+        return new MappedMesh(_vertex_count, _names, _data_counts, _encodings, _blocks, _indices, _index_type,
+                _style_first_indices, _style_index_counts, _bounds, mesh_usage);
+    }
+
+    /**
+     * @return A view of a block of the mapped file, sharing its memory.
+     */
+    private static ByteBuffer slice(MappedByteBuffer mapped_file, int byte_offset, int byte_length){
+        if (byte_offset < 0 || byte_length < 0 || (long) byte_offset + byte_length > mapped_file.capacity()){
+            throw new RenderingRuntimeException("Bad block [" + byte_offset + ", +" + byte_length + "[");
+        }
+        ByteBuffer _res = mapped_file.duplicate();
+        _res.limit(byte_offset + byte_length);
+        _res.position(byte_offset);
+        return _res.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads all the indices once, so that a corrupt file never makes the GPU read vertices out of the VBOs.
+     * Primitive restart indices (the largest value of the index type) are allowed.
+     */
+    private static void checkIndices(ByteBuffer index_block, int index_type, int index_count, int vertex_count){
+        if (vertex_count < 0){
+            throw new RenderingRuntimeException("Bad vertex count = " + vertex_count);
+        }
+        for (int _i = 0; _i < index_count; _i++){
+            long _index;
+            long _restart_index;
+            switch (index_type){
+                case GLES31.GL_UNSIGNED_BYTE:
+                    _index = index_block.get(_i) & 0xffL;
+                    _restart_index = IRenderable.MAX_UNSIGNED_BYTE;
+                    break;
+                case GLES31.GL_UNSIGNED_SHORT:
+                    _index = index_block.getShort(_i * Short.BYTES) & 0xffffL;
+                    _restart_index = IRenderable.MAX_UNSIGNED_SHORT;
+                    break;
+                default:
+                    _index = index_block.getInt(_i * Integer.BYTES) & 0xffffffffL;
+                    _restart_index = 0xffffffffL;
+                    break;
+            }
+            if (_index >= vertex_count && _index != _restart_index){
+                throw new RenderingRuntimeException("Bad vertex index = " + _index + " at " + _i + " for " + vertex_count + " vertices");
+            }
+        }
+    }
+
+    private static int attributeCode(String attribute_name){
+        for (int _c = 0; _c < ATTRIBUTE_CODES.length; _c++){
+            if (ATTRIBUTE_CODES[_c].toString().contentEquals(attribute_name)){
+                return _c;
+            }
+        }
+        throw new RenderingRuntimeException("Not a ShaderAttributes name: " + attribute_name);
+    }
+
+    private static long align(long byte_offset){
+        return (byte_offset + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+
+    private static int checkedInt(long byte_count){
+        if (byte_count > Integer.MAX_VALUE){
+            throw new RenderingRuntimeException("Mesh file too large: " + byte_count + " bytes");
+        }
+        return (int) byte_count;
+    }
+}
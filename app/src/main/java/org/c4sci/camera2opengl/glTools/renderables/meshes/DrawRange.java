@@ -0,0 +1,61 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+/**
+ * This class is a range of {@link AbstractMesh#computeVertexIndices()} drawn by a single glDrawElements() call.
+ * Meshes give the ranges of each style by {@link AbstractMesh#computeDrawRanges()} instead of computing byte offsets.<br>
+ * Connected primitives (strips, fans, loops) separated by {@link PrimitiveLists#RESTART_INDEX} are drawn by a single range:
+ * {@link GLES31#GL_PRIMITIVE_RESTART_FIXED_INDEX} is enabled while drawing the ranges containing restart indices only, and disabled afterwards.
+ */
+public final class DrawRange {
+
+    private final int glMode;
+    private final int firstIndex;
+    private final int indexCount;
+    private boolean containsRestartIndex = false;
+
+    /**
+     * @param gl_mode e.g. {@link GLES31#GL_TRIANGLE_FAN}
+     * @param first_index The rank of the first index to draw in {@link AbstractMesh#computeVertexIndices()}
+     * @param index_count The number of indices to draw, restart indices included
+     */
+    public DrawRange(int gl_mode, int first_index, int index_count){
+        glMode = gl_mode;
+        firstIndex = first_index;
+        indexCount = index_count;
+    }
+
+    public int getGlMode() {
+        return glMode;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return true if the range contains {@link PrimitiveLists#RESTART_INDEX}, as found at setup.
+     */
+    public boolean containsRestartIndex(){
+        return containsRestartIndex;
+    }
+
+    /**
+     * Looks for restart indices in the range, once indices are computed.
+     * @param vertex_indices The indices given by {@link AbstractMesh#computeVertexIndices()}
+     */
+    void findRestartIndex(int[] vertex_indices){
+        containsRestartIndex = false;
+        for (int _i = firstIndex; _i < firstIndex + indexCount; _i++){
+            if (vertex_indices[_i] == PrimitiveLists.RESTART_INDEX){
+                containsRestartIndex = true;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+/**
+ * This class bounds the GPU memory used by the buffers of a set of meshes (see {@link AbstractMesh#setMemoryBudget(GpuMemoryBudget)}).
+ * Meshes are kept in least recently drawn order: once their buffers exceed the budget, the least recently drawn ones are evicted,
+ * i.e. their OpenGL resources are released. Their data being retained in memory, an evicted mesh is set up again by its next draw,
+ * without computing its indices nor optimizing it again.<br>
+ * Meshes drawn in the current frame (see {@link #nextFrame()}) are never evicted: the budget may then be exceeded until they are
+ * not drawn anymore. Sizes are given by {@link org.c4sci.camera2opengl.glTools.renderables.VertexLayout#getAllocatedByteCount()}:
+ * a buffer shared by several meshes is counted by one of them only. Meshes counting no byte, e.g. boxes using the buffers of
+ * another box, are never evicted, as evicting them would free nothing.<br>
+ * This class is used by the drawing thread only: it is not synchronized. Meshes are linked through their own fields,
+ * so that a draw neither allocates nor looks up any map.
+ */
+public final class GpuMemoryBudget {
+
+    private long budgetByteCount;
+    private long allocatedByteCount = 0;
+    private int maxRestoredBytesPerFrame = Integer.MAX_VALUE;
+    private int restoredByteCount = 0;
+    private long currentFrame = 0;
+    private int evictionCount = 0;
+    private int restorationCount = 0;
+
+    /**
+     * The most recently drawn mesh, and the least recently drawn one.
+     */
+    private AbstractMesh lruHead = null;
+    private AbstractMesh lruTail = null;
+
+    /**
+     * @param budget_byte_count The number of bytes the buffers of the meshes may use, e.g. a fraction of the device memory.
+     */
+    public GpuMemoryBudget(long budget_byte_count){
+        budgetByteCount = Math.max(0, budget_byte_count);
+    }
+
+    /**
+     * Changes the budget. Meshes in excess are evicted at next draw.
+     * @param budget_byte_count The number of bytes the buffers of the meshes may use.
+     */
+    public void setBudgetByteCount(long budget_byte_count){
+        budgetByteCount = Math.max(0, budget_byte_count);
+    }
+
+    public long getBudgetByteCount() {
+        return budgetByteCount;
+    }
+
+    /**
+     * Limits the bytes uploaded again per frame to set up evicted meshes, so that a sudden change of view does not stall a frame:
+     * meshes beyond the limit are skipped, and set up by the draws of the next frames. A single mesh is always restored.
+     * @param max_restored_bytes_per_frame The limit. Default is {@link Integer#MAX_VALUE}, i.e. no limit.
+     */
+    public void setMaxRestoredBytesPerFrame(int max_restored_bytes_per_frame){
+        maxRestoredBytesPerFrame = Math.max(0, max_restored_bytes_per_frame);
+    }
+
+    /**
+     * @return The number of bytes used by the buffers of the meshes that are set up.
+     */
+    public long getAllocatedByteCount() {
+        return allocatedByteCount;
+    }
+
+    /**
+     * @return The number of meshes evicted since the budget creation.
+     */
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The number of evicted meshes set up again since the budget creation.
+     */
+    public int getRestorationCount() {
+        return restorationCount;
+    }
+
+    /**
+     * Starts a new frame. To be called by the drawing thread before drawing the meshes of each frame: meshes not drawn since
+     * can then be evicted.
+     */
+    public void nextFrame(){
+        currentFrame++;
+        restoredByteCount = 0;
+    }
+
+    /**
+     * Called by an evicted mesh before setting itself up again.
+     * @return false if the restorations of this frame already reached their limit.
+     */
+    boolean canRestore(){
+        return restoredByteCount == 0 || restoredByteCount < maxRestoredBytesPerFrame;
+    }
+
+    void restored(int byte_count){
+        restoredByteCount += byte_count;
+        restorationCount++;
+    }
+
+    /**
+     * Called each time a mesh is drawn: updates its size, makes it the most recently drawn one,
+     * then evicts the least recently drawn meshes while the budget is exceeded. Meshes of no size are left out of the list.
+     */
+    void touch(AbstractMesh mesh_, int byte_count){
+        if (mesh_.memoryBudget != this){
+            return;
+        }
+        allocatedByteCount += byte_count - mesh_.budgetedByteCount;
+        mesh_.budgetedByteCount = byte_count;
+        mesh_.lastDrawnFrame = currentFrame;
+        if (byte_count == 0){
+            unlink(mesh_);
+        }
+        else if (lruHead != mesh_){
+            unlink(mesh_);
+            mesh_.lruNext = lruHead;
+            if (lruHead != null){
+                lruHead.lruPrevious = mesh_;
+            }
+            lruHead = mesh_;
+            if (lruTail == null){
+                lruTail = mesh_;
+            }
+        }
+        while (allocatedByteCount > budgetByteCount && lruTail != null && lruTail.lastDrawnFrame != currentFrame){
+            // Releasing the mesh removes it from the list
+            lruTail.evict();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Forgets a mesh which resources are released.
+     */
+    void remove(AbstractMesh mesh_){
+        unlink(mesh_);
+        allocatedByteCount -= mesh_.budgetedByteCount;
+        mesh_.budgetedByteCount = 0;
+    }
+
+    /**
+     * Does nothing if the mesh is not in the list, e.g. not drawn since its setup.
+     */
+    private void unlink(AbstractMesh mesh_){
+        if (mesh_.lruPrevious != null){
+            mesh_.lruPrevious.lruNext = mesh_.lruNext;
+        }
+        else if (lruHead == mesh_){
+            lruHead = mesh_.lruNext;
+        }
+        if (mesh_.lruNext != null){
+            mesh_.lruNext.lruPrevious = mesh_.lruPrevious;
+        }
+        else if (lruTail == mesh_){
+            lruTail = mesh_.lruPrevious;
+        }
+        mesh_.lruPrevious = null;
+        mesh_.lruNext = null;
+    }
+}
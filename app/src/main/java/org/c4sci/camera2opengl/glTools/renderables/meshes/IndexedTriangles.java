@@ -0,0 +1,56 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+
+import java.util.List;
+
+/**
+ * This class holds the data of a triangle mesh without any OpenGL resource, so that it can be built by any thread
+ * (e.g. by {@link QuadricSimplifier}) and turned into a {@link TriangleMesh} later.
+ */
+public final class IndexedTriangles {
+
+    private final float[] xyzwVertices;
+    private final int[] triangleIndices;
+    private final List<IRenderable.DataToVbo> dataPerVertex;
+
+    /**
+     * @param xyzw_vertices The vertices
+     * @param triangle_indices 3 vertex indices per triangle
+     * @param data_per_vertex List of all data associated to each vertex. It may be null.
+     */
+    public IndexedTriangles(float[] xyzw_vertices, int[] triangle_indices, List<IRenderable.DataToVbo> data_per_vertex){
+        xyzwVertices = xyzw_vertices;
+        triangleIndices = triangle_indices;
+        dataPerVertex = data_per_vertex;
+    }
+
+    public float[] getXyzwVertices() {
+        return xyzwVertices;
+    }
+
+    public int[] getTriangleIndices() {
+        return triangleIndices;
+    }
+
+    public List<IRenderable.DataToVbo> getDataPerVertex() {
+        return dataPerVertex;
+    }
+
+    public int getTriangleCount(){
+        return triangleIndices.length / 3;
+    }
+
+    public int getVertexCount(){
+        return xyzwVertices.length / IRenderable.DATA_PER_VERTEX;
+    }
+
+    /**
+     * Creates the mesh drawing these triangles. It does not call OpenGL: the mesh still has to be set up on the GL thread.
+     * Data are shared with the mesh, so this method is to be called once.
+     * @param mesh_usage E.g. {@link android.opengl.GLES31#GL_STATIC_DRAW}
+     */
+    public TriangleMesh toTriangleMesh(int mesh_usage){
+        return new TriangleMesh(xyzwVertices, triangleIndices, dataPerVertex, mesh_usage);
+    }
+}
@@ -0,0 +1,288 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class merges meshes into shared vertex and index buffers, as {@link StaticMeshBatch}, and draws each style with a single
+ * glDrawElementsIndirect() call, whatever the number of meshes: the CPU cost of a frame does not grow with the number of meshes.<br>
+ * The indices of the visible meshes are packed into a second index buffer ({@link #getPackedIndexBuffer()}), style after style,
+ * and one command per style ({@link #getCommandBuffer()}) draws the packed indices of the style. Packing is done by the CPU
+ * when visibility changes ({@link #setMeshVisible(int, boolean)}), with one glCopyBufferSubData() per run of consecutive visible meshes:
+ * frames in which nothing changes only bind the command buffer and draw.<br>
+ * A compute shader can pack the indices instead, e.g. after culling meshes on the GPU: it reads the merged indices of
+ * {@link #getSourceIndexBuffer()} at {@link #getMeshFirstIndex(MeshStyle, int)}, writes them to the packed index buffer from
+ * {@link #getStyleFirstIndex(MeshStyle)} on, and writes the total in the count of the style command (e.g. with atomicAdd()),
+ * followed by a glMemoryBarrier({@link GLES31#GL_ELEMENT_ARRAY_BARRIER_BIT} | {@link GLES31#GL_COMMAND_BARRIER_BIT}).<br>
+ * As ES 3.1 ignores the base instance of commands, each vertex carries the rank of its mesh as {@link ShaderAttributes#DRAW_ID}
+ * data: shaders use it to fetch per mesh data. Triangles are never reordered across meshes (see {@link #setVertexCacheOptimization(boolean)}).
+ */
+public class IndirectMeshBatch extends StaticMeshBatch {
+
+    /**
+     * The size of a command: count, instanceCount, firstIndex, baseVertex and reservedMustBeZero as 32 bits ints.
+     */
+    public static final int COMMAND_BYTE_SIZE = 5 * 4;
+    /**
+     * The offsets of count, instanceCount and firstIndex in a command.
+     */
+    public static final int COUNT_BYTE_OFFSET = 0;
+    public static final int INSTANCE_COUNT_BYTE_OFFSET = 4;
+    public static final int FIRST_INDEX_BYTE_OFFSET = 8;
+
+    private final int meshCount;
+    private final boolean[] meshVisibilities;
+    /**
+     * The command of each style, by style ordinal.
+     */
+    private final ByteBuffer commands;
+    private int commandBuffer = -1;
+    private int packedIndexBuffer = -1;
+    private int commandInstanceCount = 1;
+    private boolean packingIsDirty = true;
+    private boolean commandsAreDirty = true;
+
+    /**
+     * Creates a batch, each mesh being visible.
+     * @param batched_meshes The meshes to merge. Their rank is their {@link ShaderAttributes#DRAW_ID}.
+     * @param model_matrices The model matrix of each mesh applied on the CPU, in the order of batched_meshes. May be null to keep
+     *                       meshes in their model coordinates, e.g. when shaders transform them by per mesh data, as may be each matrix.
+     * @param mesh_usage E.g. {@link GLES31#GL_STATIC_DRAW}
+     * @throws RenderingRuntimeException if meshes per-vertex data differ.
+     */
+    public IndirectMeshBatch(List<AbstractMesh> batched_meshes, List<float[]> model_matrices, int mesh_usage){
+        super(batched_meshes, model_matrices, mesh_usage, true);
+        meshCount = batched_meshes.size();
+        meshVisibilities = new boolean[meshCount];
+        Arrays.fill(meshVisibilities, true);
+        commands = ByteBuffer.allocateDirect(MeshStyle.values().length * COMMAND_BYTE_SIZE).order(ByteOrder.nativeOrder());
+        for (MeshStyle _style : MeshStyle.values()){
+            int _o = getCommandByteOffset(_style);
+            commands.putInt(_o + COUNT_BYTE_OFFSET, styleIndices[_style.ordinal()].length);
+            commands.putInt(_o + INSTANCE_COUNT_BYTE_OFFSET, commandInstanceCount);
+            commands.putInt(_o + FIRST_INDEX_BYTE_OFFSET, styleIndexOffsets[_style.ordinal()]);
+            // Merged indices already include the mesh base vertex
+            commands.putInt(_o + 12, 0);
+            commands.putInt(_o + 16, 0);
+        }
+    }
+
+    public int getMeshCount(){
+        return meshCount;
+    }
+
+    /**
+     * Shows or hides a mesh in all styles. Indices are packed again at next draw, overwriting what a compute shader may
+     * have written in the packed index and command buffers.
+     * @param mesh_index The rank of the mesh
+     * @param is_visible false to skip the mesh
+     */
+    public void setMeshVisible(int mesh_index, boolean is_visible){
+        if (mesh_index < 0 || mesh_index >= meshCount){
+            throw new RenderingRuntimeException("Bad mesh index = " + mesh_index);
+        }
+        if (meshVisibilities[mesh_index] != is_visible){
+            meshVisibilities[mesh_index] = is_visible;
+            packingIsDirty = true;
+        }
+    }
+
+    public boolean isMeshVisible(int mesh_index){
+        return meshVisibilities[mesh_index];
+    }
+
+    /**
+     * @return The command buffer, to be written by compute shaders, or -1 if not set up. Its storage is allocated at setup.
+     */
+    public int getCommandBuffer(){
+        return commandBuffer;
+    }
+
+    /**
+     * @return The index buffer the commands draw from, to be written by compute shaders, or -1 if not set up.
+     * Its storage is allocated at setup, as large as {@link #getSourceIndexBuffer()}.
+     */
+    public int getPackedIndexBuffer(){
+        return packedIndexBuffer;
+    }
+
+    /**
+     * @return The merged indices of all the meshes, or -1 if not set up. It must not be written.
+     */
+    public int getSourceIndexBuffer(){
+        return (vertexLayout == null ? -1 : vertexLayout.getIndexBuffer());
+    }
+
+    /**
+     * @return The byte offset of the command drawing the style in {@link #getCommandBuffer()}: commands follow style ordinals.
+     */
+    public int getCommandByteOffset(MeshStyle mesh_style){
+        return mesh_style.ordinal() * COMMAND_BYTE_SIZE;
+    }
+
+    /**
+     * @return The rank of the first index of the style, in both the source and the packed index buffers.
+     */
+    public int getStyleFirstIndex(MeshStyle mesh_style){
+        return styleIndexOffsets[mesh_style.ordinal()];
+    }
+
+    /**
+     * @return The rank of the first index of the mesh in the style, in {@link #getSourceIndexBuffer()}.
+     */
+    public int getMeshFirstIndex(MeshStyle mesh_style, int mesh_index){
+        int _res = styleIndexOffsets[mesh_style.ordinal()];
+        int[] _index_counts = meshIndexCounts[mesh_style.ordinal()];
+        for (int _m = 0; _m < mesh_index; _m++){
+            _res += _index_counts[_m];
+        }
+        return _res;
+    }
+
+    public int getMeshIndexCount(MeshStyle mesh_style, int mesh_index){
+        return meshIndexCounts[mesh_style.ordinal()][mesh_index];
+    }
+
+    /**
+     * Creates the packed index and command buffers with their storage, so that compute shaders can write them before the
+     * first draw, and packs the visible meshes. The packed index buffer replaces the merged one in the VAO.
+     */
+    @Override
+    protected void completeOpenGlSetup() {
+        super.completeOpenGlSetup();
+        int[] _buffers = new int[2];
+        GLES31.glGenBuffers(2, _buffers, 0);
+        GlUtilities.ensureGles31Call("glGenBuffers(command and packed index buffers)", releaseAction);
+        commandBuffer = _buffers[0];
+        packedIndexBuffer = _buffers[1];
+
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(GL_DRAW_INDIRECT_BUFFER)", releaseAction);
+        GLES31.glBufferData(GLES31.GL_DRAW_INDIRECT_BUFFER, commands.capacity(), null, GLES31.GL_DYNAMIC_DRAW);
+        GlUtilities.ensureGles31Call("glBufferData(GL_DRAW_INDIRECT_BUFFER)", releaseAction);
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, 0);
+
+        GLES31.glBindVertexArray(vertexArrayObject);
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", releaseAction);
+        GLES31.glBindBuffer(GLES31.GL_ELEMENT_ARRAY_BUFFER, packedIndexBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(GL_ELEMENT_ARRAY_BUFFER)", releaseAction);
+        GLES31.glBufferData(GLES31.GL_ELEMENT_ARRAY_BUFFER, Math.max(1, vertexLayout.getIndexCount() * vertexLayout.getIndexByteSize()),
+                null, GLES31.GL_DYNAMIC_COPY);
+        GlUtilities.ensureGles31Call("glBufferData(GL_ELEMENT_ARRAY_BUFFER)", releaseAction);
+
+        packVisibleMeshes();
+        uploadCommands();
+        GLES31.glBindVertexArray(0);
+    }
+
+    @Override
+    public void releaseOpenGlResources() {
+        if (commandBuffer != -1){
+            GLES31.glDeleteBuffers(2, new int[]{commandBuffer, packedIndexBuffer}, 0);
+            commandBuffer = -1;
+            packedIndexBuffer = -1;
+        }
+        super.releaseOpenGlResources();
+    }
+
+    /**
+     * Triangles of different meshes must not be mixed: the batch is never optimized for the vertex cache.
+     */
+    @Override
+    protected int[] triangleListRange() {
+        return null;
+    }
+
+    /**
+     * Copies the indices of the visible meshes into the packed index buffer, and sets the count of each style command.
+     * Consecutive visible meshes are copied at once.
+     */
+    private void packVisibleMeshes(){
+        int _index_byte_size = vertexLayout.getIndexByteSize();
+        GLES31.glBindBuffer(GLES31.GL_COPY_READ_BUFFER, vertexLayout.getIndexBuffer());
+        GLES31.glBindBuffer(GLES31.GL_COPY_WRITE_BUFFER, packedIndexBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(packed indices)", releaseAction);
+        for (MeshStyle _style : MeshStyle.values()){
+            int[] _index_counts = meshIndexCounts[_style.ordinal()];
+            int _source_index = styleIndexOffsets[_style.ordinal()];
+            int _packed_index = _source_index;
+            // The run of consecutive visible meshes not copied yet
+            int _run_first_index = _source_index;
+            int _run_index_count = 0;
+            for (int _m = 0; _m < meshCount; _m++){
+                if (meshVisibilities[_m]){
+                    _run_index_count += _index_counts[_m];
+                }
+                else {
+                    _packed_index = copyIndices(_run_first_index, _packed_index, _run_index_count, _index_byte_size);
+                    _run_first_index = _source_index + _index_counts[_m];
+                    _run_index_count = 0;
+                }
+                _source_index += _index_counts[_m];
+            }
+            _packed_index = copyIndices(_run_first_index, _packed_index, _run_index_count, _index_byte_size);
+            commands.putInt(getCommandByteOffset(_style) + COUNT_BYTE_OFFSET, _packed_index - styleIndexOffsets[_style.ordinal()]);
+        }
+        GlUtilities.ensureGles31Call("glCopyBufferSubData(packed indices)", releaseAction);
+        GLES31.glBindBuffer(GLES31.GL_COPY_READ_BUFFER, 0);
+        GLES31.glBindBuffer(GLES31.GL_COPY_WRITE_BUFFER, 0);
+        packingIsDirty = false;
+        commandsAreDirty = true;
+    }
+
+    /**
+     * @return The packed index following the copied ones.
+     */
+    private static int copyIndices(int source_index, int packed_index, int index_count, int index_byte_size){
+        if (index_count > 0){
+            GLES31.glCopyBufferSubData(GLES31.GL_COPY_READ_BUFFER, GLES31.GL_COPY_WRITE_BUFFER,
+                    source_index * index_byte_size, packed_index * index_byte_size, index_count * index_byte_size);
+        }
+        return packed_index + index_count;
+    }
+
+    private void uploadCommands(){
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(GL_DRAW_INDIRECT_BUFFER)", releaseAction);
+        commands.clear();
+        GLES31.glBufferSubData(GLES31.GL_DRAW_INDIRECT_BUFFER, 0, commands.capacity(), commands);
+        GlUtilities.ensureGles31Call("glBufferSubData(GL_DRAW_INDIRECT_BUFFER)", releaseAction);
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, 0);
+        commandsAreDirty = false;
+    }
+
+    @Override
+    protected void drawMesh(int shader_program, MeshStyle mesh_style) {
+        if (styleIndices[mesh_style.ordinal()].length == 0){
+            return;
+        }
+        if (packingIsDirty){
+            packVisibleMeshes();
+        }
+        int _instance_count = (drawnInstanceCount == NOT_INSTANCED ? 1 : drawnInstanceCount);
+        if (_instance_count != commandInstanceCount){
+            for (MeshStyle _style : MeshStyle.values()){
+                commands.putInt(getCommandByteOffset(_style) + INSTANCE_COUNT_BYTE_OFFSET, _instance_count);
+            }
+            commandInstanceCount = _instance_count;
+            commandsAreDirty = true;
+        }
+        if (commandsAreDirty){
+            uploadCommands();
+        }
+
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        GlUtilities.ensureGles31Call("glBindBuffer(GL_DRAW_INDIRECT_BUFFER)", releaseAction);
+        GLES31.glDrawElementsIndirect(listMode(mesh_style), vertexLayout.getIndexType(), getCommandByteOffset(mesh_style));
+        GlUtilities.ensureGles31Call("glDrawElementsIndirect", releaseAction);
+        GLES31.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+}
@@ -0,0 +1,88 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.util.List;
+
+/**
+ * This class represents a grid of rows x columns vertices, which positions are computed by a {@link LatticeVertexProcessor}:
+ * planes, height fields, distortion grids, spheres or box faces by mapping the lattice coordinates ...<br>
+ * It is drawn as 2 triangles per cell when filled, as the grid rows and columns for lines and as all its vertices for points.
+ * Vertices and topology are generated in parallel (see {@link LatticeMeshGenerator}).
+ */
+public class LatticeMesh extends AbstractMesh {
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int[] triangleIndices;
+    private final int[] lineIndices;
+
+    /**
+     * Creates a grid mesh.
+     * @param row_count The number of vertex rows, at least 1
+     * @param column_count The number of vertex columns, at least 1
+     * @param vertex_processor Fills x y z w of each vertex from its {row, column} lattice coordinates. It is called concurrently.
+     * @param per_vertex_data List of all data to associate to each vertex, in the same order (see {@link LatticeMeshGenerator#generate(int[], int, LatticeVertexProcessor)}).
+     *                        It may be null.
+     * @param mesh_usage E.g. {@link GLES31#GL_STATIC_DRAW}
+     * @throws RenderingRuntimeException if the grid is empty or too large.
+     */
+    public LatticeMesh(int row_count, int column_count, LatticeVertexProcessor vertex_processor, List<DataToVbo> per_vertex_data, int mesh_usage){
+        super(LatticeMeshGenerator.generate(new int[]{row_count, column_count}, DATA_PER_VERTEX, vertex_processor), per_vertex_data, mesh_usage);
+        rowCount = row_count;
+        columnCount = column_count;
+        triangleIndices = LatticeMeshGenerator.gridTriangles(row_count, column_count);
+        lineIndices = LatticeMeshGenerator.gridLines(row_count, column_count);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public int[] computeVertexIndices() {
+        return PrimitiveLists.concatenate(triangleIndices, lineIndices);
+    }
+
+    @Override
+    public int[] computeListIndices(MeshStyle mesh_style) {
+        switch(mesh_style){
+            case LINES:
+                return lineIndices.clone();
+            case FILLED:
+                return triangleIndices.clone();
+            case POINTS:
+                return PrimitiveLists.sequence(rowCount * columnCount);
+            default:
+                throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
+        }
+    }
+
+    @Override
+    protected int[] triangleListRange() {
+        return new int[]{0, triangleIndices.length};
+    }
+
+    @Override
+    protected void drawMesh(int shader_program, MeshStyle mesh_style) {
+        switch(mesh_style){
+            case LINES:
+                drawIndices(GLES31.GL_LINES, triangleIndices.length, lineIndices.length);
+                break;
+            case FILLED:
+                drawIndices(GLES31.GL_TRIANGLES, 0, triangleIndices.length);
+                break;
+            case POINTS:
+                drawArrays(GLES31.GL_POINTS, 0, rowCount * columnCount);
+                break;
+            default:
+                throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class generates data and topology of lattice meshes (planes, grids, tessellated boxes, spheres by mapping ...)
+ * of any resolution.<br>
+ * Vertices are numbered with the first lattice dimension as the outermost loop, e.g. (x, y, z) lattices follow
+ * nested loops on x then y then z as {@link AxisAlignedBoxMesh#forEach(VertexIntProcessor)} does.<br>
+ * Large lattices are filled in parallel: vertices are split in bands of consecutive vertices processed by fork/join tasks on
+ * a pool dedicated to mesh generation, so that building e.g. a 1024 x 1024 grid does not block the calling thread for long,
+ * nor starve the common pool. Small lattices are filled by the calling thread.
+ */
+public final class LatticeMeshGenerator {
+
+    /**
+     * Bands smaller than that are not split anymore: forking costs more than processing them.
+     */
+    private static final int MIN_BAND_VERTEX_COUNT = 4096;
+    private static final int INDICES_PER_QUAD = 6;
+    private static final int INDICES_PER_LINE = 2;
+
+    /**
+     * Lazily created pool, shared by all generations.
+     */
+    private static final class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private LatticeMeshGenerator(){
+    }
+
+    /**
+     * Generates per-vertex data for each vertex of a lattice.
+     * @param lattice_sizes The number of vertices along each dimension, e.g. {rows, columns} for a grid. Each must be at least 1.
+     * @param data_count_per_vertex The number of floats per vertex, e.g. 4 for x y z w.
+     * @param vertex_processor Fills the data of each vertex. It is called concurrently.
+     * @return The data of all the vertices, data_count_per_vertex per vertex.
+     * @throws RenderingRuntimeException if the lattice is empty or too large.
+     */
+    public static float[] generate(int[] lattice_sizes, int data_count_per_vertex, LatticeVertexProcessor vertex_processor){
+        int _vertex_count = vertexCount(lattice_sizes);
+        long _length = (long) _vertex_count * data_count_per_vertex;
+        if (_length > Integer.MAX_VALUE){
+            throw new RenderingRuntimeException("Lattice data too large: " + _length + " floats");
+        }
+        float[] _res = new float[(int) _length];
+        int[] _sizes = lattice_sizes.clone();
+        run(new VertexBand(_res, data_count_per_vertex, _sizes, vertex_processor, 0, _vertex_count), _vertex_count);
+        return _res;
+    }
+
+    /**
+     * @param lattice_sizes The number of vertices along each dimension
+     * @return The number of vertices of the lattice
+     * @throws RenderingRuntimeException if the lattice is empty or has more than {@link Integer#MAX_VALUE} vertices.
+     */
+    public static int vertexCount(int[] lattice_sizes){
+        long _count = 1;
+        for (int _size : lattice_sizes){
+            if (_size < 1){
+                throw new RenderingRuntimeException("Bad lattice size: " + _size);
+            }
+            _count *= _size;
+            if (_count > Integer.MAX_VALUE){
+                throw new RenderingRuntimeException("Too many lattice vertices");
+            }
+        }
+        return (int) _count;
+    }
+
+    /**
+     * Generates the triangles of a grid which vertex (row, column) is numbered row * column_count + column.
+     * Each cell gives 2 triangles, counter clockwise when rows follow +y and columns follow +x.
+     * @param row_count The number of vertex rows, at least 1
+     * @param column_count The number of vertex columns, at least 1
+     * @return 3 indices per triangle, to draw with {@link android.opengl.GLES31#GL_TRIANGLES}
+     */
+    public static int[] gridTriangles(int row_count, int column_count){
+        int _cell_columns = Math.max(0, column_count - 1);
+        int _cell_rows = Math.max(0, row_count - 1);
+        int[] _res = new int[checkedLength((long) _cell_rows * _cell_columns * INDICES_PER_QUAD)];
+        run(new RowBand(row_ -> {
+                int _i = row_ * _cell_columns * INDICES_PER_QUAD;
+                for (int _c = 0; _c < _cell_columns; _c++){
+                    int _v = row_ * column_count + _c;
+                    _res[_i++] = _v;
+                    _res[_i++] = _v + 1;
+                    _res[_i++] = _v + column_count;
+                    _res[_i++] = _v + 1;
+                    _res[_i++] = _v + column_count + 1;
+                    _res[_i++] = _v + column_count;
+                }
+            }, _cell_columns * INDICES_PER_QUAD, 0, _cell_rows), _res.length);
+        return _res;
+    }
+
+    /**
+     * Generates the lines of a grid which vertex (row, column) is numbered row * column_count + column:
+     * lines along rows first, then lines along columns.
+     * @param row_count The number of vertex rows, at least 1
+     * @param column_count The number of vertex columns, at least 1
+     * @return 2 indices per line, to draw with {@link android.opengl.GLES31#GL_LINES}
+     */
+    public static int[] gridLines(int row_count, int column_count){
+        int _row_lines_per_row = Math.max(0, column_count - 1);
+        int _column_lines_per_row = (row_count > 1 ? column_count : 0);
+        int _row_lines_length = row_count * _row_lines_per_row * INDICES_PER_LINE;
+        int[] _res = new int[checkedLength((long) row_count * _row_lines_per_row * INDICES_PER_LINE +
+                (long) Math.max(0, row_count - 1) * _column_lines_per_row * INDICES_PER_LINE)];
+        run(new RowBand(row_ -> {
+                int _i = row_ * _row_lines_per_row * INDICES_PER_LINE;
+                for (int _c = 0; _c < _row_lines_per_row; _c++){
+                    _res[_i++] = row_ * column_count + _c;
+                    _res[_i++] = row_ * column_count + _c + 1;
+                }
+                if (row_ < row_count - 1){
+                    _i = _row_lines_length + row_ * _column_lines_per_row * INDICES_PER_LINE;
+                    for (int _c = 0; _c < _column_lines_per_row; _c++){
+                        _res[_i++] = row_ * column_count + _c;
+                        _res[_i++] = (row_ + 1) * column_count + _c;
+                    }
+                }
+            }, (_row_lines_per_row + _column_lines_per_row) * INDICES_PER_LINE, 0, row_count), _res.length);
+        return _res;
+    }
+
+    private static int checkedLength(long length_){
+        if (length_ > Integer.MAX_VALUE){
+            throw new RenderingRuntimeException("Too many lattice indices: " + length_);
+        }
+        return (int) length_;
+    }
+
+    /**
+     * Runs a task in the dedicated pool, unless the work is small or the current thread already belongs to the pool.
+     */
+    private static void run(RecursiveAction task_, int work_size){
+        if (work_size < MIN_BAND_VERTEX_COUNT || ForkJoinTask.getPool() == PoolHolder.POOL){
+            task_.invoke();
+        }
+        else {
+            PoolHolder.POOL.invoke(task_);
+        }
+    }
+
+    /**
+     * Processes vertices [firstVertex, endVertex[, splitting itself while the band is large.
+     */
+    private static final class VertexBand extends RecursiveAction {
+        private final float[] vertexData;
+        private final int dataCountPerVertex;
+        private final int[] latticeSizes;
+        private final LatticeVertexProcessor vertexProcessor;
+        private final int firstVertex;
+        private final int endVertex;
+
+        VertexBand(float[] vertex_data, int data_count_per_vertex, int[] lattice_sizes, LatticeVertexProcessor vertex_processor,
+                   int first_vertex, int end_vertex){
+            vertexData = vertex_data;
+            dataCountPerVertex = data_count_per_vertex;
+            latticeSizes = lattice_sizes;
+            vertexProcessor = vertex_processor;
+            firstVertex = first_vertex;
+            endVertex = end_vertex;
+        }
+
+        @Override
+        protected void compute() {
+            if (endVertex - firstVertex > MIN_BAND_VERTEX_COUNT){
+                int _middle = firstVertex + (endVertex - firstVertex) / 2;
+                invokeAll(new VertexBand(vertexData, dataCountPerVertex, latticeSizes, vertexProcessor, firstVertex, _middle),
+                        new VertexBand(vertexData, dataCountPerVertex, latticeSizes, vertexProcessor, _middle, endVertex));
+                return;
+            }
+            // Decodes the first vertex coordinates, the last dimension varying fastest
+            int _dimensions = latticeSizes.length;
+            int[] _coordinates = new int[_dimensions];
+            int _rest = firstVertex;
+            for (int _d = _dimensions - 1; _d >= 0; _d--){
+                _coordinates[_d] = _rest % latticeSizes[_d];
+                _rest /= latticeSizes[_d];
+            }
+            for (int _v = firstVertex; _v < endVertex; _v++){
+                vertexProcessor.processVertex(vertexData, _v * dataCountPerVertex, _coordinates, latticeSizes);
+                // Increments coordinates as an odometer
+                for (int _d = _dimensions - 1; _d >= 0; _d--){
+                    if (++_coordinates[_d] < latticeSizes[_d]){
+                        break;
+                    }
+                    _coordinates[_d] = 0;
+                }
+            }
+        }
+    }
+
+    private interface RowProcessor {
+        void processRow(int row_);
+    }
+
+    /**
+     * Processes rows [firstRow, endRow[, splitting itself while the band holds many values.
+     */
+    private static final class RowBand extends RecursiveAction {
+        private final RowProcessor rowProcessor;
+        private final int valuesPerRow;
+        private final int firstRow;
+        private final int endRow;
+
+        RowBand(RowProcessor row_processor, int values_per_row, int first_row, int end_row){
+            rowProcessor = row_processor;
+            valuesPerRow = values_per_row;
+            firstRow = first_row;
+            endRow = end_row;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (endRow - firstRow) * valuesPerRow > MIN_BAND_VERTEX_COUNT && endRow - firstRow > 1){
+                int _middle = firstRow + (endRow - firstRow) / 2;
+                invokeAll(new RowBand(rowProcessor, valuesPerRow, firstRow, _middle),
+                        new RowBand(rowProcessor, valuesPerRow, _middle, endRow));
+                return;
+            }
+            for (int _r = firstRow; _r < endRow; _r++){
+                rowProcessor.processRow(_r);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+/**
+ * This interface is responsible for associating a data to a vertex of a lattice of any dimension and resolution,
+ * in function of its integer coordinates in the lattice. It generalizes {@link VertexIntProcessor}.<br>
+ * It is called concurrently from several threads (see {@link LatticeMeshGenerator}): it must only write
+ * its own vertex data and must not modify the arrays it is given.
+ */
+public interface LatticeVertexProcessor {
+    /**
+     * Fills the data of a vertex.
+     * @param data_ The data of all the vertices
+     * @param offset_ The index of the vertex first data in data_
+     * @param lattice_coordinates The vertex coordinates in the lattice: lattice_coordinates[d] in [0, lattice_sizes[d][
+     * @param lattice_sizes The number of vertices along each lattice dimension
+     */
+    void processVertex(float[] data_, int offset_, int[] lattice_coordinates, int[] lattice_sizes);
+}
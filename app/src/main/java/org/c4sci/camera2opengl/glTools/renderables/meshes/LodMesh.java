@@ -0,0 +1,165 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds several levels of detail (LOD) of the same object, from the finest to the coarsest, and draws only one of them.<br>
+ * The level is chosen each frame by {@link #selectLevel(float[], int)} from the size of the object bounding sphere on screen:
+ * distant copies are drawn with coarse levels and do not waste vertex throughput on details covering a few pixels.
+ * A hysteresis band around each threshold prevents the level from flickering (popping) when the size lies near a threshold.<br>
+ * The bounding sphere is the finest level's (see {@link AbstractMesh#getBoundingSphere()}).
+ */
+public class LodMesh implements IRenderable {
+
+    /**
+     * Default relative width of the hysteresis band around thresholds.
+     */
+    public static final float DEFAULT_HYSTERESIS = 0.15f;
+
+    private final List<AbstractMesh> meshLevels;
+    private final float[] minimumPixelSizes;
+    private final float hysteresisRatio;
+    private int currentLevel = 0;
+
+    /**
+     * Creates a LOD mesh with {@link #DEFAULT_HYSTERESIS}.
+     * @see #LodMesh(List, float[], float)
+     */
+    public LodMesh(List<AbstractMesh> mesh_levels, float[] minimum_pixel_sizes){
+        this(mesh_levels, minimum_pixel_sizes, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * Creates a LOD mesh. Meshes are then set up, drawn and released by this object.
+     * @param mesh_levels The levels, from the finest to the coarsest.
+     * @param minimum_pixel_sizes For each level but the last one, the bounding sphere diameter on screen, in pixels, down to which
+     *                            the level is drawn. Must be decreasing.
+     * @param hysteresis_ratio The relative width of the band around thresholds in which the level does not change, e.g. 0.15.
+     * @throws RenderingRuntimeException if there are no levels or if thresholds do not match levels.
+     */
+    public LodMesh(List<AbstractMesh> mesh_levels, float[] minimum_pixel_sizes, float hysteresis_ratio){
+        if (mesh_levels.isEmpty() || minimum_pixel_sizes.length != mesh_levels.size() - 1){
+            throw new RenderingRuntimeException("Bad LOD: " + mesh_levels.size() + " levels for " + minimum_pixel_sizes.length + " thresholds");
+        }
+        for (int _i = 1; _i < minimum_pixel_sizes.length; _i++){
+            if (minimum_pixel_sizes[_i] > minimum_pixel_sizes[_i - 1]){
+                throw new RenderingRuntimeException("LOD thresholds must be decreasing");
+            }
+        }
+        meshLevels = new ArrayList<>(mesh_levels);
+        minimumPixelSizes = minimum_pixel_sizes.clone();
+        hysteresisRatio = Math.max(0f, hysteresis_ratio);
+    }
+
+    /**
+     * Estimates the diameter of a sphere on screen. This method does not allocate anything.
+     * @param bounding_sphere {center x, center y, center z, radius} in model coordinates
+     * @param mvp_matrix The model view projection matrix, column major (as in {@link android.opengl.Matrix})
+     * @param viewport_height The viewport height in pixels
+     * @return The diameter in pixels, or {@link Float#MAX_VALUE} if the viewpoint lies inside the sphere or behind its center.
+     */
+    public static float projectedDiameter(float[] bounding_sphere, float[] mvp_matrix, int viewport_height){
+        float _x = bounding_sphere[0];
+        float _y = bounding_sphere[1];
+        float _z = bounding_sphere[2];
+        // Clip space w of the center
+        float _w = mvp_matrix[3] * _x + mvp_matrix[7] * _y + mvp_matrix[11] * _z + mvp_matrix[15];
+        if (_w <= bounding_sphere[3]){
+            return Float.MAX_VALUE;
+        }
+        // The clip space y row scales model lengths by at most its xyz norm (projection focal and model scaling)
+        float _y_scale = (float) Math.sqrt(mvp_matrix[1] * mvp_matrix[1] + mvp_matrix[5] * mvp_matrix[5] + mvp_matrix[9] * mvp_matrix[9]);
+        // NDC height is 2 for viewport_height pixels
+        return bounding_sphere[3] * _y_scale / _w * viewport_height;
+    }
+
+    /**
+     * Chooses the level to draw from now on. To be called each frame before {@link #draw(int, MeshStyle)}, with the MVP the object is drawn with.
+     * This method does not allocate anything.
+     * @param mvp_matrix The model view projection matrix, column major (as in {@link android.opengl.Matrix})
+     * @param viewport_height The viewport height in pixels
+     * @return The selected level
+     */
+    public int selectLevel(float[] mvp_matrix, int viewport_height){
+        float _size = projectedDiameter(meshLevels.get(0).getBoundingSphere(), mvp_matrix, viewport_height);
+        int _level = currentLevel;
+        // Finer levels need the size to clearly exceed their threshold
+        while (_level > 0 && _size >= minimumPixelSizes[_level - 1] * (1f + hysteresisRatio)){
+            _level--;
+        }
+        // Coarser levels need the size to clearly fall below the current threshold
+        while (_level < minimumPixelSizes.length && _size < minimumPixelSizes[_level] * (1f - hysteresisRatio)){
+            _level++;
+        }
+        currentLevel = _level;
+        return _level;
+    }
+
+    public int getCurrentLevel() {
+        return currentLevel;
+    }
+
+    public int getLevelCount(){
+        return meshLevels.size();
+    }
+
+    /**
+     * @param level_index in [0, {@link #getLevelCount()}[, 0 being the finest.
+     */
+    public AbstractMesh getLevel(int level_index){
+        return meshLevels.get(level_index);
+    }
+
+    @Override
+    public void setupOpenGlResources() {
+        for (int _i = 0; _i < meshLevels.size(); _i++){
+            try {
+                meshLevels.get(_i).setupOpenGlResources();
+            }
+            catch (RuntimeException _e){
+                for (int _j = 0; _j < _i; _j++){
+                    meshLevels.get(_j).releaseOpenGlResources();
+                }
+                throw _e;
+            }
+        }
+    }
+
+    /**
+     * Draws the level chosen by the last {@link #selectLevel(float[], int)}.
+     */
+    @Override
+    public void draw(int shader_program, MeshStyle mesh_style) {
+        meshLevels.get(currentLevel).draw(shader_program, mesh_style);
+    }
+
+    /**
+     * @return The bounds of the finest level.
+     */
+    @Override
+    public Bounds getBounds() {
+        return meshLevels.get(0).getBounds();
+    }
+
+    @Override
+    public void releaseOpenGlResources() {
+        for (int _i = 0; _i < meshLevels.size(); _i++){
+            meshLevels.get(_i).releaseOpenGlResources();
+        }
+    }
+
+    @Override
+    public int majorOpenGlVersion() {
+        return meshLevels.get(0).majorOpenGlVersion();
+    }
+
+    @Override
+    public int minorOpenGlVersion() {
+        return meshLevels.get(0).minorOpenGlVersion();
+    }
+}
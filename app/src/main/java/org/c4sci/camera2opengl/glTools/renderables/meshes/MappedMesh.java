@@ -0,0 +1,141 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.renderables.AttributeEncoding;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.VertexLayout;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class represents a mesh memory-mapped from a {@link BinaryMeshFile}. Its data are never copied on the Java heap:
+ * mapped blocks are given as is to glBufferData() by {@link #setupOpenGlResources()}, and its bounds are read from the file.<br>
+ * Instances are created by {@link BinaryMeshFile#map(java.io.File, int)}.
+ */
+public final class MappedMesh implements IRenderable {
+
+    private final int vertexCount;
+    private final String[] attributeNames;
+    private final int[] dataCountsPerVertex;
+    private final AttributeEncoding[] attributeEncodings;
+    private final ByteBuffer[] attributeBlocks;
+    private final ByteBuffer indexBlock;
+    private final int indexType;
+    private final int[] styleFirstIndices;
+    private final int[] styleIndexCounts;
+    private final Bounds bounds;
+    private final int meshUsage;
+
+    private VertexLayout vertexLayout = null;
+    private int lastAdaptedProgram = -1;
+    private final Runnable releaseAction = this::releaseOpenGlResources;
+
+    MappedMesh(int vertex_count, String[] attribute_names, int[] data_counts_per_vertex, AttributeEncoding[] attribute_encodings,
+               ByteBuffer[] attribute_blocks, ByteBuffer index_block, int index_type, int[] style_first_indices,
+               int[] style_index_counts, Bounds bounds_, int mesh_usage){
+        vertexCount = vertex_count;
+        attributeNames = attribute_names;
+        dataCountsPerVertex = data_counts_per_vertex;
+        attributeEncodings = attribute_encodings;
+        attributeBlocks = attribute_blocks;
+        indexBlock = index_block;
+        indexType = index_type;
+        styleFirstIndices = style_first_indices;
+        styleIndexCounts = style_index_counts;
+        bounds = bounds_;
+        meshUsage = mesh_usage;
+    }
+
+    public int getVertexCount(){
+        return vertexCount;
+    }
+
+    /**
+     * @return The number of indices drawn in the style. No points indices means that all the vertices are drawn as points.
+     */
+    public int getIndexCount(MeshStyle mesh_style){
+        return styleIndexCounts[mesh_style.ordinal()];
+    }
+
+    @Override
+    public void setupOpenGlResources() {
+        // Uploads read the blocks from their position: duplicates keep the mapped ones untouched for a later setup
+        ByteBuffer[] _blocks = new ByteBuffer[attributeBlocks.length];
+        for (int _i = 0; _i < _blocks.length; _i++){
+            _blocks[_i] = attributeBlocks[_i].duplicate();
+        }
+        vertexLayout = IRenderable.setupEncodedBuffers(vertexCount, attributeNames, dataCountsPerVertex, attributeEncodings,
+                _blocks, indexBlock.duplicate(), indexType, meshUsage);
+        lastAdaptedProgram = -1;
+    }
+
+    @Override
+    public void draw(int shader_program, MeshStyle mesh_style) {
+        if (vertexLayout == null){
+            throw new RenderingRuntimeException("OpenGL resource are not set up");
+        }
+        int _index_count = styleIndexCounts[mesh_style.ordinal()];
+        boolean _draws_all_points = (_index_count == 0 && mesh_style == MeshStyle.POINTS);
+        if (_index_count == 0 && !_draws_all_points){
+            return;
+        }
+        GLES31.glBindVertexArray(vertexLayout.getVertexArrayObject());
+        GlUtilities.ensureGles31Call("glBindVertexArray(vertexArrayObject)", releaseAction);
+
+        // Attributes at fixed locations suit every program: they are pointed once
+        if (lastAdaptedProgram == -1 || (shader_program != lastAdaptedProgram && vertexLayout.dependsOnProgram())) {
+            IRenderable.adaptBuffersToProgram(vertexLayout, shader_program);
+            lastAdaptedProgram = shader_program;
+        }
+        if (_draws_all_points){
+            // Files written from triangle meshes store no point indices
+            GLES31.glDrawArrays(GLES31.GL_POINTS, 0, vertexCount);
+            GlUtilities.ensureGles31Call("glDrawArrays", releaseAction);
+            return;
+        }
+        GLES31.glDrawElements(glMode(mesh_style), _index_count, indexType,
+                styleFirstIndices[mesh_style.ordinal()] * vertexLayout.getIndexByteSize());
+        GlUtilities.ensureGles31Call("glDrawElements", releaseAction);
+    }
+
+    @Override
+    public void releaseOpenGlResources() {
+        if (vertexLayout != null) {
+            IRenderable.releaseBuffers(vertexLayout);
+            vertexLayout = null;
+        }
+        lastAdaptedProgram = -1;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public int majorOpenGlVersion() {
+        return 3;
+    }
+
+    @Override
+    public int minorOpenGlVersion() {
+        return 1;
+    }
+
+    private static int glMode(MeshStyle mesh_style){
+        switch(mesh_style){
+            case LINES:
+                return GLES31.GL_LINES;
+            case FILLED:
+                return GLES31.GL_TRIANGLES;
+            case POINTS:
+                return GLES31.GL_POINTS;
+            default:
+                throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import java.util.Arrays;
+
+/**
+ * This class converts indices of connected primitives (fans, strips, loops) into indices of independent primitives
+ * (triangles, lines), so that primitives of several meshes can be appended and drawn by a single glDrawElements() call.
+ */
+public final class PrimitiveLists {
+
+    /**
+     * Separates connected primitives (strips, fans, loops) drawn by a single call. Uploaded with the index type of the mesh,
+     * it becomes the largest value of the type: the index {@link android.opengl.GLES31#GL_PRIMITIVE_RESTART_FIXED_INDEX}
+     * restarts primitives at, never used by a vertex (see {@link DrawRange}).
+     */
+    public static final int RESTART_INDEX = -1;
+
+    private PrimitiveLists(){
+    }
+
+    /**
+     * Converts a {@link android.opengl.GLES31#GL_TRIANGLE_FAN} into {@link android.opengl.GLES31#GL_TRIANGLES}.
+     * @param fan_indices The array containing the fan
+     * @param first_index The first index of the fan (the center)
+     * @param index_count The number of indices of the fan
+     * @return 3 indices per triangle
+     */
+    public static int[] fanToTriangles(int[] fan_indices, int first_index, int index_count){
+        int _triangle_count = Math.max(0, index_count - 2);
+        int[] _res = new int[_triangle_count * 3];
+        for (int _t = 0; _t < _triangle_count; _t++){
+            _res[3 * _t] = fan_indices[first_index];
+            _res[3 * _t + 1] = fan_indices[first_index + _t + 1];
+            _res[3 * _t + 2] = fan_indices[first_index + _t + 2];
+        }
+        return _res;
+    }
+
+    /**
+     * Converts a {@link android.opengl.GLES31#GL_TRIANGLE_STRIP} into {@link android.opengl.GLES31#GL_TRIANGLES},
+     * keeping the triangles orientation.
+     * @param strip_indices The array containing the strip
+     * @param first_index The first index of the strip
+     * @param index_count The number of indices of the strip
+     * @return 3 indices per triangle
+     */
+    public static int[] stripToTriangles(int[] strip_indices, int first_index, int index_count){
+        int _triangle_count = Math.max(0, index_count - 2);
+        int[] _res = new int[_triangle_count * 3];
+        for (int _t = 0; _t < _triangle_count; _t++){
+            // Odd triangles are reversed by the strip
+            boolean _is_odd = (_t % 2) == 1;
+            _res[3 * _t] = strip_indices[first_index + _t + (_is_odd ? 1 : 0)];
+            _res[3 * _t + 1] = strip_indices[first_index + _t + (_is_odd ? 0 : 1)];
+            _res[3 * _t + 2] = strip_indices[first_index + _t + 2];
+        }
+        return _res;
+    }
+
+    /**
+     * Converts a {@link android.opengl.GLES31#GL_LINE_LOOP} into {@link android.opengl.GLES31#GL_LINES}.
+     * @param loop_indices The array containing the loop
+     * @param first_index The first index of the loop
+     * @param index_count The number of indices of the loop
+     * @return 2 indices per line, the last one closing the loop.
+     */
+    public static int[] loopToLines(int[] loop_indices, int first_index, int index_count){
+        if (index_count < 2){
+            return new int[0];
+        }
+        int[] _res = new int[index_count * 2];
+        for (int _l = 0; _l < index_count; _l++){
+            _res[2 * _l] = loop_indices[first_index + _l];
+            _res[2 * _l + 1] = loop_indices[first_index + (_l + 1) % index_count];
+        }
+        return _res;
+    }
+
+    /**
+     * Extracts the edges of {@link android.opengl.GLES31#GL_TRIANGLES}, each edge shared by several triangles being kept once.
+     * @param triangle_indices 3 indices per triangle
+     * @return 2 indices per line, sorted by first then second vertex.
+     */
+    public static int[] trianglesToEdges(int[] triangle_indices){
+        // Edges are packed as (lowest vertex, highest vertex) in longs so that sorting gathers duplicates
+        long[] _edges = new long[triangle_indices.length];
+        for (int _t = 0; _t + 2 < triangle_indices.length; _t += 3){
+            for (int _e = 0; _e < 3; _e++){
+                int _a = triangle_indices[_t + _e];
+                int _b = triangle_indices[_t + (_e + 1) % 3];
+                _edges[_t + _e] = ((long) Math.min(_a, _b) << 32) | Math.max(_a, _b);
+            }
+        }
+        Arrays.sort(_edges);
+
+        int _unique_count = 0;
+        for (int _e = 0; _e < _edges.length; _e++){
+            if (_e == 0 || _edges[_e] != _edges[_e - 1]){
+                _edges[_unique_count++] = _edges[_e];
+            }
+        }
+        int[] _res = new int[_unique_count * 2];
+        for (int _e = 0; _e < _unique_count; _e++){
+            _res[2 * _e] = (int) (_edges[_e] >>> 32);
+            _res[2 * _e + 1] = (int) _edges[_e];
+        }
+        return _res;
+    }
+
+    /**
+     * @param index_count The number of indices
+     * @return 0, 1, ... index_count - 1
+     */
+    public static int[] sequence(int index_count){
+        int[] _res = new int[index_count];
+        for (int _i = 0; _i < index_count; _i++){
+            _res[_i] = _i;
+        }
+        return _res;
+    }
+
+    /**
+     * @return The arrays appended one after the other.
+     */
+    public static int[] concatenate(int[]... index_arrays){
+        int _length = 0;
+        for (int[] _array : index_arrays){
+            _length += _array.length;
+        }
+        int[] _res = new int[_length];
+        int _offset = 0;
+        for (int[] _array : index_arrays){
+            System.arraycopy(_array, 0, _res, _offset, _array.length);
+            _offset += _array.length;
+        }
+        return _res;
+    }
+
+    /**
+     * Appends connected primitives, separated by {@link #RESTART_INDEX}, to draw them by a single call.
+     * @return The arrays appended one after the other, a restart index between two arrays.
+     */
+    public static int[] joinWithRestarts(int[]... primitive_indices){
+        int _length = Math.max(0, primitive_indices.length - 1);
+        for (int[] _array : primitive_indices){
+            _length += _array.length;
+        }
+        int[] _res = new int[_length];
+        int _offset = 0;
+        for (int _p = 0; _p < primitive_indices.length; _p++){
+            if (_p > 0){
+                _res[_offset++] = RESTART_INDEX;
+            }
+            System.arraycopy(primitive_indices[_p], 0, _res, _offset, primitive_indices[_p].length);
+            _offset += primitive_indices[_p].length;
+        }
+        return _res;
+    }
+}
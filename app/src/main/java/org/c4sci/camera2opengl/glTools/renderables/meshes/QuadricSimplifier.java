@@ -0,0 +1,748 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class reduces triangle meshes by edge collapses, following Garland and Heckbert's
+ * "Surface Simplification Using Quadric Error Metrics", so that levels of detail (see {@link LodMesh}) can be built from
+ * scanned or generated meshes instead of being authored.<br>
+ * Each vertex accumulates the planes of its triangles as a quadric; the cheapest edge is collapsed first, into the position
+ * minimizing the sum of squared distances to the planes of both vertices. Mesh boundaries (e.g. texture seams, where vertices
+ * are duplicated) are kept by adding planes orthogonal to boundary triangles. Collapses which would flip a triangle or make the
+ * mesh non-manifold are rejected. Per-vertex data are interpolated along collapsed edges; {@link ShaderAttributes#NORMAL} data
+ * are renormalized.<br>
+ * Simplifying does not call OpenGL. {@link #simplifyInBackground(float...)} runs it on a low priority worker thread so that
+ * the GL thread is never blocked: it should only get the result once the returned future is done.
+ */
+public final class QuadricSimplifier {
+
+    private static final int VERTEX_PER_TRIANGLE = 3;
+    private static final int DATA_PER_QUADRIC = 10;
+    /**
+     * Weight of the planes keeping boundaries, relative to the planes of triangles.
+     */
+    private static final double BOUNDARY_WEIGHT = 1000.0;
+    /**
+     * Systems which determinant is smaller than that, relative to the quadric scale, are deemed singular.
+     */
+    private static final double SINGULAR_DETERMINANT = 1e-10;
+    /**
+     * Weight of the squared area spanned by an edge (its length to the fourth) added to its cost: in flat areas all collapses
+     * cost nothing, and collapsing shortest edges first keeps triangles even instead of growing fans around a few vertices.
+     */
+    private static final double EDGE_LENGTH_WEIGHT = 1e-6;
+    private static final int INITIAL_VERTEX_TRIANGLES = 8;
+
+    /**
+     * Lazily created worker, shared by all simplifications.
+     */
+    private static final class ExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable_ -> {
+            Thread _thread = new Thread(runnable_, "QuadricSimplifier");
+            _thread.setDaemon(true);
+            _thread.setPriority(Thread.MIN_PRIORITY);
+            return _thread;
+        });
+    }
+
+    private final float[] sourceVertices;
+    private final int[] sourceIndices;
+    private final List<IRenderable.DataToVbo> sourceData;
+
+    // Working state of a simplification
+    private double[] positions;
+    private float[] wCoordinates;
+    private double[] quadrics;
+    private float[][] vertexData;
+    private boolean[] vertexIsRemoved;
+    private int[] vertexVersions;
+    private int[] triangles;
+    private boolean[] triangleIsRemoved;
+    private int liveTriangleCount;
+    private int[][] vertexTriangles;
+    private int[] vertexTriangleCounts;
+    private int[] vertexMarks;
+    private int currentMark;
+    private EdgeHeap edgeHeap;
+    /**
+     * Collapse position {x, y, z} and interpolation parameter from the first to the second vertex, as computed by {@link #collapseCost(int, int)}.
+     */
+    private final double[] collapse = new double[4];
+    // Scratch arrays, so that collapses do not allocate
+    private final double[] summedQuadric = new double[DATA_PER_QUADRIC];
+    private final double[] trianglePoints = new double[3 * VERTEX_PER_TRIANGLE];
+    private final double[] normalBefore = new double[3];
+    private final double[] normalAfter = new double[3];
+
+    /**
+     * Creates a simplifier of a {@link TriangleMesh}. Its data must not be modified while simplifying.
+     */
+    public QuadricSimplifier(TriangleMesh triangle_mesh){
+        this(triangle_mesh.xyzwVertices, triangle_mesh.triangleIndices, triangle_mesh.dataPerVertex);
+    }
+
+    /**
+     * Creates a simplifier. Data are not modified, and must not be modified while simplifying.
+     * @param xyzw_vertices The vertices
+     * @param triangle_indices 3 vertex indices per triangle
+     * @param data_per_vertex List of all data associated to each vertex. It may be null.
+     * @throws RenderingRuntimeException if indices do not describe whole triangles or if data do not match vertices.
+     */
+    public QuadricSimplifier(float[] xyzw_vertices, int[] triangle_indices, List<IRenderable.DataToVbo> data_per_vertex){
+        int _vertex_count = xyzw_vertices.length / IRenderable.DATA_PER_VERTEX;
+        if (triangle_indices.length % VERTEX_PER_TRIANGLE != 0){
+            throw new RenderingRuntimeException("Bad triangle index count = " + triangle_indices.length);
+        }
+        for (int _index : triangle_indices){
+            if (_index < 0 || _index >= _vertex_count){
+                throw new RenderingRuntimeException("Bad vertex index = " + _index + " for " + _vertex_count + " vertices");
+            }
+        }
+        if (data_per_vertex != null){
+            for (IRenderable.DataToVbo _data : data_per_vertex){
+                if (_data.vertexCount() != _vertex_count){
+                    throw new RenderingRuntimeException("Bad " + _data.getAttributeName() + " vertex count = " + _data.vertexCount() + " expected " + _vertex_count);
+                }
+            }
+        }
+        sourceVertices = xyzw_vertices;
+        sourceIndices = triangle_indices;
+        sourceData = data_per_vertex;
+    }
+
+    /**
+     * Simplifies the mesh on the worker thread.
+     * @param triangle_ratios For each wanted level, its triangle count relative to the source mesh, in ]0, 1].
+     * @return The future levels, in the order of triangle_ratios.
+     * @see #simplify(float...)
+     */
+    public Future<List<IndexedTriangles>> simplifyInBackground(float... triangle_ratios){
+        final float[] _ratios = triangle_ratios.clone();
+        return ExecutorHolder.EXECUTOR.submit(new Callable<List<IndexedTriangles>>() {
+            @Override
+            public List<IndexedTriangles> call() {
+                return simplify(_ratios);
+            }
+        });
+    }
+
+    /**
+     * Simplifies the mesh on the calling thread. Levels are obtained by a single sequence of collapses, from the finest
+     * to the coarsest, so that asking for several levels costs about as much as asking for the coarsest one.<br>
+     * A level may keep more triangles than asked when no more edge can be collapsed safely.
+     * @param triangle_ratios For each wanted level, its triangle count relative to the source mesh, in ]0, 1].
+     * @return The levels, in the order of triangle_ratios. Data use the buffer usages and encodings of the source data.
+     * @throws RenderingRuntimeException if a ratio is out of ]0, 1].
+     */
+    public synchronized List<IndexedTriangles> simplify(float... triangle_ratios){
+        Integer[] _order = new Integer[triangle_ratios.length];
+        for (int _i = 0; _i < triangle_ratios.length; _i++){
+            if (!(triangle_ratios[_i] > 0f && triangle_ratios[_i] <= 1f)){
+                throw new RenderingRuntimeException("Bad triangle ratio = " + triangle_ratios[_i]);
+            }
+            _order[_i] = _i;
+        }
+        // Finest levels first
+        Arrays.sort(_order, (a_, b_) -> Float.compare(triangle_ratios[b_], triangle_ratios[a_]));
+
+        initialize();
+        int _source_triangle_count = sourceIndices.length / VERTEX_PER_TRIANGLE;
+        IndexedTriangles[] _res = new IndexedTriangles[triangle_ratios.length];
+        for (int _level : _order){
+            collapseDownTo((int) Math.ceil(triangle_ratios[_level] * _source_triangle_count));
+            _res[_level] = snapshot();
+        }
+        release();
+        return new ArrayList<>(Arrays.asList(_res));
+    }
+
+    private void initialize(){
+        int _vertex_count = sourceVertices.length / IRenderable.DATA_PER_VERTEX;
+        positions = new double[_vertex_count * 3];
+        wCoordinates = new float[_vertex_count];
+        for (int _v = 0; _v < _vertex_count; _v++){
+            positions[3 * _v] = sourceVertices[IRenderable.DATA_PER_VERTEX * _v];
+            positions[3 * _v + 1] = sourceVertices[IRenderable.DATA_PER_VERTEX * _v + 1];
+            positions[3 * _v + 2] = sourceVertices[IRenderable.DATA_PER_VERTEX * _v + 2];
+            wCoordinates[_v] = sourceVertices[IRenderable.DATA_PER_VERTEX * _v + 3];
+        }
+        int _data_count = (sourceData == null ? 0 : sourceData.size());
+        vertexData = new float[_data_count][];
+        for (int _d = 0; _d < _data_count; _d++){
+            vertexData[_d] = sourceData.get(_d).getRawData().clone();
+        }
+        vertexIsRemoved = new boolean[_vertex_count];
+        vertexVersions = new int[_vertex_count];
+        vertexMarks = new int[_vertex_count];
+        currentMark = 0;
+
+        triangles = sourceIndices.clone();
+        int _triangle_count = triangles.length / VERTEX_PER_TRIANGLE;
+        triangleIsRemoved = new boolean[_triangle_count];
+        liveTriangleCount = 0;
+        vertexTriangles = new int[_vertex_count][];
+        vertexTriangleCounts = new int[_vertex_count];
+        for (int _t = 0; _t < _triangle_count; _t++){
+            int _a = triangles[3 * _t];
+            int _b = triangles[3 * _t + 1];
+            int _c = triangles[3 * _t + 2];
+            if (_a == _b || _b == _c || _c == _a){
+                triangleIsRemoved[_t] = true;
+                continue;
+            }
+            liveTriangleCount++;
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                addVertexTriangle(triangles[3 * _t + _k], _t);
+            }
+        }
+
+        quadrics = new double[_vertex_count * DATA_PER_QUADRIC];
+        double[] _normal = new double[4];
+        for (int _t = 0; _t < _triangle_count; _t++){
+            if (triangleIsRemoved[_t]){
+                continue;
+            }
+            double _area = triangleNormal(_t, -1, 0, 0, 0, _normal) * 0.5;
+            if (_area <= 0){
+                continue;
+            }
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = triangles[3 * _t + _k];
+                _normal[3] = -(_normal[0] * positions[3 * _v] + _normal[1] * positions[3 * _v + 1] + _normal[2] * positions[3 * _v + 2]);
+                addPlane(_v, _normal, _area);
+            }
+            addBoundaryPlanes(_t, _normal);
+        }
+
+        edgeHeap = new EdgeHeap(sourceIndices.length / 2);
+        int[] _edges = PrimitiveLists.trianglesToEdges(triangles);
+        for (int _e = 0; _e < _edges.length; _e += 2){
+            if (_edges[_e] != _edges[_e + 1]){
+                pushEdge(_edges[_e], _edges[_e + 1]);
+            }
+        }
+    }
+
+    private void release(){
+        positions = null;
+        wCoordinates = null;
+        quadrics = null;
+        vertexData = null;
+        vertexIsRemoved = null;
+        vertexVersions = null;
+        triangles = null;
+        triangleIsRemoved = null;
+        vertexTriangles = null;
+        vertexTriangleCounts = null;
+        vertexMarks = null;
+        edgeHeap = null;
+    }
+
+    private void collapseDownTo(int triangle_count){
+        while (liveTriangleCount > triangle_count && !edgeHeap.isEmpty()){
+            int _a = edgeHeap.topFirstVertex();
+            int _b = edgeHeap.topSecondVertex();
+            boolean _is_valid = !vertexIsRemoved[_a] && !vertexIsRemoved[_b] &&
+                    edgeHeap.topFirstVersion() == vertexVersions[_a] && edgeHeap.topSecondVersion() == vertexVersions[_b];
+            edgeHeap.pop();
+            if (_is_valid){
+                collapseCost(_a, _b);
+                if (isCollapsible(_a, _b)){
+                    collapseEdge(_a, _b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collapses b into a, at the position computed by the last {@link #collapseCost(int, int)}.
+     */
+    private void collapseEdge(int a_vertex, int b_vertex){
+        int[] _b_triangles = vertexTriangles[b_vertex];
+        for (int _i = 0; _i < vertexTriangleCounts[b_vertex]; _i++){
+            int _t = _b_triangles[_i];
+            if (triangleIsRemoved[_t]){
+                continue;
+            }
+            if (triangleHasVertex(_t, a_vertex)){
+                triangleIsRemoved[_t] = true;
+                liveTriangleCount--;
+            }
+            else {
+                for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                    if (triangles[3 * _t + _k] == b_vertex){
+                        triangles[3 * _t + _k] = a_vertex;
+                    }
+                }
+                addVertexTriangle(a_vertex, _t);
+            }
+        }
+        vertexTriangles[b_vertex] = null;
+        vertexTriangleCounts[b_vertex] = 0;
+        vertexIsRemoved[b_vertex] = true;
+
+        positions[3 * a_vertex] = collapse[0];
+        positions[3 * a_vertex + 1] = collapse[1];
+        positions[3 * a_vertex + 2] = collapse[2];
+        for (int _q = 0; _q < DATA_PER_QUADRIC; _q++){
+            quadrics[a_vertex * DATA_PER_QUADRIC + _q] += quadrics[b_vertex * DATA_PER_QUADRIC + _q];
+        }
+        float _t = (float) collapse[3];
+        for (int _d = 0; _d < vertexData.length; _d++){
+            int _count = sourceData.get(_d).getDataCountPerVertex();
+            float[] _data = vertexData[_d];
+            for (int _c = 0; _c < _count; _c++){
+                _data[a_vertex * _count + _c] += _t * (_data[b_vertex * _count + _c] - _data[a_vertex * _count + _c]);
+            }
+        }
+        vertexVersions[a_vertex]++;
+        vertexVersions[b_vertex]++;
+
+        // Drops removed triangles of a, then updates the cost of its edges
+        int[] _a_triangles = vertexTriangles[a_vertex];
+        int _live = 0;
+        for (int _i = 0; _i < vertexTriangleCounts[a_vertex]; _i++){
+            if (!triangleIsRemoved[_a_triangles[_i]]){
+                _a_triangles[_live++] = _a_triangles[_i];
+            }
+        }
+        vertexTriangleCounts[a_vertex] = _live;
+        int _mark = nextMark();
+        vertexMarks[a_vertex] = _mark;
+        for (int _i = 0; _i < _live; _i++){
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = triangles[3 * _a_triangles[_i] + _k];
+                if (vertexMarks[_v] != _mark){
+                    vertexMarks[_v] = _mark;
+                    pushEdge(a_vertex, _v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that collapsing b into a at the position computed by the last {@link #collapseCost(int, int)} keeps a manifold
+     * without flipped triangles.
+     */
+    private boolean isCollapsible(int a_vertex, int b_vertex){
+        // Link condition: vertices adjacent to both a and b must be those of the triangles sharing the edge
+        int _mark = nextMark();
+        forEachLiveNeighbour(a_vertex, _mark);
+        int _shared_triangles = 0;
+        int _common_neighbours = 0;
+        int _neighbour_mark = nextMark();
+        int[] _b_triangles = vertexTriangles[b_vertex];
+        for (int _i = 0; _i < vertexTriangleCounts[b_vertex]; _i++){
+            int _t = _b_triangles[_i];
+            if (triangleIsRemoved[_t]){
+                continue;
+            }
+            if (triangleHasVertex(_t, a_vertex)){
+                _shared_triangles++;
+            }
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = triangles[3 * _t + _k];
+                if (_v != a_vertex && _v != b_vertex){
+                    if (vertexMarks[_v] == _mark){
+                        vertexMarks[_v] = _neighbour_mark;
+                        _common_neighbours++;
+                    }
+                }
+            }
+        }
+        if (_common_neighbours != _shared_triangles){
+            return false;
+        }
+        return !flipsTriangles(a_vertex, b_vertex) && !flipsTriangles(b_vertex, a_vertex);
+    }
+
+    private void forEachLiveNeighbour(int vertex_index, int mark_){
+        int[] _triangles = vertexTriangles[vertex_index];
+        for (int _i = 0; _i < vertexTriangleCounts[vertex_index]; _i++){
+            int _t = _triangles[_i];
+            if (triangleIsRemoved[_t]){
+                continue;
+            }
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                vertexMarks[triangles[3 * _t + _k]] = mark_;
+            }
+        }
+    }
+
+    /**
+     * @return true if moving moved_vertex to the collapse position flips one of its triangles not shared with other_vertex.
+     */
+    private boolean flipsTriangles(int moved_vertex, int other_vertex){
+        double[] _before = normalBefore;
+        double[] _after = normalAfter;
+        int[] _triangles = vertexTriangles[moved_vertex];
+        for (int _i = 0; _i < vertexTriangleCounts[moved_vertex]; _i++){
+            int _t = _triangles[_i];
+            if (triangleIsRemoved[_t] || triangleHasVertex(_t, other_vertex)){
+                continue;
+            }
+            triangleNormal(_t, -1, 0, 0, 0, _before);
+            double _area = triangleNormal(_t, moved_vertex, collapse[0], collapse[1], collapse[2], _after);
+            if (_area <= 0 || _before[0] * _after[0] + _before[1] * _after[1] + _before[2] * _after[2] <= 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the collapse of an edge into {@link #collapse}.
+     * @return The quadric error of the collapse.
+     */
+    private double collapseCost(int a_vertex, int b_vertex){
+        double[] _q = summedQuadric;
+        for (int _i = 0; _i < DATA_PER_QUADRIC; _i++){
+            _q[_i] = quadrics[a_vertex * DATA_PER_QUADRIC + _i] + quadrics[b_vertex * DATA_PER_QUADRIC + _i];
+        }
+        double _ax = positions[3 * a_vertex], _ay = positions[3 * a_vertex + 1], _az = positions[3 * a_vertex + 2];
+        double _bx = positions[3 * b_vertex], _by = positions[3 * b_vertex + 1], _bz = positions[3 * b_vertex + 2];
+
+        // Optimal position: gradient of the quadric equals 0
+        double _det = _q[0] * (_q[4] * _q[7] - _q[5] * _q[5]) - _q[1] * (_q[1] * _q[7] - _q[5] * _q[2]) + _q[2] * (_q[1] * _q[5] - _q[4] * _q[2]);
+        double _scale = Math.abs(_q[0]) + Math.abs(_q[4]) + Math.abs(_q[7]);
+        if (Math.abs(_det) > SINGULAR_DETERMINANT * _scale * _scale * _scale){
+            collapse[0] = -(_q[3] * (_q[4] * _q[7] - _q[5] * _q[5]) - _q[1] * (_q[6] * _q[7] - _q[5] * _q[8]) + _q[2] * (_q[6] * _q[5] - _q[4] * _q[8])) / _det;
+            collapse[1] = -(_q[0] * (_q[6] * _q[7] - _q[8] * _q[5]) - _q[3] * (_q[1] * _q[7] - _q[5] * _q[2]) + _q[2] * (_q[1] * _q[8] - _q[6] * _q[2])) / _det;
+            collapse[2] = -(_q[0] * (_q[4] * _q[8] - _q[5] * _q[6]) - _q[1] * (_q[1] * _q[8] - _q[6] * _q[2]) + _q[3] * (_q[1] * _q[5] - _q[4] * _q[2])) / _det;
+            // Data are interpolated at the projection of the position on the edge
+            double _ex = _bx - _ax, _ey = _by - _ay, _ez = _bz - _az;
+            double _length2 = _ex * _ex + _ey * _ey + _ez * _ez;
+            double _t = (_length2 > 0 ? ((collapse[0] - _ax) * _ex + (collapse[1] - _ay) * _ey + (collapse[2] - _az) * _ez) / _length2 : 0);
+            collapse[3] = Math.max(0, Math.min(1, _t));
+            return Math.max(0, quadricError(_q, collapse[0], collapse[1], collapse[2]));
+        }
+
+        // Singular system (e.g. flat areas): best of both ends and the middle
+        double _best = Double.MAX_VALUE;
+        for (int _s = 0; _s <= 2; _s++){
+            double _t = _s * 0.5;
+            double _x = _ax + _t * (_bx - _ax), _y = _ay + _t * (_by - _ay), _z = _az + _t * (_bz - _az);
+            double _error = quadricError(_q, _x, _y, _z);
+            if (_error < _best){
+                _best = _error;
+                collapse[0] = _x;
+                collapse[1] = _y;
+                collapse[2] = _z;
+                collapse[3] = _t;
+            }
+        }
+        return Math.max(0, _best);
+    }
+
+    private static double quadricError(double[] q_, double x_, double y_, double z_){
+        return q_[0] * x_ * x_ + 2 * q_[1] * x_ * y_ + 2 * q_[2] * x_ * z_ + 2 * q_[3] * x_
+                + q_[4] * y_ * y_ + 2 * q_[5] * y_ * z_ + 2 * q_[6] * y_
+                + q_[7] * z_ * z_ + 2 * q_[8] * z_
+                + q_[9];
+    }
+
+    private void pushEdge(int a_vertex, int b_vertex){
+        if (a_vertex == b_vertex){
+            return;
+        }
+        double _ex = positions[3 * b_vertex] - positions[3 * a_vertex];
+        double _ey = positions[3 * b_vertex + 1] - positions[3 * a_vertex + 1];
+        double _ez = positions[3 * b_vertex + 2] - positions[3 * a_vertex + 2];
+        double _length2 = _ex * _ex + _ey * _ey + _ez * _ez;
+        double _cost = collapseCost(a_vertex, b_vertex) + EDGE_LENGTH_WEIGHT * _length2 * _length2;
+        edgeHeap.push(_cost, a_vertex, b_vertex, vertexVersions[a_vertex], vertexVersions[b_vertex]);
+    }
+
+    /**
+     * Adds the quadric of plane a x + b y + c z + d = 0 to a vertex.
+     */
+    private void addPlane(int vertex_index, double[] plane_, double weight_){
+        int _o = vertex_index * DATA_PER_QUADRIC;
+        double _a = plane_[0], _b = plane_[1], _c = plane_[2], _d = plane_[3];
+        quadrics[_o] += weight_ * _a * _a;
+        quadrics[_o + 1] += weight_ * _a * _b;
+        quadrics[_o + 2] += weight_ * _a * _c;
+        quadrics[_o + 3] += weight_ * _a * _d;
+        quadrics[_o + 4] += weight_ * _b * _b;
+        quadrics[_o + 5] += weight_ * _b * _c;
+        quadrics[_o + 6] += weight_ * _b * _d;
+        quadrics[_o + 7] += weight_ * _c * _c;
+        quadrics[_o + 8] += weight_ * _c * _d;
+        quadrics[_o + 9] += weight_ * _d * _d;
+    }
+
+    /**
+     * Adds to the vertices of each boundary edge of a triangle the plane containing the edge and orthogonal to the triangle.
+     */
+    private void addBoundaryPlanes(int triangle_index, double[] unit_normal){
+        double[] _plane = new double[4];
+        for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+            int _a = triangles[3 * triangle_index + _k];
+            int _b = triangles[3 * triangle_index + (_k + 1) % VERTEX_PER_TRIANGLE];
+            if (sharedTriangleCount(_a, _b) != 1){
+                continue;
+            }
+            double _ex = positions[3 * _b] - positions[3 * _a];
+            double _ey = positions[3 * _b + 1] - positions[3 * _a + 1];
+            double _ez = positions[3 * _b + 2] - positions[3 * _a + 2];
+            double _length2 = _ex * _ex + _ey * _ey + _ez * _ez;
+            _plane[0] = _ey * unit_normal[2] - _ez * unit_normal[1];
+            _plane[1] = _ez * unit_normal[0] - _ex * unit_normal[2];
+            _plane[2] = _ex * unit_normal[1] - _ey * unit_normal[0];
+            double _norm = Math.sqrt(_plane[0] * _plane[0] + _plane[1] * _plane[1] + _plane[2] * _plane[2]);
+            if (_norm <= 0){
+                continue;
+            }
+            _plane[0] /= _norm;
+            _plane[1] /= _norm;
+            _plane[2] /= _norm;
+            _plane[3] = -(_plane[0] * positions[3 * _a] + _plane[1] * positions[3 * _a + 1] + _plane[2] * positions[3 * _a + 2]);
+            addPlane(_a, _plane, BOUNDARY_WEIGHT * _length2);
+            addPlane(_b, _plane, BOUNDARY_WEIGHT * _length2);
+        }
+    }
+
+    private int sharedTriangleCount(int a_vertex, int b_vertex){
+        int _count = 0;
+        int[] _triangles = vertexTriangles[a_vertex];
+        for (int _i = 0; _i < vertexTriangleCounts[a_vertex]; _i++){
+            if (!triangleIsRemoved[_triangles[_i]] && triangleHasVertex(_triangles[_i], b_vertex)){
+                _count++;
+            }
+        }
+        return _count;
+    }
+
+    /**
+     * Computes the unit normal of a triangle, one vertex of which may be moved.
+     * @param moved_vertex The vertex to move, or -1
+     * @param result_ Receives the unit normal in its 3 first elements
+     * @return Twice the area of the triangle
+     */
+    private double triangleNormal(int triangle_index, int moved_vertex, double moved_x, double moved_y, double moved_z, double[] result_){
+        double[] _p = trianglePoints;
+        for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+            int _v = triangles[3 * triangle_index + _k];
+            boolean _is_moved = (_v == moved_vertex);
+            _p[3 * _k] = _is_moved ? moved_x : positions[3 * _v];
+            _p[3 * _k + 1] = _is_moved ? moved_y : positions[3 * _v + 1];
+            _p[3 * _k + 2] = _is_moved ? moved_z : positions[3 * _v + 2];
+        }
+        double _ux = _p[3] - _p[0], _uy = _p[4] - _p[1], _uz = _p[5] - _p[2];
+        double _vx = _p[6] - _p[0], _vy = _p[7] - _p[1], _vz = _p[8] - _p[2];
+        double _nx = _uy * _vz - _uz * _vy;
+        double _ny = _uz * _vx - _ux * _vz;
+        double _nz = _ux * _vy - _uy * _vx;
+        double _norm = Math.sqrt(_nx * _nx + _ny * _ny + _nz * _nz);
+        if (_norm > 0){
+            result_[0] = _nx / _norm;
+            result_[1] = _ny / _norm;
+            result_[2] = _nz / _norm;
+        }
+        else {
+            result_[0] = result_[1] = result_[2] = 0;
+        }
+        return _norm;
+    }
+
+    private boolean triangleHasVertex(int triangle_index, int vertex_index){
+        return triangles[3 * triangle_index] == vertex_index || triangles[3 * triangle_index + 1] == vertex_index ||
+                triangles[3 * triangle_index + 2] == vertex_index;
+    }
+
+    private void addVertexTriangle(int vertex_index, int triangle_index){
+        int[] _triangles = vertexTriangles[vertex_index];
+        if (_triangles == null){
+            _triangles = new int[INITIAL_VERTEX_TRIANGLES];
+        }
+        else if (vertexTriangleCounts[vertex_index] == _triangles.length){
+            _triangles = Arrays.copyOf(_triangles, _triangles.length * 2);
+        }
+        _triangles[vertexTriangleCounts[vertex_index]++] = triangle_index;
+        vertexTriangles[vertex_index] = _triangles;
+    }
+
+    private int nextMark(){
+        return ++currentMark;
+    }
+
+    /**
+     * @return The current mesh, with only the vertices of remaining triangles.
+     */
+    private IndexedTriangles snapshot(){
+        int _vertex_count = vertexIsRemoved.length;
+        int[] _remap = new int[_vertex_count];
+        Arrays.fill(_remap, -1);
+        int[] _indices = new int[liveTriangleCount * VERTEX_PER_TRIANGLE];
+        int _index = 0;
+        int _used_count = 0;
+        for (int _t = 0; _t < triangleIsRemoved.length; _t++){
+            if (triangleIsRemoved[_t]){
+                continue;
+            }
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = triangles[3 * _t + _k];
+                if (_remap[_v] < 0){
+                    _remap[_v] = _used_count++;
+                }
+                _indices[_index++] = _remap[_v];
+            }
+        }
+
+        float[] _vertices = new float[_used_count * IRenderable.DATA_PER_VERTEX];
+        for (int _v = 0; _v < _vertex_count; _v++){
+            int _r = _remap[_v];
+            if (_r < 0){
+                continue;
+            }
+            _vertices[IRenderable.DATA_PER_VERTEX * _r] = (float) positions[3 * _v];
+            _vertices[IRenderable.DATA_PER_VERTEX * _r + 1] = (float) positions[3 * _v + 1];
+            _vertices[IRenderable.DATA_PER_VERTEX * _r + 2] = (float) positions[3 * _v + 2];
+            _vertices[IRenderable.DATA_PER_VERTEX * _r + 3] = wCoordinates[_v];
+        }
+
+        List<IRenderable.DataToVbo> _data_list = null;
+        if (sourceData != null){
+            _data_list = new ArrayList<>();
+            for (int _d = 0; _d < vertexData.length; _d++){
+                IRenderable.DataToVbo _source = sourceData.get(_d);
+                int _count = _source.getDataCountPerVertex();
+                boolean _is_normal = _source.getAttributeName().contentEquals(ShaderAttributes.NORMAL.toString()) && _count >= 3;
+                float[] _data = new float[_used_count * _count];
+                for (int _v = 0; _v < _vertex_count; _v++){
+                    int _r = _remap[_v];
+                    if (_r < 0){
+                        continue;
+                    }
+                    System.arraycopy(vertexData[_d], _v * _count, _data, _r * _count, _count);
+                    if (_is_normal){
+                        normalize(_data, _r * _count);
+                    }
+                }
+                _data_list.add(new IRenderable.DataToVbo(_data, _source.getAttributeName(), _source.getBufferUsage(),
+                        _count, _source.getEncoding()));
+            }
+        }
+        return new IndexedTriangles(_vertices, _indices, _data_list);
+    }
+
+    private static void normalize(float[] data_, int offset_){
+        float _norm = (float) Math.sqrt(data_[offset_] * data_[offset_] + data_[offset_ + 1] * data_[offset_ + 1] +
+                data_[offset_ + 2] * data_[offset_ + 2]);
+        if (_norm > 0){
+            data_[offset_] /= _norm;
+            data_[offset_ + 1] /= _norm;
+            data_[offset_ + 2] /= _norm;
+        }
+    }
+
+    /**
+     * Binary min heap of edge collapses, in primitive arrays. Entries are not updated: each one records the versions
+     * of its vertices and is skipped if a vertex changed since.
+     */
+    private static final class EdgeHeap {
+        private double[] costs;
+        private int[] firstVertices;
+        private int[] secondVertices;
+        private int[] firstVersions;
+        private int[] secondVersions;
+        private int size = 0;
+
+        EdgeHeap(int initial_capacity){
+            int _capacity = Math.max(16, initial_capacity);
+            costs = new double[_capacity];
+            firstVertices = new int[_capacity];
+            secondVertices = new int[_capacity];
+            firstVersions = new int[_capacity];
+            secondVersions = new int[_capacity];
+        }
+
+        boolean isEmpty(){
+            return size == 0;
+        }
+
+        int topFirstVertex(){
+            return firstVertices[0];
+        }
+
+        int topSecondVertex(){
+            return secondVertices[0];
+        }
+
+        int topFirstVersion(){
+            return firstVersions[0];
+        }
+
+        int topSecondVersion(){
+            return secondVersions[0];
+        }
+
+        void push(double cost_, int first_vertex, int second_vertex, int first_version, int second_version){
+            if (size == costs.length){
+                int _capacity = costs.length * 2;
+                costs = Arrays.copyOf(costs, _capacity);
+                firstVertices = Arrays.copyOf(firstVertices, _capacity);
+                secondVertices = Arrays.copyOf(secondVertices, _capacity);
+                firstVersions = Arrays.copyOf(firstVersions, _capacity);
+                secondVersions = Arrays.copyOf(secondVersions, _capacity);
+            }
+            int _i = size++;
+            while (_i > 0){
+                int _parent = (_i - 1) / 2;
+                if (costs[_parent] <= cost_){
+                    break;
+                }
+                move(_parent, _i);
+                _i = _parent;
+            }
+            costs[_i] = cost_;
+            firstVertices[_i] = first_vertex;
+            secondVertices[_i] = second_vertex;
+            firstVersions[_i] = first_version;
+            secondVersions[_i] = second_version;
+        }
+
+        void pop(){
+            size--;
+            if (size == 0){
+                return;
+            }
+            int _last = size;
+            double _cost = costs[_last];
+            int _i = 0;
+            while (true){
+                int _child = 2 * _i + 1;
+                if (_child >= size){
+                    break;
+                }
+                if (_child + 1 < size && costs[_child + 1] < costs[_child]){
+                    _child++;
+                }
+                if (costs[_child] >= _cost){
+                    break;
+                }
+                move(_child, _i);
+                _i = _child;
+            }
+            move(_last, _i);
+        }
+
+        private void move(int from_, int to_){
+            costs[to_] = costs[from_];
+            firstVertices[to_] = firstVertices[from_];
+            secondVertices[to_] = secondVertices[from_];
+            firstVersions[to_] = firstVersions[from_];
+            secondVersions[to_] = secondVersions[from_];
+        }
+    }
+}
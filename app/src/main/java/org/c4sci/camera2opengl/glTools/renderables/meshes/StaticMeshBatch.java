@@ -0,0 +1,250 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+import android.opengl.Matrix;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class merges static meshes sharing a shader program into a single VAO, so that each {@link MeshStyle} is drawn
+ * by a single glDrawElements() call whatever the number of meshes.<br>
+ * Vertices are transformed by their mesh model matrix once, on the CPU, when the batch is created: the batch is then drawn
+ * with a view-projection matrix as MVP. {@link ShaderAttributes#NORMAL} data are transformed as directions and renormalized,
+ * other per-vertex data are copied as they are.<br>
+ * All meshes must have the same kinds of per-vertex data, in the same order. Batched meshes do not need to be set up.
+ */
+public class StaticMeshBatch extends AbstractMesh {
+
+    private static final int MATRIX_SIZE = 16;
+
+    final int[][] styleIndices;
+    final int[] styleIndexOffsets;
+    /**
+     * The number of indices of each mesh, by style ordinal then mesh rank: meshes indices follow each other in {@link #styleIndices}.
+     */
+    final int[][] meshIndexCounts;
+
+    /**
+     * Creates a batch. Meshes and matrices are not referenced anymore once the batch is created.
+     * @param batched_meshes The meshes to merge.
+     * @param model_matrices The model matrix of each mesh (column major, as in {@link Matrix}), in the order of batched_meshes.
+     *                       May be null if meshes are already in world coordinates, as may be each matrix.
+     * @param mesh_usage E.g. {@link GLES31#GL_STATIC_DRAW}
+     * @throws RenderingRuntimeException if meshes per-vertex data differ.
+     */
+    public StaticMeshBatch(List<AbstractMesh> batched_meshes, List<float[]> model_matrices, int mesh_usage){
+        this(batched_meshes, model_matrices, mesh_usage, false);
+    }
+
+    /**
+     * @param adds_draw_ids true to add {@link ShaderAttributes#DRAW_ID} data: the rank of the mesh each vertex comes from.
+     */
+    StaticMeshBatch(List<AbstractMesh> batched_meshes, List<float[]> model_matrices, int mesh_usage, boolean adds_draw_ids){
+        super(mergeVertices(batched_meshes, model_matrices),
+                mergeDataPerVertex(batched_meshes, model_matrices, mesh_usage, adds_draw_ids), mesh_usage);
+
+        MeshStyle[] _styles = MeshStyle.values();
+        styleIndices = new int[_styles.length][];
+        styleIndexOffsets = new int[_styles.length];
+        meshIndexCounts = new int[_styles.length][batched_meshes.size()];
+        int _offset = 0;
+        for (MeshStyle _style : _styles){
+            styleIndices[_style.ordinal()] = mergeIndices(batched_meshes, _style, meshIndexCounts[_style.ordinal()]);
+            styleIndexOffsets[_style.ordinal()] = _offset;
+            _offset += styleIndices[_style.ordinal()].length;
+        }
+    }
+
+    @Override
+    public int[] computeVertexIndices() {
+        return PrimitiveLists.concatenate(styleIndices);
+    }
+
+    @Override
+    public int[] computeListIndices(MeshStyle mesh_style) {
+        return styleIndices[mesh_style.ordinal()];
+    }
+
+    @Override
+    protected int[] triangleListRange() {
+        return new int[]{styleIndexOffsets[MeshStyle.FILLED.ordinal()], styleIndices[MeshStyle.FILLED.ordinal()].length};
+    }
+
+    @Override
+    protected DrawRange[][] computeDrawRanges() {
+        MeshStyle[] _styles = MeshStyle.values();
+        DrawRange[][] _res = new DrawRange[_styles.length][];
+        for (MeshStyle _style : _styles){
+            int _index_count = styleIndices[_style.ordinal()].length;
+            _res[_style.ordinal()] = (_index_count == 0 ? new DrawRange[0] :
+                    new DrawRange[]{new DrawRange(listMode(_style), styleIndexOffsets[_style.ordinal()], _index_count)});
+        }
+        return _res;
+    }
+
+    /**
+     * @return The mode drawing the indices of {@link #computeListIndices(MeshStyle)}.
+     */
+    static int listMode(MeshStyle mesh_style){
+        switch(mesh_style){
+            case LINES:
+                return GLES31.GL_LINES;
+            case FILLED:
+                return GLES31.GL_TRIANGLES;
+            case POINTS:
+                return GLES31.GL_POINTS;
+            default:
+                throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
+        }
+    }
+
+    private static float[] modelMatrix(List<float[]> model_matrices, int mesh_index){
+        return (model_matrices == null ? null : model_matrices.get(mesh_index));
+    }
+
+    private static float[] mergeVertices(List<AbstractMesh> batched_meshes, List<float[]> model_matrices){
+        if (batched_meshes.isEmpty()){
+            throw new RenderingRuntimeException("Cannot batch an empty list of meshes");
+        }
+        if (model_matrices != null && model_matrices.size() != batched_meshes.size()){
+            throw new RenderingRuntimeException("Bad model matrix count =" + model_matrices.size() + " expected " + batched_meshes.size());
+        }
+        int _length = 0;
+        for (AbstractMesh _mesh : batched_meshes){
+            _length += _mesh.xyzwVertices.length;
+        }
+
+        float[] _res = new float[_length];
+        int _offset = 0;
+        for (int _m = 0; _m < batched_meshes.size(); _m++){
+            float[] _vertices = batched_meshes.get(_m).xyzwVertices;
+            float[] _model = modelMatrix(model_matrices, _m);
+            if (_model == null){
+                System.arraycopy(_vertices, 0, _res, _offset, _vertices.length);
+            }
+            else {
+                for (int _v = 0; _v < _vertices.length; _v += DATA_PER_VERTEX){
+                    Matrix.multiplyMV(_res, _offset + _v, _model, 0, _vertices, _v);
+                }
+            }
+            _offset += _vertices.length;
+        }
+        return _res;
+    }
+
+    private static List<DataToVbo> mergeDataPerVertex(List<AbstractMesh> batched_meshes, List<float[]> model_matrices, int mesh_usage,
+                                                      boolean adds_draw_ids){
+        List<DataToVbo> _reference = batched_meshes.get(0).dataPerVertex;
+        int _data_count = (_reference == null ? 0 : _reference.size());
+        for (AbstractMesh _mesh : batched_meshes){
+            int _mesh_data_count = (_mesh.dataPerVertex == null ? 0 : _mesh.dataPerVertex.size());
+            if (_mesh_data_count != _data_count){
+                throw new RenderingRuntimeException("Cannot batch meshes with " + _mesh_data_count + " and " + _data_count + " kinds of per-vertex data");
+            }
+        }
+        if (_data_count == 0 && !adds_draw_ids){
+            return null;
+        }
+
+        List<DataToVbo> _res = new ArrayList<>();
+        for (int _d = 0; _d < _data_count; _d++){
+            DataToVbo _first = _reference.get(_d);
+            int _length = 0;
+            for (AbstractMesh _mesh : batched_meshes){
+                DataToVbo _data = _mesh.dataPerVertex.get(_d);
+                if (!_data.getAttributeName().contentEquals(_first.getAttributeName()) ||
+                        _data.getDataCountPerVertex() != _first.getDataCountPerVertex() ||
+                        _data.getEncoding() != _first.getEncoding()){
+                    throw new RenderingRuntimeException("Cannot batch " + _data.getAttributeName() + " with " + _first.getAttributeName());
+                }
+                _length += _data.getRawData().length;
+            }
+
+            boolean _is_normal = _first.getAttributeName().contentEquals(ShaderAttributes.NORMAL.toString()) &&
+                    _first.getDataCountPerVertex() >= 3;
+            float[] _merged = new float[_length];
+            int _offset = 0;
+            for (int _m = 0; _m < batched_meshes.size(); _m++){
+                float[] _raw = batched_meshes.get(_m).dataPerVertex.get(_d).getRawData();
+                System.arraycopy(_raw, 0, _merged, _offset, _raw.length);
+                float[] _model = modelMatrix(model_matrices, _m);
+                if (_is_normal && _model != null){
+                    transformNormals(_merged, _offset, _raw.length, _first.getDataCountPerVertex(), _model);
+                }
+                _offset += _raw.length;
+            }
+            _res.add(new DataToVbo(_merged, _first.getAttributeName(), mesh_usage, _first.getDataCountPerVertex(), _first.getEncoding()));
+        }
+        if (adds_draw_ids){
+            _res.add(new DataToVbo(drawIds(batched_meshes), ShaderAttributes.DRAW_ID.toString(), mesh_usage, 1));
+        }
+        return _res;
+    }
+
+    /**
+     * Transforms normals by the inverse transpose of the model matrix, so that they stay orthogonal to surfaces
+     * whatever the scaling, and renormalizes them.
+     */
+    private static void transformNormals(float[] normal_data, int first_data, int data_length, int data_count_per_vertex, float[] model_matrix){
+        float[] _inverse = new float[MATRIX_SIZE];
+        float[] _normal_matrix = new float[MATRIX_SIZE];
+        if (!Matrix.invertM(_inverse, 0, model_matrix, 0)){
+            throw new RenderingRuntimeException("Cannot transform normals by a singular model matrix");
+        }
+        Matrix.transposeM(_normal_matrix, 0, _inverse, 0);
+
+        float[] _src = new float[DATA_PER_NORMAL];
+        float[] _dst = new float[DATA_PER_NORMAL];
+        for (int _i = first_data; _i < first_data + data_length; _i += data_count_per_vertex){
+            _src[0] = normal_data[_i];
+            _src[1] = normal_data[_i + 1];
+            _src[2] = normal_data[_i + 2];
+            _src[3] = 0;
+            Matrix.multiplyMV(_dst, 0, _normal_matrix, 0, _src, 0);
+            float _norm = (float) Math.sqrt(_dst[0] * _dst[0] + _dst[1] * _dst[1] + _dst[2] * _dst[2]);
+            if (_norm > 0){
+                normal_data[_i] = _dst[0] / _norm;
+                normal_data[_i + 1] = _dst[1] / _norm;
+                normal_data[_i + 2] = _dst[2] / _norm;
+            }
+        }
+    }
+
+    private static float[] drawIds(List<AbstractMesh> batched_meshes){
+        int _vertex_count = 0;
+        for (AbstractMesh _mesh : batched_meshes){
+            _vertex_count += _mesh.xyzwVertices.length / DATA_PER_VERTEX;
+        }
+        float[] _res = new float[_vertex_count];
+        int _offset = 0;
+        for (int _m = 0; _m < batched_meshes.size(); _m++){
+            int _mesh_vertex_count = batched_meshes.get(_m).xyzwVertices.length / DATA_PER_VERTEX;
+            Arrays.fill(_res, _offset, _offset + _mesh_vertex_count, _m);
+            _offset += _mesh_vertex_count;
+        }
+        return _res;
+    }
+
+    /**
+     * @param mesh_index_counts Receives the number of indices of each mesh.
+     */
+    private static int[] mergeIndices(List<AbstractMesh> batched_meshes, MeshStyle mesh_style, int[] mesh_index_counts){
+        int[][] _mesh_indices = new int[batched_meshes.size()][];
+        int _base_vertex = 0;
+        for (int _m = 0; _m < batched_meshes.size(); _m++){
+            AbstractMesh _mesh = batched_meshes.get(_m);
+            _mesh_indices[_m] = _mesh.computeListIndices(mesh_style).clone();
+            mesh_index_counts[_m] = _mesh_indices[_m].length;
+            for (int _i = 0; _i < _mesh_indices[_m].length; _i++){
+                _mesh_indices[_m][_i] += _base_vertex;
+            }
+            _base_vertex += _mesh.xyzwVertices.length / DATA_PER_VERTEX;
+        }
+        return PrimitiveLists.concatenate(_mesh_indices);
+    }
+}
@@ -9,34 +9,92 @@ import org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * This class represents a mesh of triangles. It is drawn as {@link GLES31#GL_TRIANGLES} when filled, as the triangles edges
+ * ({@link GLES31#GL_LINES}) for lines and as all its vertices for points, which need no indices.<br>
+ * Indices take the narrowest type able to index all the vertices, so that large meshes (e.g. scans) are drawn by a single call.
+ */
 public class TriangleMesh extends AbstractMesh {
     private static final int VERTEX_PER_TRIANGLE = 3;
 
+    final int[] triangleIndices;
+    private int[] edgeIndices = null;
+
+    /**
+     * Creates a single triangle made of the 3 first vertices.
+     */
     public TriangleMesh(float[] xyzw_vertices, List<DataToVbo> data_per_vertex, int mesh_usage) {
+        this(xyzw_vertices, new int[]{0, 1, 2}, data_per_vertex, mesh_usage);
+    }
+
+    /**
+     * Creates an indexed mesh of triangles.
+     * @param xyzw_vertices The vertices
+     * @param triangle_indices 3 vertex indices per triangle
+     * @param data_per_vertex List of all data to associate to each vertex. It may be null.
+     * @param mesh_usage E.g. {@link GLES31#GL_STATIC_DRAW}
+     * @throws RenderingRuntimeException if indices do not describe whole triangles.
+     */
+    public TriangleMesh(float[] xyzw_vertices, int[] triangle_indices, List<DataToVbo> data_per_vertex, int mesh_usage) {
         super(xyzw_vertices, data_per_vertex, mesh_usage);
+        if (triangle_indices.length % VERTEX_PER_TRIANGLE != 0){
+            throw new RenderingRuntimeException("Bad triangle index count = " + triangle_indices.length);
+        }
+        triangleIndices = triangle_indices;
     }
 
     @Override
-    public short[] computeVertexIndices() {
-        return new short[]{0, 1, 2};
+    public int[] computeVertexIndices() {
+        return PrimitiveLists.concatenate(triangleIndices, edgeIndices());
     }
 
     @Override
-    protected void drawMesh(int shader_program, MeshStyle mesh_style) {
-        int _gl_mode;
+    public int[] computeListIndices(MeshStyle mesh_style) {
         switch(mesh_style){
             case LINES:
-                _gl_mode = GLES31.GL_LINE_LOOP;
-                break;
+                return edgeIndices().clone();
             case FILLED:
-                _gl_mode = GLES31.GL_TRIANGLE_STRIP;
-                break;
+                return triangleIndices.clone();
             case POINTS:
-                _gl_mode = GLES31.GL_POINTS;
-                break;
+                return PrimitiveLists.sequence(vertexCount());
             default:
                 throw new RenderingRuntimeException("Unmanaged mesh style: " + mesh_style);
         }
-        GLES31.glDrawArrays(_gl_mode, 0, VERTEX_PER_TRIANGLE);
+    }
+
+    @Override
+    protected int[] triangleListRange() {
+        return new int[]{0, triangleIndices.length};
+    }
+
+    @Override
+    protected DrawRange[][] computeDrawRanges() {
+        DrawRange[][] _res = new DrawRange[MeshStyle.values().length][];
+        _res[MeshStyle.FILLED.ordinal()] = new DrawRange[]{new DrawRange(GLES31.GL_TRIANGLES, 0, triangleIndices.length)};
+        _res[MeshStyle.LINES.ordinal()] = new DrawRange[]{new DrawRange(GLES31.GL_LINES, triangleIndices.length, edgeIndices().length)};
+        // Points are drawn by drawMesh() without indices
+        _res[MeshStyle.POINTS.ordinal()] = new DrawRange[0];
+        return _res;
+    }
+
+    @Override
+    protected void drawMesh(int shader_program, MeshStyle mesh_style) {
+        if (mesh_style == MeshStyle.POINTS){
+            drawArrays(GLES31.GL_POINTS, 0, vertexCount());
+        }
+        else {
+            super.drawMesh(shader_program, mesh_style);
+        }
+    }
+
+    private int vertexCount(){
+        return xyzwVertices.length / DATA_PER_VERTEX;
+    }
+
+    private int[] edgeIndices(){
+        if (edgeIndices == null){
+            edgeIndices = PrimitiveLists.trianglesToEdges(triangleIndices);
+        }
+        return edgeIndices;
     }
 }
@@ -0,0 +1,344 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * This class reorders mesh indices so that GPUs shade each vertex as few times as possible.<br>
+ * GPUs keep the last transformed vertices in a small post-transform cache: triangles sharing vertices should thus be drawn
+ * close to each other. {@link #optimizeTriangleOrder(int[], int, int, int, int)} follows Tom Forsyth's
+ * "Linear-Speed Vertex Cache Optimisation", which greedily emits the triangle which vertices score best
+ * (recently used vertices, and vertices with few remaining triangles).<br>
+ * {@link #computeVertexFetchRemap(int[], int)} then renumbers vertices in their first use order, so that vertex data are fetched
+ * sequentially from memory.<br>
+ * Efficiency is measured by simulating a FIFO cache (see {@link Report}):
+ * <ul>
+ *     <li>ACMR (Average Cache Miss Ratio): transformed vertices per triangle, from 3 (no reuse) down to about 0.5 for regular grids.</li>
+ *     <li>ATVR (Average Transformed Vertex Ratio): transformed vertices per vertex, 1 being optimal.</li>
+ * </ul>
+ */
+public final class VertexCacheOptimizer {
+
+    /**
+     * Cache size assumed by the optimization and measures. Mobile GPUs caches hold 16 to 32 vertices;
+     * Forsyth's scoring behaves well for smaller caches too.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int VERTEX_PER_TRIANGLE = 3;
+
+    /**
+     * Measures of an optimization.
+     */
+    public static final class Report {
+        private final int triangleCount;
+        private final int cacheSize;
+        private final float acmrBefore;
+        private final float atvrBefore;
+        private final float acmrAfter;
+        private final float atvrAfter;
+
+        Report(int triangle_count, int cache_size, float acmr_before, float atvr_before, float acmr_after, float atvr_after) {
+            triangleCount = triangle_count;
+            cacheSize = cache_size;
+            acmrBefore = acmr_before;
+            atvrBefore = atvr_before;
+            acmrAfter = acmr_after;
+            atvrAfter = atvr_after;
+        }
+
+        public int getTriangleCount() {
+            return triangleCount;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public float getAcmrBefore() {
+            return acmrBefore;
+        }
+
+        public float getAtvrBefore() {
+            return atvrBefore;
+        }
+
+        public float getAcmrAfter() {
+            return acmrAfter;
+        }
+
+        public float getAtvrAfter() {
+            return atvrAfter;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(Locale.US, "%d triangles, FIFO cache of %d: ACMR %.3f -> %.3f, ATVR %.3f -> %.3f",
+                    triangleCount, cacheSize, acmrBefore, acmrAfter, atvrBefore, atvrAfter);
+        }
+    }
+
+    private VertexCacheOptimizer(){
+    }
+
+    /**
+     * Reorders triangles in place and measures the gain.
+     * @param v_indices Indices containing a {@link android.opengl.GLES31#GL_TRIANGLES} list.
+     * @param first_index The first index of the triangle list
+     * @param index_count The number of indices of the triangle list, a multiple of 3.
+     * @param vertex_count The number of vertices indexed
+     * @param cache_size The cache size to optimize for, e.g. {@link #DEFAULT_CACHE_SIZE}
+     * @return The ACMR and ATVR before and after optimization.
+     */
+    public static Report optimizeTriangleOrder(int[] v_indices, int first_index, int index_count, int vertex_count, int cache_size){
+        int _index_count = index_count - index_count % VERTEX_PER_TRIANGLE;
+        float _acmr_before = measureAcmr(v_indices, first_index, _index_count, vertex_count, cache_size);
+        float _atvr_before = measureAtvr(v_indices, first_index, _index_count, vertex_count, cache_size);
+
+        int[] _optimized = forsythOrder(v_indices, first_index, _index_count, vertex_count, cache_size);
+        System.arraycopy(_optimized, 0, v_indices, first_index, _index_count);
+
+        return new Report(_index_count / VERTEX_PER_TRIANGLE, cache_size,
+                _acmr_before, _atvr_before,
+                measureAcmr(v_indices, first_index, _index_count, vertex_count, cache_size),
+                measureAtvr(v_indices, first_index, _index_count, vertex_count, cache_size));
+    }
+
+    /**
+     * Computes a vertex renumbering following the first use of each vertex in the indices. Unused vertices are put last.
+     * @param v_indices All the indices of the mesh
+     * @param vertex_count The number of vertices
+     * @return For each vertex, its new number.
+     */
+    public static int[] computeVertexFetchRemap(int[] v_indices, int vertex_count){
+        int[] _remap = new int[vertex_count];
+        Arrays.fill(_remap, -1);
+        int _next = 0;
+        for (int _index : v_indices){
+            if (_index != PrimitiveLists.RESTART_INDEX && _remap[_index] == -1){
+                _remap[_index] = _next++;
+            }
+        }
+        for (int _v = 0; _v < vertex_count; _v++){
+            if (_remap[_v] == -1){
+                _remap[_v] = _next++;
+            }
+        }
+        return _remap;
+    }
+
+    /**
+     * Renumbers indices in place, restart indices being kept.
+     * @param v_indices The indices
+     * @param vertex_remap Given by {@link #computeVertexFetchRemap(int[], int)}
+     */
+    public static void remapIndices(int[] v_indices, int[] vertex_remap){
+        for (int _i = 0; _i < v_indices.length; _i++){
+            if (v_indices[_i] != PrimitiveLists.RESTART_INDEX){
+                v_indices[_i] = vertex_remap[v_indices[_i]];
+            }
+        }
+    }
+
+    /**
+     * @param vertex_data Per-vertex data
+     * @param data_count_per_vertex The number of floats per vertex
+     * @param vertex_remap Given by {@link #computeVertexFetchRemap(int[], int)}
+     * @return The data sorted in the new vertex order
+     */
+    public static float[] remapData(float[] vertex_data, int data_count_per_vertex, int[] vertex_remap){
+        float[] _res = new float[vertex_data.length];
+        for (int _v = 0; _v < vertex_remap.length; _v++){
+            System.arraycopy(vertex_data, _v * data_count_per_vertex, _res, vertex_remap[_v] * data_count_per_vertex, data_count_per_vertex);
+        }
+        return _res;
+    }
+
+    /**
+     * @return The number of vertices transformed per triangle by a FIFO cache of cache_size vertices.
+     */
+    public static float measureAcmr(int[] v_indices, int first_index, int index_count, int vertex_count, int cache_size){
+        int _triangle_count = index_count / VERTEX_PER_TRIANGLE;
+        return _triangle_count == 0 ? 0f : (float) countCacheMisses(v_indices, first_index, index_count, vertex_count, cache_size) / _triangle_count;
+    }
+
+    /**
+     * @return The number of times each vertex used by the triangles is transformed by a FIFO cache of cache_size vertices.
+     */
+    public static float measureAtvr(int[] v_indices, int first_index, int index_count, int vertex_count, int cache_size){
+        boolean[] _is_used = new boolean[vertex_count];
+        int _used_count = 0;
+        for (int _i = first_index; _i < first_index + index_count; _i++){
+            if (!_is_used[v_indices[_i]]){
+                _is_used[v_indices[_i]] = true;
+                _used_count++;
+            }
+        }
+        return _used_count == 0 ? 0f : (float) countCacheMisses(v_indices, first_index, index_count, vertex_count, cache_size) / _used_count;
+    }
+
+    private static int countCacheMisses(int[] v_indices, int first_index, int index_count, int vertex_count, int cache_size){
+        // A vertex is in the FIFO while less than cache_size vertices have been inserted after it
+        int[] _insertion_time = new int[vertex_count];
+        Arrays.fill(_insertion_time, Integer.MIN_VALUE / 2);
+        int _misses = 0;
+        for (int _i = first_index; _i < first_index + index_count; _i++){
+            int _v = v_indices[_i];
+            if (_misses - _insertion_time[_v] >= cache_size){
+                _insertion_time[_v] = _misses;
+                _misses++;
+            }
+        }
+        return _misses;
+    }
+
+    private static float vertexScore(int cache_position, int remaining_valence, int cache_size){
+        if (remaining_valence == 0){
+            // No more triangle to draw with this vertex
+            return -1f;
+        }
+        float _score = 0f;
+        if (cache_position >= 0){
+            if (cache_position < VERTEX_PER_TRIANGLE){
+                // Vertices of the last triangle get a fixed score, so that strips do not prevail over fans
+                _score = LAST_TRIANGLE_SCORE;
+            }
+            else {
+                float _scaler = 1f / (cache_size - VERTEX_PER_TRIANGLE);
+                _score = (float) Math.pow(1f - (cache_position - VERTEX_PER_TRIANGLE) * _scaler, CACHE_DECAY_POWER);
+            }
+        }
+        // Vertices with few remaining triangles are favored, so that no lonely triangle is left behind
+        _score += VALENCE_BOOST_SCALE * (float) Math.pow(remaining_valence, -VALENCE_BOOST_POWER);
+        return _score;
+    }
+
+    private static int[] forsythOrder(int[] v_indices, int first_index, int index_count, int vertex_count, int cache_size){
+        int _triangle_count = index_count / VERTEX_PER_TRIANGLE;
+        int _cache_size = Math.max(cache_size, VERTEX_PER_TRIANGLE + 1);
+
+        // Triangles adjacent to each vertex, in compressed rows: active ones are kept first
+        int[] _remaining = new int[vertex_count];
+        for (int _i = first_index; _i < first_index + index_count; _i++){
+            _remaining[v_indices[_i]]++;
+        }
+        int[] _adjacency_offsets = new int[vertex_count + 1];
+        for (int _v = 0; _v < vertex_count; _v++){
+            _adjacency_offsets[_v + 1] = _adjacency_offsets[_v] + _remaining[_v];
+        }
+        int[] _adjacency = new int[index_count];
+        int[] _fill = Arrays.copyOf(_adjacency_offsets, vertex_count);
+        for (int _t = 0; _t < _triangle_count; _t++){
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = v_indices[first_index + VERTEX_PER_TRIANGLE * _t + _k];
+                _adjacency[_fill[_v]++] = _t;
+            }
+        }
+
+        int[] _cache_position = new int[vertex_count];
+        Arrays.fill(_cache_position, -1);
+        float[] _vertex_scores = new float[vertex_count];
+        for (int _v = 0; _v < vertex_count; _v++){
+            _vertex_scores[_v] = vertexScore(-1, _remaining[_v], _cache_size);
+        }
+        float[] _triangle_scores = new float[_triangle_count];
+        boolean[] _is_emitted = new boolean[_triangle_count];
+        int _best = -1;
+        for (int _t = 0; _t < _triangle_count; _t++){
+            _triangle_scores[_t] = triangleScore(v_indices, first_index, _t, _vertex_scores);
+            if (_best < 0 || _triangle_scores[_t] > _triangle_scores[_best]){
+                _best = _t;
+            }
+        }
+
+        int[] _cache = new int[_cache_size + VERTEX_PER_TRIANGLE];
+        int[] _new_cache = new int[_cache_size + VERTEX_PER_TRIANGLE];
+        int _cache_count = 0;
+        int[] _res = new int[index_count];
+        int _out = 0;
+        int _scan = 0;
+
+        while (_out < index_count){
+            if (_best < 0){
+                // No candidate around the cache: takes the next triangle not drawn yet
+                while (_is_emitted[_scan]){
+                    _scan++;
+                }
+                _best = _scan;
+            }
+
+            // Emits the best triangle and removes it from its vertices adjacency
+            _is_emitted[_best] = true;
+            int _new_count = 0;
+            for (int _k = 0; _k < VERTEX_PER_TRIANGLE; _k++){
+                int _v = v_indices[first_index + VERTEX_PER_TRIANGLE * _best + _k];
+                _res[_out++] = _v;
+                int _start = _adjacency_offsets[_v];
+                int _end = _start + _remaining[_v];
+                for (int _a = _start; _a < _end; _a++){
+                    if (_adjacency[_a] == _best){
+                        _adjacency[_a] = _adjacency[_end - 1];
+                        _adjacency[_end - 1] = _best;
+                        _remaining[_v]--;
+                        break;
+                    }
+                }
+                if (!contains(_new_cache, _new_count, _v)){
+                    _new_cache[_new_count++] = _v;
+                }
+            }
+
+            // Triangle vertices go to the cache front, other vertices are pushed back
+            int _triangle_vertex_count = _new_count;
+            for (int _c = 0; _c < _cache_count; _c++){
+                int _v = _cache[_c];
+                if (!contains(_new_cache, _triangle_vertex_count, _v)){
+                    _new_cache[_new_count++] = _v;
+                }
+            }
+            for (int _c = 0; _c < _new_count; _c++){
+                int _v = _new_cache[_c];
+                _cache_position[_v] = (_c < _cache_size ? _c : -1);
+                _vertex_scores[_v] = vertexScore(_cache_position[_v], _remaining[_v], _cache_size);
+            }
+
+            // Next best triangle is searched among the ones using cached vertices
+            _best = -1;
+            for (int _c = 0; _c < _new_count; _c++){
+                int _v = _new_cache[_c];
+                int _start = _adjacency_offsets[_v];
+                for (int _a = _start; _a < _start + _remaining[_v]; _a++){
+                    int _t = _adjacency[_a];
+                    _triangle_scores[_t] = triangleScore(v_indices, first_index, _t, _vertex_scores);
+                    if (_best < 0 || _triangle_scores[_t] > _triangle_scores[_best]){
+                        _best = _t;
+                    }
+                }
+            }
+
+            _cache_count = Math.min(_new_count, _cache_size);
+            int[] _swap = _cache;
+            _cache = _new_cache;
+            _new_cache = _swap;
+        }
+        return _res;
+    }
+
+    private static float triangleScore(int[] v_indices, int first_index, int triangle_index, float[] vertex_scores){
+        int _i = first_index + VERTEX_PER_TRIANGLE * triangle_index;
+        return vertex_scores[v_indices[_i]] + vertex_scores[v_indices[_i + 1]] + vertex_scores[v_indices[_i + 2]];
+    }
+
+    private static boolean contains(int[] values_, int value_count, int value_){
+        for (int _i = 0; _i < value_count; _i++){
+            if (values_[_i] == value_){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,222 @@
+package org.c4sci.camera2opengl.glTools.renderables.scene;
+
+import android.opengl.GLES31;
+import android.opengl.Matrix;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlUtilities;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Bounds;
+import org.c4sci.camera2opengl.glTools.renderables.culling.Frustum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class places an {@link IRenderable} (or nothing, for groups) and child nodes in a scene, by a local transform relative
+ * to its parent node.<br>
+ * World matrices are cached: modifying a local transform marks the node dirty, and its ancestors as having a dirty descendant.
+ * World matrices are then computed again only for dirty nodes and their descendants, and clean subtrees are not even visited:
+ * mostly static scenes cost matrix products for changed nodes only. MVP matrices are cached the same way, and computed again only
+ * when the world matrix or the {@link ViewProjection} changed.<br>
+ * Nodes which renderable bounds are out of the view are not drawn. Nothing is allocated when drawing.
+ */
+public class SceneNode {
+
+    private static final int MATRIX_SIZE = 16;
+
+    private final IRenderable renderable;
+    private SceneNode parent = null;
+    private final List<SceneNode> children = new ArrayList<>();
+
+    private final float[] localMatrix = new float[MATRIX_SIZE];
+    private final float[] worldMatrix = new float[MATRIX_SIZE];
+    private final float[] mvpMatrix = new float[MATRIX_SIZE];
+    private final Bounds worldBounds = new Bounds();
+
+    private boolean localIsDirty = true;
+    private boolean descendantIsDirty = false;
+    private int worldVersion = 0;
+    private int mvpWorldVersion = -1;
+    private int mvpViewProjectionVersion = -1;
+    private ViewProjection mvpViewProjection = null;
+    private int boundsWorldVersion = -1;
+    private Bounds boundsSource = null;
+
+    /**
+     * Creates a node with an identity local transform.
+     * @param renderable_ The renderable placed by the node, or null for a group of child nodes.
+     */
+    public SceneNode(IRenderable renderable_){
+        renderable = renderable_;
+        Matrix.setIdentityM(localMatrix, 0);
+        Matrix.setIdentityM(worldMatrix, 0);
+    }
+
+    public IRenderable getRenderable(){
+        return renderable;
+    }
+
+    public SceneNode getParent(){
+        return parent;
+    }
+
+    /**
+     * @return The child nodes. The list must not be modified: use {@link #addChild(SceneNode)} and {@link #removeChild(SceneNode)}.
+     */
+    public List<SceneNode> getChildren(){
+        return children;
+    }
+
+    /**
+     * @throws RenderingRuntimeException if the child already has a parent.
+     */
+    public void addChild(SceneNode child_){
+        if (child_.parent != null){
+            throw new RenderingRuntimeException("Scene node already has a parent");
+        }
+        for (SceneNode _ancestor = this; _ancestor != null; _ancestor = _ancestor.parent){
+            if (_ancestor == child_){
+                throw new RenderingRuntimeException("Scene node cannot be its own descendant");
+            }
+        }
+        child_.parent = this;
+        children.add(child_);
+        child_.markDirty();
+    }
+
+    public void removeChild(SceneNode child_){
+        if (children.remove(child_)){
+            child_.parent = null;
+            child_.markDirty();
+        }
+    }
+
+    /**
+     * Gives the local transform, to be modified in place: {@link #markDirty()} must then be called.
+     * @return The local matrix, column major (as in {@link Matrix}).
+     */
+    public float[] getLocalMatrix(){
+        return localMatrix;
+    }
+
+    /**
+     * Copies a local transform and marks the node dirty.
+     * @param local_matrix Column major, as in {@link Matrix}
+     */
+    public void setLocalMatrix(float[] local_matrix){
+        System.arraycopy(local_matrix, 0, localMatrix, 0, MATRIX_SIZE);
+        markDirty();
+    }
+
+    /**
+     * Indicates that the local transform changed: the world matrices of the node and its descendants will be computed again.
+     */
+    public void markDirty(){
+        localIsDirty = true;
+        for (SceneNode _ancestor = parent; _ancestor != null && !_ancestor.descendantIsDirty; _ancestor = _ancestor.parent){
+            _ancestor.descendantIsDirty = true;
+        }
+    }
+
+    /**
+     * Computes the world matrices of the whole scene that changed since the last call.
+     * It is called by {@link #draw(ViewProjection, int, int, IRenderable.MeshStyle)}.
+     */
+    public void updateWorldMatrices(){
+        SceneNode _root = this;
+        while (_root.parent != null){
+            _root = _root.parent;
+        }
+        _root.updateWorldMatrix(false);
+    }
+
+    private void updateWorldMatrix(boolean parent_changed){
+        boolean _changed = parent_changed || localIsDirty;
+        if (!_changed && !descendantIsDirty){
+            return;
+        }
+        if (_changed){
+            if (parent == null){
+                System.arraycopy(localMatrix, 0, worldMatrix, 0, MATRIX_SIZE);
+            }
+            else {
+                Matrix.multiplyMM(worldMatrix, 0, parent.worldMatrix, 0, localMatrix, 0);
+            }
+            worldVersion++;
+            localIsDirty = false;
+        }
+        descendantIsDirty = false;
+        for (int _c = 0; _c < children.size(); _c++){
+            children.get(_c).updateWorldMatrix(_changed);
+        }
+    }
+
+    /**
+     * @return The world matrix as of the last {@link #updateWorldMatrices()}. It must not be modified.
+     */
+    public float[] getWorldMatrix(){
+        return worldMatrix;
+    }
+
+    /**
+     * Gives the model view projection matrix, computed again only if the view projection or the world matrix changed.
+     * @return The MVP matrix. It must not be modified.
+     */
+    public float[] getMvpMatrix(ViewProjection view_projection){
+        if (mvpViewProjection != view_projection || mvpViewProjectionVersion != view_projection.getVersion() ||
+                mvpWorldVersion != worldVersion){
+            Matrix.multiplyMM(mvpMatrix, 0, view_projection.getMatrix(), 0, worldMatrix, 0);
+            mvpViewProjection = view_projection;
+            mvpViewProjectionVersion = view_projection.getVersion();
+            mvpWorldVersion = worldVersion;
+        }
+        return mvpMatrix;
+    }
+
+    /**
+     * @return The bounds of the renderable in world coordinates, or null if it has none.
+     */
+    public Bounds getWorldBounds(){
+        Bounds _bounds = (renderable == null ? null : renderable.getBounds());
+        if (_bounds == null){
+            return null;
+        }
+        if (boundsSource != _bounds || boundsWorldVersion != worldVersion){
+            _bounds.transform(worldMatrix, worldBounds);
+            boundsSource = _bounds;
+            boundsWorldVersion = worldVersion;
+        }
+        return worldBounds;
+    }
+
+    /**
+     * Draws the renderables of the node and its descendants which may be visible. The shader program must be in use.
+     * @param view_projection The viewpoint
+     * @param shader_program The shader program to draw with
+     * @param mvp_uniform_location The location of the MVP uniform in the shader program
+     * @param mesh_style The kind of rendering (filled, lines ...)
+     * @return The number of drawn renderables
+     */
+    public int draw(ViewProjection view_projection, int shader_program, int mvp_uniform_location, IRenderable.MeshStyle mesh_style){
+        updateWorldMatrices();
+        return drawVisible(view_projection, shader_program, mvp_uniform_location, mesh_style);
+    }
+
+    private int drawVisible(ViewProjection view_projection, int shader_program, int mvp_uniform_location, IRenderable.MeshStyle mesh_style){
+        int _res = 0;
+        if (renderable != null){
+            Bounds _world_bounds = getWorldBounds();
+            if (_world_bounds == null || view_projection.getWorldFrustum().classify(_world_bounds) != Frustum.OUTSIDE){
+                GLES31.glUniformMatrix4fv(mvp_uniform_location, 1, false, getMvpMatrix(view_projection), 0);
+                GlUtilities.ensureGles31Call("glUniformMatrix4fv(mvp)");
+                renderable.draw(shader_program, mesh_style);
+                _res++;
+            }
+        }
+        for (int _c = 0; _c < children.size(); _c++){
+            _res += children.get(_c).drawVisible(view_projection, shader_program, mvp_uniform_location, mesh_style);
+        }
+        return _res;
+    }
+}
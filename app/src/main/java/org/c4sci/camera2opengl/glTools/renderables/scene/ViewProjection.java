@@ -0,0 +1,67 @@
+package org.c4sci.camera2opengl.glTools.renderables.scene;
+
+import android.opengl.Matrix;
+
+import org.c4sci.camera2opengl.glTools.renderables.culling.Frustum;
+
+/**
+ * This class holds the view projection matrix scene nodes are drawn with, and its frustum in world coordinates.<br>
+ * Each change increments a version, so that {@link SceneNode}s compute their MVP matrix again only when the view projection
+ * or their world matrix changed.
+ */
+public final class ViewProjection {
+
+    private final float[] viewProjectionMatrix = new float[16];
+    private final Frustum worldFrustum = new Frustum();
+    private int version = 0;
+
+    /**
+     * Creates an identity view projection.
+     */
+    public ViewProjection(){
+        Matrix.setIdentityM(viewProjectionMatrix, 0);
+        worldFrustum.set(viewProjectionMatrix);
+    }
+
+    /**
+     * Sets the view projection as projection * view. Nothing is allocated.
+     * @param view_matrix Column major, as in {@link Matrix}
+     * @param projection_matrix Column major, as in {@link Matrix}
+     */
+    public void set(float[] view_matrix, float[] projection_matrix){
+        Matrix.multiplyMM(viewProjectionMatrix, 0, projection_matrix, 0, view_matrix, 0);
+        changed();
+    }
+
+    /**
+     * Sets the view projection matrix. Nothing is allocated.
+     * @param view_projection_matrix Column major, as in {@link Matrix}
+     */
+    public void set(float[] view_projection_matrix){
+        System.arraycopy(view_projection_matrix, 0, viewProjectionMatrix, 0, viewProjectionMatrix.length);
+        changed();
+    }
+
+    private void changed(){
+        worldFrustum.set(viewProjectionMatrix);
+        version++;
+    }
+
+    /**
+     * @return The view projection matrix. It must not be modified.
+     */
+    public float[] getMatrix(){
+        return viewProjectionMatrix;
+    }
+
+    public Frustum getWorldFrustum(){
+        return worldFrustum;
+    }
+
+    /**
+     * @return A number changed each time the view projection changes.
+     */
+    public int getVersion(){
+        return version;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Renderables can be placed relatively to each other in a scene graph:
+ * <ul>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.scene.SceneNode} places a renderable and child nodes with a local transform.</li>
+ *     <li>{@link org.c4sci.camera2opengl.glTools.renderables.scene.ViewProjection} is the viewpoint nodes are drawn from.</li>
+ * </ul>
+ */
+package org.c4sci.camera2opengl.glTools.renderables.scene;
@@ -1,34 +1,91 @@
 package org.c4sci.camera2opengl.glTools.renderables.shaders;
 
 /**
- * Variables used by stock shaders: their attribute index is Ordinal(). You can safely mix stock shaders
- * with your own as long as you respect this convention. For example your owns attributes indices should start
- * at this enum values().length and should be different to these stock attribute names.<br>
- * This class allows passing from one shader to another without rebinding VBOs, as long as the shaders respect this
- * convention and use the same bindings for other variables.
+ * Variables used by stock shaders: the attribute location of vertex attributes is Ordinal(). You can safely mix stock shaders
+ * with your own as long as you respect this convention. For example your owns attributes locations should start
+ * at {@link #FIRST_CUSTOM_LOCATION} and should be different to these stock attribute names.<br>
+ * This convention is enforced: {@link ShaderUtility#makeProgramFromShaders(AssembledShader, AssembledShader)} binds these
+ * names to their location, and VAOs point these attributes once at these locations. Switching between such programs
+ * then costs a glUseProgram() only, VBOs being neither looked up nor rebound.<br>
+ * Vertex attributes come first; other values (samplers, uniforms, varyings) follow and take no location.<br>
+ * Per-instance attributes ({@link #INSTANCE_COLOR}, {@link #INSTANCE_MODEL}) are fed once per instance by instanced draws.
+ * {@link #INSTANCE_MODEL} is a mat4: it takes 4 consecutive attribute locations and thus stays the last vertex attribute.<br>
+ * {@link #DRAW_ID} is the rank of the sub-mesh a vertex belongs to in batches drawn by indirect draws, which cannot offset
+ * instances in OpenGL ES 3.1: shaders use it to fetch per sub-mesh data (e.g. in a shader storage buffer).
  */
 public enum ShaderAttributes {
-    VERTEX("v4Vertex"),
-    COLOR("v4Color"),
-    NORMAL("v4Normal"),
-    TEXCOORD("v4TexCoord"),
-    TEXTURE0("vTextureO"),
-    TEXTURE1("vTexture1"),
-    TEXTURE2("vTexture2"),
-    TEXTURE3("vTexture3"),
-    MVP("m4Mvp"),
-    AMBIENT("v4Ambient"),
-    DIRECTIONAL("m4Directional"),
-    EYEVERTEX("v4EyeVertex");
-
-    private String attributeVariable;
+    VERTEX("v4Vertex", 1),
+    COLOR("v4Color", 1),
+    NORMAL("v4Normal", 1),
+    TEXCOORD("v4TexCoord", 1),
+    DRAW_ID("fDrawId", 1),
+    INSTANCE_COLOR("v4InstanceColor", 1),
+    INSTANCE_MODEL("m4InstanceModel", 4),
+    TEXTURE0("vTextureO", 0),
+    TEXTURE1("vTexture1", 0),
+    TEXTURE2("vTexture2", 0),
+    TEXTURE3("vTexture3", 0),
+    MVP("m4Mvp", 0),
+    AMBIENT("v4Ambient", 0),
+    DIRECTIONAL("m4Directional", 0),
+    EYEVERTEX("v4EyeVertex", 0);
+
+    /**
+     * The first attribute location free for custom attributes: the 4 columns of {@link #INSTANCE_MODEL} come last.
+     * It stays under the 16 locations every OpenGL ES 3 device offers.
+     */
+    public static final int FIRST_CUSTOM_LOCATION = INSTANCE_MODEL.ordinal() + INSTANCE_MODEL.getLocationCount();
+
+    private final String attributeVariable;
+    private final boolean isVertexAttribute;
+    private final int locationCount;
 
     @Override
     public String toString(){
         return attributeVariable;
     }
 
-    ShaderAttributes(String attribute_variable){
+    /**
+     * @param location_count The number of attribute locations taken, one per matrix column. 0 for other values than vertex attributes.
+     */
+    ShaderAttributes(String attribute_variable, int location_count){
         attributeVariable = attribute_variable;
+        isVertexAttribute = location_count > 0;
+        locationCount = location_count;
+    }
+
+    /**
+     * @return true for the values fed by VBOs, which have a fixed location.
+     */
+    public boolean isVertexAttribute(){
+        return isVertexAttribute;
+    }
+
+    /**
+     * @return The attribute location, or -1 if this is not a vertex attribute.
+     */
+    public int getLocation(){
+        return (isVertexAttribute ? ordinal() : -1);
+    }
+
+    /**
+     * @return The number of consecutive attribute locations taken from {@link #getLocation()}: 4 for a mat4, 1 for a vector,
+     * 0 if this is not a vertex attribute.
+     */
+    public int getLocationCount(){
+        return locationCount;
+    }
+
+    /**
+     * Gives the fixed location of an attribute name. This is only called at setup: it does not need to be fast.
+     * @return The location of the vertex attribute of that name, or -1 if it is a custom attribute.
+     */
+    public static int locationOf(String attribute_name){
+        for (ShaderAttributes _attribute : values()){
+            if (_attribute.isVertexAttribute && _attribute.attributeVariable.contentEquals(attribute_name)){
+                return _attribute.ordinal();
+            }
+        }
+        return -1;
     }
 };
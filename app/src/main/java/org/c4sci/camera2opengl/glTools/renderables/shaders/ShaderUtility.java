@@ -104,6 +104,15 @@ public class ShaderUtility {
         GLES31.glAttachShader(_program, _fragment_shader);
         GlUtilities.ensureGles31Call("glAttachShader(_program, _fragment_shader)", _total_deleter);
 
+        // Bind stock attributes names to their fixed location, so that VAOs need not be adapted to the program.
+        // Names the shaders do not use are ignored, and variables bindings below take precedence.
+        for (ShaderAttributes _attribute : ShaderAttributes.values()){
+            if (_attribute.isVertexAttribute()){
+                GLES31.glBindAttribLocation(_program, _attribute.getLocation(), _attribute.toString());
+                GlUtilities.ensureGles31Call("glBindAttribLocation() " + _attribute, _total_deleter);
+            }
+        }
+
         // Bind attributes names to their location
         for (ShaderVariable _vertex_var : vertex_code.getAllVariables()){
             if (_vertex_var.getStorageQualifier().isAnInput() && (_vertex_var.getBinding() != -1)){
@@ -134,4 +143,48 @@ public class ShaderUtility {
         return _program;
 
     }
+
+    /**
+     * Creates a compute program, e.g. to deform meshes in their VBOs (see
+     * {@link org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh#deformWith(int, int)}), or raise an
+     * unchecked {@link org.c4sci.camera2opengl.RenderingRuntimeException}.
+     * @param compute_code The complete code of the compute shader, starting with "#version 310 es".
+     * @return The program handler if everything went right.
+     */
+    public static int makeComputeProgram(final String compute_code){
+        int _compute_shader = GLES31.glCreateShader(GLES31.GL_COMPUTE_SHADER);
+        GlUtilities.ensureGles31Call("glCreateShader(GLES31.GL_COMPUTE_SHADER)");
+        GlUtilities.assertGles31Call(_compute_shader != 0, "glCreateShader(GLES31.GL_COMPUTE_SHADER)");
+        Runnable _shader_deleter = () -> GLES31.glDeleteShader(_compute_shader);
+
+        GLES31.glShaderSource(_compute_shader, compute_code);
+        GlUtilities.ensureGles31Call("glShaderSource(_compute_shader, compute_code)", _shader_deleter);
+        GLES31.glCompileShader(_compute_shader);
+        IntBuffer _shader_compile_state = IntBuffer.allocate(1);
+        GLES31.glGetShaderiv(_compute_shader, GLES31.GL_COMPILE_STATUS, _shader_compile_state);
+        GlUtilities.assertGles31Call(
+                _shader_compile_state.get(0) == GLES31.GL_TRUE,
+                "glCompileShader(_compute_shader)",
+                _shader_deleter,
+                () -> GLES31.glGetShaderInfoLog(_compute_shader) + "\n COMPUTE SHADER CODE : \n" + compute_code);
+
+        int _program = GLES31.glCreateProgram();
+        GlUtilities.assertGles31Call(_program != 0, "Can't create program", _shader_deleter);
+        GlUtilities.ensureGles31Call("glCreateProgram()", _shader_deleter);
+        Runnable _total_deleter = () -> {
+            _shader_deleter.run();
+            GLES31.glDeleteProgram(_program);
+        };
+
+        GLES31.glAttachShader(_program, _compute_shader);
+        GlUtilities.ensureGles31Call("glAttachShader(_program, _compute_shader)", _total_deleter);
+        GLES31.glLinkProgram(_program);
+        IntBuffer _program_state = IntBuffer.allocate(1);
+        GLES31.glGetProgramiv(_program, GLES31.GL_LINK_STATUS, _program_state);
+        GlUtilities.assertGles31Call(_program_state.get(0) == GLES31.GL_TRUE, "glLinkProgram(_program)",
+                _total_deleter, () -> GLES31.glGetProgramInfoLog(_program));
+
+        _shader_deleter.run();
+        return _program;
+    }
 }
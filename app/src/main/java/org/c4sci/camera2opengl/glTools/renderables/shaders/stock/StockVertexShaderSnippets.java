@@ -37,6 +37,15 @@ public class StockVertexShaderSnippets {
     public static final ShaderVariable TEXCOORD_INPUT;
     public static final ShaderVariable VARYING_TEXCOORD_OUTPUT;
 
+    /**
+     * something like "in vec4 v4InstanceColor", fed once per instance
+     */
+    public static final ShaderVariable INSTANCE_COLOR_INPUT;
+    /**
+     * something like "in mat4 m4InstanceModel", fed once per instance
+     */
+    public static final ShaderVariable INSTANCE_MODEL_INPUT;
+
     /* ************************************ CODE SNIPPETS *************************************** */
 
     /**
@@ -70,6 +79,16 @@ public class StockVertexShaderSnippets {
      */
     public static final ShaderCodeSnippet TEXTURE_COORD_CODE_ADDON;
 
+    /**
+     * This shader takes the per-instance {@link #INSTANCE_COLOR_INPUT} to apply it to vertices as {@link #VARYING_COLOR_OUTPUT}.
+     */
+    public static final ShaderCodeSnippet INSTANCED_COLOR_CODE;
+    /**
+     * This shader applies the per-instance {@link #INSTANCE_MODEL_INPUT} then a uniform {@link #MVP_UNIFORM} to gl_Position.
+     * The uniform is then a view-projection matrix, shared by all instances.
+     */
+    public static final ShaderCodeSnippet INSTANCED_MODEL_VIEW_PROJECTION_VERTEX_CODE;
+
 
 
     static {
@@ -115,6 +134,16 @@ public class StockVertexShaderSnippets {
                 TEXCOORD_INPUT.getType(),
                 ShaderVariable.UNBOUND_VARIABLE);
 
+        INSTANCE_COLOR_INPUT = new ShaderVariable(ShaderAttributes.INSTANCE_COLOR.toString(),
+                ShaderVariable.StorageQualifier.INPUT,
+                ShaderVariable.VEC_4,
+                ShaderAttributes.INSTANCE_COLOR.ordinal());
+
+        INSTANCE_MODEL_INPUT = new ShaderVariable(ShaderAttributes.INSTANCE_MODEL.toString(),
+                ShaderVariable.StorageQualifier.INPUT,
+                ShaderVariable.MAT_4,
+                ShaderAttributes.INSTANCE_MODEL.ordinal());
+
 
         /* **************** CODE SNIPPETS ********************** */
 
@@ -143,5 +172,13 @@ public class StockVertexShaderSnippets {
         TEXTURE_COORD_CODE_ADDON = new ShaderCodeSnippet(
                 Arrays.asList(new ShaderVariable[]{TEXCOORD_INPUT, VARYING_TEXCOORD_OUTPUT}),
                 VARYING_TEXCOORD_OUTPUT + " = " + TEXCOORD_INPUT +";\n");
+
+        INSTANCED_COLOR_CODE = new ShaderCodeSnippet(
+                Arrays.asList(new ShaderVariable[]{INSTANCE_COLOR_INPUT, VARYING_COLOR_OUTPUT}),
+                VARYING_COLOR_OUTPUT + " = " + INSTANCE_COLOR_INPUT +";\n");
+
+        INSTANCED_MODEL_VIEW_PROJECTION_VERTEX_CODE = new ShaderCodeSnippet(
+                Arrays.asList(new ShaderVariable[]{VERTEX_INPUT, INSTANCE_MODEL_INPUT, MVP_UNIFORM}),
+                "gl_Position = " + MVP_UNIFORM + " * " + INSTANCE_MODEL_INPUT + " * " + VERTEX_INPUT + ";\n");
     }
 }
@@ -8,6 +8,7 @@ import android.opengl.EGLSurface;
 import android.view.SurfaceView;
 
 import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlResourceLoader;
 
 /**
  * This class allows Open GL rendering on {@link SurfaceView}s through EGL data.<br>
@@ -56,6 +57,14 @@ public interface PreviewImageBundle {
      */
     public int getEGLMinorVersion();
 
+    /**
+     * Gives the thread uploading OpenGL objects (buffers, textures ...) in a context sharing them with the output contexts,
+     * e.g. to set up meshes with {@link org.c4sci.camera2opengl.glTools.renderables.meshes.AbstractMesh#uploadWith(GlResourceLoader)}
+     * without stalling the preview frames.
+     * @return The loader, or null until the output contexts are created.
+     */
+    public GlResourceLoader getResourceLoader();
+
     public int getCurrentWidthPixel();
     public int getCurrentHeightPixel();
 };
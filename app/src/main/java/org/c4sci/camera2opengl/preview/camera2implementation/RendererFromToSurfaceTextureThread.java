@@ -16,6 +16,7 @@ import android.view.TextureView;
 import org.c4sci.camera2opengl.ILogger;
 
 import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.GlResourceLoader;
 import org.c4sci.camera2opengl.preview.PreviewImageBundle;
 import org.c4sci.camera2opengl.preview.PreviewImageProcessor;
 import org.c4sci.threads.ProgrammableThread;
@@ -44,6 +45,10 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
     private Map<SurfaceView, Size> outputSizes = null;
 
     private SurfaceView currentlyDrawnSurface = null;
+    /**
+     * Uploads objects in a context sharing them with the output contexts, which share them with each other.
+     */
+    private GlResourceLoader resourceLoader = null;
 
     private Activity parentActivity;
 
@@ -182,6 +187,11 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
         currentlyDrawnSurface = surface_to_draw_in;
     }
 
+    @Override
+    public GlResourceLoader getResourceLoader() {
+        return resourceLoader;
+    }
+
     @Override
     public int getEGLMajorVersion() {
         return 1;
@@ -233,6 +243,8 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
                 //EGL14.EGL_STENCIL_SIZE, 8,
                 // we want the device to render at least OpenGL ES 3
                 EGL14.EGL_RENDERABLE_TYPE,      EGLExt.EGL_OPENGL_ES3_BIT_KHR,
+                // the resource loader context draws in a pbuffer
+                EGL14.EGL_SURFACE_TYPE,         EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
                 //EGLExt.EGL_CONTEXT_MAJOR_VERSION_KHR, 3,
                 EGL14.EGL_NONE
         };
@@ -246,17 +258,22 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
         outputEglSurfaces = new ConcurrentHashMap<>();
         outputSizes = new ConcurrentHashMap<>();
 
+        // All the contexts share their objects with the first one, so that objects uploaded once can be drawn in all surfaces
+        EGLContext _shared_context = EGL14.EGL_NO_CONTEXT;
         for (SurfaceView _surf : outputSurfaceViews) {
             outputEglConfigs.put(_surf, _configs[0]);
 
             // Gets an EGLCcontext
             EGLContext _egl_context;
-            ensureEglMethod((_egl_context = EGL14.eglCreateContext(outputEglDisplay, _configs[0], EGL14.EGL_NO_CONTEXT,
+            ensureEglMethod((_egl_context = EGL14.eglCreateContext(outputEglDisplay, _configs[0], _shared_context,
                     new int[]{
                             EGL14.EGL_CONTEXT_CLIENT_VERSION, previewImageProcessor.leastMajorOpenGlVersion(),
                             EGL14.EGL_NONE}, 0)) != EGL14.EGL_NO_CONTEXT,
                     "eglCreateContext");
             outputEglContexts.put(_surf, _egl_context);
+            if (_shared_context == EGL14.EGL_NO_CONTEXT){
+                _shared_context = _egl_context;
+            }
 
             // Gets an EGLSurface
             EGLSurface _egl_surf;
@@ -266,6 +283,12 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
             outputEglSurfaces.put(_surf, _egl_surf);
         }
 
+        if (_shared_context != EGL14.EGL_NO_CONTEXT){
+            resourceLoader = new GlResourceLoader(outputEglDisplay, _configs[0], _shared_context,
+                    previewImageProcessor.leastMajorOpenGlVersion());
+            resourceLoader.start();
+        }
+
     }
 
     @Override
@@ -299,6 +322,11 @@ abstract class RendererFromToSurfaceTextureThread extends ProgrammableThread imp
     }
 
     private void giveupContextThreaded(){
+        if (resourceLoader != null){
+            // Its context shares objects with the output ones: it goes first
+            resourceLoader.shutdown();
+            resourceLoader = null;
+        }
         if (glResourcesAreAllocated()){
             if (outputEglDisplay != null) {
                 ensureEglMethod(EGL14.eglMakeCurrent(outputEglDisplay,
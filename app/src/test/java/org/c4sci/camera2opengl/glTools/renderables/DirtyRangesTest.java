@@ -0,0 +1,132 @@
+package org.c4sci.camera2opengl.glTools.renderables;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DirtyRanges} keeps ranges sorted and disjoint, merging the ranges closer than its gap.
+ */
+public class DirtyRangesTest {
+
+    /**
+     * @return first vertex, vertex count, for each range.
+     */
+    private static int[] rangesOf(DirtyRanges dirty_ranges){
+        int[] _res = new int[2 * dirty_ranges.getRangeCount()];
+        for (int _r = 0; _r < dirty_ranges.getRangeCount(); _r++){
+            _res[2 * _r] = dirty_ranges.getFirstVertex(_r);
+            _res[2 * _r + 1] = dirty_ranges.getVertexCount(_r);
+        }
+        return _res;
+    }
+
+    @Test
+    public void distantRangesAreSorted(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(20, 5);
+        _ranges.add(0, 2);
+        _ranges.add(10, 3);
+
+        assertArrayEquals(new int[]{0, 2, 10, 3, 20, 5}, rangesOf(_ranges));
+    }
+
+    @Test
+    public void overlappingAndTouchingRangesAreMerged(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(0, 5);
+        _ranges.add(3, 4);
+        assertArrayEquals(new int[]{0, 7}, rangesOf(_ranges));
+
+        _ranges.add(7, 3);
+        assertArrayEquals(new int[]{0, 10}, rangesOf(_ranges));
+
+        _ranges.add(11, 1);
+        assertArrayEquals(new int[]{0, 10, 11, 1}, rangesOf(_ranges));
+    }
+
+    @Test
+    public void rangeSpanningSeveralRangesMergesThem(){
+        DirtyRanges _ranges = new DirtyRanges();
+        for (int _i = 0; _i < 10; _i++){
+            _ranges.add(10 * _i, 2);
+        }
+        assertEquals(10, _ranges.getRangeCount());
+
+        _ranges.add(15, 40);
+
+        assertArrayEquals(new int[]{0, 2, 10, 2, 15, 40, 60, 2, 70, 2, 80, 2, 90, 2}, rangesOf(_ranges));
+    }
+
+    @Test
+    public void rangesWithinTheGapAreMerged(){
+        DirtyRanges _ranges = new DirtyRanges(4);
+        _ranges.add(0, 2);
+        _ranges.add(6, 2);
+        assertArrayEquals(new int[]{0, 8}, rangesOf(_ranges));
+
+        _ranges.add(13, 1);
+        assertArrayEquals(new int[]{0, 8, 13, 1}, rangesOf(_ranges));
+
+        // Before the first range
+        _ranges = new DirtyRanges(4);
+        _ranges.add(10, 2);
+        _ranges.add(4, 2);
+        assertArrayEquals(new int[]{4, 8}, rangesOf(_ranges));
+    }
+
+    @Test
+    public void emptyRangesAreIgnored(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(5, 0);
+        _ranges.add(5, -3);
+
+        assertTrue(_ranges.isEmpty());
+    }
+
+    @Test
+    public void clampRestrictsAndDropsRanges(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(-3, 5);
+        _ranges.add(8, 4);
+        _ranges.add(20, 5);
+
+        _ranges.clamp(10);
+
+        assertArrayEquals(new int[]{0, 2, 8, 2}, rangesOf(_ranges));
+
+        _ranges.clamp(0);
+        assertTrue(_ranges.isEmpty());
+    }
+
+    @Test
+    public void addAllMergesOtherRanges(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(0, 2);
+        _ranges.add(10, 2);
+        DirtyRanges _other_ranges = new DirtyRanges();
+        _other_ranges.add(2, 3);
+        _other_ranges.add(20, 1);
+
+        _ranges.addAll(_other_ranges);
+
+        assertArrayEquals(new int[]{0, 5, 10, 2, 20, 1}, rangesOf(_ranges));
+        assertArrayEquals(new int[]{2, 3, 20, 1}, rangesOf(_other_ranges));
+    }
+
+    @Test
+    public void clearForgetsRanges(){
+        DirtyRanges _ranges = new DirtyRanges();
+        _ranges.add(0, 2);
+        assertFalse(_ranges.isEmpty());
+
+        _ranges.clear();
+
+        assertTrue(_ranges.isEmpty());
+        _ranges.add(4, 1);
+        assertArrayEquals(new int[]{4, 1}, rangesOf(_ranges));
+    }
+}
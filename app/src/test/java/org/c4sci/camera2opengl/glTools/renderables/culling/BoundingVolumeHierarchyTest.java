@@ -0,0 +1,175 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link BoundingVolumeHierarchy} keeps exactly the renderables a {@link Frustum} keeps when tested one by one.
+ */
+public class BoundingVolumeHierarchyTest {
+
+    private static final int RENDERABLE_COUNT = 200;
+    private static final float SCENE_SIZE = 100;
+
+    /**
+     * A renderable of given bounds, never drawn.
+     */
+    private static final class BoundedRenderable implements IRenderable {
+        private final Bounds bounds;
+
+        BoundedRenderable(Bounds bounds_){
+            bounds = bounds_;
+        }
+
+        @Override
+        public void setupOpenGlResources() {
+        }
+
+        @Override
+        public void draw(int shader_program, MeshStyle mesh_style) {
+        }
+
+        @Override
+        public void releaseOpenGlResources() {
+        }
+
+        @Override
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        @Override
+        public int majorOpenGlVersion() {
+            return 3;
+        }
+
+        @Override
+        public int minorOpenGlVersion() {
+            return 1;
+        }
+    }
+
+    private static Bounds unitBox(){
+        Bounds _res = new Bounds();
+        _res.setBox(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f);
+        return _res;
+    }
+
+    private static float[] translation(float x_, float y_, float z_){
+        return new float[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, x_, y_, z_, 1};
+    }
+
+    /**
+     * @return The column major matrix of an orthographic view of the box [left, right] x [bottom, top] x [near, far].
+     */
+    private static float[] orthographic(float left_, float right_, float bottom_, float top_, float near_, float far_){
+        return new float[]{
+                2 / (right_ - left_), 0, 0, 0,
+                0, 2 / (top_ - bottom_), 0, 0,
+                0, 0, 2 / (far_ - near_), 0,
+                -(right_ + left_) / (right_ - left_), -(top_ + bottom_) / (top_ - bottom_), -(far_ + near_) / (far_ - near_), 1};
+    }
+
+    @Test
+    public void cullingMatchesIndividualTests(){
+        Random _random = new Random(3);
+        List<IRenderable> _renderables = new ArrayList<>();
+        List<float[]> _models = new ArrayList<>();
+        List<Bounds> _world_bounds = new ArrayList<>();
+        for (int _r = 0; _r < RENDERABLE_COUNT; _r++){
+            IRenderable _renderable = new BoundedRenderable(unitBox());
+            float[] _model = translation(_random.nextFloat() * SCENE_SIZE, _random.nextFloat() * SCENE_SIZE, _random.nextFloat() * SCENE_SIZE);
+            Bounds _world = new Bounds();
+            _renderable.getBounds().transform(_model, _world);
+            _renderables.add(_renderable);
+            _models.add(_model);
+            _world_bounds.add(_world);
+        }
+        BoundingVolumeHierarchy _hierarchy = new BoundingVolumeHierarchy(_renderables, _models);
+        assertEquals(RENDERABLE_COUNT, _hierarchy.getRenderableCount());
+        assertTrue(_hierarchy.getNodeCount() > 1);
+
+        float[][] _views = {
+                orthographic(0, SCENE_SIZE, 0, SCENE_SIZE, 0, SCENE_SIZE),
+                orthographic(10, 30, 40, 70, 0, SCENE_SIZE),
+                orthographic(60, 61, 0, SCENE_SIZE, 20, 40),
+                orthographic(-50, -10, 0, SCENE_SIZE, 0, SCENE_SIZE)};
+        for (float[] _view : _views){
+            Frustum _frustum = new Frustum(_view);
+            List<IRenderable> _visible = new ArrayList<>();
+            _hierarchy.cull(_frustum, _visible);
+
+            HashSet<IRenderable> _expected = new HashSet<>();
+            for (int _r = 0; _r < RENDERABLE_COUNT; _r++){
+                if (_frustum.classifyBox(_world_bounds.get(_r).getMinX(), _world_bounds.get(_r).getMinY(), _world_bounds.get(_r).getMinZ(),
+                        _world_bounds.get(_r).getMaxX(), _world_bounds.get(_r).getMaxY(), _world_bounds.get(_r).getMaxZ()) != Frustum.OUTSIDE){
+                    _expected.add(_renderables.get(_r));
+                }
+            }
+            assertEquals(_expected.size(), _visible.size());
+            assertEquals(_expected, new HashSet<>(_visible));
+        }
+    }
+
+    @Test
+    public void wholeSceneAndEmptyViewsAreCulled(){
+        List<IRenderable> _renderables = new ArrayList<>();
+        for (int _r = 0; _r < RENDERABLE_COUNT; _r++){
+            Bounds _bounds = new Bounds();
+            _bounds.setBox(_r, 0, 0, _r + 0.5f, 1, 1);
+            _renderables.add(new BoundedRenderable(_bounds));
+        }
+        BoundingVolumeHierarchy _hierarchy = new BoundingVolumeHierarchy(_renderables, null);
+
+        List<IRenderable> _visible = new ArrayList<>();
+        _hierarchy.cull(new Frustum(orthographic(-1, RENDERABLE_COUNT + 1, -1, 2, -1, 2)), _visible);
+        assertEquals(RENDERABLE_COUNT, _visible.size());
+
+        _visible.clear();
+        _hierarchy.cull(new Frustum(orthographic(-1, RENDERABLE_COUNT + 1, 5, 6, -1, 2)), _visible);
+        assertTrue(_visible.isEmpty());
+    }
+
+    @Test
+    public void unboundedRenderablesAreNeverCulled(){
+        List<IRenderable> _renderables = new ArrayList<>();
+        IRenderable _unbounded = new BoundedRenderable(null);
+        _renderables.add(new BoundedRenderable(unitBox()));
+        _renderables.add(_unbounded);
+        BoundingVolumeHierarchy _hierarchy = new BoundingVolumeHierarchy(_renderables, null);
+        assertEquals(2, _hierarchy.getRenderableCount());
+
+        List<IRenderable> _visible = new ArrayList<>();
+        _hierarchy.cull(new Frustum(orthographic(10, 11, 10, 11, 10, 11)), _visible);
+
+        assertEquals(1, _visible.size());
+        assertTrue(_visible.contains(_unbounded));
+    }
+
+    @Test
+    public void emptyHierarchyCullsNothing(){
+        BoundingVolumeHierarchy _hierarchy = new BoundingVolumeHierarchy(new ArrayList<IRenderable>(), null);
+        List<IRenderable> _visible = new ArrayList<>();
+
+        _hierarchy.cull(new Frustum(), _visible);
+
+        assertEquals(0, _hierarchy.getNodeCount());
+        assertTrue(_visible.isEmpty());
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void matricesMustMatchRenderables(){
+        List<IRenderable> _renderables = new ArrayList<>();
+        _renderables.add(new BoundedRenderable(unitBox()));
+        new BoundingVolumeHierarchy(_renderables, new ArrayList<float[]>());
+    }
+}
@@ -0,0 +1,136 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the boxes and spheres computed by {@link Bounds}, from vertices and through transforms.
+ */
+public class BoundsTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    private static float[] boxOf(Bounds bounds_){
+        return new float[]{bounds_.getMinX(), bounds_.getMinY(), bounds_.getMinZ(), bounds_.getMaxX(), bounds_.getMaxY(), bounds_.getMaxZ()};
+    }
+
+    /**
+     * @return A column major matrix scaling then rotating by 90 degrees around z, then translating.
+     */
+    private static float[] scaleRotateTranslate(float scale_, float x_, float y_, float z_){
+        return new float[]{
+                0, scale_, 0, 0,
+                -scale_, 0, 0, 0,
+                0, 0, scale_, 0,
+                x_, y_, z_, 1};
+    }
+
+    @Test
+    public void verticesAreEnclosed(){
+        float[] _vertices = {0, 0, 0, 1, 4, 0, 0, 1, 0, 2, 0, 1, 4, 2, -2, 1};
+
+        Bounds _bounds = Bounds.fromVertices(_vertices);
+
+        assertArrayEquals(new float[]{0, 0, -2, 4, 2, 0}, boxOf(_bounds), 0f);
+        float[] _sphere = _bounds.getSphere();
+        assertArrayEquals(new float[]{2, 1, -1}, new float[]{_sphere[0], _sphere[1], _sphere[2]}, EPSILON);
+        for (int _v = 0; _v < _vertices.length; _v += 4){
+            float _dx = _vertices[_v] - _sphere[0], _dy = _vertices[_v + 1] - _sphere[1], _dz = _vertices[_v + 2] - _sphere[2];
+            assertTrue(_dx * _dx + _dy * _dy + _dz * _dz <= _sphere[3] * _sphere[3] + EPSILON);
+        }
+        // The farthest vertices are box corners
+        assertEquals((float) Math.sqrt(6), _sphere[3], EPSILON);
+    }
+
+    @Test
+    public void sphereIsTighterThanTheBoxOne(){
+        // A flat triangle: its farthest vertex is closer than the box corners
+        Bounds _bounds = Bounds.fromVertices(new float[]{-1, -1, 0, 1, 1, -1, 0, 1, 0, 1, 0, 1});
+
+        assertEquals(Math.sqrt(2), _bounds.getSphere()[3], EPSILON);
+    }
+
+    @Test
+    public void noVerticesGiveEmptyBounds(){
+        Bounds _bounds = Bounds.fromVertices(new float[0]);
+
+        assertArrayEquals(new float[6], boxOf(_bounds), 0f);
+        assertArrayEquals(new float[4], _bounds.getSphere(), 0f);
+    }
+
+    @Test
+    public void boxSetsCircumscribedSphere(){
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(-1, 0, 2, 1, 2, 4);
+
+        assertArrayEquals(new float[]{-1, 0, 2, 1, 2, 4}, boxOf(_bounds), 0f);
+        assertArrayEquals(new float[]{0, 1, 3, (float) Math.sqrt(3)}, _bounds.getSphere(), EPSILON);
+
+        _bounds.setSphere(0, 1, 3, 1.5f);
+        assertArrayEquals(new float[]{0, 1, 3, 1.5f}, _bounds.getSphere(), 0f);
+        assertArrayEquals(new float[]{-1, 0, 2, 1, 2, 4}, boxOf(_bounds), 0f);
+    }
+
+    @Test
+    public void boundsAreCopied(){
+        Bounds _source = new Bounds();
+        _source.setBox(1, 2, 3, 4, 5, 6);
+        Bounds _copy = new Bounds();
+
+        _copy.set(_source);
+        _source.setBox(0, 0, 0, 0, 0, 0);
+
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6}, boxOf(_copy), 0f);
+        assertArrayEquals(new float[]{2.5f, 3.5f, 4.5f}, new float[]{_copy.getSphere()[0], _copy.getSphere()[1], _copy.getSphere()[2]}, 0f);
+    }
+
+    @Test
+    public void transformMovesBoxAndSphere(){
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(0, 0, 0, 2, 1, 1);
+        Bounds _result = new Bounds();
+
+        _bounds.transform(scaleRotateTranslate(2, 10, 20, 30), _result);
+
+        // x in [0, 2] becomes y in [0, 4], y in [0, 1] becomes x in [-2, 0]
+        assertArrayEquals(new float[]{8, 20, 30, 10, 24, 32}, boxOf(_result), EPSILON);
+        float[] _sphere = _result.getSphere();
+        assertArrayEquals(new float[]{9, 22, 31, 2 * _bounds.getSphere()[3]}, _sphere, EPSILON);
+    }
+
+    @Test
+    public void transformMayWriteInPlace(){
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(0, 0, 0, 2, 1, 1);
+        Bounds _expected = new Bounds();
+        float[] _matrix = scaleRotateTranslate(3, -1, 0, 1);
+        _bounds.transform(_matrix, _expected);
+
+        _bounds.transform(_matrix, _bounds);
+
+        assertArrayEquals(boxOf(_expected), boxOf(_bounds), 0f);
+        assertArrayEquals(_expected.getSphere(), _bounds.getSphere(), 0f);
+    }
+
+    @Test
+    public void rotatedBoxEnclosesTheRotatedCorners(){
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(-1, -1, -1, 1, 1, 1);
+        float _cos = (float) Math.cos(Math.PI / 4), _sin = (float) Math.sin(Math.PI / 4);
+        float[] _rotation = {
+                _cos, _sin, 0, 0,
+                -_sin, _cos, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1};
+        Bounds _result = new Bounds();
+
+        _bounds.transform(_rotation, _result);
+
+        float _half_diagonal = (float) Math.sqrt(2);
+        assertArrayEquals(new float[]{-_half_diagonal, -_half_diagonal, -1, _half_diagonal, _half_diagonal, 1}, boxOf(_result), EPSILON);
+        assertEquals(_bounds.getSphere()[3], _result.getSphere()[3], EPSILON);
+    }
+}
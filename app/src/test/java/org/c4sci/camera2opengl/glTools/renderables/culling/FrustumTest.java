@@ -0,0 +1,116 @@
+package org.c4sci.camera2opengl.glTools.renderables.culling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the planes {@link Frustum} extracts from orthographic and perspective matrices, through the location of bounds.
+ */
+public class FrustumTest {
+
+    private static final float[] IDENTITY = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1};
+
+    /**
+     * @return The column major matrix of a symmetric perspective looking down -z, as android.opengl.Matrix.perspectiveM() makes.
+     */
+    private static float[] perspective(float fovy_degrees, float aspect_, float near_, float far_){
+        float _f = 1f / (float) Math.tan(Math.toRadians(fovy_degrees) / 2);
+        float _range = 1f / (near_ - far_);
+        return new float[]{
+                _f / aspect_, 0, 0, 0,
+                0, _f, 0, 0,
+                0, 0, (far_ + near_) * _range, -1,
+                0, 0, 2 * far_ * near_ * _range, 0};
+    }
+
+    private static Bounds sphere(float x_, float y_, float z_, float radius_){
+        Bounds _res = new Bounds();
+        _res.setBox(x_ - radius_, y_ - radius_, z_ - radius_, x_ + radius_, y_ + radius_, z_ + radius_);
+        _res.setSphere(x_, y_, z_, radius_);
+        return _res;
+    }
+
+    @Test
+    public void clipCubeIsExtractedFromIdentity(){
+        Frustum _frustum = new Frustum(IDENTITY);
+
+        assertEquals(Frustum.INSIDE, _frustum.classify(sphere(0, 0, 0, 0.5f)));
+        assertEquals(Frustum.INTERSECTING, _frustum.classify(sphere(1, 0, 0, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, -2, 0, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, 0, 1.6f, 0.5f)));
+        assertEquals(Frustum.INSIDE, _frustum.classifyBox(-1, -1, -1, 1, 1, 1));
+        assertEquals(Frustum.INTERSECTING, _frustum.classifyBox(-2, -0.5f, -0.5f, 0, 0.5f, 0.5f));
+        assertEquals(Frustum.OUTSIDE, _frustum.classifyBox(1.1f, -1, -1, 2, 1, 1));
+    }
+
+    @Test
+    public void matrixTranslationMovesPlanes(){
+        float[] _translation = IDENTITY.clone();
+        _translation[12] = 10;
+
+        Frustum _frustum = new Frustum(_translation);
+
+        // Model x = -10 is clip x = 0
+        assertFalse(_frustum.isVisible(sphere(0, 0, 0, 1)));
+        assertEquals(Frustum.INSIDE, _frustum.classify(sphere(-10, 0, 0, 0.5f)));
+    }
+
+    @Test
+    public void perspectivePlanesBoundTheView(){
+        // 90 degrees: at distance d, the view spans [-d, d] in x and y
+        Frustum _frustum = new Frustum(perspective(90, 1, 1, 10));
+
+        assertEquals(Frustum.INSIDE, _frustum.classify(sphere(0, 0, -5, 0.5f)));
+        assertEquals(Frustum.INSIDE, _frustum.classify(sphere(4, 0, -5, 0.5f)));
+        assertEquals(Frustum.INTERSECTING, _frustum.classify(sphere(5, 0, -5, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(6, 0, -5, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, -6, -5, 0.5f)));
+        // Behind the eye, before the near plane, beyond the far plane
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, 0, 5, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, 0, -0.2f, 0.5f)));
+        assertEquals(Frustum.INTERSECTING, _frustum.classify(sphere(0, 0, -10, 0.5f)));
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(sphere(0, 0, -11, 0.5f)));
+    }
+
+    @Test
+    public void boxIsTestedWhenSphereCrossesAPlane(){
+        Frustum _frustum = new Frustum(IDENTITY);
+        // A long thin box along x, out of the cube: its sphere crosses the y = 1 plane but the box does not
+        Bounds _bounds = new Bounds();
+        _bounds.setBox(-4, 1.1f, 0, 4, 1.2f, 0);
+
+        assertEquals(Frustum.OUTSIDE, _frustum.classify(_bounds));
+    }
+
+    @Test
+    public void unknownBoundsAreVisible(){
+        Frustum _frustum = new Frustum(IDENTITY);
+
+        assertTrue(_frustum.isVisible((Bounds) null));
+    }
+
+    @Test
+    public void unsetFrustumContainsEverything(){
+        Frustum _frustum = new Frustum();
+
+        assertTrue(_frustum.isVisible(sphere(1000, -1000, 1000, 1)));
+    }
+
+    @Test
+    public void frustumIsSetAgain(){
+        Frustum _frustum = new Frustum(IDENTITY);
+        Bounds _bounds = sphere(0, 0, -5, 0.5f);
+        assertFalse(_frustum.isVisible(_bounds));
+
+        _frustum.set(perspective(90, 1, 1, 10));
+
+        assertTrue(_frustum.isVisible(_bounds));
+    }
+}
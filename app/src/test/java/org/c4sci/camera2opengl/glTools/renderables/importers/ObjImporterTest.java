@@ -0,0 +1,110 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.IndexedTriangles;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the parsing of OBJ files: vertices, optional colors, texture coordinates and normals, face fans and index welding.
+ */
+public class ObjImporterTest {
+
+    private static final float EPSILON = 1e-6f;
+    private static final int USAGE = 0;
+
+    private static IndexedTriangles importText(String obj_text) throws IOException {
+        return new ObjImporter(USAGE).importMesh(new ByteArrayInputStream(obj_text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static float[] dataOf(IndexedTriangles triangles_, ShaderAttributes attribute_){
+        for (IRenderable.DataToVbo _data : triangles_.getDataPerVertex()){
+            if (_data.getAttributeName().contentEquals(attribute_.toString())){
+                return _data.getRawData();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void verticesAndFacesAreRead() throws IOException {
+        IndexedTriangles _triangles = importText("# a quad\n" +
+                "o quad\n" +
+                "v 0 0 0\n" +
+                "v 1 0 0\n" +
+                "v 1 1.5e0 0\n" +
+                "\n" +
+                "v -1 1 0\r\n" +
+                "usemtl none\n" +
+                "f 1 2 3 4\n");
+
+        assertEquals(4, _triangles.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, _triangles.getTriangleIndices());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 1, 1.5f, 0, 1, -1, 1, 0, 1}, _triangles.getXyzwVertices(), EPSILON);
+        assertNull(_triangles.getDataPerVertex());
+    }
+
+    @Test
+    public void negativeIndicesCountBack() throws IOException {
+        IndexedTriangles _triangles = importText("v 0 0 0\nv 1 0 0\nv 0 1 0\nf -3 -2 -1\n");
+
+        assertArrayEquals(new int[]{0, 1, 2}, _triangles.getTriangleIndices());
+    }
+
+    @Test
+    public void vertexColorsAreRead() throws IOException {
+        IndexedTriangles _triangles = importText("v 0 0 0 1 0 0\nv 1 0 0 0 1 0\nv 0 1 0 0 0 1\nf 1 2 3\n");
+
+        assertArrayEquals(new float[]{1, 0, 0, 1, 0, 1, 0, 1, 0, 0, 1, 1}, dataOf(_triangles, ShaderAttributes.COLOR), EPSILON);
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1}, _triangles.getXyzwVertices(), EPSILON);
+    }
+
+    @Test
+    public void eachIndexCombinationIsAVertex() throws IOException {
+        // Two triangles sharing an edge, with the same normal but distinct texture coordinates on one shared position
+        IndexedTriangles _triangles = importText("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n" +
+                "vt 0 0\nvt 1 0\nvt 1 1\nvt 0.5 0.5\n" +
+                "vn 0 0 1\n" +
+                "f 1/1/1 2/2/1 3/3/1\n" +
+                "f 1/1/1 3/4/1 4/4/1\n");
+
+        assertEquals(5, _triangles.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 3, 4}, _triangles.getTriangleIndices());
+        float[] _texcoords = dataOf(_triangles, ShaderAttributes.TEXCOORD);
+        assertArrayEquals(new float[]{1, 1, 0, 1}, new float[]{_texcoords[8], _texcoords[9], _texcoords[10], _texcoords[11]}, EPSILON);
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0, 1}, new float[]{_texcoords[12], _texcoords[13], _texcoords[14], _texcoords[15]}, EPSILON);
+        float[] _normals = dataOf(_triangles, ShaderAttributes.NORMAL);
+        for (int _v = 0; _v < _triangles.getVertexCount(); _v++){
+            assertArrayEquals(new float[]{0, 0, 1, 0},
+                    new float[]{_normals[4 * _v], _normals[4 * _v + 1], _normals[4 * _v + 2], _normals[4 * _v + 3]}, EPSILON);
+        }
+    }
+
+    @Test
+    public void normalsWithoutTextureCoordinatesAreRead() throws IOException {
+        IndexedTriangles _triangles = importText("v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 1 0\nf 1//1 2//1 3//1\n");
+
+        assertNull(dataOf(_triangles, ShaderAttributes.TEXCOORD));
+        float[] _normals = dataOf(_triangles, ShaderAttributes.NORMAL);
+        assertArrayEquals(new float[]{0, 1, 0, 0}, new float[]{_normals[0], _normals[1], _normals[2], _normals[3]}, EPSILON);
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void badIndexIsRejected() throws IOException {
+        importText("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 4\n");
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void badNumberIsRejected() throws IOException {
+        importText("v 0 zero 0\n");
+    }
+}
@@ -0,0 +1,289 @@
+package org.c4sci.camera2opengl.glTools.renderables.importers;
+
+import org.c4sci.camera2opengl.RenderingRuntimeException;
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.c4sci.camera2opengl.glTools.renderables.meshes.IndexedTriangles;
+import org.c4sci.camera2opengl.glTools.renderables.shaders.ShaderAttributes;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the parsing of ascii and binary PLY files: vertex properties, face fans, vertex welding and color normalization.
+ */
+public class PlyImporterTest {
+
+    private static final float EPSILON = 1e-6f;
+    private static final int USAGE = 0;
+
+    private static IndexedTriangles importText(String ply_text) throws IOException {
+        return new PlyImporter(USAGE).importMesh(new ByteArrayInputStream(ply_text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static IndexedTriangles importBinary(String ply_header, ByteBuffer ply_body) throws IOException {
+        byte[] _header = ply_header.getBytes(StandardCharsets.US_ASCII);
+        byte[] _file = new byte[_header.length + ply_body.position()];
+        System.arraycopy(_header, 0, _file, 0, _header.length);
+        System.arraycopy(ply_body.array(), 0, _file, _header.length, ply_body.position());
+        return new PlyImporter(USAGE).importMesh(new ByteArrayInputStream(_file));
+    }
+
+    private static float[] dataOf(IndexedTriangles triangles_, ShaderAttributes attribute_){
+        for (IRenderable.DataToVbo _data : triangles_.getDataPerVertex()){
+            if (_data.getAttributeName().contentEquals(attribute_.toString())){
+                return _data.getRawData();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void asciiTrianglesAreRead() throws IOException {
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "comment made by hand\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "element face 1\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0\n" +
+                "1 0 0\n" +
+                "0 1.5 -2\n" +
+                "3 0 1 2\n");
+
+        assertEquals(3, _triangles.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2}, _triangles.getTriangleIndices());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1.5f, -2, 1}, _triangles.getXyzwVertices(), EPSILON);
+        assertNull(_triangles.getDataPerVertex());
+    }
+
+    @Test
+    public void polygonsAreSplitIntoFans() throws IOException {
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 4\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "element face 1\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0\n1 0 0\n1 1 0\n0 1 0\n" +
+                "4 0 1 2 3\n");
+
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, _triangles.getTriangleIndices());
+    }
+
+    @Test
+    public void identicalVerticesAreWelded() throws IOException {
+        // Two triangles sharing an edge, written with duplicated vertices as STL conversions do
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 6\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "element face 2\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0\n1 0 0\n1 1 0\n" +
+                "0 0 -0\n1 1 0\n0 1 0\n" +
+                "3 0 1 2\n3 3 4 5\n");
+
+        assertEquals(4, _triangles.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, _triangles.getTriangleIndices());
+    }
+
+    @Test
+    public void otherElementsAndPropertiesAreSkipped() throws IOException {
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float confidence\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "element face 1\n" +
+                "property uchar flags\n" +
+                "property list uchar int vertex_indices\n" +
+                "element edge 1\n" +
+                "property int vertex1\n" +
+                "property int vertex2\n" +
+                "end_header\n" +
+                "0 0.5 0 0\n1 0.5 0 0\n0 0.5 1 0\n" +
+                "7 3 0 1 2\n" +
+                "0 1\n");
+
+        assertArrayEquals(new int[]{0, 1, 2}, _triangles.getTriangleIndices());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1}, _triangles.getXyzwVertices(), EPSILON);
+    }
+
+    @Test
+    public void binaryDataAndNormalsAreRead() throws IOException {
+        String _header = "ply\n" +
+                "format binary_big_endian 1.0\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "property float nx\n" +
+                "property float ny\n" +
+                "property float nz\n" +
+                "element face 1\n" +
+                "property list uchar uint vertex_indices\n" +
+                "end_header\n";
+        ByteBuffer _body = ByteBuffer.allocate(256).order(ByteOrder.BIG_ENDIAN);
+        for (float[] _vertex : new float[][]{{0, 0, 0}, {2, 0, 0}, {0, 2, 0}}){
+            _body.putFloat(_vertex[0]).putFloat(_vertex[1]).putFloat(_vertex[2]);
+            _body.putFloat(0).putFloat(0).putFloat(1);
+        }
+        _body.put((byte) 3).putInt(0).putInt(1).putInt(2);
+
+        IndexedTriangles _triangles = importBinary(_header, _body);
+
+        assertArrayEquals(new int[]{0, 1, 2}, _triangles.getTriangleIndices());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 2, 0, 0, 1, 0, 2, 0, 1}, _triangles.getXyzwVertices(), EPSILON);
+        assertArrayEquals(new float[]{0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0}, dataOf(_triangles, ShaderAttributes.NORMAL), EPSILON);
+    }
+
+    @Test
+    public void integerColorsAreNormalized() throws IOException {
+        // One vertex per integer type, full intensity red, half intensity green, no blue
+        String[] _types = {"uchar", "char", "ushort", "short", "uint", "int"};
+        long[] _full = {0xFF, Byte.MAX_VALUE, 0xFFFF, Short.MAX_VALUE, 0xFFFFFFFFL, Integer.MAX_VALUE};
+        int[] _sizes = {1, 1, 2, 2, 4, 4};
+        for (int _t = 0; _t < _types.length; _t++){
+            String _header = "ply\n" +
+                    "format binary_little_endian 1.0\n" +
+                    "element vertex 3\n" +
+                    "property float x\n" +
+                    "property float y\n" +
+                    "property float z\n" +
+                    "property " + _types[_t] + " red\n" +
+                    "property " + _types[_t] + " green\n" +
+                    "property " + _types[_t] + " blue\n" +
+                    "element face 1\n" +
+                    "property list uchar int vertex_indices\n" +
+                    "end_header\n";
+            ByteBuffer _body = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+            for (int _v = 0; _v < 3; _v++){
+                _body.putFloat(_v == 1 ? 1 : 0).putFloat(_v == 2 ? 1 : 0).putFloat(0);
+                putInteger(_body, _sizes[_t], _full[_t]);
+                putInteger(_body, _sizes[_t], _full[_t] / 2);
+                putInteger(_body, _sizes[_t], 0);
+            }
+            _body.put((byte) 3).putInt(0).putInt(1).putInt(2);
+
+            float[] _colors = dataOf(importBinary(_header, _body), ShaderAttributes.COLOR);
+
+            for (int _v = 0; _v < 3; _v++){
+                assertEquals(_types[_t] + " red", 1f, _colors[4 * _v], EPSILON);
+                assertEquals(_types[_t] + " green", 0.5f, _colors[4 * _v + 1], 0.01f);
+                assertEquals(_types[_t] + " blue", 0f, _colors[4 * _v + 2], EPSILON);
+                assertEquals(_types[_t] + " alpha", 1f, _colors[4 * _v + 3], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void asciiUnsignedIntColorsAreNormalized() throws IOException {
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "property uint32 red\n" +
+                "property uint32 green\n" +
+                "property uint32 blue\n" +
+                "property uint32 alpha\n" +
+                "element face 1\n" +
+                "property list uint8 int32 vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0 4294967295 0 0 4294967295\n" +
+                "1 0 0 0 4294967295 0 4294967295\n" +
+                "0 1 0 0 0 4294967295 4294967295\n" +
+                "3 0 1 2\n");
+
+        assertArrayEquals(new float[]{1, 0, 0, 1, 0, 1, 0, 1, 0, 0, 1, 1}, dataOf(_triangles, ShaderAttributes.COLOR), EPSILON);
+    }
+
+    @Test
+    public void floatColorsAreKept() throws IOException {
+        IndexedTriangles _triangles = importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "property float red\n" +
+                "property float green\n" +
+                "property float blue\n" +
+                "element face 1\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0 0.25 0.5 0.75\n" +
+                "1 0 0 0.25 0.5 0.75\n" +
+                "0 1 0 0.25 0.5 0.75\n" +
+                "3 0 1 2\n");
+
+        float[] _colors = dataOf(_triangles, ShaderAttributes.COLOR);
+        assertArrayEquals(new float[]{0.25f, 0.5f, 0.75f, 1}, new float[]{_colors[0], _colors[1], _colors[2], _colors[3]}, EPSILON);
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void missingCoordinatesAreRejected() throws IOException {
+        importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 1\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "end_header\n" +
+                "0 0\n");
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void badVertexIndexIsRejected() throws IOException {
+        importText("ply\n" +
+                "format ascii 1.0\n" +
+                "element vertex 3\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "element face 1\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n" +
+                "0 0 0\n1 0 0\n0 1 0\n" +
+                "3 0 1 3\n");
+    }
+
+    @Test(expected = RenderingRuntimeException.class)
+    public void otherFilesAreRejected() throws IOException {
+        importText("solid cube\nendsolid cube\n");
+    }
+
+    private static void putInteger(ByteBuffer body_, int byte_count, long value_){
+        switch (byte_count){
+            case 1:
+                body_.put((byte) value_);
+                break;
+            case 2:
+                body_.putShort((short) value_);
+                break;
+            default:
+                body_.putInt((int) value_);
+                break;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import android.opengl.GLES31;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the least recently drawn order and the restoration limit of {@link GpuMemoryBudget}. Draws are simulated by
+ * {@link GpuMemoryBudget#touch(AbstractMesh, int)}: meshes are never set up, so evicting them makes no OpenGL call.
+ */
+public class GpuMemoryBudgetTest {
+
+    private static final int MESH_BYTE_COUNT = 100;
+
+    private static AbstractMesh budgetedMesh(GpuMemoryBudget memory_budget){
+        AbstractMesh _res = new TriangleMesh(new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1}, null, GLES31.GL_STATIC_DRAW);
+        _res.setMemoryBudget(memory_budget);
+        return _res;
+    }
+
+    @Test
+    public void leastRecentlyDrawnMeshIsEvicted(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(2 * MESH_BYTE_COUNT);
+        AbstractMesh _first = budgetedMesh(_budget);
+        AbstractMesh _second = budgetedMesh(_budget);
+        AbstractMesh _third = budgetedMesh(_budget);
+
+        _budget.nextFrame();
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _budget.nextFrame();
+        _budget.touch(_second, MESH_BYTE_COUNT);
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _budget.nextFrame();
+        _budget.touch(_third, MESH_BYTE_COUNT);
+
+        assertTrue(_second.isEvicted());
+        assertFalse(_first.isEvicted());
+        assertFalse(_third.isEvicted());
+        assertEquals(2 * MESH_BYTE_COUNT, _budget.getAllocatedByteCount());
+        assertEquals(1, _budget.getEvictionCount());
+    }
+
+    @Test
+    public void meshesDrawnInCurrentFrameAreKept(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(MESH_BYTE_COUNT);
+        AbstractMesh _first = budgetedMesh(_budget);
+        AbstractMesh _second = budgetedMesh(_budget);
+
+        _budget.nextFrame();
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _budget.touch(_second, MESH_BYTE_COUNT);
+        assertFalse(_first.isEvicted());
+        assertFalse(_second.isEvicted());
+        assertEquals(2 * MESH_BYTE_COUNT, _budget.getAllocatedByteCount());
+
+        _budget.nextFrame();
+        _budget.touch(_second, MESH_BYTE_COUNT);
+        assertTrue(_first.isEvicted());
+        assertEquals(MESH_BYTE_COUNT, _budget.getAllocatedByteCount());
+    }
+
+    @Test
+    public void meshesOfNoSizeAreNeverEvicted(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(MESH_BYTE_COUNT);
+        AbstractMesh _sharing = budgetedMesh(_budget);
+        AbstractMesh _first = budgetedMesh(_budget);
+        AbstractMesh _second = budgetedMesh(_budget);
+
+        _budget.nextFrame();
+        _budget.touch(_sharing, 0);
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _budget.nextFrame();
+        _budget.touch(_second, MESH_BYTE_COUNT);
+
+        assertTrue(_first.isEvicted());
+        assertFalse(_sharing.isEvicted());
+        assertEquals(1, _budget.getEvictionCount());
+    }
+
+    @Test
+    public void removedMeshIsNotAccounted(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(MESH_BYTE_COUNT);
+        AbstractMesh _first = budgetedMesh(_budget);
+        AbstractMesh _second = budgetedMesh(_budget);
+
+        _budget.nextFrame();
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _first.setMemoryBudget(null);
+        assertEquals(0, _budget.getAllocatedByteCount());
+
+        _budget.nextFrame();
+        _budget.touch(_second, MESH_BYTE_COUNT);
+        // Not accounted anymore, so neither evicted nor counted
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        assertFalse(_first.isEvicted());
+        assertEquals(MESH_BYTE_COUNT, _budget.getAllocatedByteCount());
+    }
+
+    @Test
+    public void growingMeshEvictsOthers(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(3 * MESH_BYTE_COUNT);
+        AbstractMesh _first = budgetedMesh(_budget);
+        AbstractMesh _second = budgetedMesh(_budget);
+
+        _budget.nextFrame();
+        _budget.touch(_first, MESH_BYTE_COUNT);
+        _budget.nextFrame();
+        _budget.touch(_second, MESH_BYTE_COUNT);
+        assertFalse(_first.isEvicted());
+
+        // E.g. instances were added to the second mesh
+        _budget.touch(_second, 3 * MESH_BYTE_COUNT);
+        assertTrue(_first.isEvicted());
+        assertEquals(3 * MESH_BYTE_COUNT, _budget.getAllocatedByteCount());
+    }
+
+    @Test
+    public void restorationsAreLimitedPerFrame(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(10 * MESH_BYTE_COUNT);
+        _budget.setMaxRestoredBytesPerFrame(2 * MESH_BYTE_COUNT);
+
+        _budget.nextFrame();
+        assertTrue(_budget.canRestore());
+        _budget.restored(MESH_BYTE_COUNT);
+        assertTrue(_budget.canRestore());
+        _budget.restored(MESH_BYTE_COUNT);
+        assertFalse(_budget.canRestore());
+        assertEquals(2, _budget.getRestorationCount());
+
+        _budget.nextFrame();
+        assertTrue(_budget.canRestore());
+    }
+
+    @Test
+    public void singleMeshIsAlwaysRestored(){
+        GpuMemoryBudget _budget = new GpuMemoryBudget(10 * MESH_BYTE_COUNT);
+        _budget.setMaxRestoredBytesPerFrame(MESH_BYTE_COUNT / 2);
+
+        _budget.nextFrame();
+        assertTrue(_budget.canRestore());
+        _budget.restored(MESH_BYTE_COUNT);
+        assertFalse(_budget.canRestore());
+    }
+}
@@ -0,0 +1,204 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link QuadricSimplifier} on a closed mesh (a sphere) and on a mesh with a border (a flat square):
+ * triangle counts reach the targets, no triangle is flipped, closed meshes stay closed and borders are kept.
+ */
+public class QuadricSimplifierTest {
+
+    private static final int SLICE_COUNT = 16;
+    private static final int STACK_COUNT = 10;
+    private static final int GRID_SIZE = 9;
+    private static final float EPSILON = 1e-4f;
+
+    /**
+     * @return A unit sphere centered on the origin: two poles and STACK_COUNT - 1 rings of SLICE_COUNT vertices,
+     * triangles facing outward.
+     */
+    private static IndexedTriangles sphere(){
+        int _ring_count = STACK_COUNT - 1;
+        int _vertex_count = 2 + _ring_count * SLICE_COUNT;
+        float[] _xyzw = new float[4 * _vertex_count];
+        setVertex(_xyzw, 0, 0, 0, 1);
+        setVertex(_xyzw, 1, 0, 0, -1);
+        for (int _r = 0; _r < _ring_count; _r++){
+            double _polar = Math.PI * (_r + 1) / STACK_COUNT;
+            for (int _s = 0; _s < SLICE_COUNT; _s++){
+                double _azimuth = 2 * Math.PI * _s / SLICE_COUNT;
+                setVertex(_xyzw, ringVertex(_r, _s), (float) (Math.sin(_polar) * Math.cos(_azimuth)),
+                        (float) (Math.sin(_polar) * Math.sin(_azimuth)), (float) Math.cos(_polar));
+            }
+        }
+        int[] _triangles = new int[3 * 2 * SLICE_COUNT * (_ring_count)];
+        int _t = 0;
+        for (int _s = 0; _s < SLICE_COUNT; _s++){
+            int _next = (_s + 1) % SLICE_COUNT;
+            _t = setTriangle(_triangles, _t, 0, ringVertex(0, _s), ringVertex(0, _next));
+            _t = setTriangle(_triangles, _t, 1, ringVertex(_ring_count - 1, _next), ringVertex(_ring_count - 1, _s));
+            for (int _r = 0; _r + 1 < _ring_count; _r++){
+                _t = setTriangle(_triangles, _t, ringVertex(_r, _s), ringVertex(_r + 1, _s), ringVertex(_r + 1, _next));
+                _t = setTriangle(_triangles, _t, ringVertex(_r, _s), ringVertex(_r + 1, _next), ringVertex(_r, _next));
+            }
+        }
+        return new IndexedTriangles(_xyzw, _triangles, null);
+    }
+
+    private static int ringVertex(int ring_, int slice_){
+        return 2 + ring_ * SLICE_COUNT + slice_;
+    }
+
+    /**
+     * @return A flat square of GRID_SIZE x GRID_SIZE vertices in the z = 0 plane, from (0, 0) to (GRID_SIZE - 1, GRID_SIZE - 1),
+     * triangles facing +z.
+     */
+    private static IndexedTriangles square(){
+        float[] _xyzw = new float[4 * GRID_SIZE * GRID_SIZE];
+        for (int _row = 0; _row < GRID_SIZE; _row++){
+            for (int _col = 0; _col < GRID_SIZE; _col++){
+                setVertex(_xyzw, _row * GRID_SIZE + _col, _col, _row, 0);
+            }
+        }
+        int[] _triangles = new int[3 * 2 * (GRID_SIZE - 1) * (GRID_SIZE - 1)];
+        int _t = 0;
+        for (int _row = 0; _row + 1 < GRID_SIZE; _row++){
+            for (int _col = 0; _col + 1 < GRID_SIZE; _col++){
+                int _v = _row * GRID_SIZE + _col;
+                _t = setTriangle(_triangles, _t, _v, _v + 1, _v + GRID_SIZE + 1);
+                _t = setTriangle(_triangles, _t, _v, _v + GRID_SIZE + 1, _v + GRID_SIZE);
+            }
+        }
+        return new IndexedTriangles(_xyzw, _triangles, null);
+    }
+
+    private static void setVertex(float[] xyzw_, int vertex_, float x_, float y_, float z_){
+        xyzw_[4 * vertex_] = x_;
+        xyzw_[4 * vertex_ + 1] = y_;
+        xyzw_[4 * vertex_ + 2] = z_;
+        xyzw_[4 * vertex_ + 3] = 1;
+    }
+
+    private static int setTriangle(int[] triangles_, int triangle_, int a_, int b_, int c_){
+        triangles_[3 * triangle_] = a_;
+        triangles_[3 * triangle_ + 1] = b_;
+        triangles_[3 * triangle_ + 2] = c_;
+        return triangle_ + 1;
+    }
+
+    /**
+     * @return The (not normalized) normal of a triangle, twice its area long.
+     */
+    private static float[] normalOf(IndexedTriangles triangles_, int triangle_){
+        float[] _xyzw = triangles_.getXyzwVertices();
+        int[] _indices = triangles_.getTriangleIndices();
+        int _a = 4 * _indices[3 * triangle_], _b = 4 * _indices[3 * triangle_ + 1], _c = 4 * _indices[3 * triangle_ + 2];
+        float _ux = _xyzw[_b] - _xyzw[_a], _uy = _xyzw[_b + 1] - _xyzw[_a + 1], _uz = _xyzw[_b + 2] - _xyzw[_a + 2];
+        float _vx = _xyzw[_c] - _xyzw[_a], _vy = _xyzw[_c + 1] - _xyzw[_a + 1], _vz = _xyzw[_c + 2] - _xyzw[_a + 2];
+        return new float[]{_uy * _vz - _uz * _vy, _uz * _vx - _ux * _vz, _ux * _vy - _uy * _vx};
+    }
+
+    /**
+     * @return The number of triangles using each oriented edge, keyed by "from to".
+     */
+    private static Map<String, Integer> orientedEdges(IndexedTriangles triangles_){
+        Map<String, Integer> _res = new HashMap<>();
+        int[] _indices = triangles_.getTriangleIndices();
+        for (int _i = 0; _i < _indices.length; _i += 3){
+            for (int _k = 0; _k < 3; _k++){
+                String _edge = _indices[_i + _k] + " " + _indices[_i + (_k + 1) % 3];
+                Integer _count = _res.get(_edge);
+                _res.put(_edge, _count == null ? 1 : _count + 1);
+            }
+        }
+        return _res;
+    }
+
+    @Test
+    public void closedMeshReachesTargetCounts(){
+        IndexedTriangles _sphere = sphere();
+        int _source_count = _sphere.getTriangleCount();
+
+        List<IndexedTriangles> _levels = new QuadricSimplifier(_sphere.getXyzwVertices(), _sphere.getTriangleIndices(), null)
+                .simplify(0.5f, 0.25f);
+
+        assertEquals(2, _levels.size());
+        assertTrue(_levels.get(0).getTriangleCount() <= (int) Math.ceil(0.5 * _source_count));
+        assertTrue(_levels.get(1).getTriangleCount() <= (int) Math.ceil(0.25 * _source_count));
+        assertTrue(_levels.get(1).getTriangleCount() > 0);
+    }
+
+    @Test
+    public void closedMeshStaysClosedWithoutFlippedTriangles(){
+        IndexedTriangles _sphere = sphere();
+
+        for (IndexedTriangles _level : new QuadricSimplifier(_sphere.getXyzwVertices(), _sphere.getTriangleIndices(), null)
+                .simplify(0.5f, 0.25f)){
+            float[] _xyzw = _level.getXyzwVertices();
+            int[] _indices = _level.getTriangleIndices();
+            for (int _t = 0; _t < _level.getTriangleCount(); _t++){
+                // On a convex shape around the origin, outward triangles face away from the origin
+                float[] _normal = normalOf(_level, _t);
+                int _a = 4 * _indices[3 * _t];
+                float _dot = _normal[0] * _xyzw[_a] + _normal[1] * _xyzw[_a + 1] + _normal[2] * _xyzw[_a + 2];
+                assertTrue("Triangle " + _t + " is flipped", _dot > 0);
+            }
+            // Each edge is used once in each direction: the surface has no hole and consistent windings
+            Map<String, Integer> _edges = orientedEdges(_level);
+            for (Map.Entry<String, Integer> _edge : _edges.entrySet()){
+                assertEquals(_edge.getKey(), 1, (int) _edge.getValue());
+                String[] _vertices = _edge.getKey().split(" ");
+                assertTrue(_edge.getKey() + " has no opposite", _edges.containsKey(_vertices[1] + " " + _vertices[0]));
+            }
+        }
+    }
+
+    @Test
+    public void borderIsKept(){
+        IndexedTriangles _square = square();
+        int _source_count = _square.getTriangleCount();
+        float _side = GRID_SIZE - 1;
+
+        IndexedTriangles _level = new QuadricSimplifier(_square.getXyzwVertices(), _square.getTriangleIndices(), null)
+                .simplify(0.25f).get(0);
+
+        assertTrue(_level.getTriangleCount() <= (int) Math.ceil(0.25 * _source_count));
+        float _area = 0;
+        for (int _t = 0; _t < _level.getTriangleCount(); _t++){
+            float[] _normal = normalOf(_level, _t);
+            assertTrue("Triangle " + _t + " is flipped", _normal[2] > 0);
+            _area += _normal[2] / 2;
+        }
+        // Triangles still cover the whole square
+        assertEquals(_side * _side, _area, EPSILON * _side * _side);
+
+        // Edges used by a single triangle lie on the square border, and vertices stay in the plane
+        float[] _xyzw = _level.getXyzwVertices();
+        Map<String, Integer> _edges = orientedEdges(_level);
+        for (String _edge : _edges.keySet()){
+            String[] _vertices = _edge.split(" ");
+            if (_edges.containsKey(_vertices[1] + " " + _vertices[0])){
+                continue;
+            }
+            int _a = 4 * Integer.parseInt(_vertices[0]);
+            int _b = 4 * Integer.parseInt(_vertices[1]);
+            boolean _is_on_side = (isOn(_xyzw[_a], 0) && isOn(_xyzw[_b], 0)) || (isOn(_xyzw[_a], _side) && isOn(_xyzw[_b], _side)) ||
+                    (isOn(_xyzw[_a + 1], 0) && isOn(_xyzw[_b + 1], 0)) || (isOn(_xyzw[_a + 1], _side) && isOn(_xyzw[_b + 1], _side));
+            assertTrue("Border edge " + _edge + " left the border", _is_on_side);
+        }
+        for (int _v = 0; _v < _level.getVertexCount(); _v++){
+            assertEquals(0, _xyzw[4 * _v + 2], EPSILON);
+        }
+    }
+
+    private static boolean isOn(float coordinate_, float value_){
+        return Math.abs(coordinate_ - value_) < EPSILON;
+    }
+}
@@ -0,0 +1,152 @@
+package org.c4sci.camera2opengl.glTools.renderables.meshes;
+
+import org.c4sci.camera2opengl.glTools.renderables.IRenderable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link VertexCacheOptimizer} only reorders triangles and vertices, that it reduces cache misses,
+ * and that modifications of reordered data are forwarded by {@link IRenderable.DataToVbo#forwardDirtyVertices(IRenderable.DataToVbo, int[])}.
+ */
+public class VertexCacheOptimizerTest {
+
+    private static final int GRID_SIZE = 16;
+    private static final int CACHE_SIZE = 16;
+    private static final int RESTART = PrimitiveLists.RESTART_INDEX;
+
+    /**
+     * @return The triangles of a grid of GRID_SIZE x GRID_SIZE vertices, in a random order.
+     */
+    private static int[] shuffledGrid(){
+        List<int[]> _triangles = new ArrayList<>();
+        for (int _row = 0; _row + 1 < GRID_SIZE; _row++){
+            for (int _col = 0; _col + 1 < GRID_SIZE; _col++){
+                int _v = _row * GRID_SIZE + _col;
+                _triangles.add(new int[]{_v, _v + 1, _v + GRID_SIZE});
+                _triangles.add(new int[]{_v + 1, _v + GRID_SIZE + 1, _v + GRID_SIZE});
+            }
+        }
+        Collections.shuffle(_triangles, new Random(12));
+        int[] _res = new int[3 * _triangles.size()];
+        for (int _t = 0; _t < _triangles.size(); _t++){
+            System.arraycopy(_triangles.get(_t), 0, _res, 3 * _t, 3);
+        }
+        return _res;
+    }
+
+    private static List<String> sortedTriangles(int[] v_indices, int first_index, int index_count){
+        List<String> _res = new ArrayList<>();
+        for (int _i = first_index; _i < first_index + index_count; _i += 3){
+            _res.add(v_indices[_i] + " " + v_indices[_i + 1] + " " + v_indices[_i + 2]);
+        }
+        Collections.sort(_res);
+        return _res;
+    }
+
+    @Test
+    public void trianglesAreReorderedWithTheirWinding(){
+        int[] _indices = shuffledGrid();
+        List<String> _before = sortedTriangles(_indices, 0, _indices.length);
+
+        VertexCacheOptimizer.optimizeTriangleOrder(_indices, 0, _indices.length, GRID_SIZE * GRID_SIZE, CACHE_SIZE);
+
+        assertEquals(_before, sortedTriangles(_indices, 0, _indices.length));
+    }
+
+    @Test
+    public void cacheMissesAreReduced(){
+        int[] _indices = shuffledGrid();
+
+        VertexCacheOptimizer.Report _report = VertexCacheOptimizer.optimizeTriangleOrder(_indices, 0, _indices.length,
+                GRID_SIZE * GRID_SIZE, CACHE_SIZE);
+
+        assertEquals(_indices.length / 3, _report.getTriangleCount());
+        assertTrue(_report.toString(), _report.getAcmrAfter() < _report.getAcmrBefore());
+        assertTrue(_report.toString(), _report.getAtvrAfter() < _report.getAtvrBefore());
+        // Shuffled triangles barely reuse vertices, grids drawn in order reuse most of them
+        assertTrue(_report.toString(), _report.getAcmrBefore() > 2f);
+        assertTrue(_report.toString(), _report.getAcmrAfter() < 1f);
+        assertEquals(_report.getAcmrAfter(),
+                VertexCacheOptimizer.measureAcmr(_indices, 0, _indices.length, GRID_SIZE * GRID_SIZE, CACHE_SIZE), 0f);
+    }
+
+    @Test
+    public void onlyTheTriangleRangeIsReordered(){
+        int[] _grid = shuffledGrid();
+        int[] _prefix = {7, 3, 5, 1};
+        int[] _suffix = {RESTART, 2, 9};
+        int[] _indices = PrimitiveLists.concatenate(_prefix, _grid, _suffix);
+
+        VertexCacheOptimizer.optimizeTriangleOrder(_indices, _prefix.length, _grid.length, GRID_SIZE * GRID_SIZE, CACHE_SIZE);
+
+        assertArrayEquals(_prefix, Arrays.copyOfRange(_indices, 0, _prefix.length));
+        assertArrayEquals(_suffix, Arrays.copyOfRange(_indices, _prefix.length + _grid.length, _indices.length));
+        assertEquals(sortedTriangles(_grid, 0, _grid.length), sortedTriangles(_indices, _prefix.length, _grid.length));
+    }
+
+    @Test
+    public void verticesAreRenumberedInFirstUseOrder(){
+        int[] _indices = {3, 1, RESTART, 1, 4, 0, RESTART};
+
+        int[] _remap = VertexCacheOptimizer.computeVertexFetchRemap(_indices, 6);
+
+        // Unused vertices 2 and 5 come last
+        assertArrayEquals(new int[]{3, 1, 4, 0, 2, 5}, _remap);
+
+        VertexCacheOptimizer.remapIndices(_indices, _remap);
+        assertArrayEquals(new int[]{0, 1, RESTART, 1, 2, 3, RESTART}, _indices);
+    }
+
+    @Test
+    public void dataFollowTheRenumbering(){
+        int[] _remap = {2, 0, 1};
+        float[] _data = {0, 0, 1, 1, 2, 2};
+
+        assertArrayEquals(new float[]{1, 1, 2, 2, 0, 0}, VertexCacheOptimizer.remapData(_data, 2, _remap), 0f);
+    }
+
+    @Test
+    public void dirtyVerticesAreForwardedToRemappedData(){
+        int[] _remap = {2, 0, 3, 1};
+        float[] _source = {0, 1, 2, 3};
+        IRenderable.DataToVbo _source_data = new IRenderable.DataToVbo(_source, "fValue", 0, 1);
+        IRenderable.DataToVbo _remapped_data = new IRenderable.DataToVbo(
+                VertexCacheOptimizer.remapData(_source, 1, _remap), "fValue", 0, 1);
+        assertArrayEquals(new float[]{1, 3, 0, 2}, _remapped_data.getRawData(), 0f);
+
+        _source[1] = 10;
+        _source[2] = 20;
+        _source_data.markDirty(1, 2);
+        _source_data.forwardDirtyVertices(_remapped_data, _remap);
+
+        assertArrayEquals(new float[]{10, 3, 0, 20}, _remapped_data.getRawData(), 0f);
+        assertFalse(_source_data.isDirty());
+        assertTrue(_remapped_data.isDirty());
+    }
+
+    @Test
+    public void dirtyVerticesOutOfDataAreIgnored(){
+        int[] _remap = {1, 0};
+        float[] _source = {0, 1};
+        IRenderable.DataToVbo _source_data = new IRenderable.DataToVbo(_source, "fValue", 0, 1);
+        IRenderable.DataToVbo _remapped_data = new IRenderable.DataToVbo(
+                VertexCacheOptimizer.remapData(_source, 1, _remap), "fValue", 0, 1);
+
+        _source[1] = 5;
+        _source_data.markDirty(1, 10);
+        _source_data.forwardDirtyVertices(_remapped_data, _remap);
+
+        assertArrayEquals(new float[]{5, 0}, _remapped_data.getRawData(), 0f);
+        assertFalse(_source_data.isDirty());
+    }
+}
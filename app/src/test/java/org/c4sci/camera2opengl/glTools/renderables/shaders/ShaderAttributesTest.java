@@ -0,0 +1,54 @@
+package org.c4sci.camera2opengl.glTools.renderables.shaders;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that stock vertex attributes fit in the 16 locations every OpenGL ES 3 device offers (GL_MAX_VERTEX_ATTRIBS):
+ * instanced programs would not link otherwise on devices offering the minimum.
+ */
+public class ShaderAttributesTest {
+
+    private static final int MIN_VERTEX_ATTRIBUTE_COUNT = 16;
+    private static final int MATRIX_COLUMN_COUNT = 4;
+
+    @Test
+    public void vertexAttributesFitInMinimumLocations(){
+        for (ShaderAttributes _attribute : ShaderAttributes.values()){
+            if (_attribute.isVertexAttribute()){
+                assertTrue(_attribute + " exceeds the minimum attribute locations",
+                        _attribute.getLocation() + _attribute.getLocationCount() <= MIN_VERTEX_ATTRIBUTE_COUNT);
+            }
+        }
+        assertTrue(ShaderAttributes.FIRST_CUSTOM_LOCATION <= MIN_VERTEX_ATTRIBUTE_COUNT);
+    }
+
+    @Test
+    public void instanceModelColumnsComeLast(){
+        assertEquals(MATRIX_COLUMN_COUNT, ShaderAttributes.INSTANCE_MODEL.getLocationCount());
+        assertEquals(ShaderAttributes.FIRST_CUSTOM_LOCATION,
+                ShaderAttributes.INSTANCE_MODEL.getLocation() + ShaderAttributes.INSTANCE_MODEL.getLocationCount());
+        for (ShaderAttributes _attribute : ShaderAttributes.values()){
+            if (_attribute.isVertexAttribute()){
+                assertTrue(_attribute.getLocation() <= ShaderAttributes.INSTANCE_MODEL.getLocation());
+            }
+        }
+    }
+
+    @Test
+    public void onlyVertexAttributesTakeLocations(){
+        for (ShaderAttributes _attribute : ShaderAttributes.values()){
+            assertEquals(_attribute.isVertexAttribute(), _attribute.getLocationCount() > 0);
+        }
+    }
+
+    @Test
+    public void locationsAreFoundByName(){
+        for (ShaderAttributes _attribute : ShaderAttributes.values()){
+            assertEquals(_attribute.getLocation(), ShaderAttributes.locationOf(_attribute.toString()));
+        }
+        assertEquals(-1, ShaderAttributes.locationOf("v4MyCustomAttribute"));
+    }
+}